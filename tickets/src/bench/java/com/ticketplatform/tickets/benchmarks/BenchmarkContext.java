@@ -0,0 +1,24 @@
+package com.ticketplatform.tickets.benchmarks;
+
+import com.ticketplatform.tickets.TicketsApplication;
+import com.ticketplatform.tickets.config.TestSecurityConfig;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+//Boots the application against the H2 test database on a random port, for benchmarks that need real repositories
+public final class BenchmarkContext {
+
+    private BenchmarkContext() {
+
+    }
+
+    public static ConfigurableApplicationContext start(String... properties) {
+        return new SpringApplicationBuilder(TicketsApplication.class, TestSecurityConfig.class)
+                .web(WebApplicationType.SERVLET)
+                .logStartupInfo(false)
+                .properties("server.port=0", "logging.level.root=WARN")
+                .properties(properties)
+                .run();
+    }
+}
@@ -0,0 +1,111 @@
+package com.ticketplatform.tickets.benchmarks;
+
+import com.ticketplatform.tickets.domain.entities.Event;
+import com.ticketplatform.tickets.repositories.EventRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//Published event search over a million events, matching to_tsvector of every row's name and venue per query as
+//before against the stored search vector and its GIN index, ranked. Text search is PostgreSQL's, so this runs
+//against the database at bench.search.url (with bench.search.username and bench.search.password, postgres and
+//password by default), not the H2 test database: -jvmArgsAppend -Dbench.search.url=jdbc:postgresql://... for the
+//forked JVM, and it is only run when named: -Dbench.include=EventSearch. Events are seeded once and left there for
+//the next run.
+//Scores are the latency of a page of results with its count, read p0.50 and p0.99.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class EventSearchBenchmark {
+
+    private static final int EVENTS = 1_000_000;
+    private static final Pageable PAGE = PageRequest.of(0, 20);
+
+    private static final String EXPRESSION_QUERY = "SELECT * FROM events WHERE status = 'PUBLISHED' AND " +
+            "to_tsvector('english', COALESCE(name, '') || ' ' || COALESCE(venue, '')) " +
+            "@@ plainto_tsquery('english', ?1)";
+    private static final String EXPRESSION_COUNT_QUERY = "SELECT count(*) FROM events WHERE status = 'PUBLISHED' AND " +
+            "to_tsvector('english', COALESCE(name, '') || ' ' || COALESCE(venue, '')) " +
+            "@@ plainto_tsquery('english', ?1)";
+
+    //A common word, two that narrow it down and one that matches nothing
+    @Param({"jazz", "harbour jazz", "zeppelin"})
+    private String term;
+
+    private ConfigurableApplicationContext context;
+    private EventRepository eventRepository;
+    private EntityManager entityManager;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String url = System.getProperty("bench.search.url");
+        if(url == null) {
+            throw new IllegalStateException("EventSearchBenchmark needs PostgreSQL, "
+                    + "run it with -jvmArgsAppend -Dbench.search.url=jdbc:postgresql://...");
+        }
+        context = BenchmarkContext.start(
+                "spring.datasource.url=" + url,
+                "spring.datasource.username=" + System.getProperty("bench.search.username", "postgres"),
+                "spring.datasource.password=" + System.getProperty("bench.search.password", "password"),
+                "spring.datasource.driver-class-name=org.postgresql.Driver",
+                "spring.jpa.hibernate.ddl-auto=update",
+                "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.PostgreSQLDialect");
+        eventRepository = context.getBean(EventRepository.class);
+        entityManager = context.getBean(EntityManager.class);
+
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        Long existing = jdbcTemplate.queryForObject("SELECT count(*) FROM events", Long.class);
+        if(existing < EVENTS) {
+            //Names of three words out of 24, a venue out of 8 and one event in 10 not published
+            jdbcTemplate.update("INSERT INTO events (id, name, venue, status, created_at, updated_at) " +
+                    "SELECT gen_random_uuid(), " +
+                    "words[1 + i % 24] || ' ' || words[1 + (i / 24) % 24] || ' ' || words[1 + (i / 576) % 24], " +
+                    "venues[1 + (i / 13) % 8], " +
+                    "CASE WHEN i % 10 = 0 THEN 'DRAFT' ELSE 'PUBLISHED' END, now(), now() " +
+                    "FROM generate_series(?, ?) i, " +
+                    "(SELECT ARRAY['Jazz', 'Rock', 'Folk', 'Opera', 'Comedy', 'Ballet', 'Techno', 'Blues', " +
+                    "'Summer', 'Winter', 'Night', 'Morning', 'Festival', 'Gala', 'Parade', 'Market', " +
+                    "'Lantern', 'River', 'Garden', 'Harbour', 'Choir', 'Poetry', 'Circus', 'Film'] AS words, " +
+                    "ARRAY['Old Town Quay', 'Riverside Park', 'Grand Hall', 'North Arena', " +
+                    "'Harbour Stage', 'City Theatre', 'Garden Pavilion', 'Market Square'] AS venues) seed",
+                    (int) (existing + 1), EVENTS);
+            jdbcTemplate.execute("ANALYZE events");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Page<Event> expression() {
+        Query query = entityManager.createNativeQuery(EXPRESSION_QUERY, Event.class)
+                .setParameter(1, term)
+                .setFirstResult((int) PAGE.getOffset())
+                .setMaxResults(PAGE.getPageSize());
+        @SuppressWarnings("unchecked")
+        List<Event> events = query.getResultList();
+        return PageableExecutionUtils.getPage(events, PAGE, () -> ((Number) entityManager
+                .createNativeQuery(EXPRESSION_COUNT_QUERY)
+                .setParameter(1, term)
+                .getSingleResult()).longValue());
+    }
+
+    @Benchmark
+    public Page<Event> searchVector() {
+        return eventRepository.searchEvents(term, PAGE);
+    }
+}
@@ -0,0 +1,34 @@
+package com.ticketplatform.tickets.benchmarks;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.function.Function;
+
+//Stands in for a Spring Data repository by answering the few methods a benchmark needs from memory, so a
+//service's own logic can be measured without a database underneath it. Any other method fails loudly.
+public final class InMemoryRepository {
+
+    private InMemoryRepository() {
+
+    }
+
+    public static <R> R of(Class<R> repositoryType, Map<String, Function<Object[], Object>> answers) {
+        Object repository = Proxy.newProxyInstance(repositoryType.getClassLoader(), new Class<?>[]{repositoryType},
+                (proxy, method, args) -> {
+                    if(method.getDeclaringClass() == Object.class) {
+                        return switch(method.getName()) {
+                            case "equals" -> proxy == args[0];
+                            case "hashCode" -> System.identityHashCode(proxy);
+                            default -> "InMemory" + repositoryType.getSimpleName();
+                        };
+                    }
+                    Function<Object[], Object> answer = answers.get(method.getName());
+                    if(answer == null) {
+                        throw new UnsupportedOperationException(
+                                repositoryType.getSimpleName() + "." + method.getName() + " is not answered in memory");
+                    }
+                    return answer.apply(args);
+                });
+        return repositoryType.cast(repository);
+    }
+}
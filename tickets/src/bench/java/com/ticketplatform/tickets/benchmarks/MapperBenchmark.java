@@ -0,0 +1,84 @@
+package com.ticketplatform.tickets.benchmarks;
+
+import com.ticketplatform.tickets.domain.dtos.GetPublishedEventDetailsResponseDto;
+import com.ticketplatform.tickets.domain.dtos.GetTicketResponseDto;
+import com.ticketplatform.tickets.domain.dtos.ListEventResponseDto;
+import com.ticketplatform.tickets.domain.dtos.ListTicketResponseDto;
+import com.ticketplatform.tickets.domain.entities.*;
+import com.ticketplatform.tickets.mappers.EventMapper;
+import com.ticketplatform.tickets.mappers.TicketMapper;
+import org.mapstruct.factory.Mappers;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+//The MapStruct conversions behind the ticket and event endpoints, for an event with a few or many ticket types.
+//The generated mappers have no dependencies, so they are used without Spring.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class MapperBenchmark {
+
+    @Param({"1", "10"})
+    public int ticketTypes;
+
+    private final TicketMapper ticketMapper = Mappers.getMapper(TicketMapper.class);
+    private final EventMapper eventMapper = Mappers.getMapper(EventMapper.class);
+
+    private Event event;
+    private Ticket ticket;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        LocalDateTime start = LocalDateTime.now().plusMonths(1);
+        event = new Event();
+        event.setId(UUID.randomUUID());
+        event.setName("Benchmark Festival");
+        event.setVenue("Main Stage");
+        event.setStartDateAndTime(start);
+        event.setEndDateAndTime(start.plusHours(6));
+        event.setSaleStartDateAndTime(start.minusMonths(1));
+        event.setSaleEndDateAndTime(start);
+        event.setStatus(EventStatusEnum.PUBLISHED);
+        for(int i = 0; i < ticketTypes; i++) {
+            TicketType ticketType = new TicketType();
+            ticketType.setId(UUID.randomUUID());
+            ticketType.setName("Ticket Type " + i);
+            ticketType.setDescription("Entry for ticket type " + i);
+            ticketType.setPrice(25.0 + i);
+            ticketType.setTotalTicketsAvailable(1000);
+            ticketType.setEvent(event);
+            event.getTicketTypes().add(ticketType);
+        }
+
+        ticket = new Ticket();
+        ticket.setId(UUID.randomUUID());
+        ticket.setStatus(TicketStatusEnum.PURCHASED);
+        ticket.setTicketType(event.getTicketTypes().get(0));
+    }
+
+    @Benchmark
+    public GetTicketResponseDto ticketToGetTicketResponseDto() {
+        return ticketMapper.toGetTicketResponseDto(ticket);
+    }
+
+    @Benchmark
+    public ListTicketResponseDto ticketToListTicketResponseDto() {
+        return ticketMapper.toListTicketResponseDto(ticket);
+    }
+
+    @Benchmark
+    public ListEventResponseDto eventToListEventResponseDto() {
+        return eventMapper.toListEventResponseDto(event);
+    }
+
+    @Benchmark
+    public GetPublishedEventDetailsResponseDto eventToGetPublishedEventDetailsResponseDto() {
+        return eventMapper.toGetPublishedEventDetailsResponseDto(event);
+    }
+}
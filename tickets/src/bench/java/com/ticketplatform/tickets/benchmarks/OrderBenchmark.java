@@ -0,0 +1,76 @@
+package com.ticketplatform.tickets.benchmarks;
+
+import com.ticketplatform.tickets.domain.entities.Ticket;
+import com.ticketplatform.tickets.domain.entities.TicketType;
+import com.ticketplatform.tickets.domain.entities.User;
+import com.ticketplatform.tickets.repositories.TicketTypeRepository;
+import com.ticketplatform.tickets.repositories.UserRepository;
+import com.ticketplatform.tickets.services.TicketTypeService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+//Orders per second for a group buying several tickets at once: one purchaseTickets call against the
+//same number of purchaseTicket calls, which is what clients had to do before the orders endpoint
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@Threads(8)
+public class OrderBenchmark {
+
+    public enum OrderPath { SINGLE_TICKET_LOOP, ORDER }
+
+    @Param({"SINGLE_TICKET_LOOP", "ORDER"})
+    public OrderPath path;
+
+    @Param({"2", "6"})
+    public int quantity;
+
+    private ConfigurableApplicationContext context;
+    private TicketTypeService ticketTypeService;
+
+    private UUID userId;
+    private UUID ticketTypeId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        ticketTypeService = context.getBean(TicketTypeService.class);
+
+        User user = new User();
+        user.setId(UUID.randomUUID());
+        user.setName("Benchmark User");
+        user.setEmail("benchmark@example.com");
+        userId = context.getBean(UserRepository.class).save(user).getId();
+
+        TicketType ticketType = new TicketType();
+        ticketType.setName("General Admission");
+        ticketType.setPrice(10.0);
+        ticketType.setTotalTicketsAvailable(Integer.MAX_VALUE / 2);
+        ticketTypeId = context.getBean(TicketTypeRepository.class).save(ticketType).getId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Ticket> order() {
+        if(path == OrderPath.ORDER) {
+            return ticketTypeService.purchaseTickets(userId, ticketTypeId, quantity);
+        }
+        List<Ticket> tickets = new ArrayList<>(quantity);
+        for(int i = 0; i < quantity; i++) {
+            tickets.add(ticketTypeService.purchaseTicket(userId, ticketTypeId));
+        }
+        return tickets;
+    }
+}
@@ -0,0 +1,105 @@
+package com.ticketplatform.tickets.benchmarks;
+
+import com.ticketplatform.tickets.domain.entities.Ticket;
+import com.ticketplatform.tickets.domain.entities.TicketStatusEnum;
+import com.ticketplatform.tickets.domain.entities.TicketType;
+import com.ticketplatform.tickets.domain.entities.User;
+import com.ticketplatform.tickets.exceptions.TicketsSoldOutException;
+import com.ticketplatform.tickets.repositories.TicketRepository;
+import com.ticketplatform.tickets.repositories.TicketTypeRepository;
+import com.ticketplatform.tickets.repositories.UserRepository;
+import com.ticketplatform.tickets.services.PurchaseSequencerService;
+import com.ticketplatform.tickets.services.QrCodeService;
+import com.ticketplatform.tickets.services.TicketTypeService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+//Purchase throughput of the conditional-update inventory claim and the batching purchase sequencer
+//against the previous lock-then-count path, with every benchmark thread buying from the same ticket type
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@Threads(32)
+public class PurchaseBenchmark {
+
+    public enum PurchasePath { CONDITIONAL_UPDATE, SEQUENCER, PESSIMISTIC_LOCK }
+
+    @Param({"CONDITIONAL_UPDATE", "SEQUENCER", "PESSIMISTIC_LOCK"})
+    public PurchasePath path;
+
+    private ConfigurableApplicationContext context;
+    private TicketTypeService ticketTypeService;
+    private PurchaseSequencerService purchaseSequencerService;
+    private TicketTypeRepository ticketTypeRepository;
+    private TicketRepository ticketRepository;
+    private UserRepository userRepository;
+    private QrCodeService qrCodeService;
+    private TransactionTemplate transactionTemplate;
+
+    private UUID userId;
+    private UUID ticketTypeId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        ticketTypeService = context.getBean(TicketTypeService.class);
+        purchaseSequencerService = context.getBean(PurchaseSequencerService.class);
+        ticketTypeRepository = context.getBean(TicketTypeRepository.class);
+        ticketRepository = context.getBean(TicketRepository.class);
+        userRepository = context.getBean(UserRepository.class);
+        qrCodeService = context.getBean(QrCodeService.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+
+        User user = new User();
+        user.setId(UUID.randomUUID());
+        user.setName("Benchmark User");
+        user.setEmail("benchmark@example.com");
+        userId = userRepository.save(user).getId();
+
+        TicketType ticketType = new TicketType();
+        ticketType.setName("General Admission");
+        ticketType.setPrice(10.0);
+        ticketType.setTotalTicketsAvailable(Integer.MAX_VALUE / 2);
+        ticketTypeId = ticketTypeRepository.save(ticketType).getId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Ticket purchase() {
+        return switch (path) {
+            case CONDITIONAL_UPDATE -> ticketTypeService.purchaseTicket(userId, ticketTypeId);
+            case SEQUENCER -> purchaseSequencerService.purchaseTicket(userId, ticketTypeId);
+            case PESSIMISTIC_LOCK -> purchaseWithLock();
+        };
+    }
+
+    //The purchase path as it was before tickets_sold: row lock, count(*) of sold tickets, then insert
+    private Ticket purchaseWithLock() {
+        return transactionTemplate.execute(status -> {
+            User user = userRepository.findById(userId).orElseThrow();
+            TicketType ticketType = ticketTypeRepository.findByIdWithLock(ticketTypeId).orElseThrow();
+            if(ticketRepository.countByTicketTypeId(ticketTypeId) + 1 > ticketType.getTotalTicketsAvailable()) {
+                throw new TicketsSoldOutException();
+            }
+            Ticket ticket = new Ticket();
+            ticket.setStatus(TicketStatusEnum.PURCHASED);
+            ticket.setTicketType(ticketType);
+            ticket.setPurchaser(user);
+            Ticket savedTicket = ticketRepository.save(ticket);
+            qrCodeService.generateQrCode(savedTicket);
+            return ticketRepository.save(savedTicket);
+        });
+    }
+}
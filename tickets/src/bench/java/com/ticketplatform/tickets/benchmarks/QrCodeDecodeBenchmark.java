@@ -0,0 +1,75 @@
+package com.ticketplatform.tickets.benchmarks;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.ticketplatform.tickets.services.impl.QrCodeDecodeServiceImpl;
+import com.ticketplatform.tickets.util.QrCodePngRenderer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+//Decoding a photo of a QR code uploaded by a door device, sampled so JMH reports p50 and p99 per photo size.
+//FULL decodes every pixel of the photo, SUBSAMPLED decodes it at about 1280 pixels a side as the service
+//does by default. The photo is a JPEG of a code on a dim, unevenly lit background.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class QrCodeDecodeBenchmark {
+
+    public enum Resolution { FULL, SUBSAMPLED }
+
+    @Param({"1600x1200", "4000x3000"})
+    public String photoSize;
+
+    @Param({"FULL", "SUBSAMPLED"})
+    public Resolution resolution;
+
+    private QrCodeDecodeServiceImpl qrCodeDecodeService;
+    private byte[] photo;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        int width = Integer.parseInt(photoSize.substring(0, photoSize.indexOf('x')));
+        int height = Integer.parseInt(photoSize.substring(photoSize.indexOf('x') + 1));
+        photo = photo(width, height);
+        qrCodeDecodeService = new QrCodeDecodeServiceImpl(new SimpleMeterRegistry(), 1, 16, Duration.ofSeconds(30),
+                resolution == Resolution.FULL ? Integer.MAX_VALUE : 1280, Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public String decode() {
+        return qrCodeDecodeService.decode(photo);
+    }
+
+    private static byte[] photo(int width, int height) throws WriterException, IOException {
+        byte[] png = new QrCodePngRenderer(8, 4).render(new QRCodeWriter().encode(UUID.randomUUID().toString(),
+                BarcodeFormat.QR_CODE, 0, 0, Map.of(EncodeHintType.MARGIN, 0)));
+        BufferedImage code = ImageIO.read(new ByteArrayInputStream(png));
+        BufferedImage photo = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = photo.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, new Color(40, 40, 50), width, height, new Color(150, 140, 130)));
+        graphics.fillRect(0, 0, width, height);
+        graphics.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.8f));
+        int codeSize = Math.min(width, height) * 3 / 10;
+        graphics.drawImage(code, width / 3, height / 4, codeSize, codeSize, null);
+        graphics.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(photo, "jpg", out);
+        return out.toByteArray();
+    }
+}
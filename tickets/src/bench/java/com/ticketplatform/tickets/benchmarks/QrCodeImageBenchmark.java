@@ -0,0 +1,78 @@
+package com.ticketplatform.tickets.benchmarks;
+
+import com.ticketplatform.tickets.domain.entities.QrCode;
+import com.ticketplatform.tickets.domain.entities.Ticket;
+import com.ticketplatform.tickets.domain.entities.TicketStatusEnum;
+import com.ticketplatform.tickets.domain.entities.User;
+import com.ticketplatform.tickets.repositories.QrCodeRepository;
+import com.ticketplatform.tickets.repositories.TicketRepository;
+import com.ticketplatform.tickets.repositories.UserRepository;
+import com.ticketplatform.tickets.services.QrCodeService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+//Serving one ticket's QR code, from a row still holding the Base64 text and from a row holding only the payload,
+//rendered once and then served from the render cache. Run with -prof gc for the allocation per request; the
+//stored size of each is printed on set up.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class QrCodeImageBenchmark {
+
+    public enum Storage { BASE64_TEXT, PAYLOAD }
+
+    @Param({"BASE64_TEXT", "PAYLOAD"})
+    public Storage storage;
+
+    private ConfigurableApplicationContext context;
+    private QrCodeService qrCodeService;
+
+    private UUID userId;
+    private UUID ticketId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        qrCodeService = context.getBean(QrCodeService.class);
+        QrCodeRepository qrCodeRepository = context.getBean(QrCodeRepository.class);
+
+        User user = new User();
+        user.setId(UUID.randomUUID());
+        user.setName("Benchmark User");
+        user.setEmail("benchmark@example.com");
+        userId = context.getBean(UserRepository.class).save(user).getId();
+
+        Ticket ticket = new Ticket();
+        ticket.setStatus(TicketStatusEnum.PURCHASED);
+        ticket.setPurchaser(user);
+        ticket = context.getBean(TicketRepository.class).save(ticket);
+        ticketId = ticket.getId();
+
+        QrCode qrCode = qrCodeService.generateQrCode(ticket);
+        byte[] image = qrCodeService.getQrCodeImageForUserAndTicket(userId, ticketId);
+        if(storage == Storage.BASE64_TEXT) {
+            QrCode stored = qrCodeRepository.findById(qrCode.getId()).orElseThrow();
+            stored.setValue(Base64.getEncoder().encodeToString(image));
+            qrCodeRepository.save(stored);
+        }
+        System.out.printf("%nStored QR code size: %d bytes as payload, %d bytes as PNG, %d bytes as Base64 text%n",
+                qrCode.getPayload().length(), image.length, Base64.getEncoder().encodeToString(image).length());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public byte[] getQrCodeImage() {
+        return qrCodeService.getQrCodeImageForUserAndTicket(userId, ticketId);
+    }
+}
@@ -0,0 +1,88 @@
+package com.ticketplatform.tickets.benchmarks;
+
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.ticketplatform.tickets.repositories.QrCodeRepository;
+import com.ticketplatform.tickets.services.impl.QrCodePayloadServiceImpl;
+import com.ticketplatform.tickets.services.impl.QrCodeServiceImpl;
+import com.ticketplatform.tickets.util.QrCodePngRenderer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+//QrCodeServiceImpl serving a QR code image with the database answered from memory, so only the pipeline is
+//measured: encode the payload, render the PNG and store it in the render cache. A MISS gives every request a
+//code not seen before, a HIT asks for the same one again. Longer payloads need larger QR versions; one thread
+//and four threads show how the renderer's pooled buffers and the shared cache hold up under contention.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class QrCodePipelineBenchmark {
+
+    public enum Cache { MISS, HIT }
+
+    @Param({"36", "256", "1024"})
+    public int payloadLength;
+
+    @Param({"4", "8"})
+    public int scale;
+
+    @Param({"MISS", "HIT"})
+    public Cache cache;
+
+    private final AtomicLong nextQrCodeId = new AtomicLong();
+    private QrCodeServiceImpl qrCodeService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String payload = "x".repeat(payloadLength);
+        QrCodeRepository qrCodeRepository = InMemoryRepository.of(QrCodeRepository.class, Map.of(
+                "findImageByTicketIdAndPurchaserId", args -> Optional.of(new StoredQrCode(
+                        new UUID(0, cache == Cache.MISS ? nextQrCodeId.incrementAndGet() : 0), payload))));
+
+        qrCodeService = new QrCodeServiceImpl(new QRCodeWriter(), new QrCodePngRenderer(scale, 4),
+                qrCodeRepository, null, null, new QrCodePayloadServiceImpl(List.of(), false, Duration.ofSeconds(30), 1),
+                new TransactionTemplate(), new SimpleMeterRegistry(), DataSize.ofMegabytes(16));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public byte[] oneThread() {
+        return qrCodeService.getQrCodeImageForUserAndTicket(null, null);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public byte[] fourThreads() {
+        return qrCodeService.getQrCodeImageForUserAndTicket(null, null);
+    }
+
+    private record StoredQrCode(UUID id, String payload) implements QrCodeRepository.QrCodeImage {
+
+        @Override
+        public UUID getId() {
+            return id;
+        }
+
+        @Override
+        public String getPayload() {
+            return payload;
+        }
+
+        @Override
+        public String getLegacyValue() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.ticketplatform.tickets.benchmarks;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.client.j2se.MatrixToImageWriter;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.ticketplatform.tickets.util.QrCodePngRenderer;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+//Encoding and rendering one QR code, through the old path of a 300x300 BitMatrix drawn into an RGB BufferedImage
+//and written by ImageIO, and through QrCodePngRenderer writing a 1-bit PNG from the module matrix. Run with
+//-prof gc for the garbage per image; the image size of each is printed on set up.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class QrCodeRenderBenchmark {
+
+    public enum Renderer { IMAGE_IO, PNG_1BIT }
+
+    @Param({"IMAGE_IO", "PNG_1BIT"})
+    public Renderer renderer;
+
+    private final QRCodeWriter qrCodeWriter = new QRCodeWriter();
+    private final QrCodePngRenderer qrCodePngRenderer = new QrCodePngRenderer(8, 4);
+    private final String payload = UUID.randomUUID().toString();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        System.out.printf("%nQR code image size: %d bytes%n", render().length);
+    }
+
+    @Benchmark
+    public byte[] render() throws WriterException, IOException {
+        if(renderer == Renderer.PNG_1BIT) {
+            BitMatrix modules = qrCodeWriter.encode(payload, BarcodeFormat.QR_CODE, 0, 0, Map.of(EncodeHintType.MARGIN, 0));
+            return qrCodePngRenderer.render(modules);
+        }
+        BitMatrix bitMatrix = qrCodeWriter.encode(payload, BarcodeFormat.QR_CODE, 300, 300);
+        try(ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+            ImageIO.write(MatrixToImageWriter.toBufferedImage(bitMatrix), "PNG", baos);
+            return baos.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.ticketplatform.tickets.benchmarks;
+
+import com.ticketplatform.tickets.domain.TicketScan;
+import com.ticketplatform.tickets.domain.entities.*;
+import com.ticketplatform.tickets.repositories.TicketRepository;
+import com.ticketplatform.tickets.repositories.UserRepository;
+import com.ticketplatform.tickets.services.QrCodeService;
+import com.ticketplatform.tickets.services.TicketValidationService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+//A door device syncing the scans it queued while offline, replayed one validation at a time as before against
+//the batch sync, on the H2 test database. Scores are scans per second. Every invocation replays the same
+//scans, so after the first all of them are repeat scans, which is the same work for both.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class ScanSyncBenchmark {
+
+    private static final int SCANS = 200;
+
+    private ConfigurableApplicationContext context;
+    private TicketValidationService ticketValidationService;
+    private List<TicketScan> scans;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        ticketValidationService = context.getBean(TicketValidationService.class);
+        TicketRepository ticketRepository = context.getBean(TicketRepository.class);
+
+        User user = new User();
+        user.setId(UUID.randomUUID());
+        user.setName("Benchmark User");
+        user.setEmail("benchmark@example.com");
+        user = context.getBean(UserRepository.class).save(user);
+
+        List<Ticket> tickets = new ArrayList<>();
+        for(int i = 0; i < SCANS; i++) {
+            Ticket ticket = new Ticket();
+            ticket.setStatus(TicketStatusEnum.PURCHASED);
+            ticket.setPurchaser(user);
+            tickets.add(ticket);
+        }
+        List<QrCode> qrCodes = context.getBean(QrCodeService.class).generateQrCodes(ticketRepository.saveAll(tickets));
+
+        Instant scannedAt = Instant.now();
+        scans = qrCodes.stream()
+                .map(qrCode -> new TicketScan(qrCode.getId(), TicketValidationMethodEnum.QR_SCAN, null, scannedAt))
+                .toList();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SCANS)
+    public int perScan() {
+        int valid = 0;
+        for(TicketScan scan : scans) {
+            if(ticketValidationService.validateTicketByQrCode(scan.getId()).getValidationStatus()
+                    == TicketValidationStatusEnum.VALID) {
+                valid++;
+            }
+        }
+        return valid;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SCANS)
+    public List<TicketValidation> batch() {
+        return ticketValidationService.validateTicketScans(scans, null);
+    }
+}
@@ -0,0 +1,76 @@
+package com.ticketplatform.tickets.benchmarks;
+
+import com.ticketplatform.tickets.domain.ScannedQrCode;
+import com.ticketplatform.tickets.domain.entities.Ticket;
+import com.ticketplatform.tickets.domain.entities.TicketValidationStatusEnum;
+import com.ticketplatform.tickets.repositories.TicketRepository;
+import com.ticketplatform.tickets.repositories.TicketValidationRepository;
+import com.ticketplatform.tickets.services.CheckInCounterService;
+import com.ticketplatform.tickets.services.GateManifestService;
+import com.ticketplatform.tickets.services.QrCodePayloadService;
+import com.ticketplatform.tickets.services.ValidationJournalService;
+import com.ticketplatform.tickets.services.impl.QrCodePayloadServiceImpl;
+import com.ticketplatform.tickets.services.impl.TicketValidationServiceImpl;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+//The decision TicketValidationServiceImpl makes on each scan, with the database answered from memory. The ticket
+//has either never been let in or was let in already; the conditional update that decides it does not look at
+//earlier scans, so how many there were no longer matters. Checking a signed QR payload, the part of a scan
+//that runs before any database access, is measured alongside.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class TicketValidationBenchmark {
+
+    public enum History { NONE, VALIDATED }
+
+    @Param({"NONE", "VALIDATED"})
+    public History history;
+
+    private final QrCodePayloadService qrCodePayloadService =
+            new QrCodePayloadServiceImpl(List.of("k1:" + "s".repeat(32)), false, Duration.ofSeconds(30), 1);
+    private TicketValidationServiceImpl ticketValidationService;
+    private Ticket ticket;
+    private String signedPayload;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ticket = new Ticket();
+        ticket.setId(UUID.randomUUID());
+        //Every call sees the same history, the admission is not remembered
+        int admitted = history == History.NONE ? 1 : 0;
+
+        TicketRepository ticketRepository = InMemoryRepository.of(TicketRepository.class, Map.of(
+                "findById", args -> Optional.of(ticket),
+                "admit", args -> admitted));
+        TicketValidationRepository ticketValidationRepository = InMemoryRepository.of(TicketValidationRepository.class,
+                Map.of("save", args -> args[0]));
+        ticketValidationService = new TicketValidationServiceImpl(null, ticketValidationRepository, ticketRepository,
+                qrCodePayloadService, new TransactionTemplate(), InMemoryRepository.of(GateManifestService.class,
+                        Map.of("validateByTicket", args -> Optional.empty())),
+                InMemoryRepository.of(ValidationJournalService.class, Map.of("isEnabled", args -> false)),
+                InMemoryRepository.of(CheckInCounterService.class, Map.of("recordValidation", args -> null)));
+        signedPayload = qrCodePayloadService.createPayload(UUID.randomUUID(), ticket.getId(), UUID.randomUUID());
+    }
+
+    @Benchmark
+    public TicketValidationStatusEnum validateTicketManually() {
+        return ticketValidationService.validateTicketManually(ticket.getId()).getValidationStatus();
+    }
+
+    @Benchmark
+    public ScannedQrCode verifySignedPayload() {
+        return qrCodePayloadService.verifyPayload(signedPayload);
+    }
+}
@@ -0,0 +1,60 @@
+package com.ticketplatform.tickets.benchmarks;
+
+import com.ticketplatform.tickets.domain.entities.TicketValidationMethodEnum;
+import com.ticketplatform.tickets.domain.entities.TicketValidationStatusEnum;
+import com.ticketplatform.tickets.util.ValidationJournal;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+//Appending one validation to the journal, which returns once it is on disk, from one door and from many at once.
+//Scores are appends per second across all threads: with many, the appends waiting on an fsync share the next one,
+//so the total grows with the threads while a lone door is bound by the disk's fsync latency.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class ValidationJournalBenchmark {
+
+    private Path directory;
+    private ValidationJournal journal;
+    private List<ValidationJournal.Entry> entry;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("validation-journal");
+        journal = new ValidationJournal(directory);
+        entry = List.of(new ValidationJournal.Entry(UUID.randomUUID(), UUID.randomUUID(),
+                TicketValidationStatusEnum.VALID, TicketValidationMethodEnum.QR_SCAN, LocalDateTime.now(), true));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        journal.close();
+        try(Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void oneDoor() throws IOException {
+        journal.append(entry);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public void manyDoors() throws IOException {
+        journal.append(entry);
+    }
+}
@@ -0,0 +1,39 @@
+package com.ticketplatform.tickets.config;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+//The one-off migrations that have run, so they are not run again on every start up. A backfill cannot tell from
+//the schema whether it is needed, as schema updates add its column before it runs. A migration is recorded once
+//it has committed. Nodes that start together may both run one, so those recorded here must be safe to run twice.
+@Component
+@RequiredArgsConstructor
+public class CompletedMigrations {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @PostConstruct
+    void createTable() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS completed_migrations " +
+                "(name VARCHAR(100) PRIMARY KEY, completed_at TIMESTAMP NOT NULL)");
+    }
+
+    public boolean isCompleted(String name) {
+        Integer completed = jdbcTemplate.queryForObject("SELECT count(*) FROM completed_migrations WHERE name = ?",
+                Integer.class, name);
+        return completed != null && completed > 0;
+    }
+
+    //Outside a transaction, so a node that recorded it alongside this one fails only this insert
+    public void markCompleted(String name) {
+        try {
+            jdbcTemplate.update("INSERT INTO completed_migrations (name, completed_at) SELECT ?, CURRENT_TIMESTAMP " +
+                    "WHERE NOT EXISTS (SELECT 1 FROM completed_migrations WHERE name = ?)", name, name);
+        } catch(DuplicateKeyException ex) {
+            //Recorded by the other node
+        }
+    }
+}
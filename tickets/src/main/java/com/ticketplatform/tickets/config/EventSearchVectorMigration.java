@@ -0,0 +1,41 @@
+package com.ticketplatform.tickets.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+//Adds events.search_vector, the text search vector of an event's name and venue, and its GIN index on
+//PostgreSQL. The column is generated, so PostgreSQL keeps it up to date as events are written and Event does not
+//map it. Adding it rewrites the events table once, searches fail until it is there. Schema updates cannot
+//create either, and other databases search without them.
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class EventSearchVectorMigration implements ApplicationRunner {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        boolean postgres = Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) connection ->
+                "PostgreSQL".equals(connection.getMetaData().getDatabaseProductName())));
+        if(!postgres) {
+            return;
+        }
+
+        Integer existing = jdbcTemplate.queryForObject("SELECT count(*) FROM information_schema.columns " +
+                "WHERE table_name = 'events' AND column_name = 'search_vector' AND table_schema = current_schema()",
+                Integer.class);
+        if(existing == null || existing == 0) {
+            log.info("Adding the search vector of events, this rewrites the events table");
+            jdbcTemplate.execute("ALTER TABLE events ADD COLUMN IF NOT EXISTS search_vector tsvector " +
+                    "GENERATED ALWAYS AS (to_tsvector('english', COALESCE(name, '') || ' ' || COALESCE(venue, ''))) " +
+                    "STORED");
+        }
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_events_search_vector ON events USING GIN (search_vector)");
+    }
+}
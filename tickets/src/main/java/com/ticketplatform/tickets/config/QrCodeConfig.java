@@ -1,6 +1,8 @@
 package com.ticketplatform.tickets.config;
 
 import com.google.zxing.qrcode.QRCodeWriter;
+import com.ticketplatform.tickets.util.QrCodePngRenderer;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -12,4 +14,11 @@ public class QrCodeConfig {
         return new QRCodeWriter();
     }
 
+    @Bean
+    public QrCodePngRenderer qrCodePngRenderer(
+            @Value("${tickets.qr-codes.image.scale:8}") int scale,
+            @Value("${tickets.qr-codes.image.quiet-zone:4}") int quietZone) {
+        return new QrCodePngRenderer(scale, quietZone);
+    }
+
 }
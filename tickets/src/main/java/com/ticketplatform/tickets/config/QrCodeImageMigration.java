@@ -0,0 +1,96 @@
+package com.ticketplatform.tickets.config;
+
+import com.ticketplatform.tickets.repositories.QrCodeRepository;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.UUID;
+
+//QR codes used to be stored pre-rendered, as raw PNG bytes in qr_codes.image or, before that, as Base64
+//text in qr_codes.value. Both are dropped here in batches, one transaction each, leaving only the payload
+//the image is rendered from on request. QrCode no longer maps the image column, so it is dropped once its rows
+//have their payload. Schema updates only add columns, so the NOT NULL the value column used to have is dropped
+//first, otherwise new codes could not leave it empty. Only a value column still NOT NULL has rows to migrate, a
+//schema created since makes it nullable, so neither the ALTER nor the scan of every code runs again once done.
+//Rows left by a run that did not finish are still served from their Base64 text.
+@Component
+@Slf4j
+public class QrCodeImageMigration implements ApplicationRunner {
+
+    private final QrCodeRepository qrCodeRepository;
+    private final EntityManager entityManager;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+
+    public QrCodeImageMigration(
+            QrCodeRepository qrCodeRepository,
+            EntityManager entityManager,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            @Value("${tickets.qr-codes.image-migration.batch-size:500}") int batchSize) {
+        this.qrCodeRepository = qrCodeRepository;
+        this.entityManager = entityManager;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if(hasColumn("image")) {
+            int withPayload = 0;
+            int updated;
+            do {
+                updated = transactionTemplate.execute(status -> jdbcTemplate.update("UPDATE qr_codes " +
+                        "SET payload = CAST(id AS VARCHAR(36)) WHERE id IN (SELECT id FROM qr_codes " +
+                        "WHERE payload IS NULL AND image IS NOT NULL LIMIT ?)", batchSize));
+                withPayload += updated;
+            } while(updated > 0);
+            jdbcTemplate.execute("ALTER TABLE qr_codes DROP COLUMN image");
+            log.info("Dropped the image column of QR codes, {} of them were given their payload", withPayload);
+        }
+
+        if(!isNotNull("value")) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> entityManager
+                .createNativeQuery("ALTER TABLE qr_codes ALTER COLUMN \"value\" DROP NOT NULL")
+                .executeUpdate());
+        int migrated = 0;
+        while(true) {
+            List<UUID> ids = qrCodeRepository.findIdsWithStoredImage(PageRequest.of(0, batchSize));
+            if(ids.isEmpty()) {
+                break;
+            }
+            migrated += transactionTemplate.execute(status -> qrCodeRepository.dropStoredImages(ids));
+        }
+
+        if(migrated > 0) {
+            log.info("Dropped the stored images of {} QR codes, they are rendered from their payload now", migrated);
+        }
+    }
+
+    private boolean hasColumn(String column) {
+        return !isNullable(column).isEmpty();
+    }
+
+    private boolean isNotNull(String column) {
+        return isNullable(column).contains("NO");
+    }
+
+    private List<String> isNullable(String column) {
+        return jdbcTemplate.queryForList("SELECT is_nullable FROM information_schema.columns " +
+                "WHERE table_name = 'qr_codes' AND column_name = ? AND table_schema = current_schema()",
+                String.class, column);
+    }
+}
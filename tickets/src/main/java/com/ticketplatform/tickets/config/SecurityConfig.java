@@ -25,6 +25,7 @@ public class SecurityConfig {
                         .requestMatchers(HttpMethod.GET, "/api/v1/published-events/**").permitAll()
                         .requestMatchers("/api/v1/events").hasRole("ORGANIZER")
                         .requestMatchers("/api/v1/ticket-validations").hasRole("STAFF")
+                        .requestMatchers("/api/v1/ticket-validations/**").hasRole("STAFF")
                         //Security starts here
                         .anyRequest().authenticated())
                 .csrf(csrf -> csrf.disable())
@@ -0,0 +1,36 @@
+package com.ticketplatform.tickets.config;
+
+import com.ticketplatform.tickets.repositories.TicketRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+//Seeds tickets.admitted_at from ticket_validations for tickets let in before the column was introduced.
+//Validation never looks at past validations, it relies on this column to know a ticket was let in already.
+//It reads every ticket, so it only runs until it has completed once.
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TicketAdmissionBackfill implements ApplicationRunner {
+
+    private static final String NAME = "tickets.admitted_at";
+
+    private final TicketRepository ticketRepository;
+    private final CompletedMigrations completedMigrations;
+    private final TransactionTemplate transactionTemplate;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if(completedMigrations.isCompleted(NAME)) {
+            return;
+        }
+        int backfilled = transactionTemplate.execute(status -> ticketRepository.backfillAdmittedAt());
+        completedMigrations.markCompleted(NAME);
+        if(backfilled > 0) {
+            log.info("Backfilled admitted_at for {} tickets", backfilled);
+        }
+    }
+}
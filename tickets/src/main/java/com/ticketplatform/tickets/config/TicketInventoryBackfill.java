@@ -0,0 +1,36 @@
+package com.ticketplatform.tickets.config;
+
+import com.ticketplatform.tickets.repositories.TicketTypeRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+//Seeds ticket_types.tickets_sold from the tickets table for ticket types that were sold before the
+//column was introduced. Purchases never count tickets themselves, they rely on this column being correct.
+//It reads every ticket type, so it only runs until it has completed once.
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TicketInventoryBackfill implements ApplicationRunner {
+
+    private static final String NAME = "ticket_types.tickets_sold";
+
+    private final TicketTypeRepository ticketTypeRepository;
+    private final CompletedMigrations completedMigrations;
+    private final TransactionTemplate transactionTemplate;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if(completedMigrations.isCompleted(NAME)) {
+            return;
+        }
+        int backfilled = transactionTemplate.execute(status -> ticketTypeRepository.backfillTicketsSold());
+        completedMigrations.markCompleted(NAME);
+        if(backfilled > 0) {
+            log.info("Backfilled tickets_sold for {} ticket types", backfilled);
+        }
+    }
+}
@@ -1,21 +1,30 @@
 package com.ticketplatform.tickets.controllers;
 
 import com.ticketplatform.tickets.domain.CreateEventRequest;
+import com.ticketplatform.tickets.domain.EventCheckIns;
+import com.ticketplatform.tickets.domain.QrCodeExportFormat;
 import com.ticketplatform.tickets.domain.UpdateEventRequest;
 import com.ticketplatform.tickets.domain.dtos.*;
 import com.ticketplatform.tickets.domain.entities.Event;
 import com.ticketplatform.tickets.mappers.EventMapper;
+import com.ticketplatform.tickets.services.CheckInCounterService;
 import com.ticketplatform.tickets.services.EventService;
+import com.ticketplatform.tickets.services.GateManifestService;
+import com.ticketplatform.tickets.services.QrCodeExportService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 import java.util.UUID;
@@ -31,6 +40,12 @@ public class EventController {
 
     private final EventService eventService;
 
+    private final QrCodeExportService qrCodeExportService;
+
+    private final GateManifestService gateManifestService;
+
+    private final CheckInCounterService checkInCounterService;
+
     @PutMapping(path = "/{eventId}")
     public ResponseEntity<UpdateEventResponseDto> updateEvent(
             @AuthenticationPrincipal Jwt jwt,
@@ -79,6 +94,61 @@ public class EventController {
 
     }
 
+    //Every QR code of the event for printing, streamed while it is rendered so large events do not time out
+    //waiting for the first byte
+    @GetMapping(path = "/{eventId}/qr-codes")
+    public ResponseEntity<StreamingResponseBody> exportQrCodes(
+            @AuthenticationPrincipal Jwt jwt,
+            @PathVariable UUID eventId,
+            @RequestParam(defaultValue = "ZIP") QrCodeExportFormat format
+    ) {
+        UUID userId = parseUserId(jwt);
+        if(eventService.getEventForOrganizer(userId, eventId).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        StreamingResponseBody body = out -> qrCodeExportService.exportQrCodesForEvent(userId, eventId, format, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(format.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename("qr-codes-" + eventId + format.getFileExtension())
+                        .build()
+                        .toString())
+                .body(body);
+    }
+
+    //Gate mode for doors-open, scans of the event's codes are answered from memory on this node until it is closed
+    @PostMapping(path = "/{eventId}/gate")
+    public ResponseEntity<Void> openGate(
+            @AuthenticationPrincipal Jwt jwt,
+            @PathVariable UUID eventId
+    ) {
+        UUID userId = parseUserId(jwt);
+        gateManifestService.openGate(userId, eventId);
+        return ResponseEntity.noContent().build();
+    }
+
+    @DeleteMapping(path = "/{eventId}/gate")
+    public ResponseEntity<Void> closeGate(
+            @AuthenticationPrincipal Jwt jwt,
+            @PathVariable UUID eventId
+    ) {
+        UUID userId = parseUserId(jwt);
+        gateManifestService.closeGate(userId, eventId);
+        return ResponseEntity.noContent().build();
+    }
+
+    //Live counts of tickets let in, repeat scans and scans in the last minute, overall and per ticket type
+    @GetMapping(path = "/{eventId}/check-ins")
+    public ResponseEntity<EventCheckInsResponseDto> getCheckIns(
+            @AuthenticationPrincipal Jwt jwt,
+            @PathVariable UUID eventId
+    ) {
+        UUID userId = parseUserId(jwt);
+        EventCheckIns eventCheckIns = checkInCounterService.getCheckInsForOrganizer(userId, eventId);
+        return ResponseEntity.ok(eventMapper.toEventCheckInsResponseDto(eventCheckIns));
+    }
+
     @DeleteMapping(path = "/{eventId}")
     public ResponseEntity<Void> deleteEvent(
             @AuthenticationPrincipal Jwt jwt,
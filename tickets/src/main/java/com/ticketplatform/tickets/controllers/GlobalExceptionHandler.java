@@ -4,6 +4,7 @@ import com.ticketplatform.tickets.domain.dtos.ErrorDto;
 import com.ticketplatform.tickets.exceptions.*;
 import jakarta.validation.ConstraintViolationException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
@@ -34,6 +35,70 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(errorDto, HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(TicketReservationNotFoundException.class)
+    public ResponseEntity<ErrorDto> handleTicketReservationNotFoundException(TicketReservationNotFoundException ex) {
+        log.error("Caught TicketReservationNotFoundException", ex);
+        ErrorDto errorDto = new ErrorDto();
+        errorDto.setError("Reservation not found");
+        return new ResponseEntity<>(errorDto, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(TicketReservationException.class)
+    public ResponseEntity<ErrorDto> handleTicketReservationException(TicketReservationException ex) {
+        log.error("Caught TicketReservationException", ex);
+        ErrorDto errorDto = new ErrorDto();
+        errorDto.setError(ex.getMessage());
+        return new ResponseEntity<>(errorDto, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(WaitingRoomException.class)
+    public ResponseEntity<ErrorDto> handleWaitingRoomException(WaitingRoomException ex) {
+        log.error("Caught WaitingRoomException", ex);
+        ErrorDto errorDto = new ErrorDto();
+        errorDto.setError("Not in the waiting room for this event");
+        return new ResponseEntity<>(errorDto, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(AdmissionTokenException.class)
+    public ResponseEntity<ErrorDto> handleAdmissionTokenException(AdmissionTokenException ex) {
+        log.error("Caught AdmissionTokenException", ex);
+        ErrorDto errorDto = new ErrorDto();
+        errorDto.setError(ex.getMessage());
+        return new ResponseEntity<>(errorDto, HttpStatus.FORBIDDEN);
+    }
+
+    @ExceptionHandler(IdempotencyKeyException.class)
+    public ResponseEntity<ErrorDto> handleIdempotencyKeyException(IdempotencyKeyException ex) {
+        log.error("Caught IdempotencyKeyException", ex);
+        ErrorDto errorDto = new ErrorDto();
+        errorDto.setError(ex.getMessage());
+        return new ResponseEntity<>(errorDto, HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler(GateOpenElsewhereException.class)
+    public ResponseEntity<ErrorDto> handleGateOpenElsewhereException(GateOpenElsewhereException ex) {
+        log.error("Caught GateOpenElsewhereException", ex);
+        ErrorDto errorDto = new ErrorDto();
+        errorDto.setError(ex.getMessage());
+        return new ResponseEntity<>(errorDto, HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler(TicketQuantityException.class)
+    public ResponseEntity<ErrorDto> handleTicketQuantityException(TicketQuantityException ex) {
+        log.error("Caught TicketQuantityException", ex);
+        ErrorDto errorDto = new ErrorDto();
+        errorDto.setError(ex.getMessage());
+        return new ResponseEntity<>(errorDto, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(EventSearchSortException.class)
+    public ResponseEntity<ErrorDto> handleEventSearchSortException(EventSearchSortException ex) {
+        log.error("Caught EventSearchSortException", ex);
+        ErrorDto errorDto = new ErrorDto();
+        errorDto.setError(ex.getMessage());
+        return new ResponseEntity<>(errorDto, HttpStatus.BAD_REQUEST);
+    }
+
     @ExceptionHandler(QrCodeNotFoundException.class)
     public ResponseEntity<ErrorDto> handleQrCodeNotFoundException(QrCodeNotFoundException ex) {
         log.error("Caught QrCodeNotFoundException", ex);
@@ -42,6 +107,34 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(errorDto, HttpStatus.INTERNAL_SERVER_ERROR);
     }
 
+    @ExceptionHandler(InvalidQrCodeException.class)
+    public ResponseEntity<ErrorDto> handleInvalidQrCodeException(InvalidQrCodeException ex) {
+        log.error("Caught InvalidQrCodeException", ex);
+        ErrorDto errorDto = new ErrorDto();
+        errorDto.setError(ex.getMessage());
+        return new ResponseEntity<>(errorDto, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(QrCodeDecoderBusyException.class)
+    public ResponseEntity<ErrorDto> handleQrCodeDecoderBusyException(QrCodeDecoderBusyException ex) {
+        log.warn("Caught QrCodeDecoderBusyException: {}", ex.getMessage());
+        ErrorDto errorDto = new ErrorDto();
+        errorDto.setError(ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(errorDto);
+    }
+
+    @ExceptionHandler(QrCodeExportBusyException.class)
+    public ResponseEntity<ErrorDto> handleQrCodeExportBusyException(QrCodeExportBusyException ex) {
+        log.warn("Caught QrCodeExportBusyException: {}", ex.getMessage());
+        ErrorDto errorDto = new ErrorDto();
+        errorDto.setError(ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "30")
+                .body(errorDto);
+    }
+
     @ExceptionHandler(QrCodeGenerationException.class)
     public ResponseEntity<ErrorDto> handleQrCodeGenerationException(QrCodeGenerationException ex) {
         log.error("Caught QrCodeGenerationException", ex);
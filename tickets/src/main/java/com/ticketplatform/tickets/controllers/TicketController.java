@@ -3,11 +3,13 @@ package com.ticketplatform.tickets.controllers;
 import com.ticketplatform.tickets.domain.dtos.GetTicketResponseDto;
 import com.ticketplatform.tickets.domain.dtos.ListTicketResponseDto;
 import com.ticketplatform.tickets.mappers.TicketMapper;
+import com.ticketplatform.tickets.services.QrCodePayloadService;
 import com.ticketplatform.tickets.services.QrCodeService;
 import com.ticketplatform.tickets.services.TicketService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -18,6 +20,8 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.UUID;
 
 import static com.ticketplatform.tickets.util.JwtUtil.parseUserId;
@@ -30,6 +34,7 @@ public class TicketController {
     private final TicketService ticketService;
     private final TicketMapper ticketMapper;
     private final QrCodeService qrCodeService;
+    private final QrCodePayloadService qrCodePayloadService;
 
     @GetMapping
     public Page<ListTicketResponseDto> listTickets(
@@ -64,6 +69,12 @@ public class TicketController {
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.IMAGE_PNG);
         headers.setContentLength(qrCodeImage.length);
+        //Dynamic codes tell the app when to fetch the next one
+        Instant now = Instant.now();
+        qrCodePayloadService.currentPayloadExpiresAt(now).ifPresent(expiresAt -> {
+            headers.setCacheControl(CacheControl.maxAge(Duration.between(now, expiresAt)).cachePrivate());
+            headers.setExpires(expiresAt.toEpochMilli());
+        });
 
         return ResponseEntity.ok().headers(headers).body(qrCodeImage);
     }
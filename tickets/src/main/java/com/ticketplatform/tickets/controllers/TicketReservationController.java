@@ -0,0 +1,50 @@
+package com.ticketplatform.tickets.controllers;
+
+import com.ticketplatform.tickets.domain.dtos.ListTicketResponseDto;
+import com.ticketplatform.tickets.mappers.TicketMapper;
+import com.ticketplatform.tickets.services.TicketReservationService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.UUID;
+
+import static com.ticketplatform.tickets.util.JwtUtil.parseUserId;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping(path = "/api/v1/ticket-reservations")
+public class TicketReservationController {
+
+    private final TicketReservationService ticketReservationService;
+    private final TicketMapper ticketMapper;
+
+    @PostMapping(path = "/{reservationId}/confirm")
+    public ResponseEntity<List<ListTicketResponseDto>> confirmReservation(
+            @AuthenticationPrincipal Jwt jwt,
+            @PathVariable UUID reservationId
+    ) {
+        List<ListTicketResponseDto> tickets = ticketReservationService.confirmReservation(parseUserId(jwt), reservationId)
+                .stream()
+                .map(ticketMapper::toListTicketResponseDto)
+                .toList();
+        return new ResponseEntity<>(tickets, HttpStatus.CREATED);
+    }
+
+    @DeleteMapping(path = "/{reservationId}")
+    public ResponseEntity<Void> cancelReservation(
+            @AuthenticationPrincipal Jwt jwt,
+            @PathVariable UUID reservationId
+    ) {
+        ticketReservationService.cancelReservation(parseUserId(jwt), reservationId);
+        return ResponseEntity.noContent().build();
+    }
+}
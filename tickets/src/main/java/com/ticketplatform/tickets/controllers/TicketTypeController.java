@@ -1,17 +1,36 @@
 package com.ticketplatform.tickets.controllers;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ticketplatform.tickets.domain.IdempotentResponse;
+import com.ticketplatform.tickets.domain.dtos.CreateTicketReservationRequestDto;
+import com.ticketplatform.tickets.domain.dtos.PurchaseTicketsRequestDto;
+import com.ticketplatform.tickets.domain.dtos.TicketReservationResponseDto;
+import com.ticketplatform.tickets.domain.entities.TicketReservation;
+import com.ticketplatform.tickets.mappers.TicketMapper;
+import com.ticketplatform.tickets.mappers.TicketReservationMapper;
+import com.ticketplatform.tickets.services.IdempotencyService;
+import com.ticketplatform.tickets.services.PurchaseSequencerService;
+import com.ticketplatform.tickets.services.TicketReservationService;
 import com.ticketplatform.tickets.services.TicketTypeService;
+import com.ticketplatform.tickets.services.WaitingRoomService;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.UUID;
+import java.util.function.Supplier;
 
 import static com.ticketplatform.tickets.util.JwtUtil.parseUserId;
 
@@ -20,14 +39,129 @@ import static com.ticketplatform.tickets.util.JwtUtil.parseUserId;
 @RequestMapping(path = "/api/v1/events/{eventId}/ticket-types")
 public class TicketTypeController {
 
+    //Issued by the waiting room, only checked while the waiting room is switched on. Good for one purchase.
+    public static final String ADMISSION_TOKEN_HEADER = "X-Admission-Token";
+    //Sent by clients that may retry a purchase, a retry with the same key gets the first response back
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    public static final String IDEMPOTENT_REPLAYED_HEADER = "Idempotent-Replayed";
+
     private final TicketTypeService ticketTypeService;
+    private final PurchaseSequencerService purchaseSequencerService;
+    private final TicketReservationService ticketReservationService;
+    private final TicketReservationMapper ticketReservationMapper;
+    private final WaitingRoomService waitingRoomService;
+    private final TicketMapper ticketMapper;
+    private final IdempotencyService idempotencyService;
+    private final ObjectMapper objectMapper;
 
     @PostMapping(path = "/{ticketTypeId}/tickets")
-    public ResponseEntity<Void> purchaseTicket(
+    public ResponseEntity<?> purchaseTicket(
             @AuthenticationPrincipal Jwt jwt,
-            @PathVariable UUID ticketTypeId
+            @PathVariable UUID eventId,
+            @PathVariable UUID ticketTypeId,
+            @RequestHeader(name = ADMISSION_TOKEN_HEADER, required = false) String admissionToken,
+            @RequestHeader(name = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey
             ) {
-            ticketTypeService.purchaseTicket(parseUserId(jwt), ticketTypeId);
-            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+            UUID userId = parseUserId(jwt);
+            String requestFingerprint = "tickets:" + ticketTypeId;
+            if(!purchaseSequencerService.isEnabled()) {
+                return idempotent(userId, idempotencyKey, requestFingerprint, HttpStatus.NO_CONTENT, () ->
+                        admitted(admissionToken, eventId, ticketTypeId, userId, () -> {
+                            ticketTypeService.purchaseTicket(userId, ticketTypeId);
+                            return null;
+                        }));
+            }
+            if(idempotencyKey == null) {
+                admitted(admissionToken, eventId, ticketTypeId, userId, () ->
+                        purchaseSequencerService.purchaseTicket(userId, ticketTypeId));
+                return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+            }
+
+            //The sequencer sells on its own thread, so it completes the key in the transaction that sells the ticket
+            IdempotentResponse noContent = new IdempotentResponse(HttpStatus.NO_CONTENT.value(), null, false);
+            return toResponseEntity(idempotencyService.executeCompletingKey(userId, idempotencyKey, requestFingerprint,
+                    idempotencyKeyId -> admitted(admissionToken, eventId, ticketTypeId, userId, () -> {
+                        purchaseSequencerService.purchaseTicket(userId, ticketTypeId, idempotencyKeyId, noContent);
+                        return noContent;
+                    })));
+    }
+
+    //Buys several tickets of one type in a single request, checking inventory once for the whole order
+    @PostMapping(path = "/{ticketTypeId}/orders")
+    public ResponseEntity<?> purchaseTickets(
+            @AuthenticationPrincipal Jwt jwt,
+            @PathVariable UUID eventId,
+            @PathVariable UUID ticketTypeId,
+            @RequestHeader(name = ADMISSION_TOKEN_HEADER, required = false) String admissionToken,
+            @RequestHeader(name = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+            @Valid @RequestBody PurchaseTicketsRequestDto purchaseTicketsRequestDto
+    ) {
+        UUID userId = parseUserId(jwt);
+        int quantity = purchaseTicketsRequestDto.getQuantity();
+        return idempotent(userId, idempotencyKey, "orders:" + ticketTypeId + ":" + quantity, HttpStatus.CREATED, () ->
+                admitted(admissionToken, eventId, ticketTypeId, userId, () ->
+                        ticketTypeService.purchaseTickets(userId, ticketTypeId, quantity)
+                                .stream()
+                                .map(ticketMapper::toListTicketResponseDto)
+                                .toList()));
+    }
+
+    @PostMapping(path = "/{ticketTypeId}/reservations")
+    public ResponseEntity<TicketReservationResponseDto> reserveTickets(
+            @AuthenticationPrincipal Jwt jwt,
+            @PathVariable UUID eventId,
+            @PathVariable UUID ticketTypeId,
+            @RequestHeader(name = ADMISSION_TOKEN_HEADER, required = false) String admissionToken,
+            @Valid @RequestBody CreateTicketReservationRequestDto createTicketReservationRequestDto
+    ) {
+        UUID userId = parseUserId(jwt);
+        TicketReservation ticketReservation = admitted(admissionToken, eventId, ticketTypeId, userId, () ->
+                ticketReservationService.reserveTickets(
+                        userId, ticketTypeId, createTicketReservationRequestDto.getQuantity()));
+        return new ResponseEntity<>(
+                ticketReservationMapper.toTicketReservationResponseDto(ticketReservation), HttpStatus.CREATED);
+    }
+
+    //Without a key the purchase just runs. With one, the response is stored as JSON so a retry can be answered
+    //with exactly what the first request got, without buying again.
+    private ResponseEntity<?> idempotent(UUID userId, String idempotencyKey, String requestFingerprint,
+                                         HttpStatus status, Supplier<Object> purchase) {
+        if(idempotencyKey == null) {
+            return new ResponseEntity<>(purchase.get(), status);
+        }
+
+        return toResponseEntity(idempotencyService.execute(userId, idempotencyKey, requestFingerprint,
+                () -> new IdempotentResponse(status.value(), toJson(purchase.get()), false)));
+    }
+
+    private static ResponseEntity<?> toResponseEntity(IdempotentResponse response) {
+        HttpHeaders headers = new HttpHeaders();
+        if(response.getBody() != null) {
+            headers.setContentType(MediaType.APPLICATION_JSON);
+        }
+        if(response.isReplayed()) {
+            headers.set(IDEMPOTENT_REPLAYED_HEADER, "true");
+        }
+        return new ResponseEntity<>(response.getBody(), headers, response.getStatus());
+    }
+
+    private String toJson(Object body) {
+        if(body == null) {
+            return null;
+        }
+        try {
+            return objectMapper.writeValueAsString(body);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Unable to serialize purchase response", ex);
+        }
+    }
+
+    //Runs inside the idempotent wrapper, so a retry answered from a stored response does not need the admission
+    //the first request already spent
+    private <T> T admitted(String admissionToken, UUID eventId, UUID ticketTypeId, UUID userId, Supplier<T> purchase) {
+        if(!waitingRoomService.isEnabled()) {
+            return purchase.get();
+        }
+        return waitingRoomService.spendAdmission(admissionToken, eventId, ticketTypeId, userId, purchase);
     }
 }
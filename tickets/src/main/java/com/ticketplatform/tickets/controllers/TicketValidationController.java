@@ -1,17 +1,39 @@
 package com.ticketplatform.tickets.controllers;
 
+import com.ticketplatform.tickets.domain.dtos.SyncTicketValidationsRequestDto;
 import com.ticketplatform.tickets.domain.dtos.TicketValidationRequestDto;
 import com.ticketplatform.tickets.domain.dtos.TicketValidationResponseDto;
 import com.ticketplatform.tickets.domain.entities.TicketValidation;
 import com.ticketplatform.tickets.domain.entities.TicketValidationMethodEnum;
 import com.ticketplatform.tickets.mappers.TicketValidationMapper;
+import com.ticketplatform.tickets.services.EventManifestService;
+import com.ticketplatform.tickets.services.EventService;
+import com.ticketplatform.tickets.services.QrCodeDecodeService;
 import com.ticketplatform.tickets.services.TicketValidationService;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+
+import static com.ticketplatform.tickets.util.JwtUtil.parseUserId;
 
 @RestController
 @RequestMapping(path = "/api/v1/ticket-validations")
@@ -20,6 +42,9 @@ public class TicketValidationController {
 
     private final TicketValidationService ticketValidationService;
     private final TicketValidationMapper ticketValidationMapper;
+    private final QrCodeDecodeService qrCodeDecodeService;
+    private final EventService eventService;
+    private final EventManifestService eventManifestService;
 
     @PostMapping
     public ResponseEntity<TicketValidationResponseDto> validateTicket(
@@ -30,6 +55,9 @@ public class TicketValidationController {
         if(TicketValidationMethodEnum.MANUAL.equals(method)) {
             ticketValidation = ticketValidationService.validateTicketManually(
                     ticketValidationRequestDto.getId());
+        } else if(ticketValidationRequestDto.getPayload() != null) {
+            ticketValidation = ticketValidationService.validateTicketByQrPayload(
+                    ticketValidationRequestDto.getPayload(), ticketValidationRequestDto.getEventId());
         } else {
             ticketValidation = ticketValidationService.validateTicketByQrCode(
                    ticketValidationRequestDto.getId());
@@ -37,4 +65,50 @@ public class TicketValidationController {
         return ResponseEntity.ok(ticketValidationMapper.toTicketValidationResponseDto(ticketValidation));
     }
 
+    //For door devices that can take a photo but not decode it, the QR code is found in the photo here
+    @PostMapping(path = "/image", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<TicketValidationResponseDto> validateTicketByImage(
+            @RequestPart("image") MultipartFile image,
+            @RequestParam(required = false) UUID eventId
+    ) throws IOException {
+        String payload = qrCodeDecodeService.decode(image.getBytes());
+        TicketValidation ticketValidation = ticketValidationService.validateTicketByQrPayload(payload, eventId);
+        return ResponseEntity.ok(ticketValidationMapper.toTicketValidationResponseDto(ticketValidation));
+    }
+
+    //Scans a door device queued while offline, in one transaction instead of one each. Results are in the order
+    //of the scans sent, a scan that was refused has no ticket.
+    @PostMapping(path = "/batch")
+    public ResponseEntity<List<TicketValidationResponseDto>> syncTicketValidations(
+            @Valid @RequestBody SyncTicketValidationsRequestDto syncTicketValidationsRequestDto
+    ) {
+        List<TicketValidation> ticketValidations = ticketValidationService.validateTicketScans(
+                ticketValidationMapper.fromDto(syncTicketValidationsRequestDto.getScans()),
+                syncTicketValidationsRequestDto.getEventId());
+        return ResponseEntity.ok(ticketValidationMapper.toTicketValidationResponseDtos(ticketValidations));
+    }
+
+    //Everything a door device needs to validate the event offline, as a compact binary manifest; with since, only
+    //what changed after that version. The format is described on EventManifestWriter.
+    @GetMapping(path = "/events/{eventId}/manifest")
+    public ResponseEntity<StreamingResponseBody> downloadManifest(
+            @AuthenticationPrincipal Jwt jwt,
+            @PathVariable UUID eventId,
+            @RequestParam(required = false) Long since
+    ) {
+        UUID userId = parseUserId(jwt);
+        if(eventService.getEventForStaff(userId, eventId).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+
+        StreamingResponseBody body = out -> eventManifestService.writeManifest(userId, eventId, since, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename("manifest-" + eventId + ".etpm.gz")
+                        .build()
+                        .toString())
+                .body(body);
+    }
+
 }
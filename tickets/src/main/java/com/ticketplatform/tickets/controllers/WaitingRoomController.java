@@ -0,0 +1,46 @@
+package com.ticketplatform.tickets.controllers;
+
+import com.ticketplatform.tickets.domain.dtos.WaitingRoomStatusResponseDto;
+import com.ticketplatform.tickets.mappers.WaitingRoomMapper;
+import com.ticketplatform.tickets.services.WaitingRoomService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.UUID;
+
+import static com.ticketplatform.tickets.util.JwtUtil.parseUserId;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping(path = "/api/v1/events/{eventId}/waiting-room")
+public class WaitingRoomController {
+
+    private final WaitingRoomService waitingRoomService;
+    private final WaitingRoomMapper waitingRoomMapper;
+
+    @PostMapping
+    public ResponseEntity<WaitingRoomStatusResponseDto> joinQueue(
+            @AuthenticationPrincipal Jwt jwt,
+            @PathVariable UUID eventId
+    ) {
+        return ResponseEntity.ok(waitingRoomMapper.toWaitingRoomStatusResponseDto(
+                waitingRoomService.joinQueue(eventId, parseUserId(jwt))));
+    }
+
+    //Polled by queued buyers, answered from memory alone
+    @GetMapping
+    public ResponseEntity<WaitingRoomStatusResponseDto> getQueueStatus(
+            @AuthenticationPrincipal Jwt jwt,
+            @PathVariable UUID eventId
+    ) {
+        return ResponseEntity.ok(waitingRoomMapper.toWaitingRoomStatusResponseDto(
+                waitingRoomService.getQueueStatus(eventId, parseUserId(jwt))));
+    }
+}
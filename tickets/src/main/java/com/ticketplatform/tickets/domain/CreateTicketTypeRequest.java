@@ -12,5 +12,10 @@ public class CreateTicketTypeRequest {
     private Double price;
     private String description;
     private Integer totalTicketsAvailable;
+    private Integer inventoryShardCount;
+
+    public CreateTicketTypeRequest(String name, Double price, String description, Integer totalTicketsAvailable) {
+        this(name, price, description, totalTicketsAvailable, null);
+    }
 
 }
@@ -0,0 +1,21 @@
+package com.ticketplatform.tickets.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class EventCheckIns {
+    private UUID eventId;
+    private long checkedIn;
+    //Repeat scans of tickets let in already
+    private long invalidScans;
+    private long scansLastMinute;
+    private List<TicketTypeCheckIns> ticketTypes = new ArrayList<>();
+}
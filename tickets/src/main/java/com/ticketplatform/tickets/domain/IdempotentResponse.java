@@ -0,0 +1,16 @@
+package com.ticketplatform.tickets.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class IdempotentResponse {
+    //The response as first sent, the body already serialized to JSON (null for empty responses)
+    private int status;
+    private String body;
+    //Set when this is a stored response handed back for a retry rather than the result of running the request
+    private boolean replayed;
+}
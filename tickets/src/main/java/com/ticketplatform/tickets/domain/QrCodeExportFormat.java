@@ -0,0 +1,16 @@
+package com.ticketplatform.tickets.domain;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public enum QrCodeExportFormat {
+    //One PNG per ticket, named after the ticket
+    ZIP("application/zip", ".zip"),
+    //A4 pages of codes, each labelled with its ticket, ready to print
+    PDF("application/pdf", ".pdf");
+
+    private final String contentType;
+    private final String fileExtension;
+}
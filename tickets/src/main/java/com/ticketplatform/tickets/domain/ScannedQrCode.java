@@ -0,0 +1,24 @@
+package com.ticketplatform.tickets.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ScannedQrCode {
+    //Set for codes that carry only their QR code id, which have to be looked up to find the ticket
+    private UUID qrCodeId;
+    //Set for signed codes, whose signature has been checked already
+    private UUID ticketId;
+    private UUID eventId;
+    //Signed for one time window only, so it is not the payload stored for the ticket
+    private boolean dynamic;
+
+    public boolean isSigned() {
+        return ticketId != null;
+    }
+}
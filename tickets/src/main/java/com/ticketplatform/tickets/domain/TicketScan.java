@@ -0,0 +1,20 @@
+package com.ticketplatform.tickets.domain;
+
+import com.ticketplatform.tickets.domain.entities.TicketValidationMethodEnum;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.UUID;
+
+//A scan a door device made while it could not reach us, sent with the time it was made
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TicketScan {
+    private UUID id;
+    private TicketValidationMethodEnum method;
+    private String payload;
+    private Instant scannedAt;
+}
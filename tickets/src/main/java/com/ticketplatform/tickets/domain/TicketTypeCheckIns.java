@@ -0,0 +1,17 @@
+package com.ticketplatform.tickets.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TicketTypeCheckIns {
+    private UUID ticketTypeId;
+    private long checkedIn;
+    private long invalidScans;
+    private long scansLastMinute;
+}
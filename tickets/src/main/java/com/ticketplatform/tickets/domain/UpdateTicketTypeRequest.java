@@ -15,5 +15,10 @@ public class UpdateTicketTypeRequest {
     private Double price;
     private String description;
     private Integer totalTicketsAvailable;
+    private Integer inventoryShardCount;
+
+    public UpdateTicketTypeRequest(UUID id, String name, Double price, String description, Integer totalTicketsAvailable) {
+        this(id, name, price, description, totalTicketsAvailable, null);
+    }
 
 }
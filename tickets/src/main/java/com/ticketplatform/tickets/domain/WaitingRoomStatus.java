@@ -0,0 +1,18 @@
+package com.ticketplatform.tickets.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class WaitingRoomStatus {
+    //Position 0 means admitted, in which case the admission token is set
+    private long position;
+    private long estimatedWaitSeconds;
+    private String admissionToken;
+    private LocalDateTime admissionTokenExpiresAt;
+}
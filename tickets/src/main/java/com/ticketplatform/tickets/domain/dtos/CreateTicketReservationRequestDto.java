@@ -0,0 +1,18 @@
+package com.ticketplatform.tickets.domain.dtos;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CreateTicketReservationRequestDto {
+
+    @NotNull(message = "Quantity is required")
+    @Min(value = 1, message = "At least one ticket must be reserved")
+    private Integer quantity;
+
+}
@@ -1,5 +1,7 @@
 package com.ticketplatform.tickets.domain.dtos;
 
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Positive;
@@ -24,4 +26,8 @@ public class CreateTicketTypeRequestDto {
 
     private Integer totalTicketsAvailable;
 
+    @Min(value = 1, message = "Inventory shard count must be at least 1")
+    @Max(value = 64, message = "Inventory shard count cannot exceed 64")
+    private Integer inventoryShardCount;
+
 }
@@ -0,0 +1,20 @@
+package com.ticketplatform.tickets.domain.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class EventCheckInsResponseDto {
+    private UUID eventId;
+    private long checkedIn;
+    private long invalidScans;
+    private long scansLastMinute;
+    private List<EventCheckInsTicketTypeResponseDto> ticketTypes = new ArrayList<>();
+}
@@ -1,5 +1,6 @@
 package com.ticketplatform.tickets.domain.dtos;
 
+import com.ticketplatform.tickets.domain.entities.TicketQrCodeStatusEnum;
 import com.ticketplatform.tickets.domain.entities.TicketStatusEnum;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -15,6 +16,7 @@ import java.util.UUID;
 public class GetTicketResponseDto {
     private UUID id;
     private TicketStatusEnum status;
+    private TicketQrCodeStatusEnum qrCodeStatus;
     private Double price;
     private String description;
     private String eventName;
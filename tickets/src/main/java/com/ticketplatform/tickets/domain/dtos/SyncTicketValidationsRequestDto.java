@@ -0,0 +1,24 @@
+package com.ticketplatform.tickets.domain.dtos;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.UUID;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SyncTicketValidationsRequestDto {
+    //With an event the scans were made at that event's gate and only its tickets are let in
+    private UUID eventId;
+
+    @NotEmpty(message = "At least one scan is required")
+    @Size(max = 1000, message = "At most 1000 scans can be synced at once")
+    @Valid
+    private List<SyncTicketValidationsScanRequestDto> scans;
+}
@@ -0,0 +1,22 @@
+package com.ticketplatform.tickets.domain.dtos;
+
+import com.ticketplatform.tickets.domain.entities.TicketValidationMethodEnum;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class SyncTicketValidationsScanRequestDto {
+    private UUID id;
+    private TicketValidationMethodEnum method;
+    private String payload;
+
+    @NotNull(message = "Scan time is required")
+    private Instant scannedAt;
+}
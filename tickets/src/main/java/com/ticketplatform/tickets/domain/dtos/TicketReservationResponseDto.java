@@ -0,0 +1,20 @@
+package com.ticketplatform.tickets.domain.dtos;
+
+import com.ticketplatform.tickets.domain.entities.TicketReservationStatusEnum;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TicketReservationResponseDto {
+    private UUID id;
+    private UUID ticketTypeId;
+    private Integer quantity;
+    private TicketReservationStatusEnum status;
+    private LocalDateTime expiresAt;
+}
@@ -13,4 +13,7 @@ import java.util.UUID;
 public class TicketValidationRequestDto {
     private UUID id;
     private TicketValidationMethodEnum method;
+    //What a QR scan read, sent instead of the id; with an event the gate only lets in that event's tickets
+    private String payload;
+    private UUID eventId;
 }
@@ -16,6 +16,7 @@ public class UpdateTicketTypeResponseDto {
     private Double price;
     private String description;
     private Integer totalTicketsAvailable;
+    private Integer inventoryShardCount;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 }
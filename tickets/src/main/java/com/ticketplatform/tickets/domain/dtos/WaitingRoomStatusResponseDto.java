@@ -0,0 +1,17 @@
+package com.ticketplatform.tickets.domain.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class WaitingRoomStatusResponseDto {
+    private long position;
+    private long estimatedWaitSeconds;
+    private String admissionToken;
+    private LocalDateTime admissionTokenExpiresAt;
+}
@@ -60,6 +60,13 @@ public class Event {
     @OneToMany(mappedBy = "event", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<TicketType> ticketTypes = new ArrayList<>();
 
+    //Claimed by the node an event's gate is open on, written by EventRepository.claimGate only
+    @Column(name = "gate_node_id", insertable = false, updatable = false)
+    private String gateNodeId;
+
+    @Column(name = "gate_open_until", insertable = false, updatable = false)
+    private LocalDateTime gateOpenUntil;
+
     @CreatedDate
     @Column(name = "created_at", updatable = false, nullable = false)
     private LocalDateTime createdAt;
@@ -0,0 +1,5 @@
+package com.ticketplatform.tickets.domain.entities;
+
+public enum IdempotencyKeyStatusEnum {
+    IN_PROGRESS, COMPLETED
+}
@@ -4,19 +4,20 @@ import jakarta.persistence.*;
 import lombok.*;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.domain.Persistable;
 
 import java.time.LocalDateTime;
 import java.util.Objects;
 import java.util.UUID;
 
 @Entity
-@Table(name = "qr_codes")
+@Table(name = "qr_codes", indexes = @Index(name = "idx_qr_codes_ticket_id", columnList = "ticket_id"))
 @Getter
 @Setter
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
-public class QrCode {
+public class QrCode implements Persistable<UUID> {
 
     @Id
     @Column(name = "id", nullable = false, updatable = false)
@@ -26,7 +27,13 @@ public class QrCode {
     @Enumerated(EnumType.STRING)
     private QrCodeStatusEnum status;
 
-    @Column(name = "\"value\"", columnDefinition = "TEXT", nullable = false)
+    //What the QR code encodes, the image is rendered from it when needed
+    @Column(name = "payload")
+    private String payload;
+
+    //Pre-rendered PNG as Base64 text, from before payloads were stored, on rows QrCodeImageMigration has not
+    //got to yet
+    @Column(name = "\"value\"", columnDefinition = "TEXT")
     private String value;
 
 
@@ -42,15 +49,32 @@ public class QrCode {
     @Column(name = "updated_at", nullable = false)
     private LocalDateTime updatedAt;
 
+    //Ids are assigned by the application, so without this every save would be a merge that selects first
+    //and QR codes could not be batched into one insert
+    @Transient
+    @Builder.Default
+    private boolean newEntity = true;
+
+    @Override
+    public boolean isNew() {
+        return newEntity;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        newEntity = false;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (o == null || getClass() != o.getClass()) return false;
         QrCode qrCode = (QrCode) o;
-        return Objects.equals(id, qrCode.id) && status == qrCode.status && Objects.equals(value, qrCode.value) && Objects.equals(createdAt, qrCode.createdAt) && Objects.equals(updatedAt, qrCode.updatedAt);
+        return Objects.equals(id, qrCode.id) && status == qrCode.status && Objects.equals(payload, qrCode.payload) && Objects.equals(value, qrCode.value) && Objects.equals(createdAt, qrCode.createdAt) && Objects.equals(updatedAt, qrCode.updatedAt);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, status, value, createdAt, updatedAt);
+        return Objects.hash(id, status, payload, value, createdAt, updatedAt);
     }
 }
@@ -0,0 +1,45 @@
+package com.ticketplatform.tickets.domain.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.springframework.data.annotation.CreatedDate;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+import java.util.UUID;
+
+@Entity
+@Table(name = "qr_code_outbox", indexes = @Index(name = "idx_qr_code_outbox_created_at", columnList = "created_at"))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class QrCodeOutbox {
+    //Written in the same transaction as a purchased ticket and deleted in the same transaction as its QR code
+    //is stored, so a ticket whose purchase committed always ends up with a QR code
+
+    @Id
+    @Column(name = "id", nullable = false, updatable = false)
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Column(name = "ticket_id", nullable = false, unique = true, updatable = false)
+    private UUID ticketId;
+
+    @CreatedDate
+    @Column(name = "created_at", updatable = false, nullable = false)
+    private LocalDateTime createdAt;
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null || getClass() != o.getClass()) return false;
+        QrCodeOutbox that = (QrCodeOutbox) o;
+        return Objects.equals(id, that.id) && Objects.equals(ticketId, that.ticketId) && Objects.equals(createdAt, that.createdAt);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, ticketId, createdAt);
+    }
+}
@@ -0,0 +1,47 @@
+package com.ticketplatform.tickets.domain.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+import java.util.UUID;
+
+@Entity
+@Table(name = "spent_admission_tokens",
+        indexes = @Index(name = "idx_spent_admission_tokens_expires_at", columnList = "expires_at"))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SpentAdmissionToken {
+    //One row per waiting room admission that has been used for a purchase. The id is the token's own id, so
+    //the primary key is what stops two purchases on any node from spending the same admission.
+
+    @Id
+    @Column(name = "id", nullable = false, updatable = false)
+    private UUID id;
+
+    @Column(name = "event_id", nullable = false, updatable = false)
+    private UUID eventId;
+
+    @Column(name = "user_id", nullable = false, updatable = false)
+    private UUID userId;
+
+    //When the token would have run out anyway, after which the row is no longer needed
+    @Column(name = "expires_at", nullable = false, updatable = false)
+    private LocalDateTime expiresAt;
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null || getClass() != o.getClass()) return false;
+        SpentAdmissionToken that = (SpentAdmissionToken) o;
+        return Objects.equals(id, that.id) && Objects.equals(eventId, that.eventId) && Objects.equals(userId, that.userId) && Objects.equals(expiresAt, that.expiresAt);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, eventId, userId, expiresAt);
+    }
+}
@@ -12,7 +12,10 @@ import java.util.Objects;
 import java.util.UUID;
 
 @Entity
-@Table(name = "tickets")
+@Table(name = "tickets", indexes = {
+        @Index(name = "idx_tickets_ticket_type_id", columnList = "ticket_type_id"),
+        @Index(name = "idx_tickets_inventory_lease_id", columnList = "inventory_lease_id")
+})
 @Getter
 @Setter
 @AllArgsConstructor
@@ -37,6 +40,21 @@ public class Ticket {
     @JoinColumn(name = "purchaser_id")
     private User purchaser;
 
+    //Set when the ticket was sold from a node-local block lease rather than claimed from the database directly
+    @Column(name = "inventory_lease_id", updatable = false)
+    private UUID inventoryLeaseId;
+
+    //Only ever moved from PENDING to READY by the QR code outbox, never by saving the entity
+    @Builder.Default
+    @Column(name = "qr_code_status", nullable = false, updatable = false, columnDefinition = "varchar(16) default 'READY'")
+    @Enumerated(EnumType.STRING)
+    private TicketQrCodeStatusEnum qrCodeStatus = TicketQrCodeStatusEnum.READY;
+
+    //When the first VALID validation let the ticket in. Only ever set by the conditional update that decides
+    //whether a scan is the first, never by saving the entity
+    @Column(name = "admitted_at", insertable = false, updatable = false)
+    private LocalDateTime admittedAt;
+
     @OneToMany(mappedBy = "ticket", cascade = CascadeType.ALL)
     private List<TicketValidation> validations = new ArrayList<>();
 
@@ -0,0 +1,67 @@
+package com.ticketplatform.tickets.domain.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.annotation.LastModifiedDate;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+import java.util.UUID;
+
+@Entity
+@Table(name = "ticket_block_leases", indexes = @Index(name = "idx_ticket_block_leases_status_expires_at", columnList = "status, expires_at"))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TicketBlockLease {
+    //A block of a ticket type's inventory claimed by one application node, which then sells from it in memory.
+    //Tickets sold from the block carry its id so an abandoned lease can be settled from the tickets table.
+
+    @Id
+    @Column(name = "id", nullable = false, updatable = false)
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "ticket_type_id", nullable = false)
+    private TicketType ticketType;
+
+    @Column(name = "node_id", nullable = false)
+    private String nodeId;
+
+    @Column(name = "quantity", nullable = false)
+    private Integer quantity;
+
+    @Column(name = "returned_quantity")
+    private Integer returnedQuantity;
+
+    @Column(name = "status", nullable = false)
+    @Enumerated(EnumType.STRING)
+    private TicketBlockLeaseStatusEnum status;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    @CreatedDate
+    @Column(name = "created_at", updatable = false, nullable = false)
+    private LocalDateTime createdAt;
+
+    @LastModifiedDate
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null || getClass() != o.getClass()) return false;
+        TicketBlockLease that = (TicketBlockLease) o;
+        return Objects.equals(id, that.id) && Objects.equals(nodeId, that.nodeId) && Objects.equals(quantity, that.quantity) && Objects.equals(returnedQuantity, that.returnedQuantity) && status == that.status && Objects.equals(expiresAt, that.expiresAt) && Objects.equals(createdAt, that.createdAt) && Objects.equals(updatedAt, that.updatedAt);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, nodeId, quantity, returnedQuantity, status, expiresAt, createdAt, updatedAt);
+    }
+}
@@ -0,0 +1,6 @@
+package com.ticketplatform.tickets.domain.entities;
+
+public enum TicketBlockLeaseStatusEnum {
+    //Represents the states a leased block of inventory could be in
+    ACTIVE, RETURNED, RECLAIMED
+}
@@ -0,0 +1,62 @@
+package com.ticketplatform.tickets.domain.entities;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.annotation.LastModifiedDate;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+import java.util.UUID;
+
+@Entity
+@Table(name = "ticket_inventory_shards",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"ticket_type_id", "shard_index"}))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TicketInventoryShard {
+    //A slice of a ticket type's inventory. Spreading a hot ticket type over several rows lets purchases
+    //claim from different rows in parallel instead of queueing on the single ticket_types row
+
+    @Id
+    @Column(name = "id", nullable = false, updatable = false)
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Column(name = "shard_index", nullable = false)
+    private Integer shardIndex;
+
+    @Column(name = "capacity", nullable = false)
+    private Integer capacity;
+
+    @Builder.Default
+    @Column(name = "tickets_sold", nullable = false)
+    private Integer ticketsSold = 0;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "ticket_type_id", nullable = false)
+    private TicketType ticketType;
+
+    @CreatedDate
+    @Column(name = "created_at", updatable = false, nullable = false)
+    private LocalDateTime createdAt;
+
+    @LastModifiedDate
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null || getClass() != o.getClass()) return false;
+        TicketInventoryShard that = (TicketInventoryShard) o;
+        return Objects.equals(id, that.id) && Objects.equals(shardIndex, that.shardIndex) && Objects.equals(capacity, that.capacity) && Objects.equals(createdAt, that.createdAt) && Objects.equals(updatedAt, that.updatedAt);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, shardIndex, capacity, createdAt, updatedAt);
+    }
+}
@@ -0,0 +1,6 @@
+package com.ticketplatform.tickets.domain.entities;
+
+public enum TicketQrCodeStatusEnum {
+    //PENDING until the QR code for a newly bought ticket has been generated after the purchase committed
+    PENDING, READY
+}
@@ -0,0 +1,6 @@
+package com.ticketplatform.tickets.domain.entities;
+
+public enum TicketReservationStatusEnum {
+    //Represents the states a hold on tickets could be in
+    HELD, CONFIRMED, CANCELLED, EXPIRED
+}
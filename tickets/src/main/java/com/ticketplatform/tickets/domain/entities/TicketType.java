@@ -37,6 +37,17 @@ public class TicketType {
     @Column(name = "total_tickets_available")
     private Integer totalTicketsAvailable;
 
+    //Running count of tickets claimed against totalTicketsAvailable. Only ever changed through the conditional
+    //update in TicketTypeRepository so it is not updatable from the entity, otherwise a stale copy would be written back
+    @Builder.Default
+    @Column(name = "tickets_sold", nullable = false, updatable = false, columnDefinition = "integer default 0")
+    private Integer ticketsSold = 0;
+
+    //Number of ticket_inventory_shards rows the inventory is split over. 1 keeps the whole count on this row
+    @Builder.Default
+    @Column(name = "inventory_shard_count", nullable = false, columnDefinition = "integer default 1")
+    private Integer inventoryShardCount = 1;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "event_id")
     private Event event;
@@ -44,6 +55,11 @@ public class TicketType {
     @OneToMany(mappedBy = "ticketType", cascade = CascadeType.ALL)
     private List<Ticket> tickets = new ArrayList<>();
 
+    @OneToMany(mappedBy = "ticketType", cascade = CascadeType.ALL, orphanRemoval = true)
+    @OrderBy("shardIndex")
+    @Builder.Default
+    private List<TicketInventoryShard> inventoryShards = new ArrayList<>();
+
     @CreatedDate
     @Column(name = "created_at", updatable = false, nullable = false)
     private LocalDateTime createdAt;
@@ -2,6 +2,8 @@ package com.ticketplatform.tickets.domain.entities;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedDate;
 
@@ -27,7 +29,10 @@ public class TicketValidation {
     @Enumerated(EnumType.STRING)
     private TicketValidationStatusEnum validationStatus;
 
+    //Stored by ordinal. Postgres has no tinyint, which Hibernate would otherwise ask H2 for, so use the smallint
+    //column Postgres ends up with everywhere
     @Column(name = "validation_method", nullable = false)
+    @JdbcTypeCode(SqlTypes.SMALLINT)
     private TicketValidationMethodEnum validationMethod;
 
     @ManyToOne(fetch = FetchType.LAZY)
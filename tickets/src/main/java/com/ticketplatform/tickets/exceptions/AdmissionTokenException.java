@@ -0,0 +1,22 @@
+package com.ticketplatform.tickets.exceptions;
+
+public class AdmissionTokenException extends EventTicketException {
+    public AdmissionTokenException() {
+    }
+
+    public AdmissionTokenException(String message) {
+        super(message);
+    }
+
+    public AdmissionTokenException(Throwable cause) {
+        super(cause);
+    }
+
+    public AdmissionTokenException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public AdmissionTokenException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
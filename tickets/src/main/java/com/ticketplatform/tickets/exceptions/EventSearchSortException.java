@@ -0,0 +1,22 @@
+package com.ticketplatform.tickets.exceptions;
+
+public class EventSearchSortException extends EventTicketException {
+    public EventSearchSortException() {
+    }
+
+    public EventSearchSortException(String message) {
+        super(message);
+    }
+
+    public EventSearchSortException(Throwable cause) {
+        super(cause);
+    }
+
+    public EventSearchSortException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public EventSearchSortException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
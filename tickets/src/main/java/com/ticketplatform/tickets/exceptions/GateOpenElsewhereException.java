@@ -0,0 +1,22 @@
+package com.ticketplatform.tickets.exceptions;
+
+public class GateOpenElsewhereException extends EventTicketException {
+    public GateOpenElsewhereException() {
+    }
+
+    public GateOpenElsewhereException(String message) {
+        super(message);
+    }
+
+    public GateOpenElsewhereException(Throwable cause) {
+        super(cause);
+    }
+
+    public GateOpenElsewhereException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public GateOpenElsewhereException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
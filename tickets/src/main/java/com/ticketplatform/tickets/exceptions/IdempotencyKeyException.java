@@ -0,0 +1,22 @@
+package com.ticketplatform.tickets.exceptions;
+
+public class IdempotencyKeyException extends EventTicketException {
+    public IdempotencyKeyException() {
+    }
+
+    public IdempotencyKeyException(String message) {
+        super(message);
+    }
+
+    public IdempotencyKeyException(Throwable cause) {
+        super(cause);
+    }
+
+    public IdempotencyKeyException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public IdempotencyKeyException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
@@ -0,0 +1,22 @@
+package com.ticketplatform.tickets.exceptions;
+
+public class InvalidQrCodeException extends EventTicketException {
+    public InvalidQrCodeException() {
+    }
+
+    public InvalidQrCodeException(String message) {
+        super(message);
+    }
+
+    public InvalidQrCodeException(Throwable cause) {
+        super(cause);
+    }
+
+    public InvalidQrCodeException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public InvalidQrCodeException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
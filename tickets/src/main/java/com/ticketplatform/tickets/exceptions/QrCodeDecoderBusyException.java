@@ -0,0 +1,22 @@
+package com.ticketplatform.tickets.exceptions;
+
+public class QrCodeDecoderBusyException extends EventTicketException {
+    public QrCodeDecoderBusyException() {
+    }
+
+    public QrCodeDecoderBusyException(String message) {
+        super(message);
+    }
+
+    public QrCodeDecoderBusyException(Throwable cause) {
+        super(cause);
+    }
+
+    public QrCodeDecoderBusyException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public QrCodeDecoderBusyException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
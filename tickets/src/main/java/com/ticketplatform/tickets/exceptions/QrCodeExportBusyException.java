@@ -0,0 +1,22 @@
+package com.ticketplatform.tickets.exceptions;
+
+public class QrCodeExportBusyException extends EventTicketException {
+    public QrCodeExportBusyException() {
+    }
+
+    public QrCodeExportBusyException(String message) {
+        super(message);
+    }
+
+    public QrCodeExportBusyException(Throwable cause) {
+        super(cause);
+    }
+
+    public QrCodeExportBusyException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public QrCodeExportBusyException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
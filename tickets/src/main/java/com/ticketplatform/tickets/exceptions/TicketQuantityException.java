@@ -0,0 +1,22 @@
+package com.ticketplatform.tickets.exceptions;
+
+public class TicketQuantityException extends EventTicketException {
+    public TicketQuantityException() {
+    }
+
+    public TicketQuantityException(String message) {
+        super(message);
+    }
+
+    public TicketQuantityException(Throwable cause) {
+        super(cause);
+    }
+
+    public TicketQuantityException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public TicketQuantityException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
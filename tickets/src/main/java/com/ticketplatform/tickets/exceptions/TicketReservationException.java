@@ -0,0 +1,22 @@
+package com.ticketplatform.tickets.exceptions;
+
+public class TicketReservationException extends EventTicketException {
+    public TicketReservationException() {
+    }
+
+    public TicketReservationException(String message) {
+        super(message);
+    }
+
+    public TicketReservationException(Throwable cause) {
+        super(cause);
+    }
+
+    public TicketReservationException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public TicketReservationException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
@@ -0,0 +1,22 @@
+package com.ticketplatform.tickets.exceptions;
+
+public class TicketReservationNotFoundException extends EventTicketException {
+    public TicketReservationNotFoundException() {
+    }
+
+    public TicketReservationNotFoundException(String message) {
+        super(message);
+    }
+
+    public TicketReservationNotFoundException(Throwable cause) {
+        super(cause);
+    }
+
+    public TicketReservationNotFoundException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public TicketReservationNotFoundException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
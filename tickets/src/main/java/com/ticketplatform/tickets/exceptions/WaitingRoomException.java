@@ -0,0 +1,22 @@
+package com.ticketplatform.tickets.exceptions;
+
+public class WaitingRoomException extends EventTicketException {
+    public WaitingRoomException() {
+    }
+
+    public WaitingRoomException(String message) {
+        super(message);
+    }
+
+    public WaitingRoomException(Throwable cause) {
+        super(cause);
+    }
+
+    public WaitingRoomException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public WaitingRoomException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
@@ -2,6 +2,8 @@ package com.ticketplatform.tickets.mappers;
 
 import com.ticketplatform.tickets.domain.CreateEventRequest;
 import com.ticketplatform.tickets.domain.CreateTicketTypeRequest;
+import com.ticketplatform.tickets.domain.EventCheckIns;
+import com.ticketplatform.tickets.domain.TicketTypeCheckIns;
 import com.ticketplatform.tickets.domain.UpdateEventRequest;
 import com.ticketplatform.tickets.domain.UpdateTicketTypeRequest;
 import com.ticketplatform.tickets.domain.dtos.*;
@@ -39,4 +41,8 @@ public interface EventMapper {
     GetPublishedEventDetailsTicketTypesResponseDto toGetPublishedEventDetailsTicketTypesResponseDto(TicketType ticketType);
 
     GetPublishedEventDetailsResponseDto toGetPublishedEventDetailsResponseDto(Event event);
+
+    EventCheckInsTicketTypeResponseDto toEventCheckInsTicketTypeResponseDto(TicketTypeCheckIns ticketTypeCheckIns);
+
+    EventCheckInsResponseDto toEventCheckInsResponseDto(EventCheckIns eventCheckIns);
 }
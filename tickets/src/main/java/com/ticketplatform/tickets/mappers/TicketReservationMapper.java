@@ -0,0 +1,15 @@
+package com.ticketplatform.tickets.mappers;
+
+import com.ticketplatform.tickets.domain.dtos.TicketReservationResponseDto;
+import com.ticketplatform.tickets.domain.entities.TicketReservation;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.ReportingPolicy;
+
+@Mapper(componentModel = "spring", unmappedTargetPolicy = ReportingPolicy.IGNORE)
+public interface TicketReservationMapper {
+
+    @Mapping(target = "ticketTypeId", source = "ticketType.id")
+    TicketReservationResponseDto toTicketReservationResponseDto(TicketReservation ticketReservation);
+
+}
@@ -1,15 +1,26 @@
 package com.ticketplatform.tickets.mappers;
 
+import com.ticketplatform.tickets.domain.TicketScan;
+import com.ticketplatform.tickets.domain.dtos.SyncTicketValidationsScanRequestDto;
 import com.ticketplatform.tickets.domain.dtos.TicketValidationResponseDto;
 import com.ticketplatform.tickets.domain.entities.TicketValidation;
 import org.mapstruct.Mapper;
 import org.mapstruct.Mapping;
 import org.mapstruct.ReportingPolicy;
 
+import java.util.List;
+
 @Mapper(componentModel = "spring", unmappedTargetPolicy = ReportingPolicy.IGNORE)
 public interface TicketValidationMapper {
 
     @Mapping(target = "ticketId", source = "ticket.id")
+    @Mapping(target = "status", source = "validationStatus")
     TicketValidationResponseDto toTicketValidationResponseDto(TicketValidation ticketValidation);
 
+    List<TicketValidationResponseDto> toTicketValidationResponseDtos(List<TicketValidation> ticketValidations);
+
+    TicketScan fromDto(SyncTicketValidationsScanRequestDto dto);
+
+    List<TicketScan> fromDto(List<SyncTicketValidationsScanRequestDto> dtos);
+
 }
@@ -0,0 +1,13 @@
+package com.ticketplatform.tickets.mappers;
+
+import com.ticketplatform.tickets.domain.WaitingRoomStatus;
+import com.ticketplatform.tickets.domain.dtos.WaitingRoomStatusResponseDto;
+import org.mapstruct.Mapper;
+import org.mapstruct.ReportingPolicy;
+
+@Mapper(componentModel = "spring", unmappedTargetPolicy = ReportingPolicy.IGNORE)
+public interface WaitingRoomMapper {
+
+    WaitingRoomStatusResponseDto toWaitingRoomStatusResponseDto(WaitingRoomStatus waitingRoomStatus);
+
+}
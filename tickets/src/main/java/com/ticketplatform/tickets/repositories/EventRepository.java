@@ -5,31 +5,49 @@ import com.ticketplatform.tickets.domain.entities.EventStatusEnum;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 @Repository
-public interface EventRepository extends JpaRepository<Event, UUID> {
+public interface EventRepository extends JpaRepository<Event, UUID>, EventSearchRepository {
     Page<Event> findByOrganizerId(UUID organizerId, Pageable pageable);
     Optional<Event> findByIdAndOrganizerId(UUID id, UUID organizerId);
+    Optional<Event> findByIdAndStaffId(UUID id, UUID staffId);
     Page<Event> findByStatus(EventStatusEnum status, Pageable pageable);
 
-    //This query is specific to PostgreSQL - we are using the searchTerm user input string to search
-    //the Event name and venue variables for a match. Both fields are String like the searchTerm
-    @Query(value = "SELECT * FROM events WHERE " +
-            "status = 'PUBLISHED' AND " +
-            "to_tsvector('english', COALESCE(name, '') || ' ' || COALESCE(venue, '')) " +
-            "@@ plainto_tsquery('english', :searchTerm)",
-            countQuery = "SELECT count(*) FROM events WHERE " +
-                    "status = 'PUBLISHED' AND " +
-                    "to_tsvector('english', COALESCE(name, '') || ' ' || COALESCE(venue, '')) " +
-                    "@@ plainto_tsquery('english', :searchTerm)",
+    Optional<Event> findByIdAndStatus(UUID id, EventStatusEnum status);
+
+    //Events that start before to and end after from, an event without a start or end counting as on
+    @Query("SELECT e.id FROM Event e WHERE e.status = :status " +
+            "AND (e.startDateAndTime IS NULL OR e.startDateAndTime < :to) " +
+            "AND (e.endDateAndTime IS NULL OR e.endDateAndTime > :from)")
+    List<UUID> findIdsByStatusAndOnBetween(@Param("status") EventStatusEnum status,
+                                           @Param("from") LocalDateTime from,
+                                           @Param("to") LocalDateTime to);
+
+    boolean existsByIdAndStatus(UUID id, EventStatusEnum status);
+
+    //Claims or renews an event's gate for a node, unless another node's claim has not run out yet
+    @Modifying
+    @Query(value = "UPDATE events SET gate_node_id = :nodeId, gate_open_until = :openUntil WHERE id = :id " +
+            "AND (gate_node_id IS NULL OR gate_node_id = :nodeId OR gate_open_until < :now)",
             nativeQuery = true)
-    Page<Event> searchEvents(@Param("searchTerm") String searchTerm, Pageable pageable);
+    int claimGate(@Param("id") UUID id, @Param("nodeId") String nodeId, @Param("openUntil") LocalDateTime openUntil,
+                  @Param("now") LocalDateTime now);
 
-    Optional<Event> findByIdAndStatus(UUID id, EventStatusEnum status);
+    @Query("SELECT COUNT(e) > 0 FROM Event e WHERE e.id = :id AND e.gateNodeId <> :nodeId AND e.gateOpenUntil > :now")
+    boolean isGateOpenOnAnotherNode(@Param("id") UUID id, @Param("nodeId") String nodeId,
+                                    @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query(value = "UPDATE events SET gate_node_id = NULL, gate_open_until = NULL WHERE id = :id AND gate_node_id = :nodeId",
+            nativeQuery = true)
+    int releaseGate(@Param("id") UUID id, @Param("nodeId") String nodeId);
 }
@@ -0,0 +1,9 @@
+package com.ticketplatform.tickets.repositories;
+
+import com.ticketplatform.tickets.domain.entities.Event;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+public interface EventSearchRepository {
+    Page<Event> searchEvents(String searchTerm, Pageable pageable);
+}
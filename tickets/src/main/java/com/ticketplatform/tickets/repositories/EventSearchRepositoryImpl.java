@@ -0,0 +1,118 @@
+package com.ticketplatform.tickets.repositories;
+
+import com.ticketplatform.tickets.domain.entities.Event;
+import com.ticketplatform.tickets.exceptions.EventSearchSortException;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+//Searches the name and venue of published events. On PostgreSQL it matches the events.search_vector column
+//EventSearchVectorMigration maintains, through its GIN index, and orders the events by how well they match.
+//The total is only counted when the page is full, a short page tells it already.
+//Other databases, the H2 one tests run on, match every word of the search term anywhere in the name or venue
+//instead, without stemming, ordered by name. Either way the request's sort comes first, on the properties below.
+public class EventSearchRepositoryImpl implements EventSearchRepository {
+
+    private static final String SEARCH_VECTOR_QUERY = "SELECT e.* FROM events e, " +
+            "plainto_tsquery('english', ?1) query " +
+            "WHERE e.status = 'PUBLISHED' AND e.search_vector @@ query ";
+    private static final String SEARCH_VECTOR_ORDER = "ts_rank(e.search_vector, query) DESC, e.id";
+    private static final String SEARCH_VECTOR_COUNT_QUERY = "SELECT count(*) FROM events " +
+            "WHERE status = 'PUBLISHED' AND search_vector @@ plainto_tsquery('english', ?1)";
+
+    private static final Map<String, String> SORT_COLUMNS = Map.of(
+            "name", "name",
+            "venue", "venue",
+            "startDateAndTime", "event_start_date_and_time",
+            "endDateAndTime", "event_end_date_and_time",
+            "saleStartDateAndTime", "sale_start_date_and_time",
+            "saleEndDateAndTime", "sale_end_date_and_time",
+            "createdAt", "created_at");
+
+    private final EntityManager entityManager;
+    private final JdbcTemplate jdbcTemplate;
+    private volatile Boolean postgres;
+
+    public EventSearchRepositoryImpl(EntityManager entityManager, JdbcTemplate jdbcTemplate) {
+        this.entityManager = entityManager;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public Page<Event> searchEvents(String searchTerm, Pageable pageable) {
+        if(isPostgres()) {
+            return search(SEARCH_VECTOR_QUERY + orderBy(pageable.getSort(), SEARCH_VECTOR_ORDER),
+                    SEARCH_VECTOR_COUNT_QUERY, List.of(searchTerm), pageable);
+        }
+
+        //Only letters and digits are kept, so none of the words needs escaping in a LIKE pattern
+        List<String> words = Arrays.stream(searchTerm.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+"))
+                .filter(word -> !word.isEmpty())
+                .map(word -> "%" + word + "%")
+                .toList();
+        if(words.isEmpty()) {
+            return Page.empty(pageable);
+        }
+        StringBuilder where = new StringBuilder("FROM events WHERE status = 'PUBLISHED'");
+        for(int i = 0; i < words.size(); i++) {
+            where.append(" AND LOWER(COALESCE(name, '') || ' ' || COALESCE(venue, '')) LIKE ?").append(i + 1);
+        }
+        return search("SELECT * " + where + orderBy(pageable.getSort(), "name, id"), "SELECT count(*) " + where,
+                words, pageable);
+    }
+
+    //Refuses properties it has no column for rather than quietly ordering by something else
+    private static String orderBy(Sort sort, String defaultOrder) {
+        StringBuilder orderBy = new StringBuilder(" ORDER BY ");
+        for(Sort.Order order : sort) {
+            String column = SORT_COLUMNS.get(order.getProperty());
+            if(column == null) {
+                throw new EventSearchSortException(
+                        String.format("Search results cannot be sorted by %s", order.getProperty()));
+            }
+            orderBy.append(column).append(order.isAscending() ? " ASC, " : " DESC, ");
+        }
+        return orderBy.append(defaultOrder).toString();
+    }
+
+    private Page<Event> search(String sql, String countSql, List<String> parameters, Pageable pageable) {
+        Query query = entityManager.createNativeQuery(sql, Event.class);
+        bind(query, parameters);
+        if(pageable.isPaged()) {
+            query.setFirstResult((int) pageable.getOffset());
+            query.setMaxResults(pageable.getPageSize());
+        }
+        @SuppressWarnings("unchecked")
+        List<Event> events = query.getResultList();
+
+        return PageableExecutionUtils.getPage(events, pageable, () -> {
+            Query count = entityManager.createNativeQuery(countSql);
+            bind(count, parameters);
+            return ((Number) count.getSingleResult()).longValue();
+        });
+    }
+
+    private static void bind(Query query, List<String> parameters) {
+        for(int i = 0; i < parameters.size(); i++) {
+            query.setParameter(i + 1, parameters.get(i));
+        }
+    }
+
+    private boolean isPostgres() {
+        if(postgres == null) {
+            postgres = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection ->
+                    "PostgreSQL".equals(connection.getMetaData().getDatabaseProductName()));
+        }
+        return postgres;
+    }
+}
@@ -0,0 +1,37 @@
+package com.ticketplatform.tickets.repositories;
+
+import com.ticketplatform.tickets.domain.entities.IdempotencyKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface IdempotencyKeyRepository extends JpaRepository<IdempotencyKey, UUID> {
+
+    Optional<IdempotencyKey> findByUserIdAndIdempotencyKey(UUID userId, String idempotencyKey);
+
+    //Conditional, so a key another request has just taken over is left alone
+    @Modifying
+    @Query(value = "DELETE FROM idempotency_keys WHERE id = :id AND expires_at < :now", nativeQuery = true)
+    int deleteByIdIfExpired(@Param("id") UUID id, @Param("now") LocalDateTime now);
+
+    //Also takes the row lock, which the purchase then holds until it commits
+    @Modifying
+    @Query(value = "UPDATE idempotency_keys SET expires_at = :expiresAt WHERE id = :id AND status = 'IN_PROGRESS'",
+            nativeQuery = true)
+    int extendInProgress(@Param("id") UUID id, @Param("expiresAt") LocalDateTime expiresAt);
+
+    @Modifying
+    @Query(value = "DELETE FROM idempotency_keys WHERE id = :id AND status = :status", nativeQuery = true)
+    int deleteByIdAndStatus(@Param("id") UUID id, @Param("status") String status);
+
+    @Modifying
+    @Query(value = "DELETE FROM idempotency_keys WHERE expires_at < :now", nativeQuery = true)
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
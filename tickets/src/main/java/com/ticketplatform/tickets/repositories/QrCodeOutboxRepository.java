@@ -0,0 +1,28 @@
+package com.ticketplatform.tickets.repositories;
+
+import com.ticketplatform.tickets.domain.entities.QrCodeOutbox;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface QrCodeOutboxRepository extends JpaRepository<QrCodeOutbox, UUID> {
+
+    //Deleting the entry is how a worker claims it: whoever deletes the row stores the QR code, anyone
+    //racing for the same ticket blocks on the row until then and gets 0
+    @Modifying
+    @Query(value = "DELETE FROM qr_code_outbox WHERE ticket_id = :ticketId", nativeQuery = true)
+    int deleteByTicketId(@Param("ticketId") UUID ticketId);
+
+    @Query("SELECT o.ticketId FROM QrCodeOutbox o WHERE o.createdAt < :createdBefore ORDER BY o.createdAt")
+    List<UUID> findTicketIdsCreatedBefore(@Param("createdBefore") LocalDateTime createdBefore, Pageable pageable);
+
+    boolean existsByTicketId(UUID ticketId);
+}
@@ -2,14 +2,113 @@ package com.ticketplatform.tickets.repositories;
 
 import com.ticketplatform.tickets.domain.entities.QrCode;
 import com.ticketplatform.tickets.domain.entities.QrCodeStatusEnum;
+import com.ticketplatform.tickets.domain.entities.TicketStatusEnum;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
 public interface QrCodeRepository extends JpaRepository<QrCode, UUID> {
     Optional<QrCode> findByTicketIdAndTicketPurchaserId(UUID ticketId, UUID ticketPurchaserId);
+
+    //With their ticket, which a validation counts by its ticket type
+    @EntityGraph(attributePaths = "ticket")
     Optional<QrCode> findByIdAndStatus(UUID id, QrCodeStatusEnum status);
+
+    @EntityGraph(attributePaths = "ticket")
+    Optional<QrCode> findByTicketIdAndStatus(UUID ticketId, QrCodeStatusEnum status);
+
+    //Only what is needed to serve the image, so serving a QR code does not load and track the whole entity
+    @Query("SELECT q.id AS id, q.payload AS payload, q.value AS legacyValue FROM QrCode q " +
+            "WHERE q.ticket.id = :ticketId AND q.ticket.purchaser.id = :purchaserId")
+    Optional<QrCodeImage> findImageByTicketIdAndPurchaserId(@Param("ticketId") UUID ticketId,
+                                                            @Param("purchaserId") UUID purchaserId);
+
+    @Query("SELECT q.id FROM QrCode q WHERE q.value IS NOT NULL")
+    List<UUID> findIdsWithStoredImage(Pageable pageable);
+
+    //Codes stored before payloads were encode their own id
+    @Modifying
+    @Query(value = "UPDATE qr_codes SET payload = COALESCE(payload, CAST(id AS VARCHAR(36))), \"value\" = NULL " +
+            "WHERE id IN (:ids)", nativeQuery = true)
+    int dropStoredImages(@Param("ids") Collection<UUID> ids);
+
+    //Exports page through the event's codes in id order, each page read in a short transaction of its own, so
+    //how fast the organizer downloads never decides how long a connection is held
+    @Query("SELECT q.id AS id, q.ticket.id AS ticketId, q.payload AS payload FROM QrCode q " +
+            "WHERE q.ticket.ticketType.event.id = :eventId AND q.status = :status ORDER BY q.id")
+    List<QrCodeExportRow> findFirstForExportByEventId(@Param("eventId") UUID eventId,
+                                                      @Param("status") QrCodeStatusEnum status,
+                                                      Pageable pageable);
+
+    @Query("SELECT q.id AS id, q.ticket.id AS ticketId, q.payload AS payload FROM QrCode q " +
+            "WHERE q.ticket.ticketType.event.id = :eventId AND q.status = :status AND q.id > :afterId ORDER BY q.id")
+    List<QrCodeExportRow> findNextForExportByEventId(@Param("eventId") UUID eventId,
+                                                     @Param("status") QrCodeStatusEnum status,
+                                                     @Param("afterId") UUID afterId,
+                                                     Pageable pageable);
+
+    int countByTicketTicketTypeEventIdAndStatus(UUID eventId, QrCodeStatusEnum status);
+
+    //Every code of the event changed or let in since the given time, with what a gate needs to know of it and its
+    //ticket.
+    //Read through a cursor a fetch at a time, must be consumed and closed inside a transaction.
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT q.id AS id, t.id AS ticketId, t.ticketType.id AS ticketTypeId, q.payload AS payload, " +
+            "q.status AS status, t.status AS ticketStatus, t.admittedAt AS admittedAt FROM QrCode q JOIN q.ticket t " +
+            "WHERE t.ticketType.event.id = :eventId AND (q.updatedAt > :since OR t.updatedAt > :since " +
+            "OR t.admittedAt > :since)")
+    Stream<EventQrCodeRow> streamForGateByEventId(@Param("eventId") UUID eventId,
+                                                   @Param("since") LocalDateTime since);
+
+    //The same in id order, also with the tickets let in since, for the manifests door devices download
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT q.id AS id, t.id AS ticketId, t.ticketType.id AS ticketTypeId, q.payload AS payload, " +
+            "q.status AS status, t.status AS ticketStatus, t.admittedAt AS admittedAt FROM QrCode q JOIN q.ticket t " +
+            "WHERE t.ticketType.event.id = :eventId " +
+            "AND (q.updatedAt > :since OR t.updatedAt > :since OR t.admittedAt > :since) ORDER BY q.id")
+    Stream<EventQrCodeRow> streamForManifestByEventId(@Param("eventId") UUID eventId,
+                                                      @Param("since") LocalDateTime since);
+
+    interface EventQrCodeRow {
+        UUID getId();
+        UUID getTicketId();
+        UUID getTicketTypeId();
+        String getPayload();
+        QrCodeStatusEnum getStatus();
+        TicketStatusEnum getTicketStatus();
+        LocalDateTime getAdmittedAt();
+    }
+
+    interface QrCodeExportRow {
+        UUID getId();
+        UUID getTicketId();
+        String getPayload();
+    }
+
+    interface QrCodeImage {
+        UUID getId();
+        String getPayload();
+        String getLegacyValue();
+    }
 }
@@ -0,0 +1,26 @@
+package com.ticketplatform.tickets.repositories;
+
+import com.ticketplatform.tickets.domain.entities.SpentAdmissionToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Repository
+public interface SpentAdmissionTokenRepository extends JpaRepository<SpentAdmissionToken, UUID> {
+
+    //A plain insert rather than save, which would merge into a row another purchase already wrote
+    @Modifying
+    @Query(value = "INSERT INTO spent_admission_tokens (id, event_id, user_id, expires_at) " +
+            "VALUES (:id, :eventId, :userId, :expiresAt)", nativeQuery = true)
+    int insert(@Param("id") UUID id, @Param("eventId") UUID eventId, @Param("userId") UUID userId,
+               @Param("expiresAt") LocalDateTime expiresAt);
+
+    @Modifying
+    @Query(value = "DELETE FROM spent_admission_tokens WHERE expires_at < :now", nativeQuery = true)
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
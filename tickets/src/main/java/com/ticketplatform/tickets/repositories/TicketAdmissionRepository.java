@@ -0,0 +1,10 @@
+package com.ticketplatform.tickets.repositories;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+public interface TicketAdmissionRepository {
+    Set<UUID> admitEach(Map<UUID, LocalDateTime> admittedAtByTicketId);
+}
@@ -0,0 +1,48 @@
+package com.ticketplatform.tickets.repositories;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+//TicketRepository.admit for many tickets at once, each with its own time, as one JDBC batch. Returns the tickets
+//that were let in, the others had been let in already. Joins the surrounding JPA transaction.
+@RequiredArgsConstructor
+public class TicketAdmissionRepositoryImpl implements TicketAdmissionRepository {
+
+    private static final int BATCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public Set<UUID> admitEach(Map<UUID, LocalDateTime> admittedAtByTicketId) {
+        List<Map.Entry<UUID, LocalDateTime>> admissions = new ArrayList<>(admittedAtByTicketId.entrySet());
+        int[][] counts = jdbcTemplate.batchUpdate(
+                "UPDATE tickets SET admitted_at = ? WHERE id = ? AND admitted_at IS NULL",
+                admissions, BATCH_SIZE, (statement, admission) -> {
+                    statement.setTimestamp(1, Timestamp.valueOf(admission.getValue()));
+                    statement.setObject(2, admission.getKey());
+                });
+
+        Set<UUID> admitted = new HashSet<>();
+        int index = 0;
+        for(int[] batch : counts) {
+            for(int count : batch) {
+                //A driver that does not report counts for batches is taken at its word
+                if(count > 0 || count == Statement.SUCCESS_NO_INFO) {
+                    admitted.add(admissions.get(index).getKey());
+                }
+                index++;
+            }
+        }
+        return admitted;
+    }
+}
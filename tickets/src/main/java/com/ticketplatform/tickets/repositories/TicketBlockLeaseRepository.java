@@ -0,0 +1,44 @@
+package com.ticketplatform.tickets.repositories;
+
+import com.ticketplatform.tickets.domain.entities.TicketBlockLease;
+import com.ticketplatform.tickets.domain.entities.TicketBlockLeaseStatusEnum;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface TicketBlockLeaseRepository extends JpaRepository<TicketBlockLease, UUID> {
+
+    @Query("SELECT l.id FROM TicketBlockLease l WHERE l.status = :status AND l.expiresAt < :expiresBefore")
+    List<UUID> findIdsByStatusAndExpiresAtBefore(@Param("status") TicketBlockLeaseStatusEnum status,
+                                                 @Param("expiresBefore") LocalDateTime expiresBefore);
+
+    @Query("SELECT l FROM TicketBlockLease l WHERE l.id = :id")
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<TicketBlockLease> findByIdWithLock(@Param("id") UUID id);
+
+    //Only an ACTIVE lease can be settled, so a node returning its lease and another node reclaiming it
+    //as abandoned can never both hand the same tickets back
+    @Modifying
+    @Query(value = "UPDATE ticket_block_leases SET status = 'RETURNED', returned_quantity = :returnedQuantity, " +
+            "updated_at = CURRENT_TIMESTAMP WHERE id = :id AND status = 'ACTIVE'",
+            nativeQuery = true)
+    int markReturned(@Param("id") UUID id, @Param("returnedQuantity") int returnedQuantity);
+
+    //Hands a ticket back with a lease that was already returned. Leases still ACTIVE or RECLAIMED are settled
+    //from the tickets table, so nothing is added to them.
+    @Modifying
+    @Query(value = "UPDATE ticket_block_leases SET returned_quantity = returned_quantity + :quantity, " +
+            "updated_at = CURRENT_TIMESTAMP WHERE id = :id AND status = 'RETURNED'",
+            nativeQuery = true)
+    int addReturnedQuantity(@Param("id") UUID id, @Param("quantity") int quantity);
+}
@@ -0,0 +1,50 @@
+package com.ticketplatform.tickets.repositories;
+
+import com.ticketplatform.tickets.domain.entities.TicketInventoryShard;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface TicketInventoryShardRepository extends JpaRepository<TicketInventoryShard, UUID> {
+
+    //Same conditional claim as TicketTypeRepository.claimTickets, scoped to a single shard row
+    @Modifying
+    @Query(value = "UPDATE ticket_inventory_shards SET tickets_sold = tickets_sold + :quantity " +
+            "WHERE ticket_type_id = :ticketTypeId AND shard_index = :shardIndex " +
+            "AND tickets_sold + :quantity <= capacity",
+            nativeQuery = true)
+    int claimTickets(@Param("ticketTypeId") UUID ticketTypeId,
+                     @Param("shardIndex") int shardIndex,
+                     @Param("quantity") int quantity);
+
+    @Query(value = "SELECT capacity - tickets_sold FROM ticket_inventory_shards " +
+            "WHERE ticket_type_id = :ticketTypeId AND shard_index = :shardIndex",
+            nativeQuery = true)
+    Integer findTicketsRemaining(@Param("ticketTypeId") UUID ticketTypeId, @Param("shardIndex") int shardIndex);
+
+    @Query(value = "SELECT tickets_sold FROM ticket_inventory_shards " +
+            "WHERE ticket_type_id = :ticketTypeId AND shard_index = :shardIndex",
+            nativeQuery = true)
+    Integer findTicketsSold(@Param("ticketTypeId") UUID ticketTypeId, @Param("shardIndex") int shardIndex);
+
+    @Modifying
+    @Query(value = "UPDATE ticket_inventory_shards SET tickets_sold = tickets_sold - :quantity " +
+            "WHERE ticket_type_id = :ticketTypeId AND shard_index = :shardIndex AND tickets_sold >= :quantity",
+            nativeQuery = true)
+    int releaseTickets(@Param("ticketTypeId") UUID ticketTypeId,
+                       @Param("shardIndex") int shardIndex,
+                       @Param("quantity") int quantity);
+
+    //Reads the current per-shard counts and locks every shard of a ticket type while the organizer
+    //resizes or reshards it. Native so the counts come from the rows, not from entities already in the session
+    @Query(value = "SELECT tickets_sold FROM ticket_inventory_shards WHERE ticket_type_id = :ticketTypeId " +
+            "ORDER BY shard_index FOR UPDATE",
+            nativeQuery = true)
+    List<Integer> findTicketsSoldByTicketTypeIdWithLock(@Param("ticketTypeId") UUID ticketTypeId);
+}
@@ -1,19 +1,82 @@
 package com.ticketplatform.tickets.repositories;
 
+import com.ticketplatform.tickets.domain.entities.QrCodeStatusEnum;
 import com.ticketplatform.tickets.domain.entities.Ticket;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 @Repository
-public interface TicketRepository extends JpaRepository<Ticket, UUID> {
+public interface TicketRepository extends JpaRepository<Ticket, UUID>, TicketAdmissionRepository {
     int countByTicketTypeId(UUID ticketTypeId);
 
+    int countByInventoryLeaseId(UUID inventoryLeaseId);
+
     Page<Ticket> findByPurchaserId(UUID purchaserId, Pageable pageable);
 
     Optional<Ticket> findByIdAndPurchaserId(UUID id, UUID purchaserId);
+
+    @Query("SELECT t.ticketType.event.id FROM Ticket t WHERE t.id = :id")
+    Optional<UUID> findEventIdById(@Param("id") UUID id);
+
+    @Modifying
+    @Query(value = "UPDATE tickets SET qr_code_status = 'READY' WHERE id = :id", nativeQuery = true)
+    int markQrCodeReady(@Param("id") UUID id);
+
+    //For a ticket sold from a block after it was inserted, the lease id is not updatable from the entity
+    @Modifying
+    @Query(value = "UPDATE tickets SET inventory_lease_id = :leaseId WHERE id = :id", nativeQuery = true)
+    int setInventoryLeaseId(@Param("id") UUID id, @Param("leaseId") UUID leaseId);
+
+    //Lets the ticket in if nothing has yet. Two gates scanning the same ticket at once queue on the row lock
+    //and the second finds admitted_at set, so exactly one of them gets 1 back.
+    @Modifying
+    @Query(value = "UPDATE tickets SET admitted_at = :admittedAt WHERE id = :id AND admitted_at IS NULL",
+            nativeQuery = true)
+    int admit(@Param("id") UUID id, @Param("admittedAt") LocalDateTime admittedAt);
+
+    //The same for tickets let in at a gate answering from memory, written behind in batches. Returns fewer than
+    //were given when some were let in through another node in the meantime.
+    @Modifying
+    @Query(value = "UPDATE tickets SET admitted_at = :admittedAt WHERE id IN (:ids) AND admitted_at IS NULL",
+            nativeQuery = true)
+    int admitAll(@Param("ids") Collection<UUID> ids, @Param("admittedAt") LocalDateTime admittedAt);
+
+    //What offline scans name, in one query: tickets by id or by their active QR code, with the event they are for
+    @Query("SELECT t.id AS ticketId, q.id AS qrCodeId, q.payload AS payload, tt.id AS ticketTypeId, e.id AS eventId, " +
+            "t.admittedAt AS admittedAt FROM Ticket t LEFT JOIN t.ticketType tt LEFT JOIN tt.event e " +
+            "LEFT JOIN QrCode q ON q.ticket = t AND q.status = :status " +
+            "WHERE t.id IN :ticketIds OR q.id IN :qrCodeIds")
+    List<ScannedTicket> findScannedTickets(@Param("ticketIds") Collection<UUID> ticketIds,
+                                           @Param("qrCodeIds") Collection<UUID> qrCodeIds,
+                                           @Param("status") QrCodeStatusEnum status);
+
+    interface ScannedTicket {
+        UUID getTicketId();
+        UUID getQrCodeId();
+        String getPayload();
+        UUID getTicketTypeId();
+        UUID getEventId();
+        LocalDateTime getAdmittedAt();
+    }
+
+    //One-off backfill for tickets let in before admitted_at existed, run by TicketAdmissionBackfill until it has
+    //completed once. Tickets already let in are left alone, so it is safe to run twice.
+    @Modifying
+    @Query(value = "UPDATE tickets SET admitted_at = (SELECT min(v.created_at) FROM ticket_validations v " +
+            "WHERE v.ticket_id = tickets.id AND v.validation_status = 'VALID') " +
+            "WHERE admitted_at IS NULL AND EXISTS (SELECT 1 FROM ticket_validations v " +
+            "WHERE v.ticket_id = tickets.id AND v.validation_status = 'VALID')",
+            nativeQuery = true)
+    int backfillAdmittedAt();
 }
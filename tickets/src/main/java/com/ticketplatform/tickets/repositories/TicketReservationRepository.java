@@ -0,0 +1,46 @@
+package com.ticketplatform.tickets.repositories;
+
+import com.ticketplatform.tickets.domain.entities.TicketReservation;
+import com.ticketplatform.tickets.domain.entities.TicketReservationStatusEnum;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface TicketReservationRepository extends JpaRepository<TicketReservation, UUID> {
+
+    @Query("SELECT r FROM TicketReservation r WHERE r.id = :id AND r.purchaser.id = :purchaserId")
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<TicketReservation> findByIdAndPurchaserIdWithLock(@Param("id") UUID id, @Param("purchaserId") UUID purchaserId);
+
+    //Locks the holds the timing wheel found due, skipping any that were confirmed or cancelled in the meantime
+    @Query("SELECT r FROM TicketReservation r WHERE r.id IN :ids AND r.status = :status")
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<TicketReservation> findByIdInAndStatusWithLock(@Param("ids") Collection<UUID> ids,
+                                                        @Param("status") TicketReservationStatusEnum status);
+
+    //Only read on start up, to put holds made before a restart back on the timing wheel
+    @Query("SELECT r.id AS id, r.expiresAt AS expiresAt FROM TicketReservation r WHERE r.status = :status")
+    List<TicketReservationExpiry> findExpiriesByStatus(@Param("status") TicketReservationStatusEnum status);
+
+    //Holds still open well past their expiry, whichever node made them
+    @Query("SELECT r.id FROM TicketReservation r WHERE r.status = :status AND r.expiresAt < :expiredBefore ORDER BY r.expiresAt")
+    List<UUID> findIdsByStatusAndExpiresAtBefore(@Param("status") TicketReservationStatusEnum status,
+                                                 @Param("expiredBefore") LocalDateTime expiredBefore,
+                                                 Pageable pageable);
+
+    interface TicketReservationExpiry {
+        UUID getId();
+        LocalDateTime getExpiresAt();
+    }
+}
@@ -1,14 +1,16 @@
 package com.ticketplatform.tickets.repositories;
 
-import com.ticketplatform.tickets.domain.entities.Ticket;
 import com.ticketplatform.tickets.domain.entities.TicketType;
 import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -20,4 +22,62 @@ public interface TicketTypeRepository extends JpaRepository<TicketType, UUID> {
     @Query("SELECT tt FROM TicketType tt WHERE tt.id = :id")
     @Lock(LockModeType.PESSIMISTIC_WRITE)
     Optional<TicketType> findByIdWithLock(@Param("id")UUID id);
+
+    boolean existsByIdAndEventId(UUID id, UUID eventId);
+
+    @Query("SELECT tt.event.id FROM TicketType tt WHERE tt.id = :id")
+    Optional<UUID> findEventIdById(@Param("id") UUID id);
+
+    //Every ticket type of the events with how many of its tickets were let in, none included
+    @Query("SELECT tt.id AS ticketTypeId, tt.event.id AS eventId, count(t) AS count FROM TicketType tt " +
+            "LEFT JOIN Ticket t ON t.ticketType = tt AND t.admittedAt IS NOT NULL " +
+            "WHERE tt.event.id IN :eventIds GROUP BY tt.id, tt.event.id")
+    List<TicketTypeCount> countAdmittedTicketsByEventIds(@Param("eventIds") Collection<UUID> eventIds);
+
+    //Claims tickets with a single conditional update rather than lock-then-count. Returns 1 when the claim
+    //succeeded and 0 when fewer than the requested quantity remain, in which case nothing is changed.
+    //Sharded ticket types keep their count in ticket_inventory_shards, so this row never matches for them.
+    @Modifying
+    @Query(value = "UPDATE ticket_types SET tickets_sold = tickets_sold + :quantity " +
+            "WHERE id = :id AND inventory_shard_count <= 1 " +
+            "AND tickets_sold + :quantity <= total_tickets_available",
+            nativeQuery = true)
+    int claimTickets(@Param("id") UUID id, @Param("quantity") int quantity);
+
+    //Unlocked read of what is left to claim. Null for sharded ticket types, whose counts live on the shards
+    @Query(value = "SELECT total_tickets_available - tickets_sold FROM ticket_types " +
+            "WHERE id = :id AND inventory_shard_count <= 1",
+            nativeQuery = true)
+    Integer findTicketsRemaining(@Param("id") UUID id);
+
+    //Hands claimed tickets back, e.g. when the purchase that claimed them could not be completed
+    @Modifying
+    @Query(value = "UPDATE ticket_types SET tickets_sold = tickets_sold - :quantity " +
+            "WHERE id = :id AND inventory_shard_count <= 1 AND tickets_sold >= :quantity",
+            nativeQuery = true)
+    int releaseTickets(@Param("id") UUID id, @Param("quantity") int quantity);
+
+    //One-off backfill for ticket types created before tickets_sold existed, run by TicketInventoryBackfill until
+    //it has completed once. Rows that already carry a count are left alone, so it is safe to run twice.
+    @Modifying
+    @Query(value = "UPDATE ticket_types SET tickets_sold = " +
+            "(SELECT count(*) FROM tickets t WHERE t.ticket_type_id = ticket_types.id) " +
+            "WHERE tickets_sold = 0 AND inventory_shard_count <= 1 AND EXISTS (SELECT 1 FROM tickets t WHERE t.ticket_type_id = ticket_types.id)",
+            nativeQuery = true)
+    int backfillTicketsSold();
+
+    //Reads the current count and locks the row, used while an organizer reshards a ticket type
+    @Query(value = "SELECT tickets_sold FROM ticket_types WHERE id = :id FOR UPDATE", nativeQuery = true)
+    Integer findTicketsSoldWithLock(@Param("id") UUID id);
+
+    //Used when a ticket type moves from sharded back to a single row and takes the shards' total with it
+    @Modifying
+    @Query(value = "UPDATE ticket_types SET tickets_sold = :ticketsSold WHERE id = :id", nativeQuery = true)
+    int setTicketsSold(@Param("id") UUID id, @Param("ticketsSold") int ticketsSold);
+
+    interface TicketTypeCount {
+        UUID getTicketTypeId();
+        UUID getEventId();
+        long getCount();
+    }
 }
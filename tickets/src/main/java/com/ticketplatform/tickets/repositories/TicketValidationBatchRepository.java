@@ -0,0 +1,9 @@
+package com.ticketplatform.tickets.repositories;
+
+import com.ticketplatform.tickets.domain.entities.TicketValidation;
+
+import java.util.List;
+
+public interface TicketValidationBatchRepository {
+    void insertAll(List<TicketValidation> ticketValidations);
+}
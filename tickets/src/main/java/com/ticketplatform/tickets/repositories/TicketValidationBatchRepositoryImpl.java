@@ -0,0 +1,44 @@
+package com.ticketplatform.tickets.repositories;
+
+import com.ticketplatform.tickets.domain.entities.TicketValidation;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+//Inserts validations in JDBC batches, keeping their created_at, so a scan synced late is recorded at the time it
+//was made. Hibernate would batch the inserts too, but auditing would stamp them with the time of the sync.
+//Joins the surrounding JPA transaction.
+@RequiredArgsConstructor
+public class TicketValidationBatchRepositoryImpl implements TicketValidationBatchRepository {
+
+    private static final int BATCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void insertAll(List<TicketValidation> ticketValidations) {
+        jdbcTemplate.batchUpdate("INSERT INTO ticket_validations " +
+                        "(id, validation_status, validation_method, ticket_id, created_at, updated_at) " +
+                        "VALUES (?, ?, ?, ?, ?, ?)",
+                ticketValidations, BATCH_SIZE, (statement, ticketValidation) -> {
+                    if(ticketValidation.getId() == null) {
+                        ticketValidation.setId(UUID.randomUUID());
+                    }
+                    LocalDateTime createdAt = ticketValidation.getCreatedAt() == null
+                            ? LocalDateTime.now()
+                            : ticketValidation.getCreatedAt();
+                    ticketValidation.setCreatedAt(createdAt);
+                    ticketValidation.setUpdatedAt(createdAt);
+                    statement.setObject(1, ticketValidation.getId());
+                    statement.setString(2, ticketValidation.getValidationStatus().name());
+                    statement.setShort(3, (short) ticketValidation.getValidationMethod().ordinal());
+                    statement.setObject(4, ticketValidation.getTicket().getId());
+                    statement.setTimestamp(5, Timestamp.valueOf(createdAt));
+                    statement.setTimestamp(6, Timestamp.valueOf(createdAt));
+                });
+    }
+}
@@ -1,11 +1,28 @@
 package com.ticketplatform.tickets.repositories;
 
 import com.ticketplatform.tickets.domain.entities.TicketValidation;
+import com.ticketplatform.tickets.domain.entities.TicketValidationStatusEnum;
+import com.ticketplatform.tickets.repositories.TicketTypeRepository.TicketTypeCount;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 @Repository
-public interface TicketValidationRepository extends JpaRepository<TicketValidation, UUID> {
+public interface TicketValidationRepository extends JpaRepository<TicketValidation, UUID>, TicketValidationBatchRepository {
+
+    @Query("SELECT v.id FROM TicketValidation v WHERE v.id IN :ids")
+    Set<UUID> findExistingIds(@Param("ids") Collection<UUID> ids);
+
+    //Only for reconciling live counters now and then, it reads every validation of the events
+    @Query("SELECT tt.id AS ticketTypeId, tt.event.id AS eventId, count(v) AS count FROM TicketValidation v " +
+            "JOIN v.ticket t JOIN t.ticketType tt " +
+            "WHERE tt.event.id IN :eventIds AND v.validationStatus = :status GROUP BY tt.id, tt.event.id")
+    List<TicketTypeCount> countByEventIdsAndStatus(@Param("eventIds") Collection<UUID> eventIds,
+                                                   @Param("status") TicketValidationStatusEnum status);
 }
@@ -0,0 +1,12 @@
+package com.ticketplatform.tickets.services;
+
+import com.ticketplatform.tickets.domain.EventCheckIns;
+import com.ticketplatform.tickets.domain.entities.TicketValidationStatusEnum;
+
+import java.util.UUID;
+
+public interface CheckInCounterService {
+    void recordValidation(UUID ticketTypeId, TicketValidationStatusEnum status);
+    EventCheckIns getCheckInsForOrganizer(UUID organizerId, UUID eventId);
+    void reconcileCounters();
+}
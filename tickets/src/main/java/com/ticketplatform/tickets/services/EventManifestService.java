@@ -0,0 +1,9 @@
+package com.ticketplatform.tickets.services;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.UUID;
+
+public interface EventManifestService {
+    void writeManifest(UUID staffId, UUID eventId, Long sinceVersion, OutputStream out) throws IOException;
+}
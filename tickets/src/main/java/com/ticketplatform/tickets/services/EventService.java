@@ -14,6 +14,7 @@ public interface EventService {
     Event createEvent(UUID organizerId, CreateEventRequest event);
     Page<Event> listEventsForOrganizer(UUID organizerID, Pageable pageable);
     Optional<Event> getEventForOrganizer(UUID organizerId, UUID id);
+    Optional<Event> getEventForStaff(UUID staffId, UUID id);
     Event updateEventForOrganizer(UUID organizerId, UUID id, UpdateEventRequest event);
     void deleteEventForOrganizer(UUID organizerId, UUID id);
     Page<Event> listPublishedEvents(Pageable pageable);
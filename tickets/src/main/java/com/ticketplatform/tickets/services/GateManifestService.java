@@ -0,0 +1,18 @@
+package com.ticketplatform.tickets.services;
+
+import com.ticketplatform.tickets.domain.entities.TicketValidation;
+import com.ticketplatform.tickets.domain.entities.TicketValidationMethodEnum;
+
+import java.util.Optional;
+import java.util.UUID;
+
+public interface GateManifestService {
+    int openGate(UUID organizerId, UUID eventId);
+    void closeGate(UUID organizerId, UUID eventId);
+    void checkNotOpenElsewhere(UUID eventId);
+    Optional<TicketValidation> validateByQrCode(UUID qrCodeId, UUID gateEventId);
+    Optional<TicketValidation> validateByTicket(UUID ticketId, UUID gateEventId, String payload,
+                                                TicketValidationMethodEnum method);
+    void refreshGates();
+    void flushValidations();
+}
@@ -0,0 +1,15 @@
+package com.ticketplatform.tickets.services;
+
+import com.ticketplatform.tickets.domain.IdempotentResponse;
+
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+public interface IdempotencyService {
+    IdempotentResponse execute(UUID userId, String idempotencyKey, String requestFingerprint, Supplier<IdempotentResponse> request);
+    IdempotentResponse executeCompletingKey(UUID userId, String idempotencyKey, String requestFingerprint, Function<UUID, IdempotentResponse> request);
+    boolean lockInProgress(UUID idempotencyKeyId);
+    void complete(UUID idempotencyKeyId, IdempotentResponse response);
+    void purgeExpiredKeys();
+}
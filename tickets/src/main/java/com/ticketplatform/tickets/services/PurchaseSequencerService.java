@@ -0,0 +1,14 @@
+package com.ticketplatform.tickets.services;
+
+import com.ticketplatform.tickets.domain.IdempotentResponse;
+import com.ticketplatform.tickets.domain.entities.Ticket;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+public interface PurchaseSequencerService {
+    boolean isEnabled();
+    CompletableFuture<Ticket> submitPurchase(UUID userId, UUID ticketTypeId);
+    Ticket purchaseTicket(UUID userId, UUID ticketTypeId);
+    Ticket purchaseTicket(UUID userId, UUID ticketTypeId, UUID idempotencyKeyId, IdempotentResponse keyResponse);
+}
@@ -0,0 +1,5 @@
+package com.ticketplatform.tickets.services;
+
+public interface QrCodeDecodeService {
+    String decode(byte[] image);
+}
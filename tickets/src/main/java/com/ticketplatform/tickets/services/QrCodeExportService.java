@@ -0,0 +1,12 @@
+package com.ticketplatform.tickets.services;
+
+import com.ticketplatform.tickets.domain.QrCodeExportFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.UUID;
+
+public interface QrCodeExportService {
+    void exportQrCodesForEvent(UUID organizerId, UUID eventId, QrCodeExportFormat format, OutputStream out)
+            throws IOException;
+}
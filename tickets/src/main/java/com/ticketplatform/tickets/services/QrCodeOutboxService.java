@@ -0,0 +1,10 @@
+package com.ticketplatform.tickets.services;
+
+import com.ticketplatform.tickets.domain.entities.Ticket;
+
+import java.util.List;
+
+public interface QrCodeOutboxService {
+    void enqueue(List<Ticket> tickets);
+    void processPending();
+}
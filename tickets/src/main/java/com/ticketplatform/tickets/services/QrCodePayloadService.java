@@ -0,0 +1,15 @@
+package com.ticketplatform.tickets.services;
+
+import com.ticketplatform.tickets.domain.ScannedQrCode;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface QrCodePayloadService {
+    String createPayload(UUID qrCodeId, UUID ticketId, UUID eventId);
+    String currentPayload(String storedPayload, Instant now);
+    Optional<Instant> currentPayloadExpiresAt(Instant now);
+    ScannedQrCode verifyPayload(String payload);
+    ScannedQrCode verifyPayload(String payload, Instant scannedAt);
+}
@@ -3,9 +3,13 @@ package com.ticketplatform.tickets.services;
 import com.ticketplatform.tickets.domain.entities.QrCode;
 import com.ticketplatform.tickets.domain.entities.Ticket;
 
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 public interface QrCodeService {
     QrCode generateQrCode(Ticket ticket);
+    List<QrCode> generateQrCodes(List<Ticket> tickets);
+    Optional<QrCode> generatePendingQrCode(UUID ticketId);
     byte[] getQrCodeImageForUserAndTicket(UUID userId, UUID ticketId);
 }
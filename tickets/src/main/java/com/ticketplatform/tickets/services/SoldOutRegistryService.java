@@ -0,0 +1,12 @@
+package com.ticketplatform.tickets.services;
+
+import java.util.UUID;
+
+public interface SoldOutRegistryService {
+    boolean isSoldOut(UUID ticketTypeId);
+    long currentVersion(UUID ticketTypeId);
+    void markSoldOut(UUID ticketTypeId, long observedVersion);
+    void invalidate(UUID ticketTypeId);
+    void evict(UUID ticketTypeId);
+    void evictLapsed();
+}
@@ -0,0 +1,17 @@
+package com.ticketplatform.tickets.services;
+
+import com.ticketplatform.tickets.domain.entities.TicketType;
+
+import java.util.Optional;
+import java.util.UUID;
+
+public interface TicketBlockLeaseService {
+    boolean isEnabled();
+    Optional<UUID> claimTicket(TicketType ticketType);
+    Optional<UUID> claimTicketAfterRefill(TicketType ticketType);
+    Optional<UUID> claimTickets(TicketType ticketType, int quantity);
+    Optional<UUID> claimTicketsAfterRefill(TicketType ticketType, int quantity);
+    void returnExpiredLeases();
+    void reclaimAbandonedLeases();
+    void returnAllLeases();
+}
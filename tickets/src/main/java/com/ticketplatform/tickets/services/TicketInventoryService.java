@@ -0,0 +1,10 @@
+package com.ticketplatform.tickets.services;
+
+import com.ticketplatform.tickets.domain.entities.TicketType;
+
+public interface TicketInventoryService {
+    boolean claimTickets(TicketType ticketType, int quantity);
+    int claimTicketsUpTo(TicketType ticketType, int quantity);
+    void releaseTickets(TicketType ticketType, int quantity);
+    void distributeInventory(TicketType ticketType);
+}
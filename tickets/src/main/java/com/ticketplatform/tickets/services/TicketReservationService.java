@@ -0,0 +1,14 @@
+package com.ticketplatform.tickets.services;
+
+import com.ticketplatform.tickets.domain.entities.Ticket;
+import com.ticketplatform.tickets.domain.entities.TicketReservation;
+
+import java.util.List;
+import java.util.UUID;
+
+public interface TicketReservationService {
+    TicketReservation reserveTickets(UUID userId, UUID ticketTypeId, int quantity);
+    List<Ticket> confirmReservation(UUID userId, UUID reservationId);
+    void cancelReservation(UUID userId, UUID reservationId);
+    void expireOverdueReservations();
+}
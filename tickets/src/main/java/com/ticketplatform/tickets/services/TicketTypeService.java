@@ -2,8 +2,10 @@ package com.ticketplatform.tickets.services;
 
 import com.ticketplatform.tickets.domain.entities.Ticket;
 
+import java.util.List;
 import java.util.UUID;
 
 public interface TicketTypeService {
     Ticket purchaseTicket(UUID userId, UUID ticketType);
+    List<Ticket> purchaseTickets(UUID userId, UUID ticketType, int quantity);
 }
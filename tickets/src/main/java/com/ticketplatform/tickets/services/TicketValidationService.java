@@ -1,10 +1,14 @@
 package com.ticketplatform.tickets.services;
 
+import com.ticketplatform.tickets.domain.TicketScan;
 import com.ticketplatform.tickets.domain.entities.TicketValidation;
 
+import java.util.List;
 import java.util.UUID;
 
 public interface TicketValidationService {
     TicketValidation validateTicketByQrCode(UUID qrCodeId);
+    TicketValidation validateTicketByQrPayload(String payload, UUID eventId);
     TicketValidation validateTicketManually(UUID ticketId);
+    List<TicketValidation> validateTicketScans(List<TicketScan> scans, UUID eventId);
 }
@@ -0,0 +1,9 @@
+package com.ticketplatform.tickets.services;
+
+import com.ticketplatform.tickets.domain.entities.TicketValidation;
+
+public interface ValidationJournalService {
+    boolean isEnabled();
+    void append(TicketValidation ticketValidation, boolean admit);
+    void flushJournal();
+}
@@ -0,0 +1,15 @@
+package com.ticketplatform.tickets.services;
+
+import com.ticketplatform.tickets.domain.WaitingRoomStatus;
+
+import java.util.UUID;
+import java.util.function.Supplier;
+
+public interface WaitingRoomService {
+    boolean isEnabled();
+    WaitingRoomStatus joinQueue(UUID eventId, UUID userId);
+    WaitingRoomStatus getQueueStatus(UUID eventId, UUID userId);
+    <T> T spendAdmission(String admissionToken, UUID eventId, UUID ticketTypeId, UUID userId, Supplier<T> purchase);
+    void purgeSpentTokens();
+    void admitNext();
+}
@@ -0,0 +1,240 @@
+package com.ticketplatform.tickets.services.impl;
+
+import com.ticketplatform.tickets.domain.EventCheckIns;
+import com.ticketplatform.tickets.domain.TicketTypeCheckIns;
+import com.ticketplatform.tickets.domain.entities.EventStatusEnum;
+import com.ticketplatform.tickets.domain.entities.TicketValidationStatusEnum;
+import com.ticketplatform.tickets.exceptions.EventNotFoundException;
+import com.ticketplatform.tickets.repositories.EventRepository;
+import com.ticketplatform.tickets.repositories.TicketTypeRepository;
+import com.ticketplatform.tickets.repositories.TicketTypeRepository.TicketTypeCount;
+import com.ticketplatform.tickets.repositories.TicketValidationRepository;
+import com.ticketplatform.tickets.services.CheckInCounterService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+//Live check-ins per ticket type of the events on around now, so organizers can watch the doors without counting
+//ticket_validations. Every validation adds to LongAdders, which spread scans at many doors over cells rather than
+//contending on one counter, and to one-second buckets covering the last minute.
+//Counters are seeded from the database on start up and reconciled with it every reconcile interval, which is how
+//scans through other nodes get in. Reconciling only ever raises a count: the database trails this node by the
+//validations it has yet to write behind, so a count above the database's is ahead of it rather than wrong.
+//A validation whose transaction rolls back after it was counted stays counted.
+@Service
+@Slf4j
+public class CheckInCounterServiceImpl implements CheckInCounterService {
+
+    private static final int SCAN_RATE_SECONDS = 60;
+
+    private final EventRepository eventRepository;
+    private final TicketTypeRepository ticketTypeRepository;
+    private final TicketValidationRepository ticketValidationRepository;
+    private final MeterRegistry meterRegistry;
+    private final Duration window;
+
+    private final Map<UUID, EventCounters> events = new ConcurrentHashMap<>();
+    private final Map<UUID, TicketTypeCounters> ticketTypes = new ConcurrentHashMap<>();
+
+    public CheckInCounterServiceImpl(
+            EventRepository eventRepository,
+            TicketTypeRepository ticketTypeRepository,
+            TicketValidationRepository ticketValidationRepository,
+            MeterRegistry meterRegistry,
+            @Value("${tickets.check-ins.window:1d}") Duration window) {
+        this.eventRepository = eventRepository;
+        this.ticketTypeRepository = ticketTypeRepository;
+        this.ticketValidationRepository = ticketValidationRepository;
+        this.meterRegistry = meterRegistry;
+        this.window = window;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void seedCounters() {
+        reconcileCounters();
+        if(!events.isEmpty()) {
+            log.info("Seeded check-in counters of {} events", events.size());
+        }
+    }
+
+    //A ticket type not counted yet is new, or of an event that was not on at the last reconcile. It is counted
+    //from zero until the next one raises it to the database's count, seeding it now could count this scan twice
+    //since the database may have it already.
+    @Override
+    public void recordValidation(UUID ticketTypeId, TicketValidationStatusEnum status) {
+        if(ticketTypeId == null) {
+            return;
+        }
+        TicketTypeCounters counters = ticketTypes.get(ticketTypeId);
+        if(counters == null) {
+            Optional<UUID> eventId = ticketTypeRepository.findEventIdById(ticketTypeId);
+            if(eventId.isEmpty()) {
+                return;
+            }
+            counters = countersOf(eventId.get(), ticketTypeId);
+        }
+        counters.record(status, System.currentTimeMillis() / 1000);
+    }
+
+    @Override
+    public EventCheckIns getCheckInsForOrganizer(UUID organizerId, UUID eventId) {
+        if(eventRepository.findByIdAndOrganizerId(eventId, organizerId).isEmpty()) {
+            throw new EventNotFoundException(String.format("Event with ID '%s' does not exist", eventId));
+        }
+        EventCounters counters = events.get(eventId);
+        if(counters == null) {
+            seed(List.of(eventId));
+            counters = events.get(eventId);
+        }
+        if(counters == null) {
+            return new EventCheckIns(eventId, 0, 0, 0, List.of());
+        }
+
+        long now = System.currentTimeMillis() / 1000;
+        List<TicketTypeCheckIns> ticketTypeCheckIns = counters.ticketTypes.stream()
+                .map(ticketType -> new TicketTypeCheckIns(ticketType.ticketTypeId, ticketType.checkedIn.sum(),
+                        ticketType.invalidScans.sum(), ticketType.scansSince(now)))
+                .toList();
+        return new EventCheckIns(eventId,
+                ticketTypeCheckIns.stream().mapToLong(TicketTypeCheckIns::getCheckedIn).sum(),
+                ticketTypeCheckIns.stream().mapToLong(TicketTypeCheckIns::getInvalidScans).sum(),
+                ticketTypeCheckIns.stream().mapToLong(TicketTypeCheckIns::getScansLastMinute).sum(),
+                ticketTypeCheckIns);
+    }
+
+    //Events that are no longer on are dropped, with their gauges, and those that have come on are taken up
+    @Override
+    @Scheduled(fixedDelayString = "${tickets.check-ins.reconcile-interval:1m}",
+            initialDelayString = "${tickets.check-ins.reconcile-interval:1m}")
+    public void reconcileCounters() {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            Set<UUID> on = new HashSet<>(eventRepository.findIdsByStatusAndOnBetween(EventStatusEnum.PUBLISHED,
+                    now.minus(window), now.plus(window)));
+            events.keySet().stream().filter(eventId -> !on.contains(eventId)).toList().forEach(this::drop);
+            if(!on.isEmpty()) {
+                seed(on);
+            }
+        } catch(RuntimeException ex) {
+            log.error("Failed to reconcile check-in counters", ex);
+        }
+    }
+
+    private void seed(Collection<UUID> eventIds) {
+        for(TicketTypeCount admitted : ticketTypeRepository.countAdmittedTicketsByEventIds(eventIds)) {
+            raiseTo(countersOf(admitted.getEventId(), admitted.getTicketTypeId()).checkedIn, admitted.getCount());
+        }
+        for(TicketTypeCount invalid : ticketValidationRepository.countByEventIdsAndStatus(eventIds,
+                TicketValidationStatusEnum.INVALID)) {
+            raiseTo(countersOf(invalid.getEventId(), invalid.getTicketTypeId()).invalidScans, invalid.getCount());
+        }
+    }
+
+    private TicketTypeCounters countersOf(UUID eventId, UUID ticketTypeId) {
+        EventCounters event = events.computeIfAbsent(eventId, this::track);
+        return ticketTypes.computeIfAbsent(ticketTypeId, id -> {
+            TicketTypeCounters counters = new TicketTypeCounters(id);
+            event.ticketTypes.add(counters);
+            return counters;
+        });
+    }
+
+    //Counts added while this reads the sum are on top of what the database had
+    private static void raiseTo(LongAdder counter, long count) {
+        long behind = count - counter.sum();
+        if(behind > 0) {
+            counter.add(behind);
+        }
+    }
+
+    private EventCounters track(UUID eventId) {
+        EventCounters counters = new EventCounters();
+        counters.gauges.add(gauge("tickets.check-ins.checked-in", eventId, counters,
+                ticketType -> ticketType.checkedIn.sum()));
+        counters.gauges.add(gauge("tickets.check-ins.invalid-scans", eventId, counters,
+                ticketType -> ticketType.invalidScans.sum()));
+        counters.gauges.add(gauge("tickets.check-ins.scans-last-minute", eventId, counters,
+                ticketType -> ticketType.scansSince(System.currentTimeMillis() / 1000)));
+        return counters;
+    }
+
+    private Meter gauge(String name, UUID eventId, EventCounters counters, ToLongFunction<TicketTypeCounters> count) {
+        return Gauge.builder(name, counters, event -> event.ticketTypes.stream().mapToLong(count).sum())
+                .tag("event", eventId.toString())
+                .register(meterRegistry);
+    }
+
+    private void drop(UUID eventId) {
+        EventCounters counters = events.remove(eventId);
+        if(counters != null) {
+            counters.ticketTypes.forEach(ticketType -> ticketTypes.remove(ticketType.ticketTypeId));
+            counters.gauges.forEach(meterRegistry::remove);
+        }
+    }
+
+    private static final class EventCounters {
+
+        private final List<TicketTypeCounters> ticketTypes = new CopyOnWriteArrayList<>();
+        private final List<Meter> gauges = new CopyOnWriteArrayList<>();
+    }
+
+    private static final class TicketTypeCounters {
+
+        private final UUID ticketTypeId;
+        private final LongAdder checkedIn = new LongAdder();
+        private final LongAdder invalidScans = new LongAdder();
+        //Bucket i counts the scans of the second its stamp holds, the last time one fell in it
+        private final LongAdder[] scans = new LongAdder[SCAN_RATE_SECONDS];
+        private final AtomicLongArray scanSeconds = new AtomicLongArray(SCAN_RATE_SECONDS);
+
+        private TicketTypeCounters(UUID ticketTypeId) {
+            this.ticketTypeId = ticketTypeId;
+            for(int i = 0; i < SCAN_RATE_SECONDS; i++) {
+                scans[i] = new LongAdder();
+            }
+        }
+
+        //The first scan of a second takes its bucket over from a minute ago. A scan counted in the bucket just
+        //before it is reset is lost, which a rate can afford.
+        private void record(TicketValidationStatusEnum status, long second) {
+            (status == TicketValidationStatusEnum.VALID ? checkedIn : invalidScans).increment();
+            int bucket = (int) (second % SCAN_RATE_SECONDS);
+            long stamp = scanSeconds.get(bucket);
+            if(stamp != second && scanSeconds.compareAndSet(bucket, stamp, second)) {
+                scans[bucket].reset();
+            }
+            scans[bucket].increment();
+        }
+
+        private long scansSince(long now) {
+            long total = 0;
+            for(int i = 0; i < SCAN_RATE_SECONDS; i++) {
+                if(scanSeconds.get(i) > now - SCAN_RATE_SECONDS) {
+                    total += scans[i].sum();
+                }
+            }
+            return total;
+        }
+    }
+}
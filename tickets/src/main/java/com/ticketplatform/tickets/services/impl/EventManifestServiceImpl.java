@@ -0,0 +1,93 @@
+package com.ticketplatform.tickets.services.impl;
+
+import com.ticketplatform.tickets.domain.entities.QrCodeStatusEnum;
+import com.ticketplatform.tickets.domain.entities.TicketStatusEnum;
+import com.ticketplatform.tickets.exceptions.EventNotFoundException;
+import com.ticketplatform.tickets.repositories.EventRepository;
+import com.ticketplatform.tickets.repositories.QrCodeRepository;
+import com.ticketplatform.tickets.repositories.QrCodeRepository.EventQrCodeRow;
+import com.ticketplatform.tickets.services.EventManifestService;
+import com.ticketplatform.tickets.util.EventManifestWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+//Streams the manifest a door device validates an event with while offline, straight off a cursor in id order,
+//so it holds a fetch of rows however large the event. A version is the time the manifest was read; a delta since
+//one goes back a little further, as rows committed just after a read can carry an earlier updated_at, and the
+//device applies the few it gets twice without harm.
+@Service
+@Slf4j
+public class EventManifestServiceImpl implements EventManifestService {
+
+    private static final Duration DELTA_OVERLAP = Duration.ofSeconds(10);
+    private static final LocalDateTime EVERYTHING = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private final QrCodeRepository qrCodeRepository;
+    private final EventRepository eventRepository;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public EventManifestServiceImpl(
+            QrCodeRepository qrCodeRepository,
+            EventRepository eventRepository,
+            TransactionTemplate transactionTemplate) {
+        this.qrCodeRepository = qrCodeRepository;
+        this.eventRepository = eventRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    //The staff member is checked before the first byte is written
+    @Override
+    public void writeManifest(UUID staffId, UUID eventId, Long sinceVersion, OutputStream out) throws IOException {
+        if(eventRepository.findByIdAndStaffId(eventId, staffId).isEmpty()) {
+            throw new EventNotFoundException(String.format("Event with ID '%s' does not exist", eventId));
+        }
+
+        long version = Instant.now().toEpochMilli();
+        boolean delta = sinceVersion != null && sinceVersion > 0;
+        LocalDateTime since = delta
+                ? LocalDateTime.ofInstant(Instant.ofEpochMilli(sinceVersion).minus(DELTA_OVERLAP), ZoneId.systemDefault())
+                : EVERYTHING;
+        EventManifestWriter manifest = new EventManifestWriter(out, eventId, version, delta ? sinceVersion : 0);
+        try {
+            Long written = readOnlyTransaction.execute(status -> {
+                long entries = 0;
+                try(Stream<EventQrCodeRow> rows = qrCodeRepository.streamForManifestByEventId(eventId, since)) {
+                    for(EventQrCodeRow row : (Iterable<EventQrCodeRow>) rows::iterator) {
+                        byte entryStatus = statusOf(row);
+                        if(!delta && entryStatus == EventManifestWriter.REVOKED) {
+                            continue;
+                        }
+                        manifest.add(row.getId(), row.getTicketId(), entryStatus);
+                        entries++;
+                    }
+                } catch(IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                return entries;
+            });
+            manifest.finish();
+            log.info("Wrote {} manifest of {} QR codes for event {}", delta ? "delta" : "full", written, eventId);
+        } catch(UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private static byte statusOf(EventQrCodeRow row) {
+        if(row.getStatus() != QrCodeStatusEnum.ACTIVE || row.getTicketStatus() != TicketStatusEnum.PURCHASED) {
+            return EventManifestWriter.REVOKED;
+        }
+        return row.getAdmittedAt() == null ? EventManifestWriter.VALID : EventManifestWriter.ADMITTED;
+    }
+}
@@ -11,6 +11,8 @@ import com.ticketplatform.tickets.exceptions.*;
 import com.ticketplatform.tickets.repositories.EventRepository;
 import com.ticketplatform.tickets.repositories.UserRepository;
 import com.ticketplatform.tickets.services.EventService;
+import com.ticketplatform.tickets.services.SoldOutRegistryService;
+import com.ticketplatform.tickets.services.TicketInventoryService;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
@@ -27,6 +29,8 @@ public class EventServiceImpl implements EventService {
 
     private final UserRepository userRepository;
     private final EventRepository eventRepository;
+    private final TicketInventoryService ticketInventoryService;
+    private final SoldOutRegistryService soldOutRegistryService;
 
     @Override
     @Transactional
@@ -43,7 +47,11 @@ public class EventServiceImpl implements EventService {
             ticketTypeToCreate.setPrice(ticketType.getPrice());
             ticketTypeToCreate.setDescription(ticketType.getDescription());
             ticketTypeToCreate.setTotalTicketsAvailable(ticketType.getTotalTicketsAvailable());
+            if (ticketType.getInventoryShardCount() != null) {
+                ticketTypeToCreate.setInventoryShardCount(ticketType.getInventoryShardCount());
+            }
             ticketTypeToCreate.setEvent(eventToCreate);
+            ticketInventoryService.distributeInventory(ticketTypeToCreate);
             return ticketTypeToCreate;
         }).toList();
 
@@ -69,6 +77,11 @@ public class EventServiceImpl implements EventService {
         return eventRepository.findByIdAndOrganizerId(id, organizerId);
     }
 
+    @Override
+    public Optional<Event> getEventForStaff(UUID staffId, UUID id) {
+        return eventRepository.findByIdAndStaffId(id, staffId);
+    }
+
     @Override
     @Transactional
     public Event updateEventForOrganizer(UUID organizerId, UUID id, UpdateEventRequest event) {
@@ -98,9 +111,13 @@ public class EventServiceImpl implements EventService {
                 .filter(Objects::nonNull)
                 .collect(Collectors.toSet());
         //Remove ids from Set that are not on the existing event
-        existingEvent.getTicketTypes().removeIf(existingTicketType ->
-                !requestTicketTypeIds.contains(existingTicketType.getId())
-        );
+        existingEvent.getTicketTypes().removeIf(existingTicketType -> {
+            if (requestTicketTypeIds.contains(existingTicketType.getId())) {
+                return false;
+            }
+            soldOutRegistryService.evict(existingTicketType.getId());
+            return true;
+        });
         Map<UUID, TicketType> existingTicketTypesIndex = existingEvent.getTicketTypes().stream()
                 .collect(Collectors.toMap(TicketType::getId, Function.identity()));
 
@@ -113,7 +130,11 @@ public class EventServiceImpl implements EventService {
                 ticketTypeToCreate.setPrice(ticketType.getPrice());
                 ticketTypeToCreate.setDescription(ticketType.getDescription());
                 ticketTypeToCreate.setTotalTicketsAvailable(ticketType.getTotalTicketsAvailable());
+                if (ticketType.getInventoryShardCount() != null) {
+                    ticketTypeToCreate.setInventoryShardCount(ticketType.getInventoryShardCount());
+                }
                 ticketTypeToCreate.setEvent(existingEvent);
+                ticketInventoryService.distributeInventory(ticketTypeToCreate);
                 existingEvent.getTicketTypes().add(ticketTypeToCreate);
 
 
@@ -124,6 +145,10 @@ public class EventServiceImpl implements EventService {
                 existingTicketType.setPrice(ticketType.getPrice());
                 existingTicketType.setDescription(ticketType.getDescription());
                 existingTicketType.setTotalTicketsAvailable(ticketType.getTotalTicketsAvailable());
+                if (ticketType.getInventoryShardCount() != null) {
+                    existingTicketType.setInventoryShardCount(ticketType.getInventoryShardCount());
+                }
+                ticketInventoryService.distributeInventory(existingTicketType);
 
             } else {
                 throw new TicketTypeNotFoundException(String.format(
@@ -140,7 +165,10 @@ public class EventServiceImpl implements EventService {
         if (getEventForOrganizer(organizerId, id).isEmpty()) {
             throw new EventOrganizerAccessException(String.format("Organizer ID: '%s' does not have permission to delete Event!", organizerId));
         } else {
-            getEventForOrganizer(organizerId, id).ifPresent(eventRepository::delete);
+            getEventForOrganizer(organizerId, id).ifPresent(event -> {
+                event.getTicketTypes().forEach(ticketType -> soldOutRegistryService.evict(ticketType.getId()));
+                eventRepository.delete(event);
+            });
         }
     }
 
@@ -0,0 +1,476 @@
+package com.ticketplatform.tickets.services.impl;
+
+import com.ticketplatform.tickets.domain.entities.Event;
+import com.ticketplatform.tickets.domain.entities.QrCodeStatusEnum;
+import com.ticketplatform.tickets.domain.entities.Ticket;
+import com.ticketplatform.tickets.domain.entities.TicketStatusEnum;
+import com.ticketplatform.tickets.domain.entities.TicketType;
+import com.ticketplatform.tickets.domain.entities.TicketValidation;
+import com.ticketplatform.tickets.domain.entities.TicketValidationMethodEnum;
+import com.ticketplatform.tickets.domain.entities.TicketValidationStatusEnum;
+import com.ticketplatform.tickets.exceptions.EventNotFoundException;
+import com.ticketplatform.tickets.exceptions.GateOpenElsewhereException;
+import com.ticketplatform.tickets.exceptions.InvalidQrCodeException;
+import com.ticketplatform.tickets.repositories.EventRepository;
+import com.ticketplatform.tickets.repositories.QrCodeRepository;
+import com.ticketplatform.tickets.repositories.QrCodeRepository.EventQrCodeRow;
+import com.ticketplatform.tickets.repositories.TicketRepository;
+import com.ticketplatform.tickets.repositories.TicketValidationRepository;
+import com.ticketplatform.tickets.services.GateManifestService;
+import com.ticketplatform.tickets.services.ValidationJournalService;
+import com.ticketplatform.tickets.util.GateManifest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.Stream;
+
+//Gate mode for an event at doors-open: every active QR code of the event is loaded into a GateManifest kept off
+//the heap, and scans of those codes are answered from it without touching the database. The validations they
+//make are written behind in batches, together with the tickets' admitted_at, every flush interval.
+//Codes bought, reissued, revoked or let in elsewhere while the gate is open are picked up every refresh interval
+//from their updated_at and admitted_at, so a cancelled ticket may still get in for up to one interval; anything
+//the manifest does not know or no longer trusts falls through to the database as before.
+//With the validation journal on, the validations go to it instead, so a node that stops does not take the scans
+//of its last flush interval with it.
+//A gate is claimed in the database by the node it is opened on, renewed every refresh and given up once it is
+//closed and its validations written. Until then other nodes cannot open it and turn away the scans of its event
+//that reach their database, which learns of the tickets let in here one flush later.
+@Service
+@Slf4j
+public class GateManifestServiceImpl implements GateManifestService {
+
+    //Rows committed a little after a refresh read past them still have an updated_at before it
+    private static final Duration REFRESH_OVERLAP = Duration.ofSeconds(10);
+    private static final LocalDateTime EVERYTHING = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private final QrCodeRepository qrCodeRepository;
+    private final TicketRepository ticketRepository;
+    private final TicketValidationRepository ticketValidationRepository;
+    private final EventRepository eventRepository;
+    private final ValidationJournalService validationJournalService;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final String nodeId;
+    private final Duration claimTtl;
+    private final Counter deadLettered;
+
+    private final Map<UUID, Gate> gates = new ConcurrentHashMap<>();
+    private final Queue<PendingValidation> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    public GateManifestServiceImpl(
+            QrCodeRepository qrCodeRepository,
+            TicketRepository ticketRepository,
+            TicketValidationRepository ticketValidationRepository,
+            EventRepository eventRepository,
+            ValidationJournalService validationJournalService,
+            TransactionTemplate transactionTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${tickets.gate.write-behind.batch-size:500}") int batchSize,
+            @Value("${tickets.gate.write-behind.max-attempts:5}") int maxAttempts,
+            @Value("${tickets.gate.node-id:}") String nodeId,
+            @Value("${tickets.gate.claim-ttl:30s}") Duration claimTtl) {
+        this.qrCodeRepository = qrCodeRepository;
+        this.ticketRepository = ticketRepository;
+        this.ticketValidationRepository = ticketValidationRepository;
+        this.eventRepository = eventRepository;
+        this.validationJournalService = validationJournalService;
+        this.transactionTemplate = transactionTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTransaction.setReadOnly(true);
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.nodeId = nodeId.isBlank() ? UUID.randomUUID().toString() : nodeId;
+        this.claimTtl = claimTtl;
+        this.deadLettered = Counter.builder("tickets.gate.write-behind.dead-lettered").register(meterRegistry);
+
+        Gauge.builder("tickets.gate.open", gates, Map::size).register(meterRegistry);
+        Gauge.builder("tickets.gate.write-behind.pending", pendingCount, AtomicInteger::get).register(meterRegistry);
+    }
+
+    @PreDestroy
+    void flushOnShutdown() {
+        flushValidations();
+        gates.keySet().forEach(this::release);
+    }
+
+    //Opening a gate that is open already leaves it as it is
+    @Override
+    public int openGate(UUID organizerId, UUID eventId) {
+        checkOrganizer(organizerId, eventId);
+        if(!claim(eventId)) {
+            throw new GateOpenElsewhereException(String.format(
+                    "The gate for event '%s' is open on another node", eventId));
+        }
+        Gate gate = gates.computeIfAbsent(eventId, this::load);
+        long stamp = gate.lock.readLock();
+        try {
+            return gate.manifest.size();
+        } finally {
+            gate.lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void closeGate(UUID organizerId, UUID eventId) {
+        checkOrganizer(organizerId, eventId);
+        if(gates.remove(eventId) != null) {
+            flushValidations();
+            release(eventId);
+            log.info("Closed gate for event {}", eventId);
+        }
+    }
+
+    //Only ever turns a scan away while another node's claim has not run out, an event whose gate is open here
+    //is not looked up
+    @Override
+    public void checkNotOpenElsewhere(UUID eventId) {
+        if(eventId != null && !gates.containsKey(eventId)
+                && eventRepository.isGateOpenOnAnotherNode(eventId, nodeId, LocalDateTime.now())) {
+            throw new GateOpenElsewhereException(String.format(
+                    "The gate for event '%s' is open on another node, scan its tickets there", eventId));
+        }
+    }
+
+    private boolean claim(UUID eventId) {
+        LocalDateTime now = LocalDateTime.now();
+        return Boolean.TRUE.equals(transactionTemplate.execute(status ->
+                eventRepository.claimGate(eventId, nodeId, now.plus(claimTtl), now) == 1));
+    }
+
+    private void release(UUID eventId) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> eventRepository.releaseGate(eventId, nodeId));
+        } catch(RuntimeException ex) {
+            log.error("Failed to release gate for event {}, it is held until its claim runs out", eventId, ex);
+        }
+    }
+
+    private void checkOrganizer(UUID organizerId, UUID eventId) {
+        if(eventRepository.findByIdAndOrganizerId(eventId, organizerId).isEmpty()) {
+            throw new EventNotFoundException(String.format("Event with ID '%s' does not exist", eventId));
+        }
+    }
+
+    //Sized from a count first with some headroom for sales during the event, so it rarely has to grow
+    private Gate load(UUID eventId) {
+        LocalDateTime startedAt = LocalDateTime.now();
+        int active = qrCodeRepository.countByTicketTicketTypeEventIdAndStatus(eventId, QrCodeStatusEnum.ACTIVE);
+        Gate gate = new Gate(eventId, new GateManifest((int) Math.min(active + active / 4L + 1024,
+                GateManifest.MAX_CAPACITY)));
+        readOnlyTransaction.executeWithoutResult(status -> {
+            try(Stream<EventQrCodeRow> rows = qrCodeRepository.streamForGateByEventId(eventId, EVERYTHING)) {
+                rows.forEach(gate::apply);
+            }
+        });
+        gate.refreshedSince = startedAt.minus(REFRESH_OVERLAP);
+        log.info("Opened gate for event {} with {} QR codes", eventId, gate.manifest.size());
+        return gate;
+    }
+
+    //A code found in an open gate is answered from it, unless it has been revoked since, which is left to the
+    //database to explain
+    @Override
+    public Optional<TicketValidation> validateByQrCode(UUID qrCodeId, UUID gateEventId) {
+        Optional<TicketValidation> ticketValidation = scanQrCode(qrCodeId, gateEventId);
+        ticketValidation.ifPresent(this::writeBehind);
+        return ticketValidation;
+    }
+
+    private Optional<TicketValidation> scanQrCode(UUID qrCodeId, UUID gateEventId) {
+        for(Gate gate : gates.values()) {
+            long stamp = gate.lock.readLock();
+            try {
+                int slot = gate.manifest.slotOfQrCode(qrCodeId);
+                if(slot == GateManifest.MISSING) {
+                    continue;
+                }
+                if(gate.manifest.isRevoked(slot)) {
+                    return Optional.empty();
+                }
+                if(gateEventId != null && !gateEventId.equals(gate.eventId)) {
+                    throw new InvalidQrCodeException("QR code was issued for a different event");
+                }
+                return Optional.of(scan(gate, slot, TicketValidationMethodEnum.QR_SCAN));
+            } finally {
+                gate.lock.unlockRead(stamp);
+            }
+        }
+        return Optional.empty();
+    }
+
+    //A payload is only trusted if it is the one of the ticket's active code, null skips the check for dynamic
+    //codes and manual validation
+    @Override
+    public Optional<TicketValidation> validateByTicket(UUID ticketId, UUID gateEventId, String payload,
+                                                       TicketValidationMethodEnum method) {
+        Optional<TicketValidation> ticketValidation = scanTicket(ticketId, gateEventId, payload, method);
+        ticketValidation.ifPresent(this::writeBehind);
+        return ticketValidation;
+    }
+
+    private Optional<TicketValidation> scanTicket(UUID ticketId, UUID gateEventId, String payload,
+                                                  TicketValidationMethodEnum method) {
+        Collection<Gate> candidates = gateEventId == null
+                ? gates.values()
+                : Optional.ofNullable(gates.get(gateEventId)).map(List::of).orElse(List.of());
+        for(Gate gate : candidates) {
+            long stamp = gate.lock.readLock();
+            try {
+                int slot = gate.manifest.slotOfTicket(ticketId);
+                if(slot == GateManifest.MISSING) {
+                    continue;
+                }
+                if(gate.manifest.isRevoked(slot)
+                        || (payload != null && gate.manifest.payloadHashAt(slot) != GateManifest.payloadHash(payload))) {
+                    return Optional.empty();
+                }
+                return Optional.of(scan(gate, slot, method));
+            } finally {
+                gate.lock.unlockRead(stamp);
+            }
+        }
+        return Optional.empty();
+    }
+
+    //The validation handed back only knows the ids of its ticket, ticket type and event, the row is written on the
+    //next flush
+    private TicketValidation scan(Gate gate, int slot, TicketValidationMethodEnum method) {
+        TicketValidationStatusEnum status = gate.manifest.markScanned(slot)
+                ? TicketValidationStatusEnum.VALID
+                : TicketValidationStatusEnum.INVALID;
+        Event event = new Event();
+        event.setId(gate.eventId);
+        TicketType ticketType = new TicketType();
+        ticketType.setId(gate.ticketTypeIds.get(gate.manifest.tagAt(slot)));
+        ticketType.setEvent(event);
+        Ticket ticket = new Ticket();
+        ticket.setId(gate.manifest.ticketIdAt(slot));
+        ticket.setTicketType(ticketType);
+
+        TicketValidation ticketValidation = new TicketValidation();
+        ticketValidation.setTicket(ticket);
+        ticketValidation.setValidationStatus(status);
+        ticketValidation.setValidationMethod(method);
+        ticketValidation.setCreatedAt(LocalDateTime.now());
+        return ticketValidation;
+    }
+
+    //Outside the gate's lock, so a refresh does not wait for the journal's fsync. The scan has been decided by
+    //now, if the journal cannot take it it is written behind from memory like without one.
+    private void writeBehind(TicketValidation ticketValidation) {
+        if(validationJournalService.isEnabled()) {
+            try {
+                validationJournalService.append(ticketValidation,
+                        ticketValidation.getValidationStatus() == TicketValidationStatusEnum.VALID);
+                return;
+            } catch(UncheckedIOException ex) {
+                log.error("Failed to journal a gate validation, writing it behind from memory", ex);
+            }
+        }
+        pending.add(new PendingValidation(ticketValidation.getTicket().getId(), ticketValidation.getValidationStatus(),
+                ticketValidation.getValidationMethod(), ticketValidation.getCreatedAt(), 0));
+        pendingCount.incrementAndGet();
+    }
+
+    //Changes are read outside the gate's lock and applied under it, so scans wait only for the apply. A gate whose
+    //claim ran out and was taken by another node meanwhile is closed here.
+    @Override
+    @Scheduled(fixedDelayString = "${tickets.gate.refresh-interval:2s}")
+    public void refreshGates() {
+        for(Gate gate : gates.values()) {
+            LocalDateTime startedAt = LocalDateTime.now();
+            try {
+                if(!claim(gate.eventId)) {
+                    log.error("Gate for event {} was claimed by another node, closing it here", gate.eventId);
+                    gates.remove(gate.eventId);
+                    flushValidations();
+                    continue;
+                }
+                List<EventQrCodeRow> changed = readOnlyTransaction.execute(status -> {
+                    try(Stream<EventQrCodeRow> rows = qrCodeRepository.streamForGateByEventId(
+                            gate.eventId, gate.refreshedSince)) {
+                        return rows.toList();
+                    }
+                });
+                long stamp = gate.lock.writeLock();
+                try {
+                    changed.forEach(gate::apply);
+                } finally {
+                    gate.lock.unlockWrite(stamp);
+                }
+                gate.refreshedSince = startedAt.minus(REFRESH_OVERLAP);
+            } catch(RuntimeException ex) {
+                log.error("Failed to refresh gate for event {}", gate.eventId, ex);
+            }
+        }
+    }
+
+    //A batch that fails to write goes back on the queue for the next flush, until its validations have been tried
+    //max attempts times. Those are written in ever smaller parts instead, so one that cannot be written does not
+    //hold up the others, and dead-lettered to the log on its own.
+    @Override
+    @Scheduled(fixedDelayString = "${tickets.gate.write-behind.flush-interval:500ms}")
+    public void flushValidations() {
+        List<PendingValidation> batch;
+        while(!(batch = drain()).isEmpty()) {
+            try {
+                writeInTransaction(batch);
+            } catch(RuntimeException ex) {
+                List<PendingValidation> retried = new ArrayList<>(batch.size());
+                List<PendingValidation> exhausted = new ArrayList<>();
+                for(PendingValidation validation : batch) {
+                    PendingValidation next = validation.retried();
+                    (next.attempts() < maxAttempts ? retried : exhausted).add(next);
+                }
+                log.error("Failed to write {} gate validations, retrying {} on the next flush",
+                        batch.size(), retried.size(), ex);
+                pending.addAll(retried);
+                pendingCount.addAndGet(retried.size());
+                writeApart(exhausted);
+                return;
+            }
+        }
+    }
+
+    private void writeApart(List<PendingValidation> validations) {
+        if(validations.isEmpty()) {
+            return;
+        }
+        try {
+            writeInTransaction(validations);
+        } catch(RuntimeException ex) {
+            if(validations.size() == 1) {
+                PendingValidation validation = validations.get(0);
+                log.error("Dropping gate validation of ticket {} ({} by {} at {}) after {} attempts",
+                        validation.ticketId(), validation.status(), validation.method(), validation.scannedAt(),
+                        validation.attempts(), ex);
+                deadLettered.increment();
+                return;
+            }
+            int half = validations.size() / 2;
+            writeApart(validations.subList(0, half));
+            writeApart(validations.subList(half, validations.size()));
+        }
+    }
+
+    private void writeInTransaction(List<PendingValidation> batch) {
+        transactionTemplate.executeWithoutResult(status -> write(batch));
+    }
+
+    private List<PendingValidation> drain() {
+        List<PendingValidation> batch = new ArrayList<>(batchSize);
+        PendingValidation next;
+        while(batch.size() < batchSize && (next = pending.poll()) != null) {
+            batch.add(next);
+        }
+        pendingCount.addAndGet(-batch.size());
+        return batch;
+    }
+
+    //Validations are inserted and tickets let in at the time of their scan rather than of the flush
+    private void write(List<PendingValidation> batch) {
+        List<TicketValidation> ticketValidations = new ArrayList<>(batch.size());
+        Map<UUID, LocalDateTime> admissions = new HashMap<>();
+        for(PendingValidation validation : batch) {
+            TicketValidation ticketValidation = new TicketValidation();
+            ticketValidation.setTicket(ticketRepository.getReferenceById(validation.ticketId()));
+            ticketValidation.setValidationStatus(validation.status());
+            ticketValidation.setValidationMethod(validation.method());
+            ticketValidation.setCreatedAt(validation.scannedAt());
+            ticketValidations.add(ticketValidation);
+            if(validation.status() == TicketValidationStatusEnum.VALID) {
+                admissions.putIfAbsent(validation.ticketId(), validation.scannedAt());
+            }
+        }
+        ticketValidationRepository.insertAll(ticketValidations);
+
+        if(!admissions.isEmpty()) {
+            int admitted = ticketRepository.admitEach(admissions).size();
+            if(admitted < admissions.size()) {
+                log.warn("{} tickets let in at a gate had already been let in elsewhere", admissions.size() - admitted);
+            }
+        }
+    }
+
+    private static final class Gate {
+
+        private final UUID eventId;
+        //Scans share it, applying changes takes it alone
+        private final StampedLock lock = new StampedLock();
+        private GateManifest manifest;
+        //Numbered by the tag of their tickets' slots
+        private final List<UUID> ticketTypeIds = new ArrayList<>();
+        private volatile LocalDateTime refreshedSince;
+
+        private Gate(UUID eventId, GateManifest manifest) {
+            this.eventId = eventId;
+            this.manifest = manifest;
+        }
+
+        //A code that is no longer active or whose ticket was cancelled is revoked, any other is added, growing
+        //the manifest to twice its capacity, up to the largest there is, when it is full
+        private void apply(EventQrCodeRow row) {
+            if(row.getStatus() != QrCodeStatusEnum.ACTIVE || row.getTicketStatus() != TicketStatusEnum.PURCHASED) {
+                int slot = manifest.slotOfQrCode(row.getId());
+                if(slot != GateManifest.MISSING) {
+                    manifest.revoke(slot);
+                }
+                return;
+            }
+
+            //Codes stored before payloads were encode their own id
+            String payload = row.getPayload() == null ? row.getId().toString() : row.getPayload();
+            long payloadHash = GateManifest.payloadHash(payload);
+            int ticketType = ticketTypeIds.indexOf(row.getTicketTypeId());
+            if(ticketType < 0) {
+                ticketType = ticketTypeIds.size();
+                ticketTypeIds.add(row.getTicketTypeId());
+            }
+            int slot = manifest.add(row.getId(), row.getTicketId(), payloadHash, ticketType);
+            if(slot == GateManifest.MISSING && manifest.capacity() < GateManifest.MAX_CAPACITY) {
+                manifest = manifest.grow((int) Math.min(manifest.capacity() * 2L, GateManifest.MAX_CAPACITY));
+                slot = manifest.add(row.getId(), row.getTicketId(), payloadHash, ticketType);
+            }
+            //Past the largest manifest there is, the code is left to the database
+            if(slot == GateManifest.MISSING) {
+                return;
+            }
+            if(row.getAdmittedAt() != null) {
+                manifest.markScanned(slot);
+            }
+        }
+    }
+
+    private record PendingValidation(UUID ticketId, TicketValidationStatusEnum status,
+                                     TicketValidationMethodEnum method, LocalDateTime scannedAt, int attempts) {
+
+        private PendingValidation retried() {
+            return new PendingValidation(ticketId, status, method, scannedAt, attempts + 1);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.ticketplatform.tickets.services.impl;
+
+import com.ticketplatform.tickets.domain.IdempotentResponse;
+import com.ticketplatform.tickets.domain.entities.IdempotencyKey;
+import com.ticketplatform.tickets.domain.entities.IdempotencyKeyStatusEnum;
+import com.ticketplatform.tickets.exceptions.IdempotencyKeyException;
+import com.ticketplatform.tickets.repositories.IdempotencyKeyRepository;
+import com.ticketplatform.tickets.services.IdempotencyService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import jakarta.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+//Retried purchases are answered from a bounded in-memory LRU of recent responses, falling back to the
+//idempotency_keys table for keys this node has not seen or has already evicted. Only the request that
+//manages to insert the key row runs the purchase, so concurrent retries cannot buy twice. The purchase runs in
+//the same transaction that completes the key and holds its row lock throughout, so a retry cannot take over a
+//key whose purchase is still running and there is no window where a ticket is bought but the key is not.
+//A purchase that runs its own transaction, e.g. on the purchase sequencer's thread, locks and completes the key in it.
+@Service
+@Slf4j
+public class IdempotencyServiceImpl implements IdempotencyService {
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final IdempotencyKeyRepository idempotencyKeyRepository;
+    private final TransactionTemplate transaction;
+    private final TransactionTemplate requiresNewTransaction;
+
+    private final Duration keyTtl;
+    private final Duration inProgressTimeout;
+
+    private final Map<CacheKey, CachedResponse> responses;
+
+    private final Counter memoryReplays;
+    private final Counter databaseReplays;
+    private final Counter inProgressConflicts;
+    private final Counter fingerprintMismatches;
+
+    public IdempotencyServiceImpl(
+            IdempotencyKeyRepository idempotencyKeyRepository,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${tickets.idempotency.key-ttl:24h}") Duration keyTtl,
+            @Value("${tickets.idempotency.in-progress-timeout:1m}") Duration inProgressTimeout,
+            @Value("${tickets.idempotency.cache-size:10000}") int cacheSize) {
+        this.idempotencyKeyRepository = idempotencyKeyRepository;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.requiresNewTransaction = new TransactionTemplate(transactionManager);
+        this.requiresNewTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.keyTtl = keyTtl;
+        this.inProgressTimeout = inProgressTimeout;
+
+        this.responses = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, CachedResponse> eldest) {
+                return size() > cacheSize;
+            }
+        });
+        meterRegistry.gaugeMapSize("tickets.idempotency.cache.size", Tags.empty(), responses);
+
+        this.memoryReplays = replayCounter(meterRegistry, "memory");
+        this.databaseReplays = replayCounter(meterRegistry, "database");
+        this.inProgressConflicts = conflictCounter(meterRegistry, "in_progress");
+        this.fingerprintMismatches = conflictCounter(meterRegistry, "fingerprint_mismatch");
+    }
+
+    @Override
+    public IdempotentResponse execute(UUID userId, String idempotencyKey, String requestFingerprint,
+                                      Supplier<IdempotentResponse> request) {
+        return executeCompletingKey(userId, idempotencyKey, requestFingerprint, idempotencyKeyId ->
+                transaction.execute(status -> {
+                    //Locks the row until the purchase commits
+                    if(!lockInProgress(idempotencyKeyId)) {
+                        throw new IdempotencyKeyException("A request with this idempotency key is still being processed");
+                    }
+                    IdempotentResponse purchased = request.get();
+                    complete(idempotencyKeyId, purchased);
+                    return purchased;
+                }));
+    }
+
+    //The request is handed the id of the key it claimed and has to lock and complete it in the transaction
+    //that does its work
+    @Override
+    public IdempotentResponse executeCompletingKey(UUID userId, String idempotencyKey, String requestFingerprint,
+                                                   Function<UUID, IdempotentResponse> request) {
+        if(idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new IdempotencyKeyException(
+                    String.format("Idempotency key must be between 1 and %d characters", MAX_KEY_LENGTH));
+        }
+
+        CacheKey cacheKey = new CacheKey(userId, idempotencyKey);
+        CachedResponse cached = responses.get(cacheKey);
+        if(cached != null && cached.expiresAt().isAfter(LocalDateTime.now())) {
+            checkFingerprint(cached.requestFingerprint(), requestFingerprint);
+            memoryReplays.increment();
+            return replayOf(cached.response());
+        }
+
+        IdempotencyKey claimed = null;
+        //Two goes: the second only happens when the row found the first time had expired and was removed
+        for(int attempt = 0; claimed == null && attempt < 2; attempt++) {
+            try {
+                claimed = requiresNewTransaction.execute(status ->
+                        idempotencyKeyRepository.saveAndFlush(IdempotencyKey.builder()
+                                .userId(userId)
+                                .idempotencyKey(idempotencyKey)
+                                .requestFingerprint(requestFingerprint)
+                                .status(IdempotencyKeyStatusEnum.IN_PROGRESS)
+                                .expiresAt(LocalDateTime.now().plus(inProgressTimeout))
+                                .build()));
+            } catch (DataIntegrityViolationException ex) {
+                IdempotentResponse stored = storedResponse(cacheKey, requestFingerprint);
+                if(stored != null) {
+                    return stored;
+                }
+            }
+        }
+        if(claimed == null) {
+            throw new IdempotencyKeyException("A request with this idempotency key is still being processed");
+        }
+
+        UUID claimedId = claimed.getId();
+        IdempotentResponse response;
+        try {
+            response = request.apply(claimedId);
+        } catch (RuntimeException ex) {
+            //Nothing was bought, so a retry with the same key should be free to run the purchase again
+            requiresNewTransaction.executeWithoutResult(status ->
+                    idempotencyKeyRepository.deleteByIdAndStatus(claimedId, IdempotencyKeyStatusEnum.IN_PROGRESS.name()));
+            throw ex;
+        }
+
+        responses.put(cacheKey, new CachedResponse(requestFingerprint, response, LocalDateTime.now().plus(keyTtl)));
+        return response;
+    }
+
+    //Takes the row lock, which the caller's transaction then holds until it commits. False when the key expired
+    //and was taken over by a retry before we got here, the key is then left to that retry.
+    @Override
+    public boolean lockInProgress(UUID idempotencyKeyId) {
+        if(idempotencyKeyRepository.extendInProgress(idempotencyKeyId, LocalDateTime.now().plus(inProgressTimeout)) == 0) {
+            inProgressConflicts.increment();
+            return false;
+        }
+        return true;
+    }
+
+    //Joins the caller's transaction, so the key completes exactly when the purchase commits
+    @Override
+    public void complete(UUID idempotencyKeyId, IdempotentResponse response) {
+        IdempotencyKey completed = idempotencyKeyRepository.findById(idempotencyKeyId).orElseThrow(() ->
+                new IdempotencyKeyException("A request with this idempotency key is still being processed"));
+        completed.setStatus(IdempotencyKeyStatusEnum.COMPLETED);
+        completed.setResponseStatus(response.getStatus());
+        completed.setResponseBody(response.getBody());
+        completed.setExpiresAt(LocalDateTime.now().plus(keyTtl));
+        idempotencyKeyRepository.save(completed);
+    }
+
+    @Override
+    @Transactional
+    @Scheduled(fixedDelayString = "${tickets.idempotency.purge-interval:10m}",
+            initialDelayString = "${tickets.idempotency.purge-interval:10m}")
+    public void purgeExpiredKeys() {
+        int purged = idempotencyKeyRepository.deleteExpired(LocalDateTime.now());
+        if(purged > 0) {
+            log.info("Purged {} expired idempotency keys", purged);
+        }
+    }
+
+    //Returns the response stored for a key another request already holds, or null when that row had
+    //expired and was removed so the key can be claimed again
+    private IdempotentResponse storedResponse(CacheKey cacheKey, String requestFingerprint) {
+        IdempotencyKey existing = idempotencyKeyRepository
+                .findByUserIdAndIdempotencyKey(cacheKey.userId(), cacheKey.idempotencyKey())
+                .orElse(null);
+        if(existing == null) {
+            return null;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        if(existing.getExpiresAt().isBefore(now)) {
+            //A finished key past its window, or a request that never finished, e.g. because its node went away
+            requiresNewTransaction.executeWithoutResult(status ->
+                    idempotencyKeyRepository.deleteByIdIfExpired(existing.getId(), now));
+            return null;
+        }
+
+        checkFingerprint(existing.getRequestFingerprint(), requestFingerprint);
+        if(existing.getStatus() == IdempotencyKeyStatusEnum.IN_PROGRESS) {
+            inProgressConflicts.increment();
+            throw new IdempotencyKeyException("A request with this idempotency key is still being processed");
+        }
+
+        IdempotentResponse response = new IdempotentResponse(existing.getResponseStatus(), existing.getResponseBody(), false);
+        responses.put(cacheKey, new CachedResponse(existing.getRequestFingerprint(), response, existing.getExpiresAt()));
+        databaseReplays.increment();
+        return replayOf(response);
+    }
+
+    private void checkFingerprint(String expected, String actual) {
+        if(!expected.equals(actual)) {
+            fingerprintMismatches.increment();
+            throw new IdempotencyKeyException("Idempotency key was already used for a different request");
+        }
+    }
+
+    private static IdempotentResponse replayOf(IdempotentResponse response) {
+        return new IdempotentResponse(response.getStatus(), response.getBody(), true);
+    }
+
+    private static Counter replayCounter(MeterRegistry meterRegistry, String source) {
+        return Counter.builder("tickets.idempotency.replays")
+                .description("Retried requests answered with a stored response instead of running again")
+                .tag("source", source)
+                .register(meterRegistry);
+    }
+
+    private static Counter conflictCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("tickets.idempotency.conflicts")
+                .description("Requests refused because their idempotency key could not be used")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    private record CacheKey(UUID userId, String idempotencyKey) {
+    }
+
+    private record CachedResponse(String requestFingerprint, IdempotentResponse response, LocalDateTime expiresAt) {
+    }
+}
@@ -0,0 +1,323 @@
+package com.ticketplatform.tickets.services.impl;
+
+import com.ticketplatform.tickets.domain.IdempotentResponse;
+import com.ticketplatform.tickets.domain.entities.Ticket;
+import com.ticketplatform.tickets.domain.entities.TicketQrCodeStatusEnum;
+import com.ticketplatform.tickets.domain.entities.TicketStatusEnum;
+import com.ticketplatform.tickets.domain.entities.TicketType;
+import com.ticketplatform.tickets.domain.entities.User;
+import com.ticketplatform.tickets.exceptions.IdempotencyKeyException;
+import com.ticketplatform.tickets.exceptions.TicketTypeNotFoundException;
+import com.ticketplatform.tickets.exceptions.TicketsSoldOutException;
+import com.ticketplatform.tickets.exceptions.UserNotFoundException;
+import com.ticketplatform.tickets.repositories.TicketRepository;
+import com.ticketplatform.tickets.repositories.TicketTypeRepository;
+import com.ticketplatform.tickets.repositories.UserRepository;
+import com.ticketplatform.tickets.services.IdempotencyService;
+import com.ticketplatform.tickets.services.PurchaseSequencerService;
+import com.ticketplatform.tickets.services.QrCodeOutboxService;
+import com.ticketplatform.tickets.services.SoldOutRegistryService;
+import com.ticketplatform.tickets.services.TicketBlockLeaseService;
+import com.ticketplatform.tickets.services.TicketInventoryService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+//Single-writer purchase engine. Every purchase for a ticket type goes through that ticket type's own
+//sequencer, which collects requests for up to maxBatchDelay (or maxBatchSize requests), claims inventory
+//for the whole batch with one conditional update and writes the tickets in the same transaction. Callers block
+//on a future, which is cheap when the request is running on a virtual thread. With block leases the batch sells
+//from this node's block first, and a purchase sent with an idempotency key has the key completed in the batch's
+//transaction, so the key and the ticket commit together.
+//Sequencers are only created for ticket types that exist and are dropped once they run out of work, so
+//purchases for made-up ids cannot pile them up.
+@Service
+@Slf4j
+public class PurchaseSequencerServiceImpl implements PurchaseSequencerService {
+
+    private final UserRepository userRepository;
+    private final TicketTypeRepository ticketTypeRepository;
+    private final TicketRepository ticketRepository;
+    private final QrCodeOutboxService qrCodeOutboxService;
+    private final SoldOutRegistryService soldOutRegistryService;
+    private final TicketInventoryService ticketInventoryService;
+    private final TicketBlockLeaseService ticketBlockLeaseService;
+    private final IdempotencyService idempotencyService;
+    private final TransactionTemplate transactionTemplate;
+
+    private final boolean enabled;
+    private final int maxBatchSize;
+    private final Duration maxBatchDelay;
+
+    private final ConcurrentMap<UUID, Sequencer> sequencers = new ConcurrentHashMap<>();
+
+    public PurchaseSequencerServiceImpl(
+            UserRepository userRepository,
+            TicketTypeRepository ticketTypeRepository,
+            TicketRepository ticketRepository,
+            QrCodeOutboxService qrCodeOutboxService,
+            SoldOutRegistryService soldOutRegistryService,
+            TicketInventoryService ticketInventoryService,
+            TicketBlockLeaseService ticketBlockLeaseService,
+            IdempotencyService idempotencyService,
+            PlatformTransactionManager transactionManager,
+            @Value("${tickets.purchase.sequencer.enabled:false}") boolean enabled,
+            @Value("${tickets.purchase.sequencer.max-batch-size:200}") int maxBatchSize,
+            @Value("${tickets.purchase.sequencer.max-batch-delay:5ms}") Duration maxBatchDelay) {
+        this.userRepository = userRepository;
+        this.ticketTypeRepository = ticketTypeRepository;
+        this.ticketRepository = ticketRepository;
+        this.qrCodeOutboxService = qrCodeOutboxService;
+        this.soldOutRegistryService = soldOutRegistryService;
+        this.ticketInventoryService = ticketInventoryService;
+        this.ticketBlockLeaseService = ticketBlockLeaseService;
+        this.idempotencyService = idempotencyService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchDelay = maxBatchDelay;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public CompletableFuture<Ticket> submitPurchase(UUID userId, UUID ticketTypeId) {
+        return submit(new PurchaseRequest(userId, null, null, new CompletableFuture<>()), ticketTypeId);
+    }
+
+    @Override
+    public Ticket purchaseTicket(UUID userId, UUID ticketTypeId) {
+        return await(submitPurchase(userId, ticketTypeId));
+    }
+
+    //The key must already be claimed by the caller, it is locked and completed with keyResponse in the batch
+    //that sells the ticket
+    @Override
+    public Ticket purchaseTicket(UUID userId, UUID ticketTypeId, UUID idempotencyKeyId, IdempotentResponse keyResponse) {
+        return await(submit(new PurchaseRequest(userId, idempotencyKeyId, keyResponse, new CompletableFuture<>()), ticketTypeId));
+    }
+
+    private CompletableFuture<Ticket> submit(PurchaseRequest request, UUID ticketTypeId) {
+        if(soldOutRegistryService.isSoldOut(ticketTypeId)) {
+            return CompletableFuture.failedFuture(new TicketsSoldOutException());
+        }
+        if(!sequencers.containsKey(ticketTypeId) && !ticketTypeRepository.existsById(ticketTypeId)) {
+            return CompletableFuture.failedFuture(new TicketTypeNotFoundException(
+                    String.format("Ticket type with ID %s was not found", ticketTypeId)));
+        }
+        //Queued inside compute, so a sequencer is never dropped between being looked up and taking the request
+        Sequencer sequencer = sequencers.compute(ticketTypeId, (id, existing) -> {
+            Sequencer target = existing == null ? new Sequencer(id) : existing;
+            target.queue.add(request);
+            return target;
+        });
+        sequencer.startDraining();
+        return request.result();
+    }
+
+    private static Ticket await(CompletableFuture<Ticket> result) {
+        try {
+            return result.join();
+        } catch (CompletionException ex) {
+            if(ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+
+    private record PurchaseRequest(UUID userId, UUID idempotencyKeyId, IdempotentResponse keyResponse,
+                                   CompletableFuture<Ticket> result) {
+    }
+
+    //inventoryLeaseIds holds, for each allocated request, the block its ticket came from or null for the database
+    private record Allocation(List<PurchaseRequest> allocated, List<UUID> inventoryLeaseIds, TicketType ticketType,
+                              List<Ticket> tickets) {
+    }
+
+    private final class Sequencer {
+
+        private final UUID ticketTypeId;
+        private final BlockingQueue<PurchaseRequest> queue = new LinkedBlockingQueue<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        private Sequencer(UUID ticketTypeId) {
+            this.ticketTypeId = ticketTypeId;
+        }
+
+        private void startDraining() {
+            if(draining.compareAndSet(false, true)) {
+                Thread.ofVirtual().name("purchase-sequencer-" + ticketTypeId).start(this::drain);
+            }
+        }
+
+        //Runs while there is work and then lets the thread finish, so idle ticket types cost nothing.
+        //The re-check after clearing the flag picks up a request that arrived while we were stopping.
+        private void drain() {
+            do {
+                try {
+                    while(!queue.isEmpty()) {
+                        commit(ticketTypeId, collectBatch());
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    failAll(new ArrayList<>(queue), ex);
+                    queue.clear();
+                } finally {
+                    draining.set(false);
+                }
+            } while(!queue.isEmpty() && draining.compareAndSet(false, true));
+            //A request queued after this check finds the sequencer still there and drains it itself
+            sequencers.computeIfPresent(ticketTypeId, (id, sequencer) ->
+                    sequencer == this && queue.isEmpty() && !draining.get() ? null : sequencer);
+        }
+
+        private List<PurchaseRequest> collectBatch() throws InterruptedException {
+            List<PurchaseRequest> batch = new ArrayList<>(maxBatchSize);
+            long deadline = System.nanoTime() + maxBatchDelay.toNanos();
+            while(batch.size() < maxBatchSize) {
+                PurchaseRequest request = queue.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if(request == null) {
+                    break;
+                }
+                batch.add(request);
+            }
+            return batch;
+        }
+    }
+
+    //Claiming and writing the tickets commit together, a batch that fails to write leaves its inventory unsold
+    private void commit(UUID ticketTypeId, List<PurchaseRequest> batch) {
+        if(batch.isEmpty()) {
+            return;
+        }
+        Allocation allocation;
+        try {
+            allocation = transactionTemplate.execute(status -> {
+                Allocation allocated = allocate(ticketTypeId, batch);
+                return allocated.allocated().isEmpty()
+                        ? allocated
+                        : new Allocation(allocated.allocated(), allocated.inventoryLeaseIds(), allocated.ticketType(),
+                                createTickets(allocated));
+            });
+        } catch (RuntimeException ex) {
+            log.error("Failed to sell {} tickets for ticket type {}", batch.size(), ticketTypeId, ex);
+            //Requests turned away already keep their answer
+            failAll(batch, ex);
+            return;
+        }
+
+        List<Ticket> tickets = allocation.tickets();
+        for(int i = 0; i < tickets.size(); i++) {
+            allocation.allocated().get(i).result().complete(tickets.get(i));
+        }
+    }
+
+    //Resolves the batch against the database: unknown users and keys taken over by a retry are rejected, the
+    //rest are served first come first served from this node's block and then a single claim, and whoever is left
+    //over is sold out
+    private Allocation allocate(UUID ticketTypeId, List<PurchaseRequest> batch) {
+        TicketType ticketType = ticketTypeRepository.findById(ticketTypeId).orElse(null);
+        if(ticketType == null) {
+            failAll(batch, new TicketTypeNotFoundException(
+                    String.format("Ticket type with ID %s was not found", ticketTypeId)));
+            return new Allocation(List.of(), List.of(), null, List.of());
+        }
+
+        Set<UUID> userIds = batch.stream().map(PurchaseRequest::userId).collect(Collectors.toSet());
+        Set<UUID> knownUserIds = userRepository.findAllById(userIds).stream()
+                .map(User::getId)
+                .collect(Collectors.toSet());
+
+        List<PurchaseRequest> purchasable = new ArrayList<>(batch.size());
+        for(PurchaseRequest request : batch) {
+            if(!knownUserIds.contains(request.userId())) {
+                request.result().completeExceptionally(new UserNotFoundException(
+                        String.format("User with ID %s was not found", request.userId())));
+            } else if(request.idempotencyKeyId() != null && !idempotencyService.lockInProgress(request.idempotencyKeyId())) {
+                request.result().completeExceptionally(new IdempotencyKeyException(
+                        "A request with this idempotency key is still being processed"));
+            } else {
+                purchasable.add(request);
+            }
+        }
+        if(purchasable.isEmpty()) {
+            return new Allocation(List.of(), List.of(), ticketType, List.of());
+        }
+
+        //Block tickets were claimed from the database when the block was leased, which also means the database
+        //runs out while this node's next block still has some, so those are sold last
+        List<UUID> inventoryLeaseIds = new ArrayList<>(purchasable.size());
+        takeFromLease(ticketType, purchasable.size(), inventoryLeaseIds, false);
+        int fromDatabase = ticketInventoryService.claimTicketsUpTo(ticketType, purchasable.size() - inventoryLeaseIds.size());
+        for(int i = 0; i < fromDatabase; i++) {
+            inventoryLeaseIds.add(null);
+        }
+        takeFromLease(ticketType, purchasable.size(), inventoryLeaseIds, true);
+
+        int claimed = inventoryLeaseIds.size();
+        for(PurchaseRequest request : purchasable.subList(claimed, purchasable.size())) {
+            request.result().completeExceptionally(new TicketsSoldOutException());
+        }
+        return new Allocation(List.copyOf(purchasable.subList(0, claimed)), inventoryLeaseIds, ticketType, List.of());
+    }
+
+    private void takeFromLease(TicketType ticketType, int wanted, List<UUID> inventoryLeaseIds, boolean afterRefill) {
+        if(!ticketBlockLeaseService.isEnabled()) {
+            return;
+        }
+        while(inventoryLeaseIds.size() < wanted) {
+            Optional<UUID> leaseId = afterRefill
+                    ? ticketBlockLeaseService.claimTicketAfterRefill(ticketType)
+                    : ticketBlockLeaseService.claimTicket(ticketType);
+            if(leaseId.isEmpty()) {
+                return;
+            }
+            inventoryLeaseIds.add(leaseId.get());
+        }
+    }
+
+    private List<Ticket> createTickets(Allocation allocation) {
+        TicketType ticketType = allocation.ticketType();
+        List<PurchaseRequest> allocated = allocation.allocated();
+        Map<UUID, User> users = userRepository.findAllById(
+                allocated.stream().map(PurchaseRequest::userId).collect(Collectors.toSet())
+        ).stream().collect(Collectors.toMap(User::getId, Function.identity()));
+
+        List<Ticket> tickets = new ArrayList<>(allocated.size());
+        for(int i = 0; i < allocated.size(); i++) {
+            Ticket ticket = new Ticket();
+            ticket.setStatus(TicketStatusEnum.PURCHASED);
+            ticket.setTicketType(ticketType);
+            ticket.setPurchaser(users.get(allocated.get(i).userId()));
+            ticket.setInventoryLeaseId(allocation.inventoryLeaseIds().get(i));
+            ticket.setQrCodeStatus(TicketQrCodeStatusEnum.PENDING);
+            tickets.add(ticket);
+        }
+        List<Ticket> savedTickets = ticketRepository.saveAll(tickets);
+        qrCodeOutboxService.enqueue(savedTickets);
+
+        for(PurchaseRequest request : allocated) {
+            if(request.idempotencyKeyId() != null) {
+                idempotencyService.complete(request.idempotencyKeyId(), request.keyResponse());
+            }
+        }
+        return savedTickets;
+    }
+
+    private static void failAll(List<PurchaseRequest> requests, Throwable cause) {
+        requests.forEach(request -> request.result().completeExceptionally(cause));
+    }
+}
@@ -0,0 +1,224 @@
+package com.ticketplatform.tickets.services.impl;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Binarizer;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeReader;
+import com.ticketplatform.tickets.exceptions.InvalidQrCodeException;
+import com.ticketplatform.tickets.exceptions.QrCodeDecoderBusyException;
+import com.ticketplatform.tickets.services.QrCodeDecodeService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+//Finds the QR code in a photo taken by a door device that cannot decode it itself. Decoding is CPU bound and
+//photos arrive in bursts when the doors open, so it runs on a small fixed pool with a bounded queue: a burst
+//waits its turn or is turned away with a 503 rather than taking the CPU from the rest of the API.
+//Photos are decoded subsampled to about max-dimension pixels a side, which is plenty for a code filling a fair
+//part of the frame and cuts everything after the JPEG decode by the square of the factor. Each pass is
+//tried in turn until one finds the code: the hybrid binarizer copes with uneven light and is right most of the
+//time, looking harder and then the global histogram binarizer catch the blurred and the low contrast.
+@Service
+@Slf4j
+public class QrCodeDecodeServiceImpl implements QrCodeDecodeService {
+
+    private static final Map<DecodeHintType, Object> HINTS = Map.of(
+            DecodeHintType.POSSIBLE_FORMATS, List.of(BarcodeFormat.QR_CODE));
+    private static final Map<DecodeHintType, Object> TRY_HARDER_HINTS = Map.of(
+            DecodeHintType.POSSIBLE_FORMATS, List.of(BarcodeFormat.QR_CODE),
+            DecodeHintType.TRY_HARDER, Boolean.TRUE);
+
+    private static final List<Pass> PASSES = List.of(
+            new Pass(HybridBinarizer::new, HINTS),
+            new Pass(HybridBinarizer::new, TRY_HARDER_HINTS),
+            new Pass(GlobalHistogramBinarizer::new, TRY_HARDER_HINTS));
+
+    private final int maxDimension;
+    private final long maxPixels;
+    private final Duration timeout;
+
+    private final ThreadPoolExecutor workers;
+    private final Timer decoded;
+    private final Timer unreadable;
+    private final Timer queueWait;
+    private final Counter rejected;
+
+    public QrCodeDecodeServiceImpl(
+            MeterRegistry meterRegistry,
+            @Value("${tickets.qr-codes.decode.workers:2}") int workerCount,
+            @Value("${tickets.qr-codes.decode.queue-capacity:64}") int queueCapacity,
+            @Value("${tickets.qr-codes.decode.timeout:5s}") Duration timeout,
+            @Value("${tickets.qr-codes.decode.max-dimension:1280}") int maxDimension,
+            @Value("${tickets.qr-codes.decode.max-pixels:40000000}") long maxPixels) {
+        this.maxDimension = maxDimension;
+        this.maxPixels = maxPixels;
+        this.timeout = timeout;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> Thread.ofPlatform().name("qr-code-decode-" + threadNumber.incrementAndGet()).daemon().unstarted(runnable),
+                new ThreadPoolExecutor.AbortPolicy());
+
+        //p50 and p99 are published with the timers, for the doors-open dashboards
+        this.decoded = decodeTimer(meterRegistry, "decoded");
+        this.unreadable = decodeTimer(meterRegistry, "unreadable");
+        this.queueWait = Timer.builder("tickets.qr-codes.decode.queue-wait")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.rejected = Counter.builder("tickets.qr-codes.decode.rejected").register(meterRegistry);
+        Gauge.builder("tickets.qr-codes.decode.queued", workers, pool -> pool.getQueue().size())
+                .register(meterRegistry);
+    }
+
+    private static Timer decodeTimer(MeterRegistry meterRegistry, String result) {
+        return Timer.builder("tickets.qr-codes.decode")
+                .tag("result", result)
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void stopWorkers() throws InterruptedException {
+        workers.shutdownNow();
+        workers.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    //Waits at most the timeout, request threads are virtual so waiting costs them nothing
+    @Override
+    public String decode(byte[] image) {
+        long submittedAt = System.nanoTime();
+        Future<String> decoding;
+        try {
+            decoding = workers.submit(() -> {
+                queueWait.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+                return decodeNow(image);
+            });
+        } catch(RejectedExecutionException ex) {
+            rejected.increment();
+            throw new QrCodeDecoderBusyException("Too many images waiting to be decoded, try again shortly");
+        }
+
+        try {
+            return decoding.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch(TimeoutException ex) {
+            decoding.cancel(true);
+            rejected.increment();
+            throw new QrCodeDecoderBusyException("Decoding the image took too long, try again shortly");
+        } catch(ExecutionException ex) {
+            if(ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new InvalidQrCodeException("Image could not be read", ex.getCause());
+        } catch(InterruptedException ex) {
+            decoding.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new QrCodeDecoderBusyException("Interrupted while decoding the image", ex);
+        }
+    }
+
+    private String decodeNow(byte[] image) {
+        long start = System.nanoTime();
+        LuminanceSource source = luminanceOf(readSubsampled(image));
+        QRCodeReader reader = new QRCodeReader();
+        for(Pass pass : PASSES) {
+            try {
+                String text = reader.decode(new BinaryBitmap(pass.binarizer().apply(source)), pass.hints()).getText();
+                decoded.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                return text;
+            } catch(ReaderException ex) {
+                reader.reset();
+            }
+        }
+        unreadable.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        throw new InvalidQrCodeException("No QR code found in the image");
+    }
+
+    //The size is read from the header first, so an oversized upload is refused before any pixel is decoded
+    private BufferedImage readSubsampled(byte[] image) {
+        try(ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(image))) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if(readers == null || !readers.hasNext()) {
+                throw new InvalidQrCodeException("Upload is not an image");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if((long) width * height > maxPixels) {
+                    throw new InvalidQrCodeException("Image is too large");
+                }
+                int subsampling = Math.max(1, Math.max(width, height) / maxDimension);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        } catch(IOException ex) {
+            throw new InvalidQrCodeException("Image could not be read", ex);
+        }
+    }
+
+    //BufferedImageLuminanceSource converts pixel by pixel through the colour model, which took twice as long as
+    //decoding the JPEG. The JPEG reader hands back packed BGR or gray bytes, which are read straight off the raster.
+    private static LuminanceSource luminanceOf(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if(!(image.getRaster().getDataBuffer() instanceof DataBufferByte buffer)
+                || (image.getType() != BufferedImage.TYPE_3BYTE_BGR && image.getType() != BufferedImage.TYPE_BYTE_GRAY)) {
+            return new BufferedImageLuminanceSource(image);
+        }
+        byte[] pixels = buffer.getData();
+        if(image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+            return new PlanarYUVLuminanceSource(pixels, width, height, 0, 0, width, height, false);
+        }
+        //Same weights as ZXing's own conversion, (R + 2G + B) / 4
+        byte[] luminance = new byte[width * height];
+        for(int pixel = 0, offset = 0; pixel < luminance.length; pixel++, offset += 3) {
+            int blue = pixels[offset] & 0xFF;
+            int green = pixels[offset + 1] & 0xFF;
+            int red = pixels[offset + 2] & 0xFF;
+            luminance[pixel] = (byte) ((red + 2 * green + blue) >>> 2);
+        }
+        return new PlanarYUVLuminanceSource(luminance, width, height, 0, 0, width, height, false);
+    }
+
+    private record Pass(Function<LuminanceSource, Binarizer> binarizer, Map<DecodeHintType, Object> hints) {
+    }
+}
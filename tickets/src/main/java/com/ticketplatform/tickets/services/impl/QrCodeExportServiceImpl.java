@@ -0,0 +1,223 @@
+package com.ticketplatform.tickets.services.impl;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.ticketplatform.tickets.domain.QrCodeExportFormat;
+import com.ticketplatform.tickets.domain.entities.QrCodeStatusEnum;
+import com.ticketplatform.tickets.exceptions.EventNotFoundException;
+import com.ticketplatform.tickets.exceptions.QrCodeExportBusyException;
+import com.ticketplatform.tickets.exceptions.QrCodeGenerationException;
+import com.ticketplatform.tickets.repositories.EventRepository;
+import com.ticketplatform.tickets.repositories.QrCodeRepository;
+import com.ticketplatform.tickets.services.QrCodeExportService;
+import com.ticketplatform.tickets.util.QrCodePdfWriter;
+import com.ticketplatform.tickets.util.QrCodePngRenderer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+//Streams every active QR code of an event to the organizer. Rows are read a page at a time in id order, each
+//page in a short transaction of its own so a slow download never holds a pooled connection, are rendered on a
+//fork-join pool shared by all exports and written out in the order they were read as soon as they are done.
+//At most in-flight codes are read ahead of the one being written, which is what bounds the memory an export
+//takes, so it is the same for an event of 500 tickets as for one of 500,000. Only a few exports run at once,
+//any more are turned away before their first byte rather than queueing for the render pool.
+//Printed codes keep the payload stored for the ticket even when dynamic codes are on, as paper cannot rotate.
+@Service
+@Slf4j
+public class QrCodeExportServiceImpl implements QrCodeExportService {
+
+    private static final Map<EncodeHintType, Object> ENCODE_HINTS = Map.of(EncodeHintType.MARGIN, 0);
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    private final QRCodeWriter qrCodeWriter;
+    private final QrCodePngRenderer qrCodePngRenderer;
+    private final QrCodeRepository qrCodeRepository;
+    private final EventRepository eventRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ForkJoinPool renderPool;
+    private final int inFlight;
+    private final Pageable page;
+    private final Semaphore exports;
+
+    public QrCodeExportServiceImpl(
+            QRCodeWriter qrCodeWriter,
+            QrCodePngRenderer qrCodePngRenderer,
+            QrCodeRepository qrCodeRepository,
+            EventRepository eventRepository,
+            TransactionTemplate transactionTemplate,
+            @Value("${tickets.qr-codes.export.parallelism:0}") int parallelism,
+            @Value("${tickets.qr-codes.export.in-flight:256}") int inFlight,
+            @Value("${tickets.qr-codes.export.page-size:500}") int pageSize,
+            @Value("${tickets.qr-codes.export.max-concurrent:2}") int maxConcurrent) {
+        if(inFlight < 1) {
+            throw new IllegalArgumentException("QR code export in-flight must be at least 1");
+        }
+        if(pageSize < 1 || maxConcurrent < 1) {
+            throw new IllegalArgumentException("QR code export page size and max concurrent must be at least 1");
+        }
+        this.qrCodeWriter = qrCodeWriter;
+        this.qrCodePngRenderer = qrCodePngRenderer;
+        this.qrCodeRepository = qrCodeRepository;
+        this.eventRepository = eventRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTransaction.setReadOnly(true);
+        this.renderPool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.inFlight = inFlight;
+        this.page = PageRequest.of(0, pageSize);
+        this.exports = new Semaphore(maxConcurrent);
+    }
+
+    @PreDestroy
+    void stopRenderPool() throws InterruptedException {
+        renderPool.shutdownNow();
+        renderPool.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    //The organizer is checked before the first byte is written, anything failing after that cuts the download
+    //short as the response has been committed already
+    @Override
+    public void exportQrCodesForEvent(UUID organizerId, UUID eventId, QrCodeExportFormat format, OutputStream out)
+            throws IOException {
+        if(eventRepository.findByIdAndOrganizerId(eventId, organizerId).isEmpty()) {
+            throw new EventNotFoundException(String.format("Event with ID '%s' does not exist", eventId));
+        }
+
+        if(!exports.tryAcquire()) {
+            throw new QrCodeExportBusyException("Too many QR code exports are running, try again shortly");
+        }
+        try {
+            OutputStream buffered = new BufferedOutputStream(out, OUTPUT_BUFFER_SIZE);
+            long exported = switch(format) {
+                case ZIP -> exportZip(eventId, buffered);
+                case PDF -> exportPdf(eventId, buffered);
+            };
+            buffered.flush();
+            log.info("Exported {} QR codes for event {} as {}", exported, eventId, format);
+        } finally {
+            exports.release();
+        }
+    }
+
+    //PNGs are deflated already, so entries are stored as they are. The directory at the end of a ZIP lists every
+    //file, which leaves ZipOutputStream holding a small entry per ticket until then; the PDF only keeps offsets.
+    private long exportZip(UUID eventId, OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        zip.setMethod(ZipOutputStream.STORED);
+        CRC32 crc = new CRC32();
+        long exported = export(eventId, this::renderPng, rendered -> {
+            crc.reset();
+            crc.update(rendered.image());
+            ZipEntry entry = new ZipEntry("ticket-" + rendered.ticketId() + ".png");
+            entry.setSize(rendered.image().length);
+            entry.setCompressedSize(rendered.image().length);
+            entry.setCrc(crc.getValue());
+            zip.putNextEntry(entry);
+            zip.write(rendered.image());
+            zip.closeEntry();
+        });
+        zip.finish();
+        return exported;
+    }
+
+    private long exportPdf(UUID eventId, OutputStream out) throws IOException {
+        QrCodePdfWriter pdf = new QrCodePdfWriter(out);
+        long exported = export(eventId, this::encode,
+                encoded -> pdf.add(encoded.modules(), "Ticket " + encoded.ticketId()));
+        pdf.finish();
+        return exported;
+    }
+
+    private <T> long export(UUID eventId, Function<ExportedQrCode, T> render, ExportWriter<T> writer)
+            throws IOException {
+        ArrayDeque<ForkJoinTask<T>> rendering = new ArrayDeque<>(inFlight);
+        long written = 0;
+        try {
+            List<ExportedQrCode> qrCodes = readPage(eventId, null);
+            while(!qrCodes.isEmpty()) {
+                for(ExportedQrCode qrCode : qrCodes) {
+                    rendering.add(renderPool.submit(() -> render.apply(qrCode)));
+                    if(rendering.size() == inFlight) {
+                        writer.write(rendering.poll().join());
+                        written++;
+                    }
+                }
+                qrCodes = readPage(eventId, qrCodes.getLast().id());
+            }
+            while(!rendering.isEmpty()) {
+                writer.write(rendering.poll().join());
+                written++;
+            }
+            return written;
+        } finally {
+            //Only left over when the download failed part way, nobody is waiting for them any more
+            rendering.forEach(task -> task.cancel(false));
+        }
+    }
+
+    //The first page has no lower bound, every later one starts after the last id the previous one ended on
+    private List<ExportedQrCode> readPage(UUID eventId, UUID afterId) {
+        List<ExportedQrCode> qrCodes = readOnlyTransaction.execute(status -> (afterId == null
+                ? qrCodeRepository.findFirstForExportByEventId(eventId, QrCodeStatusEnum.ACTIVE, page)
+                : qrCodeRepository.findNextForExportByEventId(eventId, QrCodeStatusEnum.ACTIVE, afterId, page))
+                .stream()
+                .map(ExportedQrCode::of)
+                .toList());
+        return qrCodes == null ? List.of() : qrCodes;
+    }
+
+    private Rendered renderPng(ExportedQrCode qrCode) {
+        return new Rendered(qrCode.ticketId(), qrCodePngRenderer.render(encode(qrCode).modules()));
+    }
+
+    private Encoded encode(ExportedQrCode qrCode) {
+        try {
+            return new Encoded(qrCode.ticketId(),
+                    qrCodeWriter.encode(qrCode.payload(), BarcodeFormat.QR_CODE, 0, 0, ENCODE_HINTS));
+        } catch(WriterException ex) {
+            throw new QrCodeGenerationException("Failed to generate QR Code", ex);
+        }
+    }
+
+    //Copied off the row inside the page's transaction. Codes stored before payloads were encode their own id.
+    private record ExportedQrCode(UUID id, UUID ticketId, String payload) {
+        private static ExportedQrCode of(QrCodeRepository.QrCodeExportRow row) {
+            return new ExportedQrCode(row.getId(), row.getTicketId(),
+                    row.getPayload() == null ? row.getId().toString() : row.getPayload());
+        }
+    }
+
+    private record Rendered(UUID ticketId, byte[] image) {
+    }
+
+    private record Encoded(UUID ticketId, BitMatrix modules) {
+    }
+
+    @FunctionalInterface
+    private interface ExportWriter<T> {
+        void write(T rendered) throws IOException;
+    }
+}
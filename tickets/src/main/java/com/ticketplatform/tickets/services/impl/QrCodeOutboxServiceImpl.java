@@ -0,0 +1,127 @@
+package com.ticketplatform.tickets.services.impl;
+
+import com.ticketplatform.tickets.domain.entities.QrCodeOutbox;
+import com.ticketplatform.tickets.domain.entities.Ticket;
+import com.ticketplatform.tickets.repositories.QrCodeOutboxRepository;
+import com.ticketplatform.tickets.services.QrCodeOutboxService;
+import com.ticketplatform.tickets.services.QrCodeService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Purchases only write an outbox row next to each ticket, the QR codes are rendered once the purchase has
+//committed by a small fixed pool of workers. The pool's queue is bounded: whatever does not fit, and whatever
+//was left behind by a failure or a restart, is picked up from the outbox table by the poller.
+@Service
+@Slf4j
+public class QrCodeOutboxServiceImpl implements QrCodeOutboxService {
+
+    private final QrCodeOutboxRepository qrCodeOutboxRepository;
+    private final QrCodeService qrCodeService;
+
+    private final int batchSize;
+    private final Duration pollInterval;
+
+    private final ThreadPoolExecutor workers;
+    //Tickets queued or being generated on this node, so the poller does not hand the same ticket out twice
+    private final Set<UUID> inFlight = ConcurrentHashMap.newKeySet();
+
+    public QrCodeOutboxServiceImpl(
+            QrCodeOutboxRepository qrCodeOutboxRepository,
+            QrCodeService qrCodeService,
+            @Value("${tickets.qr-codes.outbox.workers:2}") int workerCount,
+            @Value("${tickets.qr-codes.outbox.queue-capacity:10000}") int queueCapacity,
+            @Value("${tickets.qr-codes.outbox.batch-size:500}") int batchSize,
+            @Value("${tickets.qr-codes.outbox.poll-interval:5s}") Duration pollInterval) {
+        this.qrCodeOutboxRepository = qrCodeOutboxRepository;
+        this.qrCodeService = qrCodeService;
+        this.batchSize = batchSize;
+        this.pollInterval = pollInterval;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> Thread.ofPlatform().name("qr-code-outbox-" + threadNumber.incrementAndGet()).daemon().unstarted(runnable),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    void stopWorkers() throws InterruptedException {
+        //Anything still queued stays in the outbox and is generated by the next node to poll
+        workers.shutdownNow();
+        workers.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void enqueue(List<Ticket> tickets) {
+        List<QrCodeOutbox> entries = tickets.stream()
+                .map(ticket -> QrCodeOutbox.builder().ticketId(ticket.getId()).build())
+                .toList();
+        qrCodeOutboxRepository.saveAll(entries);
+
+        List<UUID> ticketIds = entries.stream().map(QrCodeOutbox::getTicketId).toList();
+        afterCommit(() -> ticketIds.forEach(this::submit));
+    }
+
+    //Only looks at entries older than one poll interval, newer ones are normally still on their way to the
+    //workers from the purchase that wrote them
+    @Override
+    @Scheduled(fixedDelayString = "${tickets.qr-codes.outbox.poll-interval:5s}",
+            initialDelayString = "${tickets.qr-codes.outbox.poll-interval:5s}")
+    public void processPending() {
+        List<UUID> ticketIds = qrCodeOutboxRepository.findTicketIdsCreatedBefore(
+                LocalDateTime.now().minus(pollInterval), PageRequest.of(0, batchSize));
+        ticketIds.forEach(this::submit);
+    }
+
+    private void submit(UUID ticketId) {
+        if(!inFlight.add(ticketId)) {
+            return;
+        }
+        try {
+            workers.execute(() -> {
+                try {
+                    qrCodeService.generatePendingQrCode(ticketId);
+                } catch (RuntimeException ex) {
+                    //The outbox row is still there, so the poller tries again later
+                    log.error("Failed to generate QR code for ticket {}", ticketId, ex);
+                } finally {
+                    inFlight.remove(ticketId);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            inFlight.remove(ticketId);
+            log.debug("QR code outbox queue is full, ticket {} is left for the poller", ticketId);
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
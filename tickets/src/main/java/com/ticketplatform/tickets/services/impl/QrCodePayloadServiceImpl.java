@@ -0,0 +1,243 @@
+package com.ticketplatform.tickets.services.impl;
+
+import com.ticketplatform.tickets.domain.ScannedQrCode;
+import com.ticketplatform.tickets.exceptions.InvalidQrCodeException;
+import com.ticketplatform.tickets.services.QrCodePayloadService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+//QR codes carry their ticket and event signed with a key every gate shares, so a forged code or a code for
+//another event is turned away on the CPU before any database round trip. A payload is the key id, a dot and
+//the Base64 of a format version, the ticket id, the event id and an HMAC-SHA256 truncated to 128 bits.
+//Every configured key verifies and the first one signs, so a key is rotated by putting its replacement first
+//and dropping it once no ticket still needs it. Codes issued before signing, or with no keys configured,
+//carry just the QR code id and are looked up as they always were.
+//
+//In dynamic mode the code shown changes every period, TOTP style: the stored payload is swapped for one that
+//adds the number of the current time window and is signed with a secret derived from the signing key and the
+//ticket id. Nothing is written when the window moves on, the gate recomputes the signature and accepts the
+//current window give or take the allowed skew, so a screenshot stops working soon after it was taken.
+@Service
+@Slf4j
+public class QrCodePayloadServiceImpl implements QrCodePayloadService {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder BASE64_ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder BASE64_DECODER = Base64.getUrlDecoder();
+    private static final Pattern KEY_ID = Pattern.compile("[A-Za-z0-9_-]{1,16}");
+    private static final int MIN_SECRET_LENGTH = 32;
+    private static final byte[] TICKET_SECRET_LABEL = "ticket-secret".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte STATIC_FORMAT = 1;
+    private static final byte DYNAMIC_FORMAT = 2;
+    private static final int STATIC_SIGNED_LENGTH = 1 + 16 + 16;
+    private static final int DYNAMIC_SIGNED_LENGTH = STATIC_SIGNED_LENGTH + 8;
+    private static final int SIGNATURE_LENGTH = 16;
+
+    //Looking a Mac up on every scan took a third of the check, so each thread keeps one and re-keys it per call
+    private static final ThreadLocal<Mac> MACS = ThreadLocal.withInitial(() -> {
+        try {
+            return Mac.getInstance(HMAC_ALGORITHM);
+        } catch(GeneralSecurityException ex) {
+            throw new IllegalStateException("Unable to sign QR code payload", ex);
+        }
+    });
+
+    private final Map<String, SecretKeySpec> keys = new LinkedHashMap<>();
+    private final String signingKeyId;
+
+    private final boolean dynamic;
+    private final long periodMillis;
+    private final int allowedSkewWindows;
+
+    public QrCodePayloadServiceImpl(
+            @Value("${tickets.qr-codes.signing.keys:}") List<String> signingKeys,
+            @Value("${tickets.qr-codes.dynamic.enabled:false}") boolean dynamic,
+            @Value("${tickets.qr-codes.dynamic.period:30s}") Duration period,
+            @Value("${tickets.qr-codes.dynamic.allowed-skew-windows:1}") int allowedSkewWindows) {
+        for(String signingKey : signingKeys) {
+            if(signingKey.isBlank()) {
+                continue;
+            }
+            int separator = signingKey.indexOf(':');
+            String keyId = separator < 0 ? "" : signingKey.substring(0, separator).trim();
+            String secret = signingKey.substring(separator + 1).trim();
+            if(!KEY_ID.matcher(keyId).matches()) {
+                throw new IllegalArgumentException(
+                        "QR code signing keys must be given as <key id>:<secret>, with a key id of up to 16 letters, digits, - or _");
+            }
+            if(secret.length() < MIN_SECRET_LENGTH) {
+                throw new IllegalArgumentException(String.format(
+                        "QR code signing key '%s' must be at least %d characters long", keyId, MIN_SECRET_LENGTH));
+            }
+            keys.put(keyId, new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM));
+        }
+        this.signingKeyId = keys.isEmpty() ? null : keys.keySet().iterator().next();
+        if(signingKeyId == null) {
+            log.info("No QR code signing keys configured, QR codes will carry their id only");
+        }
+
+        if(dynamic && signingKeyId == null) {
+            throw new IllegalArgumentException("Dynamic QR codes need at least one signing key");
+        }
+        if(period.toMillis() < 1000) {
+            throw new IllegalArgumentException("Dynamic QR code period must be at least one second");
+        }
+        this.dynamic = dynamic;
+        this.periodMillis = period.toMillis();
+        this.allowedSkewWindows = allowedSkewWindows;
+    }
+
+    @Override
+    public String createPayload(UUID qrCodeId, UUID ticketId, UUID eventId) {
+        if(signingKeyId == null || ticketId == null || eventId == null) {
+            return qrCodeId.toString();
+        }
+        ByteBuffer payload = ByteBuffer.allocate(STATIC_SIGNED_LENGTH + SIGNATURE_LENGTH);
+        payload.put(STATIC_FORMAT);
+        putUuid(payload, ticketId);
+        putUuid(payload, eventId);
+        payload.put(sign(keys.get(signingKeyId), signingKeyId, payload.array(), STATIC_SIGNED_LENGTH));
+        return signingKeyId + "." + BASE64_ENCODER.encodeToString(payload.array());
+    }
+
+    //Codes that carry only their id stay as they are, there is no ticket in them to derive a secret for
+    @Override
+    public String currentPayload(String storedPayload, Instant now) {
+        if(!dynamic || storedPayload == null || storedPayload.indexOf('.') < 0) {
+            return storedPayload;
+        }
+        ScannedQrCode stored;
+        try {
+            stored = verifyPayload(storedPayload, now);
+        } catch(InvalidQrCodeException ex) {
+            //Signed with a key since dropped, the gate will turn it away whatever is shown
+            return storedPayload;
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(DYNAMIC_SIGNED_LENGTH + SIGNATURE_LENGTH);
+        payload.put(DYNAMIC_FORMAT);
+        putUuid(payload, stored.getTicketId());
+        putUuid(payload, stored.getEventId());
+        payload.putLong(windowOf(now));
+        payload.put(sign(ticketSecret(signingKeyId, stored.getTicketId()), signingKeyId,
+                payload.array(), DYNAMIC_SIGNED_LENGTH));
+        return signingKeyId + "." + BASE64_ENCODER.encodeToString(payload.array());
+    }
+
+    @Override
+    public Optional<Instant> currentPayloadExpiresAt(Instant now) {
+        if(!dynamic) {
+            return Optional.empty();
+        }
+        return Optional.of(Instant.ofEpochMilli((windowOf(now) + 1) * periodMillis));
+    }
+
+    @Override
+    public ScannedQrCode verifyPayload(String payload) {
+        return verifyPayload(payload, Instant.now());
+    }
+
+    //A dynamic code is checked against the time it was scanned, which is earlier than now for scans a door device
+    //queued while it was offline
+    @Override
+    public ScannedQrCode verifyPayload(String payload, Instant now) {
+        if(payload == null || payload.isBlank()) {
+            throw new InvalidQrCodeException("QR code is not valid");
+        }
+
+        int separator = payload.indexOf('.');
+        if(separator < 0) {
+            try {
+                return new ScannedQrCode(UUID.fromString(payload), null, null, false);
+            } catch(IllegalArgumentException ex) {
+                throw new InvalidQrCodeException("QR code is not valid", ex);
+            }
+        }
+
+        String keyId = payload.substring(0, separator);
+        if(!keys.containsKey(keyId)) {
+            throw new InvalidQrCodeException("QR code was signed with a key that is no longer accepted");
+        }
+        byte[] decoded;
+        try {
+            decoded = BASE64_DECODER.decode(payload.substring(separator + 1));
+        } catch(IllegalArgumentException ex) {
+            throw new InvalidQrCodeException("QR code is not valid", ex);
+        }
+
+        boolean dynamicFormat = decoded.length == DYNAMIC_SIGNED_LENGTH + SIGNATURE_LENGTH && decoded[0] == DYNAMIC_FORMAT;
+        boolean staticFormat = decoded.length == STATIC_SIGNED_LENGTH + SIGNATURE_LENGTH && decoded[0] == STATIC_FORMAT;
+        if(!dynamicFormat && !staticFormat) {
+            throw new InvalidQrCodeException("QR code is not valid");
+        }
+        ByteBuffer signed = ByteBuffer.wrap(decoded, 1, decoded.length - 1);
+        UUID ticketId = new UUID(signed.getLong(), signed.getLong());
+        UUID eventId = new UUID(signed.getLong(), signed.getLong());
+
+        int signedLength = dynamicFormat ? DYNAMIC_SIGNED_LENGTH : STATIC_SIGNED_LENGTH;
+        SecretKeySpec key = dynamicFormat ? ticketSecret(keyId, ticketId) : keys.get(keyId);
+        if(!MessageDigest.isEqual(sign(key, keyId, decoded, signedLength),
+                Arrays.copyOfRange(decoded, signedLength, decoded.length))) {
+            throw new InvalidQrCodeException("QR code is not valid");
+        }
+        if(dynamicFormat && Math.abs(windowOf(now) - signed.getLong()) > allowedSkewWindows) {
+            throw new InvalidQrCodeException("QR code has expired, show the code currently in the app");
+        }
+        return new ScannedQrCode(null, ticketId, eventId, dynamicFormat);
+    }
+
+    private long windowOf(Instant instant) {
+        return Math.floorDiv(instant.toEpochMilli(), periodMillis);
+    }
+
+    //The per-ticket secret dynamic codes are signed with, derived rather than stored so no ticket needs a write
+    private SecretKeySpec ticketSecret(String keyId, UUID ticketId) {
+        ByteBuffer label = ByteBuffer.allocate(TICKET_SECRET_LABEL.length + 16);
+        label.put(TICKET_SECRET_LABEL);
+        putUuid(label, ticketId);
+        try {
+            Mac mac = MACS.get();
+            mac.init(keys.get(keyId));
+            return new SecretKeySpec(mac.doFinal(label.array()), HMAC_ALGORITHM);
+        } catch(GeneralSecurityException ex) {
+            throw new IllegalStateException("Unable to derive QR code ticket secret", ex);
+        }
+    }
+
+    //The key id is signed too, so a payload cannot be passed off as signed by another key
+    private static byte[] sign(SecretKeySpec key, String keyId, byte[] payload, int length) {
+        try {
+            Mac mac = MACS.get();
+            mac.init(key);
+            mac.update(keyId.getBytes(StandardCharsets.UTF_8));
+            mac.update(payload, 0, length);
+            return Arrays.copyOf(mac.doFinal(), SIGNATURE_LENGTH);
+        } catch(GeneralSecurityException ex) {
+            throw new IllegalStateException("Unable to sign QR code payload", ex);
+        }
+    }
+
+    private static void putUuid(ByteBuffer buffer, UUID uuid) {
+        buffer.putLong(uuid.getMostSignificantBits());
+        buffer.putLong(uuid.getLeastSignificantBits());
+    }
+}
@@ -1,78 +1,183 @@
 package com.ticketplatform.tickets.services.impl;
 
 import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
 import com.google.zxing.WriterException;
-import com.google.zxing.client.j2se.MatrixToImageWriter;
-import com.google.zxing.common.BitMatrix;
 import com.google.zxing.qrcode.QRCodeWriter;
 import com.ticketplatform.tickets.domain.entities.QrCode;
 import com.ticketplatform.tickets.domain.entities.QrCodeStatusEnum;
 import com.ticketplatform.tickets.domain.entities.Ticket;
+import com.ticketplatform.tickets.domain.entities.TicketQrCodeStatusEnum;
+import com.ticketplatform.tickets.domain.entities.TicketType;
 import com.ticketplatform.tickets.exceptions.QrCodeGenerationException;
 import com.ticketplatform.tickets.exceptions.QrCodeNotFoundException;
+import com.ticketplatform.tickets.repositories.QrCodeOutboxRepository;
 import com.ticketplatform.tickets.repositories.QrCodeRepository;
+import com.ticketplatform.tickets.repositories.TicketRepository;
+import com.ticketplatform.tickets.services.QrCodePayloadService;
 import com.ticketplatform.tickets.services.QrCodeService;
-import lombok.RequiredArgsConstructor;
+import com.ticketplatform.tickets.util.ByteWeightedLruCache;
+import com.ticketplatform.tickets.util.QrCodePngRenderer;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 
+//Only the payload a QR code encodes is stored. The image is rendered when a buyer asks for it and kept in a
+//byte-bounded LRU cache, as buyers tend to open their code a few times around the event and hardly ever
+//before. Rows from before this still carry a stored image and are served from it until migrated.
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class QrCodeServiceImpl implements QrCodeService {
 
-    private static final int QR_HEIGHT = 300;
-    private static final int QR_WIDTH = 300;
+    //Asking for no size and no margin gets one pixel per module, the renderer scales and adds the quiet zone
+    private static final Map<EncodeHintType, Object> ENCODE_HINTS = Map.of(EncodeHintType.MARGIN, 0);
 
     private final QRCodeWriter qrCodeWriter;
+    private final QrCodePngRenderer qrCodePngRenderer;
     private final QrCodeRepository  qrCodeRepository;
+    private final TicketRepository ticketRepository;
+    private final QrCodeOutboxRepository qrCodeOutboxRepository;
+    private final QrCodePayloadService qrCodePayloadService;
+    private final TransactionTemplate transactionTemplate;
+    //Keyed by what is encoded, so a dynamic code gets a fresh image each time window and a static one keeps its own
+    private final ByteWeightedLruCache<String> renderCache;
+
+    public QrCodeServiceImpl(
+            QRCodeWriter qrCodeWriter,
+            QrCodePngRenderer qrCodePngRenderer,
+            QrCodeRepository qrCodeRepository,
+            TicketRepository ticketRepository,
+            QrCodeOutboxRepository qrCodeOutboxRepository,
+            QrCodePayloadService qrCodePayloadService,
+            TransactionTemplate transactionTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${tickets.qr-codes.render-cache.max-size:16MB}") DataSize renderCacheMaxSize) {
+        this.qrCodeWriter = qrCodeWriter;
+        this.qrCodePngRenderer = qrCodePngRenderer;
+        this.qrCodeRepository = qrCodeRepository;
+        this.ticketRepository = ticketRepository;
+        this.qrCodeOutboxRepository = qrCodeOutboxRepository;
+        this.qrCodePayloadService = qrCodePayloadService;
+        this.transactionTemplate = transactionTemplate;
+        this.renderCache = new ByteWeightedLruCache<>(renderCacheMaxSize.toBytes());
+
+        FunctionCounter.builder("tickets.qr-codes.render-cache.requests", renderCache, ByteWeightedLruCache::hits)
+                .tag("result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("tickets.qr-codes.render-cache.requests", renderCache, ByteWeightedLruCache::misses)
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("tickets.qr-codes.render-cache.hit-ratio", renderCache, ByteWeightedLruCache::hitRatio)
+                .register(meterRegistry);
+        Gauge.builder("tickets.qr-codes.render-cache.size", renderCache, ByteWeightedLruCache::bytes)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
 
     @Override
     public QrCode generateQrCode(Ticket ticket) {
-        try {
-            UUID uniqueId = UUID.randomUUID();
-            String qrCodeImage = generateQrCodeImage(uniqueId);
-            QrCode qrCode = new QrCode();
-            qrCode.setId(uniqueId);
-            qrCode.setStatus(QrCodeStatusEnum.ACTIVE);
-            qrCode.setValue(qrCodeImage);
-            qrCode.setTicket(ticket);
-
-            return qrCodeRepository.saveAndFlush(qrCode);
-
-        } catch (WriterException | IOException ex) {
-            throw new QrCodeGenerationException("Failed to generate QR Code", ex);
+        return qrCodeRepository.saveAndFlush(newQrCode(ticket, eventIdOf(ticket)));
+    }
+
+    //Flushes once, so the inserts go to the database as one JDBC batch
+    @Override
+    public List<QrCode> generateQrCodes(List<Ticket> tickets) {
+        List<QrCode> qrCodes = new ArrayList<>(tickets.size());
+        for(Ticket ticket : tickets) {
+            qrCodes.add(newQrCode(ticket, eventIdOf(ticket)));
         }
+        return qrCodeRepository.saveAllAndFlush(qrCodes);
+    }
+
+    //If the outbox entry was claimed already the code stored by whoever claimed it is returned instead
+    @Override
+    public Optional<QrCode> generatePendingQrCode(UUID ticketId) {
+        return transactionTemplate.execute(status -> {
+            if(qrCodeOutboxRepository.deleteByTicketId(ticketId) == 0) {
+                return qrCodeRepository.findByTicketIdAndStatus(ticketId, QrCodeStatusEnum.ACTIVE);
+            }
+            QrCode pending = newQrCode(ticketRepository.getReferenceById(ticketId),
+                    ticketRepository.findEventIdById(ticketId).orElse(null));
+            QrCode qrCode = qrCodeRepository.saveAndFlush(pending);
+            ticketRepository.markQrCodeReady(ticketId);
+            return Optional.of(qrCode);
+        });
+    }
+
+    private QrCode newQrCode(Ticket ticket, UUID eventId) {
+        UUID uniqueId = UUID.randomUUID();
+        QrCode qrCode = new QrCode();
+        qrCode.setId(uniqueId);
+        qrCode.setStatus(QrCodeStatusEnum.ACTIVE);
+        qrCode.setPayload(qrCodePayloadService.createPayload(uniqueId, ticket.getId(), eventId));
+        qrCode.setTicket(ticket);
+        return qrCode;
+    }
+
+    private static UUID eventIdOf(Ticket ticket) {
+        TicketType ticketType = ticket.getTicketType();
+        return ticketType == null || ticketType.getEvent() == null ? null : ticketType.getEvent().getId();
     }
 
     @Override
     public byte[] getQrCodeImageForUserAndTicket(UUID userId, UUID ticketId) {
-        QrCode qrCode = qrCodeRepository.findByTicketIdAndTicketPurchaserId(ticketId, userId)
-                .orElseThrow(QrCodeNotFoundException::new);
-        try {
-            return Base64.getDecoder().decode(qrCode.getValue());
-        } catch(IllegalArgumentException ex) {
-            log.error("Invalid Base64 QR Code for ticket ID: {}", ticketId, ex);
-            throw new QrCodeNotFoundException();
+        Optional<QrCodeRepository.QrCodeImage> stored = qrCodeRepository.findImageByTicketIdAndPurchaserId(ticketId, userId);
+        if(stored.isEmpty()) {
+            return generateIfPending(userId, ticketId)
+                    .map(qrCode -> renderQrCodeImage(qrCode.getId(), qrCode.getPayload()))
+                    .orElseThrow(QrCodeNotFoundException::new);
         }
+
+        QrCodeRepository.QrCodeImage qrCodeImage = stored.get();
+        if(qrCodeImage.getLegacyValue() != null) {
+            try {
+                return Base64.getDecoder().decode(qrCodeImage.getLegacyValue());
+            } catch(IllegalArgumentException ex) {
+                log.error("Invalid Base64 QR Code for ticket ID: {}", ticketId, ex);
+                throw new QrCodeNotFoundException();
+            }
+        }
+        return renderQrCodeImage(qrCodeImage.getId(), qrCodeImage.getPayload());
     }
 
-    private String generateQrCodeImage(UUID uniqueId) throws WriterException, IOException {
-        BitMatrix bitMatrix = qrCodeWriter.encode(
-                uniqueId.toString(), BarcodeFormat.QR_CODE, QR_WIDTH, QR_HEIGHT);
-        BufferedImage qrCodeImage = MatrixToImageWriter.toBufferedImage(bitMatrix);
-        try(ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            ImageIO.write(qrCodeImage, "PNG", baos);
-            byte[] imageBytes = baos.toByteArray();
+    //The buyer asked for the code before the outbox worker got to it, so generate it now rather than make them wait
+    private Optional<QrCode> generateIfPending(UUID userId, UUID ticketId) {
+        return ticketRepository.findByIdAndPurchaserId(ticketId, userId)
+                .filter(ticket -> ticket.getQrCodeStatus() == TicketQrCodeStatusEnum.PENDING)
+                .flatMap(ticket -> generatePendingQrCode(ticketId));
+    }
 
-            return Base64.getEncoder().encodeToString(imageBytes);
+    //Two requests missing the cache for the same code at once both render it, which is cheaper than making
+    //one wait for the other. Codes stored before payloads were, encode their own id.
+    private byte[] renderQrCodeImage(UUID qrCodeId, String storedPayload) {
+        String payload = qrCodePayloadService.currentPayload(
+                storedPayload == null ? qrCodeId.toString() : storedPayload, Instant.now());
+        byte[] image = renderCache.get(payload);
+        if(image == null) {
+            try {
+                image = generateQrCodeImage(payload);
+            } catch (WriterException ex) {
+                throw new QrCodeGenerationException("Failed to generate QR Code", ex);
+            }
+            renderCache.put(payload, image);
         }
+        return image;
+    }
+
+    private byte[] generateQrCodeImage(String payload) throws WriterException {
+        return qrCodePngRenderer.render(qrCodeWriter.encode(payload, BarcodeFormat.QR_CODE, 0, 0, ENCODE_HINTS));
     }
 }
@@ -0,0 +1,139 @@
+package com.ticketplatform.tickets.services.impl;
+
+import com.ticketplatform.tickets.services.SoldOutRegistryService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+//Node-local memory of ticket types last seen with nothing left, so purchases for them are refused before touching
+//the database. Putting tickets back moves the type's version on, and a claim can only mark the version it read.
+@Service
+public class SoldOutRegistryServiceImpl implements SoldOutRegistryService {
+
+    private final boolean enabled;
+    private final long ttlNanos;
+
+    private final ConcurrentMap<UUID, Entry> entries = new ConcurrentHashMap<>();
+
+    public SoldOutRegistryServiceImpl(
+            @Value("${tickets.sold-out-registry.enabled:true}") boolean enabled,
+            @Value("${tickets.sold-out-registry.ttl:5s}") Duration ttl) {
+        this.enabled = enabled;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    @Override
+    public boolean isSoldOut(UUID ticketTypeId) {
+        if(!enabled) {
+            return false;
+        }
+        Entry entry = entries.get(ticketTypeId);
+        return entry != null && entry.isSoldOut(System.nanoTime(), ttlNanos);
+    }
+
+    @Override
+    public long currentVersion(UUID ticketTypeId) {
+        Entry entry = entries.get(ticketTypeId);
+        return entry != null ? entry.version : 0;
+    }
+
+    //Callers only get here after finding a real ticket type with nothing left
+    @Override
+    public void markSoldOut(UUID ticketTypeId, long observedVersion) {
+        if(!enabled) {
+            return;
+        }
+        entries.compute(ticketTypeId, (id, entry) -> {
+            if(entry == null) {
+                if(observedVersion != 0) {
+                    return null;
+                }
+                entry = new Entry(0, System.nanoTime());
+            }
+            entry.markSoldOut(observedVersion, System.nanoTime());
+            return entry;
+        });
+    }
+
+    @Override
+    public void evict(UUID ticketTypeId) {
+        entries.remove(ticketTypeId);
+    }
+
+    //Tombstones are kept for a ttl too, so a claim that read the version before an invalidation still finds it
+    @Override
+    @Scheduled(fixedDelayString = "${tickets.sold-out-registry.ttl:5s}",
+            initialDelayString = "${tickets.sold-out-registry.ttl:5s}")
+    public void evictLapsed() {
+        long now = System.nanoTime();
+        entries.values().removeIf(entry -> entry.isLapsed(now, ttlNanos));
+    }
+
+    //Inside a transaction the entry is invalidated again once it commits, as a claim running alongside may
+    //have read the inventory from before the tickets were put back and marked it in between
+    @Override
+    public void invalidate(UUID ticketTypeId) {
+        invalidateNow(ticketTypeId);
+        if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                invalidateNow(ticketTypeId);
+            }
+        });
+    }
+
+    //A ticket type without an entry gets a tombstone, which is what moves its version on
+    private void invalidateNow(UUID ticketTypeId) {
+        entries.compute(ticketTypeId, (id, entry) -> {
+            if(entry == null) {
+                return new Entry(1, System.nanoTime());
+            }
+            entry.invalidate(System.nanoTime());
+            return entry;
+        });
+    }
+
+    private static final class Entry {
+        private volatile long version;
+        private volatile long touchedAtNanos;
+        //0 while not sold out
+        private volatile long soldOutAtNanos;
+
+        private Entry(long version, long nowNanos) {
+            this.version = version;
+            this.touchedAtNanos = nowNanos;
+        }
+
+        private boolean isSoldOut(long nowNanos, long ttlNanos) {
+            long soldOutAt = soldOutAtNanos;
+            return soldOutAt != 0 && nowNanos - soldOutAt < ttlNanos;
+        }
+
+        private boolean isLapsed(long nowNanos, long ttlNanos) {
+            return !isSoldOut(nowNanos, ttlNanos) && nowNanos - touchedAtNanos >= ttlNanos;
+        }
+
+        private synchronized void markSoldOut(long observedVersion, long nowNanos) {
+            if(version == observedVersion) {
+                soldOutAtNanos = nowNanos == 0 ? 1 : nowNanos;
+                touchedAtNanos = nowNanos;
+            }
+        }
+
+        private synchronized void invalidate(long nowNanos) {
+            version++;
+            soldOutAtNanos = 0;
+            touchedAtNanos = nowNanos;
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package com.ticketplatform.tickets.services.impl;
+
+import com.ticketplatform.tickets.domain.entities.Event;
+import com.ticketplatform.tickets.domain.entities.TicketBlockLease;
+import com.ticketplatform.tickets.domain.entities.TicketBlockLeaseStatusEnum;
+import com.ticketplatform.tickets.domain.entities.TicketType;
+import com.ticketplatform.tickets.repositories.TicketBlockLeaseRepository;
+import com.ticketplatform.tickets.repositories.TicketRepository;
+import com.ticketplatform.tickets.repositories.TicketTypeRepository;
+import com.ticketplatform.tickets.services.TicketBlockLeaseService;
+import com.ticketplatform.tickets.services.TicketInventoryService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+//Lets each application node claim a block of a ticket type's inventory from the database and sell from it
+//in memory. Blocks are returned when they expire (or when the sale ends, whichever is first), and a block
+//left ACTIVE well past its expiry belonged to a node that died, so any node settles it from the tickets table.
+//Purchases only ever take from the block in memory. Leasing the next one happens on a refill thread once the
+//current block runs low or out, and a purchase that finds no block ready claims straight from the database
+//instead of waiting, so a purchase never holds a second connection or waits on a lock for one.
+@Service
+@Slf4j
+public class TicketBlockLeaseServiceImpl implements TicketBlockLeaseService {
+
+    private final TicketTypeRepository ticketTypeRepository;
+    private final TicketRepository ticketRepository;
+    private final TicketBlockLeaseRepository ticketBlockLeaseRepository;
+    private final TicketInventoryService ticketInventoryService;
+    private final TransactionTemplate transactionTemplate;
+
+    private final boolean enabled;
+    private final String nodeId;
+    private final Duration leaseDuration;
+    private final Duration abandonedAfter;
+    private final int initialBlockSize;
+    private final int minBlockSize;
+    private final int maxBlockSize;
+    private final Duration refillWait;
+
+    private final ConcurrentMap<UUID, LeaseSlot> slots = new ConcurrentHashMap<>();
+
+    public TicketBlockLeaseServiceImpl(
+            TicketTypeRepository ticketTypeRepository,
+            TicketRepository ticketRepository,
+            TicketBlockLeaseRepository ticketBlockLeaseRepository,
+            TicketInventoryService ticketInventoryService,
+            PlatformTransactionManager transactionManager,
+            @Value("${tickets.inventory.leases.enabled:false}") boolean enabled,
+            @Value("${tickets.inventory.leases.node-id:}") String nodeId,
+            @Value("${tickets.inventory.leases.duration:30s}") Duration leaseDuration,
+            @Value("${tickets.inventory.leases.abandoned-after:2m}") Duration abandonedAfter,
+            @Value("${tickets.inventory.leases.initial-block-size:100}") int initialBlockSize,
+            @Value("${tickets.inventory.leases.min-block-size:10}") int minBlockSize,
+            @Value("${tickets.inventory.leases.max-block-size:1000}") int maxBlockSize,
+            @Value("${tickets.inventory.leases.refill-wait:500ms}") Duration refillWait) {
+        this.ticketTypeRepository = ticketTypeRepository;
+        this.ticketRepository = ticketRepository;
+        this.ticketBlockLeaseRepository = ticketBlockLeaseRepository;
+        this.ticketInventoryService = ticketInventoryService;
+        //Leases are committed on their own, never as part of a transaction that happens to be open on the
+        //calling thread, otherwise its rollback would undo a block this node still believes it holds
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.enabled = enabled;
+        this.nodeId = nodeId.isBlank() ? UUID.randomUUID().toString() : nodeId;
+        this.leaseDuration = leaseDuration;
+        this.abandonedAfter = abandonedAfter;
+        this.initialBlockSize = initialBlockSize;
+        this.minBlockSize = minBlockSize;
+        this.maxBlockSize = maxBlockSize;
+        this.refillWait = refillWait;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public Optional<UUID> claimTicket(TicketType ticketType) {
+        return claimTickets(ticketType, 1);
+    }
+
+    @Override
+    public Optional<UUID> claimTicketAfterRefill(TicketType ticketType) {
+        return claimTicketsAfterRefill(ticketType, 1);
+    }
+
+    //Empty when this node has no block to sell from right now, or one with fewer left than asked for, the caller
+    //then claims from the database. An order is taken from one block as a whole, its tickets share the lease id.
+    @Override
+    public Optional<UUID> claimTickets(TicketType ticketType, int quantity) {
+        LeaseSlot slot = slots.computeIfAbsent(ticketType.getId(), id -> new LeaseSlot(initialBlockSize));
+
+        LocalLease lease = slot.lease;
+        boolean taken = lease != null && lease.tryTake(quantity);
+        if(!taken || lease.isRunningLow()) {
+            refill(slot, ticketType.getId());
+        }
+        if(!taken) {
+            return Optional.empty();
+        }
+
+        LocalLease claimedFrom = lease;
+        if(TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if(status != STATUS_COMMITTED) {
+                        giveBack(claimedFrom, quantity);
+                    }
+                }
+            });
+        }
+        return Optional.of(claimedFrom.id);
+    }
+
+    //For a purchase the database just turned away, which it does once a refill has leased the last tickets into
+    //this node's next block. Waits at most the refill wait for a refill under way, never holding a lock.
+    @Override
+    public Optional<UUID> claimTicketsAfterRefill(TicketType ticketType, int quantity) {
+        LeaseSlot slot = slots.get(ticketType.getId());
+        if(slot == null) {
+            return Optional.empty();
+        }
+        try {
+            slot.refill.get(refillWait.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException ex) {
+            //Whatever is there now will do
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        }
+        return claimTickets(ticketType, quantity);
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${tickets.inventory.leases.sweep-interval:5s}")
+    public void returnExpiredLeases() {
+        if(!enabled) {
+            return;
+        }
+        slots.values().forEach(slot -> {
+            LocalLease lease = slot.lease;
+            if(lease != null && lease.isExpired() && slot.lock.tryLock()) {
+                try {
+                    if(slot.lease == lease) {
+                        retire(slot, lease);
+                        slot.lease = null;
+                    }
+                } finally {
+                    slot.lock.unlock();
+                }
+            }
+        });
+        reclaimAbandonedLeases();
+    }
+
+    @Override
+    public void reclaimAbandonedLeases() {
+        LocalDateTime abandonedBefore = LocalDateTime.now().minus(abandonedAfter);
+        for(UUID leaseId : ticketBlockLeaseRepository.findIdsByStatusAndExpiresAtBefore(
+                TicketBlockLeaseStatusEnum.ACTIVE, abandonedBefore)) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> reclaim(leaseId));
+            } catch (RuntimeException ex) {
+                log.error("Failed to reclaim abandoned ticket block lease {}", leaseId, ex);
+            }
+        }
+    }
+
+    //Waits for a refill under way, so no block leased meanwhile is left behind
+    @Override
+    @PreDestroy
+    public void returnAllLeases() {
+        slots.values().forEach(slot -> {
+            slot.lock.lock();
+            try {
+                while(slot.refilling.get()) {
+                    slot.refilled.awaitUninterruptibly();
+                }
+                if(slot.lease != null) {
+                    retire(slot, slot.lease);
+                    slot.lease = null;
+                }
+            } finally {
+                slot.lock.unlock();
+            }
+        });
+    }
+
+    //Leases the next block on a thread of its own, one refill per ticket type at a time. The block being
+    //sold from is retired once the next one is in, or kept while the database has none left to give.
+    private void refill(LeaseSlot slot, UUID ticketTypeId) {
+        if(!slot.refilling.compareAndSet(false, true)) {
+            return;
+        }
+        CompletableFuture<Void> refilled = new CompletableFuture<>();
+        slot.refill = refilled;
+        Thread.ofVirtual().name("inventory-lease-refill-" + ticketTypeId).start(() -> {
+            slot.lock.lock();
+            try {
+                LocalLease current = slot.lease;
+                if(current != null && current.canServe() && !current.isRunningLow()) {
+                    return;
+                }
+                LocalLease next = acquire(ticketTypeId, slot.nextBlockSize);
+                if(next == null && current != null && current.canServe()) {
+                    return;
+                }
+                if(current != null) {
+                    retire(slot, current);
+                }
+                slot.lease = next;
+            } catch (RuntimeException ex) {
+                log.error("Failed to lease a block of ticket type {}", ticketTypeId, ex);
+            } finally {
+                slot.refilling.set(false);
+                slot.refilled.signalAll();
+                slot.lock.unlock();
+                refilled.complete(null);
+            }
+        });
+    }
+
+    private LocalLease acquire(UUID ticketTypeId, int blockSize) {
+        return transactionTemplate.execute(status -> {
+            TicketType managedTicketType = ticketTypeRepository.findById(ticketTypeId).orElse(null);
+            if(managedTicketType == null) {
+                return null;
+            }
+            int granted = ticketInventoryService.claimTicketsUpTo(managedTicketType, blockSize);
+            if(granted == 0) {
+                return null;
+            }
+
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime expiresAt = now.plus(leaseDuration);
+            Event event = managedTicketType.getEvent();
+            if(event != null && event.getSaleEndDateAndTime() != null
+                    && event.getSaleEndDateAndTime().isAfter(now)
+                    && event.getSaleEndDateAndTime().isBefore(expiresAt)) {
+                expiresAt = event.getSaleEndDateAndTime();
+            }
+
+            TicketBlockLease ticketBlockLease = new TicketBlockLease();
+            ticketBlockLease.setTicketType(managedTicketType);
+            ticketBlockLease.setNodeId(nodeId);
+            ticketBlockLease.setQuantity(granted);
+            ticketBlockLease.setStatus(TicketBlockLeaseStatusEnum.ACTIVE);
+            ticketBlockLease.setExpiresAt(expiresAt);
+            TicketBlockLease saved = ticketBlockLeaseRepository.save(ticketBlockLease);
+            log.debug("Node {} leased {} tickets of ticket type {}", nodeId, granted, ticketTypeId);
+            return new LocalLease(saved.getId(), ticketTypeId, granted, expiresAt);
+        });
+    }
+
+    //Closes a lease to further sales, hands what is left back to the database and sizes the next block
+    //so that, at the rate this one sold, it would last about one lease duration
+    private void retire(LeaseSlot slot, LocalLease lease) {
+        int unsold = lease.close();
+        if(unsold < 0) {
+            return;
+        }
+        returnToDatabase(lease, unsold);
+
+        double elapsedSeconds = Math.max(0.001, Duration.between(lease.acquiredAt, LocalDateTime.now()).toMillis() / 1000.0);
+        double salesPerSecond = (lease.quantity - unsold) / elapsedSeconds;
+        int target = (int) Math.ceil(salesPerSecond * leaseDuration.toSeconds());
+        slot.nextBlockSize = Math.clamp((slot.nextBlockSize + (long) target) / 2, minBlockSize, maxBlockSize);
+    }
+
+    private void returnToDatabase(LocalLease lease, int unsold) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                if(ticketBlockLeaseRepository.markReturned(lease.id, unsold) == 1 && unsold > 0) {
+                    ticketTypeRepository.findById(lease.ticketTypeId)
+                            .ifPresent(ticketType -> ticketInventoryService.releaseTickets(ticketType, unsold));
+                }
+            });
+        } catch (RuntimeException ex) {
+            //The lease stays ACTIVE and is settled later as abandoned, so nothing is lost
+            log.error("Failed to return ticket block lease {}", lease.id, ex);
+        }
+    }
+
+    //A purchase that claimed from a lease did not commit. If the lease is still open the tickets simply go
+    //back into it. Otherwise they go back to the database through the lease row, off the purchase's thread,
+    //and only if the lease was returned: a lease still ACTIVE, because returning it failed, or RECLAIMED is
+    //settled from the tickets table, which already counts these tickets as unsold, so releasing them here too
+    //would sell them twice. A lease closed but not yet marked returned keeps the tickets, underselling by them.
+    private void giveBack(LocalLease lease, int quantity) {
+        if(lease.giveBack(quantity)) {
+            return;
+        }
+        Thread.ofVirtual().name("inventory-lease-give-back-" + lease.id).start(() -> {
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    if(ticketBlockLeaseRepository.addReturnedQuantity(lease.id, quantity) == 1) {
+                        ticketTypeRepository.findById(lease.ticketTypeId)
+                                .ifPresent(ticketType -> ticketInventoryService.releaseTickets(ticketType, quantity));
+                    }
+                });
+            } catch (RuntimeException ex) {
+                log.error("Failed to release {} unsold tickets from lease {}", quantity, lease.id, ex);
+            }
+        });
+    }
+
+    private void reclaim(UUID leaseId) {
+        TicketBlockLease ticketBlockLease = ticketBlockLeaseRepository.findByIdWithLock(leaseId).orElse(null);
+        if(ticketBlockLease == null || ticketBlockLease.getStatus() != TicketBlockLeaseStatusEnum.ACTIVE) {
+            return;
+        }
+        int sold = ticketRepository.countByInventoryLeaseId(leaseId);
+        int unsold = Math.max(0, ticketBlockLease.getQuantity() - sold);
+        ticketBlockLease.setStatus(TicketBlockLeaseStatusEnum.RECLAIMED);
+        ticketBlockLease.setReturnedQuantity(unsold);
+        if(unsold > 0) {
+            ticketInventoryService.releaseTickets(ticketBlockLease.getTicketType(), unsold);
+        }
+        log.warn("Reclaimed {} unsold tickets from abandoned lease {} of node {}",
+                unsold, leaseId, ticketBlockLease.getNodeId());
+    }
+
+    private static final class LeaseSlot {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition refilled = lock.newCondition();
+        private final AtomicBoolean refilling = new AtomicBoolean();
+        private volatile CompletableFuture<Void> refill = CompletableFuture.completedFuture(null);
+        private volatile LocalLease lease;
+        private volatile int nextBlockSize;
+
+        private LeaseSlot(int initialBlockSize) {
+            this.nextBlockSize = initialBlockSize;
+        }
+    }
+
+    private static final class LocalLease {
+        private static final int CLOSED = -1;
+
+        private final UUID id;
+        private final UUID ticketTypeId;
+        private final int quantity;
+        private final LocalDateTime acquiredAt = LocalDateTime.now();
+        private final LocalDateTime expiresAt;
+        private final AtomicInteger remaining;
+
+        private LocalLease(UUID id, UUID ticketTypeId, int quantity, LocalDateTime expiresAt) {
+            this.id = id;
+            this.ticketTypeId = ticketTypeId;
+            this.quantity = quantity;
+            this.expiresAt = expiresAt;
+            this.remaining = new AtomicInteger(quantity);
+        }
+
+        private boolean isExpired() {
+            return !LocalDateTime.now().isBefore(expiresAt);
+        }
+
+        private boolean canServe() {
+            return !isExpired() && remaining.get() > 0;
+        }
+
+        //A quarter left, time to lease the next block while this one still sells
+        private boolean isRunningLow() {
+            return remaining.get() <= quantity / 4;
+        }
+
+        private boolean tryTake(int quantity) {
+            if(isExpired()) {
+                return false;
+            }
+            int current;
+            do {
+                current = remaining.get();
+                if(current < quantity) {
+                    return false;
+                }
+            } while(!remaining.compareAndSet(current, current - quantity));
+            return true;
+        }
+
+        private boolean giveBack(int quantity) {
+            int current;
+            do {
+                current = remaining.get();
+                if(current == CLOSED) {
+                    return false;
+                }
+            } while(!remaining.compareAndSet(current, current + quantity));
+            return true;
+        }
+
+        //Returns how many were unsold, or CLOSED if someone else already closed it
+        private int close() {
+            return remaining.getAndSet(CLOSED);
+        }
+    }
+}
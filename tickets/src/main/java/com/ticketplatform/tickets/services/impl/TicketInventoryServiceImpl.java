@@ -0,0 +1,242 @@
+package com.ticketplatform.tickets.services.impl;
+
+import com.ticketplatform.tickets.domain.entities.TicketInventoryShard;
+import com.ticketplatform.tickets.domain.entities.TicketType;
+import com.ticketplatform.tickets.repositories.TicketInventoryShardRepository;
+import com.ticketplatform.tickets.repositories.TicketTypeRepository;
+import com.ticketplatform.tickets.services.SoldOutRegistryService;
+import com.ticketplatform.tickets.services.TicketInventoryService;
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TicketInventoryServiceImpl implements TicketInventoryService {
+
+    private final TicketTypeRepository ticketTypeRepository;
+    private final TicketInventoryShardRepository ticketInventoryShardRepository;
+    private final SoldOutRegistryService soldOutRegistryService;
+
+    @Override
+    @Transactional
+    public boolean claimTickets(TicketType ticketType, int quantity) {
+        long soldOutVersion = soldOutRegistryService.currentVersion(ticketType.getId());
+        int shardCount = shardCountOf(ticketType);
+        if(shardCount <= 1) {
+            if(ticketTypeRepository.claimTickets(ticketType.getId(), quantity) == 1) {
+                return true;
+            }
+            //Missing out on a single ticket means there are none left, a larger quantity may just be too many
+            if(quantity == 1) {
+                soldOutRegistryService.markSoldOut(ticketType.getId(), soldOutVersion);
+            }
+            return false;
+        }
+
+        //Start on a random shard so concurrent buyers spread over the rows, then walk on to the next
+        //shard whenever one is too empty. Only when every shard refuses is the ticket type sold out.
+        int startIndex = ThreadLocalRandom.current().nextInt(shardCount);
+        for(int i = 0; i < shardCount; i++) {
+            int shardIndex = (startIndex + i) % shardCount;
+            if(ticketInventoryShardRepository.claimTickets(ticketType.getId(), shardIndex, quantity) == 1) {
+                return true;
+            }
+        }
+        if(quantity == 1) {
+            soldOutRegistryService.markSoldOut(ticketType.getId(), soldOutVersion);
+            return false;
+        }
+
+        //No single shard has enough left for the whole quantity, so gather it from several and give it
+        //back if even all of them together fall short
+        int claimed = claimTicketsUpTo(ticketType, quantity);
+        if(claimed < quantity) {
+            releaseTickets(ticketType, claimed);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    @Transactional
+    public int claimTicketsUpTo(TicketType ticketType, int quantity) {
+        long soldOutVersion = soldOutRegistryService.currentVersion(ticketType.getId());
+        int claimed = claimAvailableUpTo(ticketType, quantity);
+        if(claimed == 0 && quantity > 0) {
+            soldOutRegistryService.markSoldOut(ticketType.getId(), soldOutVersion);
+        }
+        return claimed;
+    }
+
+    private int claimAvailableUpTo(TicketType ticketType, int quantity) {
+        int shardCount = shardCountOf(ticketType);
+        if(shardCount <= 1) {
+            return claimUpTo(quantity,
+                    () -> ticketTypeRepository.findTicketsRemaining(ticketType.getId()),
+                    grant -> ticketTypeRepository.claimTickets(ticketType.getId(), grant));
+        }
+
+        int claimed = 0;
+        int startIndex = ThreadLocalRandom.current().nextInt(shardCount);
+        for(int i = 0; i < shardCount && claimed < quantity; i++) {
+            int shardIndex = (startIndex + i) % shardCount;
+            claimed += claimUpTo(quantity - claimed,
+                    () -> ticketInventoryShardRepository.findTicketsRemaining(ticketType.getId(), shardIndex),
+                    grant -> ticketInventoryShardRepository.claimTickets(ticketType.getId(), shardIndex, grant));
+        }
+        return claimed;
+    }
+
+    @Override
+    @Transactional
+    public void releaseTickets(TicketType ticketType, int quantity) {
+        soldOutRegistryService.invalidate(ticketType.getId());
+        int shardCount = shardCountOf(ticketType);
+        if(shardCount <= 1) {
+            if(ticketTypeRepository.releaseTickets(ticketType.getId(), quantity) == 0) {
+                log.warn("Could not release {} tickets for ticket type {}", quantity, ticketType.getId());
+            }
+            return;
+        }
+
+        int unreleased = quantity;
+        for(int shardIndex = 0; shardIndex < shardCount && unreleased > 0; shardIndex++) {
+            Integer shardTicketsSold = ticketInventoryShardRepository.findTicketsSold(ticketType.getId(), shardIndex);
+            int release = Math.min(unreleased, shardTicketsSold == null ? 0 : shardTicketsSold);
+            if(release > 0 && ticketInventoryShardRepository.releaseTickets(ticketType.getId(), shardIndex, release) == 1) {
+                unreleased -= release;
+            }
+        }
+        if(unreleased > 0) {
+            log.warn("Could not release {} of {} tickets for ticket type {}", unreleased, quantity, ticketType.getId());
+        }
+    }
+
+    @Override
+    @Transactional
+    public void distributeInventory(TicketType ticketType) {
+        int shardCount = shardCountOf(ticketType);
+        int totalTicketsAvailable = ticketType.getTotalTicketsAvailable() == null ? 0 : ticketType.getTotalTicketsAvailable();
+        List<TicketInventoryShard> shards = ticketType.getInventoryShards();
+
+        if(ticketType.getId() == null) {
+            //New ticket type, nothing sold yet and nothing to lock
+            for(int shardIndex = 0; shardCount > 1 && shardIndex < shardCount; shardIndex++) {
+                shards.add(newShard(ticketType, shardIndex, shareOf(totalTicketsAvailable, shardCount, shardIndex)));
+            }
+            return;
+        }
+
+        //The total may have been raised, so the ticket type can no longer be taken to be sold out. An unsharded
+        //ticket type keeps its total on its own row and has nothing to move below, so this happens first.
+        soldOutRegistryService.invalidate(ticketType.getId());
+
+        if(isDistributed(shards, shardCount, totalTicketsAvailable)) {
+            //Nothing to move, an event update that leaves the ticket type alone locks nothing
+            return;
+        }
+
+        //Lock once up front, then move the counts and write every shard in this transaction. The ticket_types
+        //row is only locked when it holds the inventory or is about to, purchases of a ticket type that stays
+        //sharded never touch it, and locking its shards in one statement keeps them from claiming meanwhile.
+        boolean unsharded = shards.isEmpty() || shardCount <= 1;
+        Integer unshardedTicketsSold = unsharded ? ticketTypeRepository.findTicketsSoldWithLock(ticketType.getId()) : null;
+        List<Integer> shardTicketsSold = ticketInventoryShardRepository.findTicketsSoldByTicketTypeIdWithLock(ticketType.getId());
+        int ticketsSold = shardTicketsSold.isEmpty()
+                ? (unshardedTicketsSold == null ? 0 : unshardedTicketsSold)
+                : shardTicketsSold.stream().mapToInt(Integer::intValue).sum();
+
+        if(shardCount <= 1) {
+            if(!shards.isEmpty()) {
+                shards.clear();
+                ticketTypeRepository.setTicketsSold(ticketType.getId(), ticketsSold);
+            }
+            return;
+        }
+
+        shards.removeIf(shard -> shard.getShardIndex() >= shardCount);
+        for(int shardIndex = shards.size(); shardIndex < shardCount; shardIndex++) {
+            shards.add(newShard(ticketType, shardIndex, 0));
+        }
+
+        int[] capacities = new int[shardCount];
+        int[] sold = new int[shardCount];
+        int unplaced = ticketsSold;
+        for(int shardIndex = 0; shardIndex < shardCount; shardIndex++) {
+            capacities[shardIndex] = shareOf(totalTicketsAvailable, shardCount, shardIndex);
+            sold[shardIndex] = Math.min(capacities[shardIndex], shareOf(ticketsSold, shardCount, shardIndex));
+            unplaced -= sold[shardIndex];
+        }
+        //Shards that were capped hand the rest of their share to shards with room left. Anything still
+        //unplaced means more were sold than the new total allows and simply leaves the first shard over-full.
+        for(int shardIndex = 0; unplaced > 0 && shardIndex < shardCount; shardIndex++) {
+            int room = Math.min(unplaced, capacities[shardIndex] - sold[shardIndex]);
+            sold[shardIndex] += room;
+            unplaced -= room;
+        }
+        sold[0] += unplaced;
+
+        for(TicketInventoryShard shard : shards) {
+            shard.setCapacity(capacities[shard.getShardIndex()]);
+            shard.setTicketsSold(sold[shard.getShardIndex()]);
+        }
+    }
+
+    //Whether the shards already split totalTicketsAvailable shardCount ways, the counts sold in each are left
+    //where purchases put them
+    private static boolean isDistributed(List<TicketInventoryShard> shards, int shardCount, int totalTicketsAvailable) {
+        if(shardCount <= 1) {
+            return shards.isEmpty();
+        }
+        if(shards.size() != shardCount) {
+            return false;
+        }
+        for(TicketInventoryShard shard : shards) {
+            if(shard.getShardIndex() >= shardCount
+                    || shard.getCapacity() != shareOf(totalTicketsAvailable, shardCount, shard.getShardIndex())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //Claims as many as are left, up to quantity, from one inventory row. The unlocked read only sizes the
+    //attempt, the conditional update decides, and a lost race just means reading again.
+    private static int claimUpTo(int quantity, Supplier<Integer> ticketsRemaining, IntUnaryOperator claim) {
+        while(true) {
+            Integer remaining = ticketsRemaining.get();
+            int grant = Math.min(quantity, remaining == null ? 0 : remaining);
+            if(grant <= 0) {
+                return 0;
+            }
+            if(claim.applyAsInt(grant) == 1) {
+                return grant;
+            }
+        }
+    }
+
+    private static int shardCountOf(TicketType ticketType) {
+        return ticketType.getInventoryShardCount() == null ? 1 : ticketType.getInventoryShardCount();
+    }
+
+    //Splits total as evenly as possible, the first (total % shardCount) shards take one extra
+    private static int shareOf(int total, int shardCount, int shardIndex) {
+        return total / shardCount + (shardIndex < total % shardCount ? 1 : 0);
+    }
+
+    private static TicketInventoryShard newShard(TicketType ticketType, int shardIndex, int capacity) {
+        TicketInventoryShard shard = new TicketInventoryShard();
+        shard.setTicketType(ticketType);
+        shard.setShardIndex(shardIndex);
+        shard.setCapacity(capacity);
+        return shard;
+    }
+}
@@ -0,0 +1,302 @@
+package com.ticketplatform.tickets.services.impl;
+
+import com.ticketplatform.tickets.domain.entities.Ticket;
+import com.ticketplatform.tickets.domain.entities.TicketQrCodeStatusEnum;
+import com.ticketplatform.tickets.domain.entities.TicketReservation;
+import com.ticketplatform.tickets.domain.entities.TicketReservationStatusEnum;
+import com.ticketplatform.tickets.domain.entities.TicketStatusEnum;
+import com.ticketplatform.tickets.domain.entities.TicketType;
+import com.ticketplatform.tickets.domain.entities.User;
+import com.ticketplatform.tickets.exceptions.TicketReservationException;
+import com.ticketplatform.tickets.exceptions.TicketReservationNotFoundException;
+import com.ticketplatform.tickets.exceptions.TicketTypeNotFoundException;
+import com.ticketplatform.tickets.exceptions.TicketsSoldOutException;
+import com.ticketplatform.tickets.exceptions.UserNotFoundException;
+import com.ticketplatform.tickets.repositories.TicketRepository;
+import com.ticketplatform.tickets.repositories.TicketReservationRepository;
+import com.ticketplatform.tickets.repositories.TicketTypeRepository;
+import com.ticketplatform.tickets.repositories.UserRepository;
+import com.ticketplatform.tickets.services.QrCodeOutboxService;
+import com.ticketplatform.tickets.services.SoldOutRegistryService;
+import com.ticketplatform.tickets.services.TicketInventoryService;
+import com.ticketplatform.tickets.services.TicketReservationService;
+import com.ticketplatform.tickets.util.TimingWheel;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+//Holds are claimed from inventory straight away and expire through an in-memory timing wheel rather than a
+//job scanning the table. The wheel lives on the node that made the hold; holds still open when a node starts
+//up are put back on its wheel, and a slow sweep on every node expires holds left behind by a node that went away.
+@Service
+@Slf4j
+public class TicketReservationServiceImpl implements TicketReservationService {
+
+    private final UserRepository userRepository;
+    private final TicketTypeRepository ticketTypeRepository;
+    private final TicketRepository ticketRepository;
+    private final TicketReservationRepository ticketReservationRepository;
+    private final TicketInventoryService ticketInventoryService;
+    private final QrCodeOutboxService qrCodeOutboxService;
+    private final SoldOutRegistryService soldOutRegistryService;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Duration holdDuration;
+    private final int maxQuantity;
+    private final int expiryBatchSize;
+    private final Duration expiryRetryBackoff;
+    private final Duration expiryRetryMaxBackoff;
+    private final Duration sweepInterval;
+
+    private final TimingWheel<UUID> expiryWheel;
+    private final ConcurrentMap<UUID, TimingWheel.Timeout<UUID>> expiries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<UUID, Integer> failedExpiries = new ConcurrentHashMap<>();
+
+    public TicketReservationServiceImpl(
+            UserRepository userRepository,
+            TicketTypeRepository ticketTypeRepository,
+            TicketRepository ticketRepository,
+            TicketReservationRepository ticketReservationRepository,
+            TicketInventoryService ticketInventoryService,
+            QrCodeOutboxService qrCodeOutboxService,
+            SoldOutRegistryService soldOutRegistryService,
+            PlatformTransactionManager transactionManager,
+            @Value("${tickets.reservations.hold-duration:10m}") Duration holdDuration,
+            @Value("${tickets.reservations.max-quantity:10}") int maxQuantity,
+            @Value("${tickets.reservations.expiry-batch-size:500}") int expiryBatchSize,
+            @Value("${tickets.reservations.expiry-retry-backoff:1s}") Duration expiryRetryBackoff,
+            @Value("${tickets.reservations.expiry-retry-max-backoff:1m}") Duration expiryRetryMaxBackoff,
+            @Value("${tickets.reservations.expiry-sweep-interval:1m}") Duration sweepInterval,
+            @Value("${tickets.reservations.timing-wheel.tick:1s}") Duration tick,
+            @Value("${tickets.reservations.timing-wheel.size:1024}") int wheelSize) {
+        this.userRepository = userRepository;
+        this.ticketTypeRepository = ticketTypeRepository;
+        this.ticketRepository = ticketRepository;
+        this.ticketReservationRepository = ticketReservationRepository;
+        this.ticketInventoryService = ticketInventoryService;
+        this.qrCodeOutboxService = qrCodeOutboxService;
+        this.soldOutRegistryService = soldOutRegistryService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.holdDuration = holdDuration;
+        this.maxQuantity = maxQuantity;
+        this.expiryBatchSize = expiryBatchSize;
+        this.expiryRetryBackoff = expiryRetryBackoff;
+        this.expiryRetryMaxBackoff = expiryRetryMaxBackoff;
+        this.sweepInterval = sweepInterval;
+        this.expiryWheel = new TimingWheel<>("ticket-reservation-expiry", tick, wheelSize, this::expireReservations);
+    }
+
+    @PostConstruct
+    void startExpiryWheel() {
+        expiryWheel.start();
+    }
+
+    @PreDestroy
+    void stopExpiryWheel() {
+        expiryWheel.close();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void scheduleHeldReservations() {
+        List<TicketReservationRepository.TicketReservationExpiry> held =
+                ticketReservationRepository.findExpiriesByStatus(TicketReservationStatusEnum.HELD);
+        held.forEach(expiry -> scheduleExpiry(expiry.getId(), expiry.getExpiresAt()));
+        if(!held.isEmpty()) {
+            log.info("Scheduled expiry of {} open ticket reservations", held.size());
+        }
+    }
+
+    @Override
+    @Transactional
+    public TicketReservation reserveTickets(UUID userId, UUID ticketTypeId, int quantity) {
+        if(quantity < 1 || quantity > maxQuantity) {
+            throw new TicketReservationException(
+                    String.format("Between 1 and %d tickets can be reserved at once", maxQuantity));
+        }
+        if(soldOutRegistryService.isSoldOut(ticketTypeId)) {
+            throw new TicketsSoldOutException();
+        }
+
+        User user = userRepository.findById(userId).orElseThrow(() -> new UserNotFoundException(
+                String.format("User with ID %s was not found", userId)
+        ));
+
+        TicketType ticketType = ticketTypeRepository.findById(ticketTypeId).orElseThrow(() -> new TicketTypeNotFoundException(
+                String.format("Ticket type with ID %s was not found", ticketTypeId)
+        ));
+
+        if(ticketType.getTotalTicketsAvailable() == null || !ticketInventoryService.claimTickets(ticketType, quantity)) {
+            throw new TicketsSoldOutException();
+        }
+
+        TicketReservation ticketReservation = new TicketReservation();
+        ticketReservation.setTicketType(ticketType);
+        ticketReservation.setPurchaser(user);
+        ticketReservation.setQuantity(quantity);
+        ticketReservation.setStatus(TicketReservationStatusEnum.HELD);
+        ticketReservation.setExpiresAt(LocalDateTime.now().plus(holdDuration));
+        TicketReservation savedReservation = ticketReservationRepository.save(ticketReservation);
+
+        afterCommit(() -> scheduleExpiry(savedReservation.getId(), savedReservation.getExpiresAt()));
+        return savedReservation;
+    }
+
+    @Override
+    @Transactional
+    public List<Ticket> confirmReservation(UUID userId, UUID reservationId) {
+        TicketReservation ticketReservation = findHeldReservation(userId, reservationId);
+        if(!ticketReservation.getExpiresAt().isAfter(LocalDateTime.now())) {
+            //The timing wheel hands the tickets back, the buyer just has to start again
+            throw new TicketReservationException(
+                    String.format("Reservation with ID %s has expired", reservationId));
+        }
+
+        List<Ticket> tickets = new ArrayList<>(ticketReservation.getQuantity());
+        for(int i = 0; i < ticketReservation.getQuantity(); i++) {
+            Ticket ticket = new Ticket();
+            ticket.setStatus(TicketStatusEnum.PURCHASED);
+            ticket.setTicketType(ticketReservation.getTicketType());
+            ticket.setPurchaser(ticketReservation.getPurchaser());
+            ticket.setQrCodeStatus(TicketQrCodeStatusEnum.PENDING);
+            tickets.add(ticket);
+        }
+        List<Ticket> savedTickets = ticketRepository.saveAll(tickets);
+        qrCodeOutboxService.enqueue(savedTickets);
+
+        ticketReservation.setStatus(TicketReservationStatusEnum.CONFIRMED);
+        afterCommit(() -> cancelExpiry(reservationId));
+        return savedTickets;
+    }
+
+    @Override
+    @Transactional
+    public void cancelReservation(UUID userId, UUID reservationId) {
+        TicketReservation ticketReservation = findHeldReservation(userId, reservationId);
+        ticketReservation.setStatus(TicketReservationStatusEnum.CANCELLED);
+        ticketInventoryService.releaseTickets(ticketReservation.getTicketType(), ticketReservation.getQuantity());
+        afterCommit(() -> cancelExpiry(reservationId));
+    }
+
+    //The wheel only knows about holds made or rescheduled on this node. Anything still HELD a sweep interval past
+    //its expiry belongs to a node that went away, or failed here more often than the backoff has caught up with.
+    @Override
+    @Scheduled(fixedDelayString = "${tickets.reservations.expiry-sweep-interval:1m}",
+            initialDelayString = "${tickets.reservations.expiry-sweep-interval:1m}")
+    public void expireOverdueReservations() {
+        List<UUID> overdue = ticketReservationRepository.findIdsByStatusAndExpiresAtBefore(
+                TicketReservationStatusEnum.HELD, LocalDateTime.now().minus(sweepInterval), PageRequest.of(0, expiryBatchSize));
+        if(!overdue.isEmpty()) {
+            log.info("Expiring {} overdue ticket reservations", overdue.size());
+            expireReservations(overdue);
+        }
+    }
+
+    //Runs on the timing wheel's thread with everything that fell due on one tick. Confirm and cancel lock the
+    //reservation too, so whichever gets there first decides and the other finds it no longer HELD.
+    private void expireReservations(List<UUID> reservationIds) {
+        reservationIds.forEach(expiries::remove);
+        for(int from = 0; from < reservationIds.size(); from += expiryBatchSize) {
+            List<UUID> batch = reservationIds.subList(from, Math.min(reservationIds.size(), from + expiryBatchSize));
+            try {
+                transactionTemplate.executeWithoutResult(status -> expireBatch(batch));
+                batch.forEach(failedExpiries::remove);
+            } catch (RuntimeException ex) {
+                log.error("Failed to expire {} ticket reservations", batch.size(), ex);
+                batch.forEach(this::retryExpiry);
+            }
+        }
+    }
+
+    //Still HELD, so back on the wheel with a doubling delay rather than hammering a database that is struggling
+    private void retryExpiry(UUID reservationId) {
+        int failures = failedExpiries.merge(reservationId, 1, Integer::sum);
+        Duration backoff = expiryRetryBackoff.multipliedBy(1L << Math.min(failures - 1, 20));
+        Duration delay = backoff.compareTo(expiryRetryMaxBackoff) > 0 ? expiryRetryMaxBackoff : backoff;
+        scheduleExpiry(reservationId, LocalDateTime.now().plus(delay));
+    }
+
+    private void expireBatch(List<UUID> reservationIds) {
+        LocalDateTime now = LocalDateTime.now();
+        Map<UUID, Integer> releasedByTicketType = new HashMap<>();
+        Map<UUID, TicketType> ticketTypes = new HashMap<>();
+
+        for(TicketReservation ticketReservation : ticketReservationRepository.findByIdInAndStatusWithLock(
+                reservationIds, TicketReservationStatusEnum.HELD)) {
+            //The wheel runs on the monotonic clock, so a hold can come up a moment before its wall clock expiry
+            if(ticketReservation.getExpiresAt().isAfter(now)) {
+                scheduleExpiry(ticketReservation.getId(), ticketReservation.getExpiresAt());
+                continue;
+            }
+            ticketReservation.setStatus(TicketReservationStatusEnum.EXPIRED);
+            TicketType ticketType = ticketReservation.getTicketType();
+            ticketTypes.putIfAbsent(ticketType.getId(), ticketType);
+            releasedByTicketType.merge(ticketType.getId(), ticketReservation.getQuantity(), Integer::sum);
+        }
+
+        //One release per ticket type rather than per hold keeps a wave of expiries off the hot inventory row
+        releasedByTicketType.forEach((ticketTypeId, quantity) ->
+                ticketInventoryService.releaseTickets(ticketTypes.get(ticketTypeId), quantity));
+    }
+
+    private TicketReservation findHeldReservation(UUID userId, UUID reservationId) {
+        TicketReservation ticketReservation = ticketReservationRepository.findByIdAndPurchaserIdWithLock(reservationId, userId)
+                .orElseThrow(() -> new TicketReservationNotFoundException(
+                        String.format("Reservation with ID %s was not found", reservationId)
+                ));
+        if(ticketReservation.getStatus() != TicketReservationStatusEnum.HELD) {
+            throw new TicketReservationException(
+                    String.format("Reservation with ID %s is no longer held", reservationId));
+        }
+        return ticketReservation;
+    }
+
+    private void scheduleExpiry(UUID reservationId, LocalDateTime expiresAt) {
+        Duration delay = Duration.between(LocalDateTime.now(), expiresAt);
+        TimingWheel.Timeout<UUID> previous = expiries.put(reservationId, expiryWheel.schedule(reservationId, delay));
+        if(previous != null) {
+            previous.cancel();
+        }
+    }
+
+    private void cancelExpiry(UUID reservationId) {
+        failedExpiries.remove(reservationId);
+        TimingWheel.Timeout<UUID> timeout = expiries.remove(reservationId);
+        if(timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -1,21 +1,29 @@
 package com.ticketplatform.tickets.services.impl;
 
 import com.ticketplatform.tickets.domain.entities.Ticket;
+import com.ticketplatform.tickets.domain.entities.TicketQrCodeStatusEnum;
 import com.ticketplatform.tickets.domain.entities.TicketStatusEnum;
 import com.ticketplatform.tickets.domain.entities.TicketType;
 import com.ticketplatform.tickets.domain.entities.User;
+import com.ticketplatform.tickets.exceptions.TicketQuantityException;
 import com.ticketplatform.tickets.exceptions.TicketsSoldOutException;
 import com.ticketplatform.tickets.exceptions.TicketTypeNotFoundException;
 import com.ticketplatform.tickets.exceptions.UserNotFoundException;
 import com.ticketplatform.tickets.repositories.TicketRepository;
 import com.ticketplatform.tickets.repositories.TicketTypeRepository;
 import com.ticketplatform.tickets.repositories.UserRepository;
-import com.ticketplatform.tickets.services.QrCodeService;
+import com.ticketplatform.tickets.services.QrCodeOutboxService;
+import com.ticketplatform.tickets.services.SoldOutRegistryService;
+import com.ticketplatform.tickets.services.TicketBlockLeaseService;
+import com.ticketplatform.tickets.services.TicketInventoryService;
 import com.ticketplatform.tickets.services.TicketTypeService;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 @Service
@@ -25,33 +33,143 @@ public class TicketTypeServiceImpl implements TicketTypeService {
     private final UserRepository userRepository;
     private final TicketTypeRepository ticketTypeRepository;
     private final TicketRepository ticketRepository;
-    private final QrCodeService qrCodeService;
+    private final QrCodeOutboxService qrCodeOutboxService;
+    private final TicketInventoryService ticketInventoryService;
+    private final TicketBlockLeaseService ticketBlockLeaseService;
+    private final SoldOutRegistryService soldOutRegistryService;
 
 
+    @Value("${tickets.purchase.max-tickets-per-order:10}")
+    private int maxTicketsPerOrder;
+
     @Override
     @Transactional
     public Ticket purchaseTicket(UUID userId, UUID ticketTypeId) {
-        User user = userRepository.findById(userId).orElseThrow(() -> new UserNotFoundException(
-                String.format("User with ID %s was not found", userId)
-        ));
-
-        TicketType ticketType = ticketTypeRepository.findByIdWithLock(ticketTypeId).orElseThrow(() -> new TicketTypeNotFoundException(
-                String.format("Ticket type with ID %s was not found", ticketTypeId)
-        ));
+        //Most attempts after a ticket type sells out end here, without a database round trip
+        if(soldOutRegistryService.isSoldOut(ticketTypeId)) {
+            throw new TicketsSoldOutException();
+        }
+        long soldOutVersion = soldOutRegistryService.currentVersion(ticketTypeId);
 
-        int purchasedTickets = ticketRepository.countByTicketTypeId(ticketType.getId());
-        Integer totalTicketsAvailable = ticketType.getTotalTicketsAvailable();
+        User user = findUser(userId);
+        TicketType ticketType = findTicketType(ticketTypeId);
 
-        if(purchasedTickets + 1 > totalTicketsAvailable) {
+        if(isSoldOut(ticketType, 1)) {
+            soldOutRegistryService.markSoldOut(ticketTypeId, soldOutVersion);
             throw new TicketsSoldOutException();
         }
 
+        //With block leases the ticket comes out of this node's in-memory block, which was already claimed
+        //from the database when the block was leased. Without a block ready it is claimed below as usual.
+        UUID inventoryLeaseId = null;
+        if(ticketBlockLeaseService.isEnabled()) {
+            inventoryLeaseId = ticketBlockLeaseService.claimTicket(ticketType).orElse(null);
+        }
+
         Ticket ticket = new Ticket();
         ticket.setStatus(TicketStatusEnum.PURCHASED);
         ticket.setTicketType(ticketType);
         ticket.setPurchaser(user);
+        ticket.setInventoryLeaseId(inventoryLeaseId);
+        ticket.setQrCodeStatus(TicketQrCodeStatusEnum.PENDING);
         Ticket savedTicket = ticketRepository.save(ticket);
-        qrCodeService.generateQrCode(savedTicket);
-        return ticketRepository.save(savedTicket);
+        qrCodeOutboxService.enqueue(List.of(savedTicket));
+
+        //Claim the ticket last so the ticket_types row is only locked between this statement and the commit
+        if(inventoryLeaseId == null && !ticketInventoryService.claimTickets(ticketType, 1)) {
+            if(!ticketBlockLeaseService.isEnabled()) {
+                throw new TicketsSoldOutException();
+            }
+            //The database runs out once this node leases the last tickets into its next block, sell from that.
+            //The ticket was inserted by now, so its lease id is written on its own for a reclaim to count it.
+            UUID refillLeaseId = ticketBlockLeaseService.claimTicketAfterRefill(ticketType)
+                    .orElseThrow(TicketsSoldOutException::new);
+            ticketRepository.setInventoryLeaseId(savedTicket.getId(), refillLeaseId);
+            savedTicket.setInventoryLeaseId(refillLeaseId);
+            soldOutRegistryService.invalidate(ticketTypeId);
+        }
+
+        return savedTicket;
+    }
+
+    @Override
+    @Transactional
+    public List<Ticket> purchaseTickets(UUID userId, UUID ticketTypeId, int quantity) {
+        if(quantity < 1 || quantity > maxTicketsPerOrder) {
+            throw new TicketQuantityException(
+                    String.format("Between 1 and %d tickets can be bought in one order", maxTicketsPerOrder));
+        }
+        if(soldOutRegistryService.isSoldOut(ticketTypeId)) {
+            throw new TicketsSoldOutException();
+        }
+        long soldOutVersion = soldOutRegistryService.currentVersion(ticketTypeId);
+
+        User user = findUser(userId);
+        TicketType ticketType = findTicketType(ticketTypeId);
+
+        if(isSoldOut(ticketType, quantity)) {
+            if(isSoldOut(ticketType, 1)) {
+                soldOutRegistryService.markSoldOut(ticketTypeId, soldOutVersion);
+            }
+            throw new TicketsSoldOutException();
+        }
+
+        //As for a single ticket, the order comes out of this node's block when it holds all of it. The tickets and
+        //their outbox entries each go to the database as one JDBC batch.
+        UUID inventoryLeaseId = null;
+        if(ticketBlockLeaseService.isEnabled()) {
+            inventoryLeaseId = ticketBlockLeaseService.claimTickets(ticketType, quantity).orElse(null);
+        }
+        List<Ticket> tickets = new ArrayList<>(quantity);
+        for(int i = 0; i < quantity; i++) {
+            Ticket ticket = new Ticket();
+            ticket.setStatus(TicketStatusEnum.PURCHASED);
+            ticket.setTicketType(ticketType);
+            ticket.setPurchaser(user);
+            ticket.setInventoryLeaseId(inventoryLeaseId);
+            ticket.setQrCodeStatus(TicketQrCodeStatusEnum.PENDING);
+            tickets.add(ticket);
+        }
+        List<Ticket> savedTickets = ticketRepository.saveAll(tickets);
+        qrCodeOutboxService.enqueue(savedTickets);
+
+        //One claim for the whole order, again last so the inventory row is locked only until the commit. Once the
+        //database runs out the order can still come out of the block a refill leased the last tickets into.
+        if(inventoryLeaseId == null && !ticketInventoryService.claimTickets(ticketType, quantity)) {
+            if(!ticketBlockLeaseService.isEnabled()) {
+                throw new TicketsSoldOutException();
+            }
+            UUID refillLeaseId = ticketBlockLeaseService.claimTicketsAfterRefill(ticketType, quantity)
+                    .orElseThrow(TicketsSoldOutException::new);
+            for(Ticket savedTicket : savedTickets) {
+                ticketRepository.setInventoryLeaseId(savedTicket.getId(), refillLeaseId);
+                savedTicket.setInventoryLeaseId(refillLeaseId);
+            }
+            soldOutRegistryService.invalidate(ticketTypeId);
+        }
+
+        return savedTickets;
+    }
+
+    private User findUser(UUID userId) {
+        return userRepository.findById(userId).orElseThrow(() -> new UserNotFoundException(
+                String.format("User with ID %s was not found", userId)
+        ));
+    }
+
+    private TicketType findTicketType(UUID ticketTypeId) {
+        return ticketTypeRepository.findById(ticketTypeId).orElseThrow(() -> new TicketTypeNotFoundException(
+                String.format("Ticket type with ID %s was not found", ticketTypeId)
+        ));
+    }
+
+    //Cheap early exit from the snapshot just read, the conditional update on claim is what actually decides.
+    //Sharded ticket types keep their counts on the shard rows so the snapshot says nothing about them, and
+    //with block leases tickets_sold also counts tickets still sitting unsold in some node's block.
+    private boolean isSoldOut(TicketType ticketType, int quantity) {
+        Integer totalTicketsAvailable = ticketType.getTotalTicketsAvailable();
+        return totalTicketsAvailable == null
+                || (!ticketBlockLeaseService.isEnabled() && ticketType.getInventoryShardCount() <= 1
+                        && ticketType.getTicketsSold() + quantity > totalTicketsAvailable);
     }
 }
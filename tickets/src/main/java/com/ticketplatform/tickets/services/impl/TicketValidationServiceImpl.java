@@ -1,19 +1,47 @@
 package com.ticketplatform.tickets.services.impl;
 
+import com.ticketplatform.tickets.domain.ScannedQrCode;
+import com.ticketplatform.tickets.domain.TicketScan;
 import com.ticketplatform.tickets.domain.entities.*;
+import com.ticketplatform.tickets.exceptions.InvalidQrCodeException;
 import com.ticketplatform.tickets.exceptions.QrCodeNotFoundException;
 import com.ticketplatform.tickets.exceptions.TicketNotFoundException;
 import com.ticketplatform.tickets.repositories.QrCodeRepository;
 import com.ticketplatform.tickets.repositories.TicketRepository;
+import com.ticketplatform.tickets.repositories.TicketRepository.ScannedTicket;
 import com.ticketplatform.tickets.repositories.TicketValidationRepository;
+import com.ticketplatform.tickets.services.CheckInCounterService;
+import com.ticketplatform.tickets.services.GateManifestService;
+import com.ticketplatform.tickets.services.QrCodePayloadService;
 import com.ticketplatform.tickets.services.TicketValidationService;
+import com.ticketplatform.tickets.services.ValidationJournalService;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.IntStream;
 
 @Service
+@Slf4j
 @RequiredArgsConstructor
 @Transactional
 public class TicketValidationServiceImpl implements TicketValidationService {
@@ -21,41 +49,301 @@ public class TicketValidationServiceImpl implements TicketValidationService {
     private final QrCodeRepository qrCodeRepository;
     private final TicketValidationRepository ticketValidationRepository;
     private final TicketRepository ticketRepository;
+    private final QrCodePayloadService qrCodePayloadService;
+    private final TransactionTemplate transactionTemplate;
+    private final GateManifestService gateManifestService;
+    private final ValidationJournalService validationJournalService;
+    private final CheckInCounterService checkInCounterService;
 
+    //Codes of an event with its gate open are answered from memory, without a transaction
     @Override
+    @Transactional(Transactional.TxType.SUPPORTS)
     public TicketValidation validateTicketByQrCode(UUID qrCodeId) {
-        QrCode qrCode = qrCodeRepository.findByIdAndStatus(qrCodeId, QrCodeStatusEnum.ACTIVE)
+        return gateManifestService.validateByQrCode(qrCodeId, null)
+                .map(this::counted)
+                .orElseGet(() -> transactionTemplate.execute(status -> validateTicket(
+                        findActiveQrCode(qrCodeId).getTicket(), TicketValidationMethodEnum.QR_SCAN)));
+    }
+
+    private QrCode findActiveQrCode(UUID qrCodeId) {
+        return qrCodeRepository.findByIdAndStatus(qrCodeId, QrCodeStatusEnum.ACTIVE)
                 .orElseThrow(() -> new QrCodeNotFoundException(String.format(
                         "QR Code with ID %s was not found", qrCodeId)
                 ));
-        Ticket ticket = qrCode.getTicket();
+    }
+
+    //The signature and event are checked before a transaction is even started, so forged codes and codes for
+    //another event never reach the database. A signed code must still be the ticket's active one, which a
+    //reissued code replaces; a dynamic code only needs the ticket to still have an active one, as it is
+    //never stored. Either is answered from memory when its event's gate is open.
+    @Override
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public TicketValidation validateTicketByQrPayload(String payload, UUID eventId) {
+        ScannedQrCode scannedQrCode = qrCodePayloadService.verifyPayload(payload);
+        if(!scannedQrCode.isSigned()) {
+            return gateManifestService.validateByQrCode(scannedQrCode.getQrCodeId(), eventId)
+                    .map(this::counted)
+                    .orElseGet(() -> transactionTemplate.execute(status -> {
+                        Ticket ticket = findActiveQrCode(scannedQrCode.getQrCodeId()).getTicket();
+                        checkEvent(eventIdOf(ticket), eventId);
+                        return validateTicket(ticket, TicketValidationMethodEnum.QR_SCAN);
+                    }));
+        }
+
+        checkEvent(scannedQrCode.getEventId(), eventId);
+        Optional<TicketValidation> fromGate = gateManifestService.validateByTicket(scannedQrCode.getTicketId(),
+                scannedQrCode.getEventId(), scannedQrCode.isDynamic() ? null : payload, TicketValidationMethodEnum.QR_SCAN);
+        if(fromGate.isPresent()) {
+            return counted(fromGate.get());
+        }
+        return transactionTemplate.execute(status -> {
+            QrCode qrCode = qrCodeRepository.findByTicketIdAndStatus(scannedQrCode.getTicketId(), QrCodeStatusEnum.ACTIVE)
+                    .filter(active -> scannedQrCode.isDynamic() || payload.equals(active.getPayload()))
+                    .orElseThrow(() -> new QrCodeNotFoundException(String.format(
+                            "No active QR Code for ticket %s matches the one scanned", scannedQrCode.getTicketId())
+                    ));
+            return validateTicket(qrCode.getTicket(), TicketValidationMethodEnum.QR_SCAN);
+        });
+    }
+
+    private static void checkEvent(UUID ticketEventId, UUID gateEventId) {
+        if(gateEventId != null && !gateEventId.equals(ticketEventId)) {
+            throw new InvalidQrCodeException("QR code was issued for a different event");
+        }
+    }
 
-        return validateTicket(ticket, TicketValidationMethodEnum.QR_SCAN);
+    private static UUID eventIdOf(Ticket ticket) {
+        TicketType ticketType = ticket.getTicketType();
+        return ticketType == null || ticketType.getEvent() == null ? null : ticketType.getEvent().getId();
     }
 
+    //Whether this is the first VALID scan is decided by one conditional update of the ticket row rather than by
+    //loading the ticket's validations, so it takes the same time however often the ticket has been scanned
+    //and concurrent scans at two gates let the ticket in once.
+    //With the validation journal on, that update is all the scan writes to the database, the validation goes to
+    //the journal once it has committed, so a scan that rolls back leaves nothing behind to be inserted later.
+    //A ticket of an event whose gate is open on another node is that node's to let in, this one would not know.
     private TicketValidation validateTicket(Ticket ticket, TicketValidationMethodEnum ticketValidationMethodEnum) {
+        gateManifestService.checkNotOpenElsewhere(eventIdOf(ticket));
         TicketValidation ticketValidation = new TicketValidation();
         ticketValidation.setTicket(ticket);
         ticketValidation.setValidationMethod(ticketValidationMethodEnum);
 
-        TicketValidationStatusEnum ticketValidationStatus = ticket.getValidations().stream()
-                .filter(v -> TicketValidationStatusEnum.VALID.equals(v.getValidationStatus()))
-                .findFirst()
-                .map(v -> TicketValidationStatusEnum.INVALID)
-                .orElse(TicketValidationStatusEnum.VALID);
-        ticketValidation.setValidationStatus(ticketValidationStatus);
+        boolean admitted = ticketRepository.admit(ticket.getId(), LocalDateTime.now()) == 1;
+        ticketValidation.setValidationStatus(admitted ? TicketValidationStatusEnum.VALID : TicketValidationStatusEnum.INVALID);
 
-        TicketValidation saved = ticketValidationRepository.save(ticketValidation);
+        if(validationJournalService.isEnabled()) {
+            ticketValidation.setId(UUID.randomUUID());
+            ticketValidation.setCreatedAt(LocalDateTime.now());
+            ticketValidation.setUpdatedAt(ticketValidation.getCreatedAt());
+            afterCommit(() -> journal(ticketValidation));
+            return counted(ticketValidation);
+        }
+        return counted(ticketValidationRepository.save(ticketValidation));
+    }
 
-        // Add to ticket's in-memory list so next validation sees it
-        ticket.getValidations().add(saved);
+    //The admission has committed by now, if the journal cannot take the validation it is inserted on its own
+    private void journal(TicketValidation ticketValidation) {
+        try {
+            validationJournalService.append(ticketValidation, false);
+        } catch(UncheckedIOException ex) {
+            log.error("Failed to journal validation {}, inserting it instead", ticketValidation.getId(), ex);
+            TransactionTemplate insert = new TransactionTemplate(transactionTemplate.getTransactionManager());
+            insert.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+            insert.executeWithoutResult(status -> ticketValidationRepository.insertAll(List.of(ticketValidation)));
+        }
+    }
 
-        return saved;
+    private static void afterCommit(Runnable action) {
+        if(!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    //Adds the validation to the live check-ins of its ticket type. A ticket loaded with its QR code only holds a
+    //reference to its ticket type, whose id is read without loading it.
+    private TicketValidation counted(TicketValidation ticketValidation) {
+        Ticket ticket = ticketValidation.getTicket();
+        if(ticket != null && ticket.getTicketType() != null) {
+            checkInCounterService.recordValidation(ticket.getTicketType().getId(),
+                    ticketValidation.getValidationStatus());
+        }
+        return ticketValidation;
     }
 
     @Override
     public TicketValidation validateTicketManually(UUID ticketId) {
+        Optional<TicketValidation> fromGate = gateManifestService.validateByTicket(ticketId, null, null,
+                TicketValidationMethodEnum.MANUAL);
+        if(fromGate.isPresent()) {
+            return counted(fromGate.get());
+        }
         Ticket ticket = ticketRepository.findById(ticketId).orElseThrow(TicketNotFoundException::new);
         return validateTicket(ticket, TicketValidationMethodEnum.MANUAL);
     }
+
+    //Scans a door device queued while it was offline, answered in the order they were sent. Signatures are checked
+    //first, then every ticket the scans name is read in one query and the scans are decided in the order they were
+    //made, so the earliest scan of a ticket not yet let in is the VALID one. Admissions and validations are then
+    //written in JDBC batches at the time of their scan. A scan that would have been refused on its own comes back
+    //INVALID without a ticket and writes nothing.
+    @Override
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public List<TicketValidation> validateTicketScans(List<TicketScan> scans, UUID eventId) {
+        List<VerifiedScan> verifiedScans = scans.stream().map(scan -> verify(scan, eventId)).toList();
+        Set<UUID> ticketIds = new HashSet<>();
+        Set<UUID> qrCodeIds = new HashSet<>();
+        for(VerifiedScan verified : verifiedScans) {
+            if(verified != null && verified.qrCodeId() != null) {
+                qrCodeIds.add(verified.qrCodeId());
+            } else if(verified != null) {
+                ticketIds.add(verified.ticketId());
+            }
+        }
+
+        return transactionTemplate.execute(status -> {
+            List<ScannedTicket> scannedTickets = ticketIds.isEmpty() && qrCodeIds.isEmpty()
+                    ? List.of()
+                    : ticketRepository.findScannedTickets(ticketIds, qrCodeIds, QrCodeStatusEnum.ACTIVE);
+            Map<UUID, ScannedTicket> byTicketId = new HashMap<>();
+            Map<UUID, ScannedTicket> byQrCodeId = new HashMap<>();
+            for(ScannedTicket scannedTicket : scannedTickets) {
+                byTicketId.put(scannedTicket.getTicketId(), scannedTicket);
+                if(scannedTicket.getQrCodeId() != null) {
+                    byQrCodeId.put(scannedTicket.getQrCodeId(), scannedTicket);
+                }
+            }
+
+            //Sent to the wrong node, the device keeps its scans for the one with the gate open
+            scannedTickets.stream()
+                    .map(ScannedTicket::getEventId)
+                    .distinct()
+                    .forEach(gateManifestService::checkNotOpenElsewhere);
+
+            TicketValidation[] results = new TicketValidation[scans.size()];
+            List<TicketValidation> ticketValidations = new ArrayList<>(scans.size());
+            List<UUID> ticketTypeIds = new ArrayList<>(scans.size());
+            Map<UUID, TicketValidation> firstScans = new HashMap<>();
+            Set<UUID> seen = new HashSet<>();
+            int[] byScanTime = IntStream.range(0, scans.size()).boxed()
+                    .sorted(Comparator.comparing(index -> scannedAt(scans.get(index))))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            for(int index : byScanTime) {
+                TicketScan scan = scans.get(index);
+                TicketValidationMethodEnum method = methodOf(scan);
+                ScannedTicket scannedTicket = match(verifiedScans.get(index), eventId, byTicketId, byQrCodeId);
+                if(scannedTicket == null) {
+                    results[index] = refused(method);
+                    continue;
+                }
+                //A ticket of an event with its gate open is for the gate to decide, it has the latest word
+                Optional<TicketValidation> fromGate = gateManifestService.validateByTicket(
+                        scannedTicket.getTicketId(), null, null, method);
+                if(fromGate.isPresent()) {
+                    results[index] = counted(fromGate.get());
+                    continue;
+                }
+
+                TicketValidation ticketValidation = new TicketValidation();
+                ticketValidation.setTicket(ticketRepository.getReferenceById(scannedTicket.getTicketId()));
+                ticketValidation.setValidationMethod(method);
+                ticketValidation.setCreatedAt(LocalDateTime.ofInstant(scannedAt(scan), ZoneId.systemDefault()));
+                boolean first = seen.add(scannedTicket.getTicketId()) && scannedTicket.getAdmittedAt() == null;
+                ticketValidation.setValidationStatus(first
+                        ? TicketValidationStatusEnum.VALID
+                        : TicketValidationStatusEnum.INVALID);
+                if(first) {
+                    firstScans.put(scannedTicket.getTicketId(), ticketValidation);
+                }
+                ticketValidations.add(ticketValidation);
+                ticketTypeIds.add(scannedTicket.getTicketTypeId());
+                results[index] = ticketValidation;
+            }
+
+            //Let in by another gate since they were read
+            Map<UUID, LocalDateTime> admissions = new HashMap<>();
+            firstScans.forEach((ticketId, ticketValidation) -> admissions.put(ticketId, ticketValidation.getCreatedAt()));
+            Set<UUID> admitted = admissions.isEmpty() ? Set.of() : ticketRepository.admitEach(admissions);
+            firstScans.forEach((ticketId, ticketValidation) -> {
+                if(!admitted.contains(ticketId)) {
+                    ticketValidation.setValidationStatus(TicketValidationStatusEnum.INVALID);
+                }
+            });
+
+            ticketValidationRepository.insertAll(ticketValidations);
+            for(int i = 0; i < ticketValidations.size(); i++) {
+                checkInCounterService.recordValidation(ticketTypeIds.get(i), ticketValidations.get(i).getValidationStatus());
+            }
+            return Arrays.asList(results);
+        });
+    }
+
+    private VerifiedScan verify(TicketScan scan, UUID eventId) {
+        try {
+            if(TicketValidationMethodEnum.MANUAL.equals(scan.getMethod())) {
+                return scan.getId() == null ? null : new VerifiedScan(null, scan.getId(), false, null);
+            }
+            if(scan.getPayload() == null) {
+                return scan.getId() == null ? null : new VerifiedScan(scan.getId(), null, true, null);
+            }
+            ScannedQrCode scannedQrCode = qrCodePayloadService.verifyPayload(scan.getPayload(), scannedAt(scan));
+            if(!scannedQrCode.isSigned()) {
+                return new VerifiedScan(scannedQrCode.getQrCodeId(), null, true, null);
+            }
+            checkEvent(scannedQrCode.getEventId(), eventId);
+            return new VerifiedScan(null, scannedQrCode.getTicketId(), true,
+                    scannedQrCode.isDynamic() ? null : scan.getPayload());
+        } catch(InvalidQrCodeException ex) {
+            return null;
+        }
+    }
+
+    //Holds a scan to what a single one would have been held to: a QR code id must be active and for the gate's
+    //event, a signed payload must be the ticket's active one unless it is dynamic
+    private static ScannedTicket match(VerifiedScan verified, UUID eventId, Map<UUID, ScannedTicket> byTicketId,
+                                       Map<UUID, ScannedTicket> byQrCodeId) {
+        if(verified == null) {
+            return null;
+        }
+        if(verified.qrCodeId() != null) {
+            ScannedTicket scannedTicket = byQrCodeId.get(verified.qrCodeId());
+            return scannedTicket == null || (eventId != null && !eventId.equals(scannedTicket.getEventId()))
+                    ? null
+                    : scannedTicket;
+        }
+        ScannedTicket scannedTicket = byTicketId.get(verified.ticketId());
+        if(scannedTicket == null || !verified.activeCode()) {
+            return scannedTicket;
+        }
+        boolean matches = scannedTicket.getQrCodeId() != null
+                && (verified.payload() == null || verified.payload().equals(scannedTicket.getPayload()));
+        return matches ? scannedTicket : null;
+    }
+
+    private static TicketValidation refused(TicketValidationMethodEnum method) {
+        TicketValidation ticketValidation = new TicketValidation();
+        ticketValidation.setValidationMethod(method);
+        ticketValidation.setValidationStatus(TicketValidationStatusEnum.INVALID);
+        return ticketValidation;
+    }
+
+    private static TicketValidationMethodEnum methodOf(TicketScan scan) {
+        return scan.getMethod() == null ? TicketValidationMethodEnum.QR_SCAN : scan.getMethod();
+    }
+
+    private static Instant scannedAt(TicketScan scan) {
+        return scan.getScannedAt() == null ? Instant.now() : scan.getScannedAt();
+    }
+
+    //A scan naming either the QR code or the ticket, with the payload it must match if any
+    private record VerifiedScan(UUID qrCodeId, UUID ticketId, boolean activeCode, String payload) {
+    }
 }
@@ -0,0 +1,225 @@
+package com.ticketplatform.tickets.services.impl;
+
+import com.ticketplatform.tickets.domain.entities.TicketValidation;
+import com.ticketplatform.tickets.domain.entities.TicketValidationStatusEnum;
+import com.ticketplatform.tickets.repositories.TicketRepository;
+import com.ticketplatform.tickets.repositories.TicketValidationRepository;
+import com.ticketplatform.tickets.services.ValidationJournalService;
+import com.ticketplatform.tickets.util.ValidationJournal;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+//Validations are appended to a local journal instead of being inserted as they are made, so a scan waits for one
+//fsync, shared with the scans that arrive alongside it, rather than for the database. Every flush interval the
+//journal is rolled and each sealed segment is inserted in one transaction, tickets let in at a gate included,
+//then deleted. Segments left over from before a restart are replayed the same way on start up, skipping
+//validations already inserted, since a node may stop between a segment's commit and its deletion.
+//A segment that keeps failing while later ones go in is quarantined, renamed out of the journal for someone to
+//look at, so it does not hold the journal up for good.
+//The journal is local to the node, a node that does not come back keeps its scans to itself until its disk is
+//brought back, so it belongs on a persistent volume.
+@Service
+@Slf4j
+public class ValidationJournalServiceImpl implements ValidationJournalService {
+
+    private static final int EXISTING_IDS_BATCH_SIZE = 500;
+
+    private final TicketRepository ticketRepository;
+    private final TicketValidationRepository ticketValidationRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final Path directory;
+    private final int maxAttempts;
+
+    private final ReentrantLock flushLock = new ReentrantLock();
+    //Segments that may have been inserted already
+    private final Set<Path> recovered = new HashSet<>();
+    //Failed flushes of segments still in the journal
+    private final Map<Path, Integer> attempts = new HashMap<>();
+    private ValidationJournal journal;
+
+    public ValidationJournalServiceImpl(
+            TicketRepository ticketRepository,
+            TicketValidationRepository ticketValidationRepository,
+            TransactionTemplate transactionTemplate,
+            @Value("${tickets.validations.journal.enabled:false}") boolean enabled,
+            @Value("${tickets.validations.journal.directory:journal}") Path directory,
+            @Value("${tickets.validations.journal.max-attempts:5}") int maxAttempts) {
+        this.ticketRepository = ticketRepository;
+        this.ticketValidationRepository = ticketValidationRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.directory = directory;
+        this.maxAttempts = maxAttempts;
+    }
+
+    @PostConstruct
+    void openJournal() throws IOException {
+        if(!enabled) {
+            return;
+        }
+        journal = new ValidationJournal(directory);
+        recovered.addAll(journal.segments());
+        log.info("Journaling validations to {}", directory.toAbsolutePath());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void replayJournal() {
+        if(enabled && !recovered.isEmpty()) {
+            log.info("Replaying {} validation journal segments", recovered.size());
+            flushJournal();
+        }
+    }
+
+    @PreDestroy
+    void closeJournal() throws IOException {
+        if(enabled) {
+            flushJournal();
+            journal.close();
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    //Gives the validation its id and time if it has none yet, it is inserted with them
+    @Override
+    public void append(TicketValidation ticketValidation, boolean admit) {
+        if(ticketValidation.getId() == null) {
+            ticketValidation.setId(UUID.randomUUID());
+        }
+        if(ticketValidation.getCreatedAt() == null) {
+            ticketValidation.setCreatedAt(LocalDateTime.now());
+        }
+        ticketValidation.setUpdatedAt(ticketValidation.getCreatedAt());
+        try {
+            journal.append(List.of(new ValidationJournal.Entry(ticketValidation.getId(),
+                    ticketValidation.getTicket().getId(), ticketValidation.getValidationStatus(),
+                    ticketValidation.getValidationMethod(), ticketValidation.getCreatedAt(), admit)));
+        } catch(IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    //Segments are inserted in order. One that fails to insert is left for the next flush and those after it are
+    //tried all the same, which may let a ticket in at a later scan of it than its first. Once a segment has failed
+    //max attempts times and a later one went in, it is the segment and not the database, so it is quarantined.
+    @Override
+    @Scheduled(fixedDelayString = "${tickets.validations.journal.flush-interval:500ms}")
+    public void flushJournal() {
+        if(!enabled) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            List<Path> failed = new ArrayList<>();
+            boolean written = false;
+            for(Path segment : journal.roll()) {
+                try {
+                    ValidationJournal.Contents contents = ValidationJournal.read(segment);
+                    boolean replay = recovered.contains(segment);
+                    transactionTemplate.executeWithoutResult(status -> write(contents.entries(), replay));
+                    if(contents.unreadBytes() >= ValidationJournal.ENTRY_SIZE) {
+                        //More than an append cut short by a crash, what follows may still be validations
+                        Path quarantined = journal.quarantine(segment);
+                        log.error("Validation journal segment {} has {} unreadable bytes after its last entry, "
+                                + "quarantined as {}", segment, contents.unreadBytes(), quarantined);
+                    } else {
+                        Files.delete(segment);
+                    }
+                    recovered.remove(segment);
+                    attempts.remove(segment);
+                    written = true;
+                } catch(IOException | RuntimeException ex) {
+                    int attempt = attempts.merge(segment, 1, Integer::sum);
+                    log.error("Failed to flush validation journal segment {} (attempt {}), retrying on the next flush",
+                            segment, attempt, ex);
+                    recovered.add(segment);
+                    failed.add(segment);
+                }
+            }
+            if(written) {
+                for(Path segment : failed) {
+                    if(attempts.get(segment) >= maxAttempts) {
+                        quarantine(segment);
+                    }
+                }
+            }
+        } catch(IOException ex) {
+            log.error("Failed to roll the validation journal", ex);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void quarantine(Path segment) throws IOException {
+        Path quarantined = journal.quarantine(segment);
+        recovered.remove(segment);
+        attempts.remove(segment);
+        log.error("Quarantined validation journal segment {} after {} failed flushes, its validations have to be "
+                + "inserted by hand", quarantined, maxAttempts);
+    }
+
+    private void write(List<ValidationJournal.Entry> entries, boolean replay) {
+        Set<UUID> existing = replay ? findExistingIds(entries) : Set.of();
+        List<TicketValidation> ticketValidations = new ArrayList<>(entries.size());
+        Map<UUID, LocalDateTime> admissions = new HashMap<>();
+        for(ValidationJournal.Entry entry : entries) {
+            if(existing.contains(entry.id())) {
+                continue;
+            }
+            TicketValidation ticketValidation = new TicketValidation();
+            ticketValidation.setId(entry.id());
+            ticketValidation.setTicket(ticketRepository.getReferenceById(entry.ticketId()));
+            ticketValidation.setValidationStatus(entry.status());
+            ticketValidation.setValidationMethod(entry.method());
+            ticketValidation.setCreatedAt(entry.createdAt());
+            ticketValidations.add(ticketValidation);
+            if(entry.admit() && entry.status() == TicketValidationStatusEnum.VALID) {
+                admissions.putIfAbsent(entry.ticketId(), entry.createdAt());
+            }
+        }
+        ticketValidationRepository.insertAll(ticketValidations);
+
+        if(!admissions.isEmpty()) {
+            int admitted = ticketRepository.admitEach(admissions).size();
+            if(admitted < admissions.size() && !replay) {
+                log.warn("{} tickets let in at a gate had already been let in elsewhere", admissions.size() - admitted);
+            }
+        }
+    }
+
+    private Set<UUID> findExistingIds(List<ValidationJournal.Entry> entries) {
+        Set<UUID> existing = new HashSet<>();
+        for(int from = 0; from < entries.size(); from += EXISTING_IDS_BATCH_SIZE) {
+            List<UUID> ids = entries.subList(from, Math.min(from + EXISTING_IDS_BATCH_SIZE, entries.size())).stream()
+                    .map(ValidationJournal.Entry::id)
+                    .toList();
+            existing.addAll(ticketValidationRepository.findExistingIds(ids));
+        }
+        return existing;
+    }
+}
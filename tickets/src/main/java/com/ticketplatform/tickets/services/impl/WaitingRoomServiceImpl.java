@@ -0,0 +1,308 @@
+package com.ticketplatform.tickets.services.impl;
+
+import com.ticketplatform.tickets.domain.WaitingRoomStatus;
+import com.ticketplatform.tickets.domain.entities.EventStatusEnum;
+import com.ticketplatform.tickets.exceptions.AdmissionTokenException;
+import com.ticketplatform.tickets.exceptions.EventNotFoundException;
+import com.ticketplatform.tickets.exceptions.WaitingRoomException;
+import com.ticketplatform.tickets.repositories.EventRepository;
+import com.ticketplatform.tickets.repositories.SpentAdmissionTokenRepository;
+import com.ticketplatform.tickets.repositories.TicketTypeRepository;
+import com.ticketplatform.tickets.services.WaitingRoomService;
+import jakarta.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+//Admission control in front of the purchase endpoints. Every event with buyers waiting gets an in-memory FIFO:
+//joining hands out the next sequence number and admitting just moves a cursor forward, so a buyer's position
+//is their sequence number minus the cursor. Admitted buyers get a signed token the purchase endpoints check
+//without touching the queue, so any node sharing the token secret can verify it. Each admission is good for one
+//purchase: spending it writes the token's id to spent_admission_tokens, which every node checks.
+@Service
+@Slf4j
+public class WaitingRoomServiceImpl implements WaitingRoomService {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder BASE64_ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder BASE64_DECODER = Base64.getUrlDecoder();
+
+    private final EventRepository eventRepository;
+    private final TicketTypeRepository ticketTypeRepository;
+    private final SpentAdmissionTokenRepository spentAdmissionTokenRepository;
+    private final TransactionTemplate requiresNewTransaction;
+
+    private final boolean enabled;
+    private final int admissionBatchSize;
+    private final Duration admissionInterval;
+    private final Duration admissionTokenDuration;
+    private final SecretKeySpec tokenKey;
+
+    private final ConcurrentMap<UUID, WaitingRoom> waitingRooms = new ConcurrentHashMap<>();
+
+    public WaitingRoomServiceImpl(
+            EventRepository eventRepository,
+            TicketTypeRepository ticketTypeRepository,
+            SpentAdmissionTokenRepository spentAdmissionTokenRepository,
+            PlatformTransactionManager transactionManager,
+            @Value("${tickets.waiting-room.enabled:false}") boolean enabled,
+            @Value("${tickets.waiting-room.admission-batch-size:50}") int admissionBatchSize,
+            @Value("${tickets.waiting-room.admission-interval:1s}") Duration admissionInterval,
+            @Value("${tickets.waiting-room.admission-token-duration:5m}") Duration admissionTokenDuration,
+            @Value("${tickets.waiting-room.token-secret:}") String tokenSecret) {
+        this.eventRepository = eventRepository;
+        this.ticketTypeRepository = ticketTypeRepository;
+        this.spentAdmissionTokenRepository = spentAdmissionTokenRepository;
+        this.requiresNewTransaction = new TransactionTemplate(transactionManager);
+        this.requiresNewTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.enabled = enabled;
+        this.admissionBatchSize = admissionBatchSize;
+        this.admissionInterval = admissionInterval;
+        this.admissionTokenDuration = admissionTokenDuration;
+
+        byte[] keyBytes;
+        if(tokenSecret.isBlank()) {
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes(keyBytes);
+            if(enabled) {
+                log.warn("No waiting room token secret configured, admission tokens will only be valid on this node");
+            }
+        } else {
+            keyBytes = tokenSecret.getBytes(StandardCharsets.UTF_8);
+        }
+        this.tokenKey = new SecretKeySpec(keyBytes, HMAC_ALGORITHM);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public WaitingRoomStatus joinQueue(UUID eventId, UUID userId) {
+        while(true) {
+            WaitingRoom waitingRoom = waitingRooms.get(eventId);
+            if(waitingRoom == null) {
+                //Only the first buyer for an event pays for the database check
+                if(!eventRepository.existsByIdAndStatus(eventId, EventStatusEnum.PUBLISHED)) {
+                    throw new EventNotFoundException(String.format("Event with ID '%s' does not exist", eventId));
+                }
+                waitingRoom = waitingRooms.computeIfAbsent(eventId, id -> new WaitingRoom());
+            }
+
+            //Joining again keeps the place already held rather than going to the back
+            QueueEntry queueEntry = waitingRoom.entries.computeIfAbsent(userId, waitingRoom::nextEntry);
+            //An empty room may have been dropped just as this buyer joined it, in which case join the new one
+            if(waitingRooms.get(eventId) == waitingRoom) {
+                return statusOf(eventId, userId, waitingRoom, queueEntry);
+            }
+        }
+    }
+
+    @Override
+    public WaitingRoomStatus getQueueStatus(UUID eventId, UUID userId) {
+        WaitingRoom waitingRoom = waitingRooms.get(eventId);
+        QueueEntry queueEntry = waitingRoom == null ? null : waitingRoom.entries.get(userId);
+        if(queueEntry == null) {
+            throw new WaitingRoomException(
+                    String.format("User with ID %s is not in the waiting room for event %s", userId, eventId));
+        }
+        queueEntry.lastSeenAt = System.currentTimeMillis();
+        return statusOf(eventId, userId, waitingRoom, queueEntry);
+    }
+
+    @Override
+    public <T> T spendAdmission(String admissionToken, UUID eventId, UUID ticketTypeId, UUID userId,
+                                Supplier<T> purchase) {
+        Admission admission = verify(admissionToken, eventId, ticketTypeId, userId);
+
+        //Committed before the purchase starts so a second request with the same token is refused even while
+        //this one is still running. A purchase that fails hands the admission back for the buyer to try again.
+        try {
+            requiresNewTransaction.executeWithoutResult(status -> spentAdmissionTokenRepository.insert(
+                    admission.tokenId(), eventId, userId,
+                    LocalDateTime.ofInstant(admission.expiresAt(), ZoneId.systemDefault())));
+        } catch (DataIntegrityViolationException ex) {
+            throw new AdmissionTokenException("Admission token has already been used", ex);
+        }
+
+        T result;
+        try {
+            result = purchase.get();
+        } catch (RuntimeException ex) {
+            requiresNewTransaction.executeWithoutResult(status ->
+                    spentAdmissionTokenRepository.deleteById(admission.tokenId()));
+            throw ex;
+        }
+
+        //The buyer has had their turn, they can join the queue again if this node holds their place
+        WaitingRoom waitingRoom = waitingRooms.get(eventId);
+        if(waitingRoom != null) {
+            waitingRoom.entries.computeIfPresent(userId, (id, queueEntry) ->
+                    admission.tokenId().equals(queueEntry.tokenId) ? null : queueEntry);
+        }
+        return result;
+    }
+
+    @Override
+    @Transactional
+    @Scheduled(fixedDelayString = "${tickets.waiting-room.spent-token-purge-interval:10m}",
+            initialDelayString = "${tickets.waiting-room.spent-token-purge-interval:10m}")
+    public void purgeSpentTokens() {
+        int purged = spentAdmissionTokenRepository.deleteExpired(LocalDateTime.now());
+        if(purged > 0) {
+            log.debug("Purged {} spent admission tokens", purged);
+        }
+    }
+
+    private Admission verify(String admissionToken, UUID eventId, UUID ticketTypeId, UUID userId) {
+        if(admissionToken == null || admissionToken.isBlank()) {
+            throw new AdmissionTokenException("An admission token is required to purchase tickets for this event");
+        }
+
+        int separator = admissionToken.indexOf('.');
+        String[] claims;
+        Instant expiresAt;
+        UUID tokenId;
+        try {
+            byte[] payload = BASE64_DECODER.decode(admissionToken.substring(0, Math.max(0, separator)));
+            byte[] signature = BASE64_DECODER.decode(admissionToken.substring(separator + 1));
+            if(separator < 0 || !MessageDigest.isEqual(sign(payload), signature)) {
+                throw new AdmissionTokenException("Admission token is not valid");
+            }
+            claims = new String(payload, StandardCharsets.UTF_8).split(":");
+            if(claims.length != 4) {
+                throw new AdmissionTokenException("Admission token is not valid");
+            }
+            expiresAt = Instant.ofEpochSecond(Long.parseLong(claims[2]));
+            tokenId = UUID.fromString(claims[3]);
+        } catch (IllegalArgumentException ex) {
+            throw new AdmissionTokenException("Admission token is not valid", ex);
+        }
+
+        if(!claims[0].equals(eventId.toString()) || !claims[1].equals(userId.toString())) {
+            throw new AdmissionTokenException("Admission token was issued for a different event or user");
+        }
+        if(expiresAt.isBefore(Instant.now())) {
+            throw new AdmissionTokenException("Admission token has expired");
+        }
+        if(!ticketTypeRepository.existsByIdAndEventId(ticketTypeId, eventId)) {
+            throw new AdmissionTokenException("Ticket type does not belong to the event the token was issued for");
+        }
+        return new Admission(tokenId, expiresAt);
+    }
+
+    @Override
+    @Scheduled(fixedRateString = "${tickets.waiting-room.admission-interval:1s}",
+            initialDelayString = "${tickets.waiting-room.admission-interval:1s}")
+    public void admitNext() {
+        if(!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        waitingRooms.forEach((eventId, waitingRoom) -> {
+            waitingRoom.admit(admissionBatchSize);
+
+            //Admitted buyers whose token has run out, or who were admitted and never came back for it, can no
+            //longer buy and give up their place. A room nobody is in any more is dropped and recreated when
+            //the next buyer turns up.
+            long admittedThrough = waitingRoom.admittedThrough.get();
+            waitingRoom.entries.values().removeIf(queueEntry -> queueEntry.sequence < admittedThrough
+                    && now - (queueEntry.admittedAt > 0 ? queueEntry.admittedAt : queueEntry.lastSeenAt)
+                    > admissionTokenDuration.toMillis());
+            if(waitingRoom.entries.isEmpty()) {
+                waitingRooms.remove(eventId, waitingRoom);
+            }
+        });
+    }
+
+    private WaitingRoomStatus statusOf(UUID eventId, UUID userId, WaitingRoom waitingRoom, QueueEntry queueEntry) {
+        long position = queueEntry.sequence - waitingRoom.admittedThrough.get() + 1;
+        if(position > 0) {
+            long intervalsToWait = (position + admissionBatchSize - 1) / admissionBatchSize;
+            long estimatedWaitSeconds = (intervalsToWait * admissionInterval.toMillis() + 999) / 1000;
+            return new WaitingRoomStatus(position, estimatedWaitSeconds, null, null);
+        }
+
+        //The token's lifetime starts the first time the buyer sees they were admitted
+        queueEntry.markAdmitted();
+        Instant expiresAt = Instant.ofEpochMilli(queueEntry.admittedAt).plus(admissionTokenDuration);
+        String admissionToken = issueToken(eventId, userId, expiresAt, queueEntry.tokenId);
+        return new WaitingRoomStatus(0, 0, admissionToken, LocalDateTime.ofInstant(expiresAt, ZoneId.systemDefault()));
+    }
+
+    private String issueToken(UUID eventId, UUID userId, Instant expiresAt, UUID tokenId) {
+        byte[] payload = (eventId + ":" + userId + ":" + expiresAt.getEpochSecond() + ":" + tokenId)
+                .getBytes(StandardCharsets.UTF_8);
+        return BASE64_ENCODER.encodeToString(payload) + "." + BASE64_ENCODER.encodeToString(sign(payload));
+    }
+
+    private byte[] sign(byte[] payload) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(tokenKey);
+            return mac.doFinal(payload);
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Unable to sign admission token", ex);
+        }
+    }
+
+    private record Admission(UUID tokenId, Instant expiresAt) {
+    }
+
+    private static final class WaitingRoom {
+        private final AtomicLong nextSequence = new AtomicLong();
+        //Every sequence number below this has been admitted
+        private final AtomicLong admittedThrough = new AtomicLong();
+        private final ConcurrentMap<UUID, QueueEntry> entries = new ConcurrentHashMap<>();
+
+        private QueueEntry nextEntry(UUID userId) {
+            return new QueueEntry(nextSequence.getAndIncrement());
+        }
+
+        private void admit(int batchSize) {
+            admittedThrough.updateAndGet(admitted -> Math.min(nextSequence.get(), admitted + batchSize));
+        }
+    }
+
+    private static final class QueueEntry {
+        private final long sequence;
+        private volatile long admittedAt;
+        //Fixed on admission, so every status poll hands out a token for the same single purchase
+        private volatile UUID tokenId;
+        private volatile long lastSeenAt = System.currentTimeMillis();
+
+        private QueueEntry(long sequence) {
+            this.sequence = sequence;
+        }
+
+        private synchronized void markAdmitted() {
+            if(admittedAt == 0) {
+                tokenId = UUID.randomUUID();
+                admittedAt = System.currentTimeMillis();
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.ticketplatform.tickets.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+//LRU cache of byte arrays bounded by the total number of bytes held rather than the number of entries, so a
+//few large values cannot push the memory used past the limit. Values larger than the whole limit are not
+//cached at all. One lock around an access-ordered LinkedHashMap; the work done under it is a few pointer moves.
+public final class ByteWeightedLruCache<K> {
+
+    private final long maxBytes;
+    private final LinkedHashMap<K, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public ByteWeightedLruCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public byte[] get(K key) {
+        byte[] value;
+        synchronized(this) {
+            value = entries.get(key);
+        }
+        (value == null ? misses : hits).increment();
+        return value;
+    }
+
+    public void put(K key, byte[] value) {
+        if(value.length > maxBytes) {
+            return;
+        }
+        synchronized(this) {
+            byte[] previous = entries.put(key, value);
+            bytes += value.length - (previous == null ? 0 : previous.length);
+            Iterator<Map.Entry<K, byte[]>> eldest = entries.entrySet().iterator();
+            while(bytes > maxBytes && eldest.hasNext()) {
+                bytes -= eldest.next().getValue().length;
+                eldest.remove();
+            }
+        }
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public double hitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+}
@@ -0,0 +1,92 @@
+package com.ticketplatform.tickets.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.UUID;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+//Writes the QR codes of an event for door devices that validate offline, as they come off a cursor sorted by id.
+//The whole manifest is gzipped. Inside, big-endian:
+//  header   "ETPM", format version (2), kind (0 full, 1 delta), event id (16), version (8), since (8, 0 if full)
+//  entries  one byte of the status in the low two bits (0 valid, 1 admitted already, 2 revoked) and the length
+//           of the difference in the rest, then the difference of the QR code id from the previous one (from zero
+//           for the first, modulo 2^128) in that many bytes, then the ticket id (16)
+//  trailer  0xFF, then the number of entries (4)
+//A full manifest has the codes that can still be let in. A delta has every code changed since its since version,
+//revoked ones included, for the device to apply over what it has; either way its version is the one to ask
+//for the next delta since.
+//Codes issued before signing carry their QR code id, signed and dynamic ones their ticket id, so a device looks
+//a scan up by whichever it got. A reissued ticket has several codes; it can be let in if one is valid.
+//Random ids do not compress, sorting and taking differences is what saves the bytes on the QR code ids: 100,000
+//codes differ by about 2^111 on average, so an entry takes 31 bytes against 33 for both ids and a status as they
+//are and about 100 as JSON. Gzip then only takes out the slack of the framing.
+public final class EventManifestWriter {
+
+    public static final byte FORMAT_VERSION = 2;
+    public static final byte FULL = 0;
+    public static final byte DELTA = 1;
+
+    public static final byte VALID = 0;
+    public static final byte ADMITTED = 1;
+    public static final byte REVOKED = 2;
+
+    private static final byte[] MAGIC = {'E', 'T', 'P', 'M'};
+    private static final int END = 0xFF;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final GZIPOutputStream gzip;
+    private final DataOutputStream out;
+    private long previousHigh;
+    private long previousLow;
+    private int entries;
+
+    public EventManifestWriter(OutputStream out, UUID eventId, long version, long since) throws IOException {
+        this.gzip = new GZIPOutputStream(out, BUFFER_SIZE) {
+            {
+                def.setLevel(Deflater.BEST_SPEED);
+            }
+        };
+        this.out = new DataOutputStream(new BufferedOutputStream(gzip, BUFFER_SIZE));
+        this.out.write(MAGIC);
+        this.out.writeByte(FORMAT_VERSION);
+        this.out.writeByte(since == 0 ? FULL : DELTA);
+        this.out.writeLong(eventId.getMostSignificantBits());
+        this.out.writeLong(eventId.getLeastSignificantBits());
+        this.out.writeLong(version);
+        this.out.writeLong(since);
+    }
+
+    public void add(UUID qrCodeId, UUID ticketId, byte status) throws IOException {
+        long high = qrCodeId.getMostSignificantBits();
+        long low = qrCodeId.getLeastSignificantBits();
+        long borrow = Long.compareUnsigned(low, previousLow) < 0 ? 1 : 0;
+        long deltaLow = low - previousLow;
+        long deltaHigh = high - previousHigh - borrow;
+        if(deltaHigh == 0 && deltaLow == 0) {
+            throw new IllegalArgumentException("QR code " + qrCodeId + " was added twice");
+        }
+        int length = (Long.BYTES * 2) - (deltaHigh == 0
+                ? Long.BYTES + Long.numberOfLeadingZeros(deltaLow) / 8
+                : Long.numberOfLeadingZeros(deltaHigh) / 8);
+        out.writeByte(length << 2 | status);
+        for(int i = length - 1; i >= 0; i--) {
+            out.writeByte((int) (i >= Long.BYTES ? deltaHigh >>> ((i - Long.BYTES) * 8) : deltaLow >>> (i * 8)));
+        }
+        out.writeLong(ticketId.getMostSignificantBits());
+        out.writeLong(ticketId.getLeastSignificantBits());
+        previousHigh = high;
+        previousLow = low;
+        entries++;
+    }
+
+    //Does not close the stream it writes to
+    public void finish() throws IOException {
+        out.writeByte(END);
+        out.writeInt(entries);
+        out.flush();
+        gzip.finish();
+    }
+}
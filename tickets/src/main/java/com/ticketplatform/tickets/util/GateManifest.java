@@ -0,0 +1,231 @@
+package com.ticketplatform.tickets.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.UUID;
+
+//The QR codes of one event held outside the Java heap for scanning at the door. Each code takes a slot of
+//48 bytes (QR code id, ticket id, a hash of its payload and a tag the caller numbers something of its ticket by)
+//in one direct buffer, found through two open addressing tables of slot numbers keyed by QR code id and by ticket
+//id; whether a slot was scanned or revoked is a bit in a bitmap. A million codes take about 65MB and no objects,
+//so the collector never walks them. Slot offsets are ints, which caps a manifest at MAX_CAPACITY codes.
+//Changes are made by one writer at a time while no scan is reading, which the caller has to ensure; scans
+//may run concurrently with each other, the scanned bit is set atomically.
+public final class GateManifest {
+
+    public static final int MISSING = -1;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private static final int QR_CODE_ID = 0;
+    private static final int TICKET_ID = 16;
+    private static final int PAYLOAD_HASH = 32;
+    private static final int TAG = 40;
+    private static final int SLOT_BYTES = 48;
+
+    public static final int MAX_CAPACITY = Integer.MAX_VALUE / SLOT_BYTES;
+
+    private final int capacity;
+    private final int tableMask;
+    private final ByteBuffer slots;
+    //Slot numbers plus one, so zero means empty
+    private final ByteBuffer qrCodeIndex;
+    private final ByteBuffer ticketIndex;
+    private final ByteBuffer scanned;
+    private final ByteBuffer revoked;
+    private int size;
+
+    public GateManifest(int capacity) {
+        if(capacity < 1 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Gate manifest capacity must be between 1 and " + MAX_CAPACITY);
+        }
+        this.capacity = capacity;
+        //At most half full, so probes stay short
+        int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        this.tableMask = tableSize - 1;
+        this.slots = ByteBuffer.allocateDirect(Math.multiplyExact(capacity, SLOT_BYTES)).order(ByteOrder.nativeOrder());
+        this.qrCodeIndex = ByteBuffer.allocateDirect(tableSize * Integer.BYTES).order(ByteOrder.nativeOrder());
+        this.ticketIndex = ByteBuffer.allocateDirect(tableSize * Integer.BYTES).order(ByteOrder.nativeOrder());
+        int bitmapBytes = ((capacity + 63) >>> 6) * Long.BYTES;
+        this.scanned = ByteBuffer.allocateDirect(bitmapBytes).order(ByteOrder.nativeOrder());
+        this.revoked = ByteBuffer.allocateDirect(bitmapBytes).order(ByteOrder.nativeOrder());
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    //Returns the slot of the code, which it already has if it was added before, or MISSING when full. A new
+    //code for a ticket that has one already replaces it: the old code is revoked and the new one starts out
+    //scanned if the old one was.
+    public int add(UUID qrCodeId, UUID ticketId, long payloadHash, int tag) {
+        int existing = slotOfQrCode(qrCodeId);
+        if(existing != MISSING) {
+            return existing;
+        }
+        if(size == capacity) {
+            return MISSING;
+        }
+
+        int slot = size++;
+        int offset = slot * SLOT_BYTES;
+        slots.putLong(offset + QR_CODE_ID, qrCodeId.getMostSignificantBits());
+        slots.putLong(offset + QR_CODE_ID + 8, qrCodeId.getLeastSignificantBits());
+        slots.putLong(offset + TICKET_ID, ticketId.getMostSignificantBits());
+        slots.putLong(offset + TICKET_ID + 8, ticketId.getLeastSignificantBits());
+        slots.putLong(offset + PAYLOAD_HASH, payloadHash);
+        slots.putInt(offset + TAG, tag);
+        insert(qrCodeIndex, qrCodeId, slot, QR_CODE_ID);
+
+        int replaced = insert(ticketIndex, ticketId, slot, TICKET_ID);
+        if(replaced != MISSING) {
+            setBit(revoked, replaced);
+            if(isScanned(replaced)) {
+                markScanned(slot);
+            }
+        }
+        return slot;
+    }
+
+    public void revoke(int slot) {
+        setBit(revoked, slot);
+    }
+
+    public boolean isRevoked(int slot) {
+        return (bitmapWord(revoked, slot) & bitOf(slot)) != 0;
+    }
+
+    //True for the one call that found the slot not scanned yet
+    public boolean markScanned(int slot) {
+        long previous = (long) LONGS.getAndBitwiseOr(scanned, wordOffset(slot), bitOf(slot));
+        return (previous & bitOf(slot)) == 0;
+    }
+
+    public boolean isScanned(int slot) {
+        return ((long) LONGS.getVolatile(scanned, wordOffset(slot)) & bitOf(slot)) != 0;
+    }
+
+    public int slotOfQrCode(UUID qrCodeId) {
+        return find(qrCodeIndex, qrCodeId, QR_CODE_ID);
+    }
+
+    public int slotOfTicket(UUID ticketId) {
+        return find(ticketIndex, ticketId, TICKET_ID);
+    }
+
+    public UUID qrCodeIdAt(int slot) {
+        return uuidAt(slot, QR_CODE_ID);
+    }
+
+    public UUID ticketIdAt(int slot) {
+        return uuidAt(slot, TICKET_ID);
+    }
+
+    public long payloadHashAt(int slot) {
+        return slots.getLong(slot * SLOT_BYTES + PAYLOAD_HASH);
+    }
+
+    public int tagAt(int slot) {
+        return slots.getInt(slot * SLOT_BYTES + TAG);
+    }
+
+    //A copy with room for more codes, with every slot keeping its number and state
+    public GateManifest grow(int newCapacity) {
+        if(newCapacity < size) {
+            throw new IllegalArgumentException("Gate manifest cannot shrink below its size");
+        }
+        GateManifest grown = new GateManifest(newCapacity);
+        for(int slot = 0; slot < size; slot++) {
+            UUID qrCodeId = qrCodeIdAt(slot);
+            UUID ticketId = ticketIdAt(slot);
+            int copy = grown.size++;
+            grown.slots.put(copy * SLOT_BYTES, slots, slot * SLOT_BYTES, SLOT_BYTES);
+            grown.insert(grown.qrCodeIndex, qrCodeId, copy, QR_CODE_ID);
+            if(!isRevoked(slot)) {
+                grown.insert(grown.ticketIndex, ticketId, copy, TICKET_ID);
+            }
+        }
+        grown.scanned.put(0, scanned, 0, scanned.capacity());
+        grown.revoked.put(0, revoked, 0, revoked.capacity());
+        return grown;
+    }
+
+    //FNV-1a, to tell a payload from an earlier one for the same ticket without keeping the string
+    public static long payloadHash(String payload) {
+        long hash = 0xcbf29ce484222325L;
+        for(int i = 0; i < payload.length(); i++) {
+            hash ^= payload.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    //Returns the slot the key pointed at before, or MISSING if it is new
+    private int insert(ByteBuffer index, UUID key, int slot, int keyOffset) {
+        int position = hash(key) & tableMask;
+        while(true) {
+            int entry = index.getInt(position * Integer.BYTES);
+            if(entry == 0) {
+                index.putInt(position * Integer.BYTES, slot + 1);
+                return MISSING;
+            }
+            if(keyAt(entry - 1, keyOffset, key)) {
+                index.putInt(position * Integer.BYTES, slot + 1);
+                return entry - 1;
+            }
+            position = (position + 1) & tableMask;
+        }
+    }
+
+    private int find(ByteBuffer index, UUID key, int keyOffset) {
+        int position = hash(key) & tableMask;
+        while(true) {
+            int entry = index.getInt(position * Integer.BYTES);
+            if(entry == 0) {
+                return MISSING;
+            }
+            if(keyAt(entry - 1, keyOffset, key)) {
+                return entry - 1;
+            }
+            position = (position + 1) & tableMask;
+        }
+    }
+
+    private boolean keyAt(int slot, int keyOffset, UUID key) {
+        int offset = slot * SLOT_BYTES + keyOffset;
+        return slots.getLong(offset) == key.getMostSignificantBits()
+                && slots.getLong(offset + 8) == key.getLeastSignificantBits();
+    }
+
+    private UUID uuidAt(int slot, int keyOffset) {
+        int offset = slot * SLOT_BYTES + keyOffset;
+        return new UUID(slots.getLong(offset), slots.getLong(offset + 8));
+    }
+
+    private static int hash(UUID key) {
+        long mixed = (key.getMostSignificantBits() ^ key.getLeastSignificantBits()) * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+
+    private static void setBit(ByteBuffer bitmap, int slot) {
+        LONGS.getAndBitwiseOr(bitmap, wordOffset(slot), bitOf(slot));
+    }
+
+    private static long bitmapWord(ByteBuffer bitmap, int slot) {
+        return (long) LONGS.getVolatile(bitmap, wordOffset(slot));
+    }
+
+    private static int wordOffset(int slot) {
+        return (slot >>> 6) * Long.BYTES;
+    }
+
+    private static long bitOf(int slot) {
+        return 1L << (slot & 63);
+    }
+}
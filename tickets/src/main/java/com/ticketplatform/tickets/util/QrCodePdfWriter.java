@@ -0,0 +1,187 @@
+package com.ticketplatform.tickets.util;
+
+import com.google.zxing.common.BitMatrix;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+//Writes QR codes to a PDF as they come, twelve to an A4 page with a label under each. Every code is embedded
+//as a 1-bit image at one pixel per module and scaled up by the page, so it prints sharp at any resolution and
+//takes a few hundred bytes. Objects are written out as soon as they are complete; all that is kept until the
+//end is the offset of each object and the object number of each page, which the cross-reference table and
+//page tree need.
+public final class QrCodePdfWriter {
+
+    private static final int CATALOG = 1;
+    private static final int PAGES = 2;
+    private static final int FONT = 3;
+    private static final int FIRST_FREE_OBJECT = 4;
+
+    //A4 in points, three columns and four rows of two inch codes
+    private static final int PAGE_WIDTH = 595;
+    private static final int PAGE_HEIGHT = 842;
+    private static final int COLUMNS = 3;
+    private static final int ROWS = 4;
+    private static final int CODES_PER_PAGE = COLUMNS * ROWS;
+    private static final int CODE_SIZE = 144;
+    private static final int LABEL_FONT_SIZE = 7;
+
+    private final CountingOutputStream out;
+    private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+    private final int[] pageImages = new int[CODES_PER_PAGE];
+    private int codesOnPage;
+
+    private long[] offsets = new long[1024];
+    private int[] pages = new int[64];
+    private int pageCount;
+    private int nextObject = FIRST_FREE_OBJECT;
+
+    public QrCodePdfWriter(OutputStream out) throws IOException {
+        this.out = new CountingOutputStream(out);
+        //The binary comment tells transfer tools the file is not text
+        write("%PDF-1.4\n%\u00e2\u00e3\u00cf\u00d3\n");
+    }
+
+    public void add(BitMatrix modules, String label) throws IOException {
+        int image = writeImage(modules);
+        int column = codesOnPage % COLUMNS;
+        int row = codesOnPage / COLUMNS;
+        int cellWidth = PAGE_WIDTH / COLUMNS;
+        int cellHeight = PAGE_HEIGHT / ROWS;
+        int x = column * cellWidth + (cellWidth - CODE_SIZE) / 2;
+        int y = PAGE_HEIGHT - (row + 1) * cellHeight + (cellHeight - CODE_SIZE) / 2 + LABEL_FONT_SIZE;
+
+        pageImages[codesOnPage] = image;
+        content.writeBytes(String.format("q %d 0 0 %d %d %d cm /Q%d Do Q\nBT /F1 %d Tf %d %d Td (%s) Tj ET\n",
+                CODE_SIZE, CODE_SIZE, x, y, codesOnPage, LABEL_FONT_SIZE, x, y - 2 * LABEL_FONT_SIZE,
+                escape(label)).getBytes(StandardCharsets.US_ASCII));
+        if(++codesOnPage == CODES_PER_PAGE) {
+            writePage();
+        }
+    }
+
+    //Writes the page tree, the cross-reference table and the trailer. The stream is flushed but left open.
+    public void finish() throws IOException {
+        if(codesOnPage > 0) {
+            writePage();
+        }
+
+        startObject(PAGES);
+        StringBuilder kids = new StringBuilder("<< /Type /Pages /Count ").append(pageCount).append(" /Kids [");
+        for(int page = 0; page < pageCount; page++) {
+            kids.append(pages[page]).append(" 0 R ");
+            //Keeps the builder small for events with many thousands of pages
+            if(kids.length() > 8192) {
+                write(kids.toString());
+                kids.setLength(0);
+            }
+        }
+        write(kids.append("] >>\nendobj\n").toString());
+
+        startObject(CATALOG);
+        write("<< /Type /Catalog /Pages " + PAGES + " 0 R >>\nendobj\n");
+        startObject(FONT);
+        write("<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica >>\nendobj\n");
+
+        long xref = out.count;
+        StringBuilder table = new StringBuilder("xref\n0 ").append(nextObject).append("\n0000000000 65535 f \n");
+        for(int object = 1; object < nextObject; object++) {
+            table.append(String.format("%010d 00000 n \n", offsets[object]));
+            if(table.length() > 8192) {
+                write(table.toString());
+                table.setLength(0);
+            }
+        }
+        write(table.toString());
+        write("trailer\n<< /Size " + nextObject + " /Root " + CATALOG + " 0 R >>\nstartxref\n" + xref + "\n%%EOF\n");
+        out.flush();
+    }
+
+    //Rows are packed eight modules to a byte with set bits white, which is what DeviceGray means at one bit
+    private int writeImage(BitMatrix modules) throws IOException {
+        int width = modules.getWidth();
+        int height = modules.getHeight();
+        int rowBytes = (width + 7) / 8;
+        byte[] pixels = new byte[rowBytes * height];
+        Arrays.fill(pixels, (byte) 0xFF);
+        for(int y = 0; y < height; y++) {
+            for(int x = 0; x < width; x++) {
+                if(modules.get(x, y)) {
+                    pixels[y * rowBytes + (x >>> 3)] &= (byte) ~(0x80 >>> (x & 7));
+                }
+            }
+        }
+
+        int image = startObject(nextObject++);
+        write("<< /Type /XObject /Subtype /Image /Width " + width + " /Height " + height
+                + " /ColorSpace /DeviceGray /BitsPerComponent 1 /Length " + pixels.length + " >>\nstream\n");
+        out.write(pixels);
+        write("\nendstream\nendobj\n");
+        return image;
+    }
+
+    private void writePage() throws IOException {
+        int contents = startObject(nextObject++);
+        write("<< /Length " + content.size() + " >>\nstream\n");
+        content.writeTo(out);
+        write("endstream\nendobj\n");
+
+        int page = startObject(nextObject++);
+        StringBuilder images = new StringBuilder();
+        for(int code = 0; code < codesOnPage; code++) {
+            images.append("/Q").append(code).append(' ').append(pageImages[code]).append(" 0 R ");
+        }
+        write("<< /Type /Page /Parent " + PAGES + " 0 R /MediaBox [0 0 " + PAGE_WIDTH + " " + PAGE_HEIGHT + "]"
+                + " /Resources << /Font << /F1 " + FONT + " 0 R >> /XObject << " + images + ">> >>"
+                + " /Contents " + contents + " 0 R >>\nendobj\n");
+
+        if(pageCount == pages.length) {
+            pages = Arrays.copyOf(pages, pageCount * 2);
+        }
+        pages[pageCount++] = page;
+        content.reset();
+        codesOnPage = 0;
+    }
+
+    private int startObject(int object) throws IOException {
+        if(object >= offsets.length) {
+            offsets = Arrays.copyOf(offsets, Math.max(offsets.length * 2, object + 1));
+        }
+        offsets[object] = out.count;
+        write(object + " 0 obj\n");
+        return object;
+    }
+
+    private void write(String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("(", "\\(").replace(")", "\\)");
+    }
+
+    //Tracks the byte offset the cross-reference table points at
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
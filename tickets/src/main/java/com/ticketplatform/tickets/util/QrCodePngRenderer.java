@@ -0,0 +1,199 @@
+package com.ticketplatform.tickets.util;
+
+import com.google.zxing.common.BitMatrix;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+//Writes a QR code straight from its module matrix as a 1-bit grayscale PNG. Each module becomes a scale x scale
+//block of pixels and the quiet zone is added around it, so the matrix is expected at one pixel per module
+//without a margin of its own. Rows repeat scale times, which deflate folds away almost for free.
+//The raw rows, the output and the CRC are kept in a small shared pool, as are deflaters, so once the pools are
+//warm the only allocation per image is the returned array. A pool rather than a thread local, since with
+//virtual threads every request runs on a thread of its own and a per-thread buffer would never be reused.
+public final class QrCodePngRenderer {
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final byte[] IHDR = {'I', 'H', 'D', 'R'};
+    private static final byte[] IDAT = {'I', 'D', 'A', 'T'};
+    private static final byte[] IEND = {'I', 'E', 'N', 'D'};
+    private static final int BIT_DEPTH = 1;
+    private static final int COLOR_TYPE_GRAYSCALE = 0;
+    private static final int POOL_SIZE = 16;
+
+    private final int scale;
+    private final int quietZone;
+
+    private final BlockingQueue<Buffers> buffers = new ArrayBlockingQueue<>(POOL_SIZE);
+    private final BlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    public QrCodePngRenderer(int scale, int quietZone) {
+        if(scale < 1) {
+            throw new IllegalArgumentException("Scale must be at least 1");
+        }
+        if(quietZone < 0) {
+            throw new IllegalArgumentException("Quiet zone must not be negative");
+        }
+        this.scale = scale;
+        this.quietZone = quietZone;
+    }
+
+    //Width and height in pixels of the image for a code of this many modules a side
+    public int imageSize(int modules) {
+        return (modules + 2 * quietZone) * scale;
+    }
+
+    public byte[] render(BitMatrix modules) {
+        int width = imageSize(modules.getWidth());
+        int height = imageSize(modules.getHeight());
+        //One filter type byte, then eight pixels to a byte with set bits white
+        int rowBytes = 1 + (width + 7) / 8;
+
+        //Renders beyond the pool size allocate their own and only the first POOL_SIZE of them are kept
+        Buffers buffer = buffers.poll();
+        if(buffer == null) {
+            buffer = new Buffers();
+        }
+        Deflater deflater = deflaters.poll();
+        if(deflater == null) {
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        }
+        try {
+            byte[] raw = buffer.raw(rowBytes * height);
+            int rawLength = writeRows(modules, raw, rowBytes);
+
+            deflater.setInput(raw, 0, rawLength);
+            deflater.finish();
+
+            buffer.reset();
+            buffer.write(PNG_SIGNATURE, 0, PNG_SIGNATURE.length);
+            int ihdr = buffer.startChunk(IHDR);
+            buffer.writeInt(width);
+            buffer.writeInt(height);
+            buffer.writeByte(BIT_DEPTH);
+            buffer.writeByte(COLOR_TYPE_GRAYSCALE);
+            //Deflate compression, adaptive filtering, no interlace
+            buffer.writeByte(0);
+            buffer.writeByte(0);
+            buffer.writeByte(0);
+            buffer.endChunk(ihdr);
+
+            int idat = buffer.startChunk(IDAT);
+            while(!deflater.finished()) {
+                buffer.ensureCapacity(Math.max(64, rawLength / 8));
+                buffer.position += deflater.deflate(buffer.out, buffer.position, buffer.out.length - buffer.position);
+            }
+            buffer.endChunk(idat);
+
+            buffer.endChunk(buffer.startChunk(IEND));
+            return Arrays.copyOf(buffer.out, buffer.position);
+        } finally {
+            buffers.offer(buffer);
+            deflater.reset();
+            if(!deflaters.offer(deflater)) {
+                deflater.end();
+            }
+        }
+    }
+
+    //Builds each module row once and copies it for the remaining scale - 1 pixel rows
+    private int writeRows(BitMatrix modules, byte[] raw, int rowBytes) {
+        int quietRows = quietZone * scale;
+        Arrays.fill(raw, 0, rowBytes * quietRows, (byte) 0xFF);
+        int offset = rowBytes * quietRows;
+
+        for(int y = 0; y < modules.getHeight(); y++) {
+            int rowStart = offset;
+            Arrays.fill(raw, rowStart, rowStart + rowBytes, (byte) 0xFF);
+            for(int x = 0; x < modules.getWidth(); x++) {
+                if(!modules.get(x, y)) {
+                    continue;
+                }
+                int firstPixel = (quietZone + x) * scale;
+                for(int pixel = firstPixel; pixel < firstPixel + scale; pixel++) {
+                    raw[rowStart + 1 + (pixel >>> 3)] &= (byte) ~(0x80 >>> (pixel & 7));
+                }
+            }
+            offset += rowBytes;
+            for(int repeat = 1; repeat < scale; repeat++) {
+                System.arraycopy(raw, rowStart, raw, offset, rowBytes);
+                offset += rowBytes;
+            }
+        }
+
+        Arrays.fill(raw, offset, offset + rowBytes * quietRows, (byte) 0xFF);
+        offset += rowBytes * quietRows;
+        //Every row was filled with 0xFF from its filter type byte on, set them all to None
+        for(int rowStart = 0; rowStart < offset; rowStart += rowBytes) {
+            raw[rowStart] = 0;
+        }
+        //Padding bits past the last pixel are left white, decoders ignore them
+        return offset;
+    }
+
+    private static final class Buffers {
+        private final CRC32 crc = new CRC32();
+        private byte[] raw = new byte[0];
+        private byte[] out = new byte[4096];
+        private int position;
+
+        private byte[] raw(int length) {
+            if(raw.length < length) {
+                raw = new byte[length];
+            }
+            return raw;
+        }
+
+        private void reset() {
+            position = 0;
+        }
+
+        private void ensureCapacity(int extra) {
+            if(out.length - position < extra) {
+                out = Arrays.copyOf(out, Math.max(out.length * 2, position + extra));
+            }
+        }
+
+        private void write(byte[] bytes, int offset, int length) {
+            ensureCapacity(length);
+            System.arraycopy(bytes, offset, out, position, length);
+            position += length;
+        }
+
+        private void writeByte(int value) {
+            ensureCapacity(1);
+            out[position++] = (byte) value;
+        }
+
+        private void writeInt(int value) {
+            ensureCapacity(4);
+            out[position++] = (byte) (value >>> 24);
+            out[position++] = (byte) (value >>> 16);
+            out[position++] = (byte) (value >>> 8);
+            out[position++] = (byte) value;
+        }
+
+        //Leaves room for the length and writes the type, returns where the chunk starts
+        private int startChunk(byte[] type) {
+            int start = position;
+            writeInt(0);
+            write(type, 0, type.length);
+            return start;
+        }
+
+        //Fills in the length and appends the CRC over the type and data
+        private void endChunk(int start) {
+            int dataLength = position - start - 8;
+            out[start] = (byte) (dataLength >>> 24);
+            out[start + 1] = (byte) (dataLength >>> 16);
+            out[start + 2] = (byte) (dataLength >>> 8);
+            out[start + 3] = (byte) dataLength;
+            crc.reset();
+            crc.update(out, start + 4, dataLength + 4);
+            writeInt((int) crc.getValue());
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.ticketplatform.tickets.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+//Hashed timing wheel: scheduling and cancelling are O(1) however many timeouts are pending, and each tick only
+//looks at the one bucket that is due. Timeouts further out than one turn of the wheel carry a rounds count.
+//Every item that expires on a tick is handed to the callback together, on the wheel's own thread.
+@Slf4j
+public final class TimingWheel<T> implements AutoCloseable {
+
+    private final String name;
+    private final long tickNanos;
+    private final List<Timeout<T>>[] buckets;
+    private final int mask;
+    private final Consumer<List<T>> onExpired;
+
+    //Callers only ever touch this queue, the buckets belong to the worker thread alone
+    private final Queue<Timeout<T>> scheduled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private volatile boolean running;
+    private Thread worker;
+    private long startNanos;
+    private long tick;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(String name, Duration tickDuration, int wheelSize, Consumer<List<T>> onExpired) {
+        if(tickDuration.isNegative() || tickDuration.isZero()) {
+            throw new IllegalArgumentException("Tick duration must be positive");
+        }
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.name = name;
+        this.tickNanos = tickDuration.toNanos();
+        this.buckets = new List[size];
+        for(int i = 0; i < size; i++) {
+            buckets[i] = new ArrayList<>();
+        }
+        this.mask = size - 1;
+        this.onExpired = onExpired;
+    }
+
+    public synchronized void start() {
+        if(running) {
+            return;
+        }
+        startNanos = System.nanoTime();
+        running = true;
+        worker = Thread.ofPlatform().name(name).daemon().start(this::run);
+    }
+
+    @Override
+    public synchronized void close() {
+        running = false;
+        if(worker != null) {
+            LockSupport.unpark(worker);
+            try {
+                worker.join(tickNanos / 1_000_000 + 1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            worker = null;
+        }
+    }
+
+    public Timeout<T> schedule(T item, Duration delay) {
+        Timeout<T> timeout = new Timeout<>(item, System.nanoTime() + Math.max(0, delay.toNanos()), pending);
+        pending.incrementAndGet();
+        scheduled.add(timeout);
+        return timeout;
+    }
+
+    //Scheduled and not yet expired or cancelled
+    public int size() {
+        return pending.get();
+    }
+
+    private void run() {
+        while(running) {
+            long deadline = startNanos + (tick + 1) * tickNanos;
+            long sleepNanos = deadline - System.nanoTime();
+            if(sleepNanos > 0) {
+                LockSupport.parkNanos(this, sleepNanos);
+                continue;
+            }
+
+            transferScheduled();
+            List<T> expired = expireBucket(buckets[(int) (tick & mask)]);
+            tick++;
+
+            if(!expired.isEmpty()) {
+                try {
+                    onExpired.accept(expired);
+                } catch (RuntimeException ex) {
+                    log.error("Timing wheel {} failed to handle {} expired items", name, expired.size(), ex);
+                }
+            }
+        }
+    }
+
+    private void transferScheduled() {
+        Timeout<T> timeout;
+        while((timeout = scheduled.poll()) != null) {
+            if(timeout.state.get() != Timeout.PENDING) {
+                continue;
+            }
+            //Ticks are counted from start up. Anything already overdue goes in the bucket being processed now.
+            long dueTick = Math.max(tick, (timeout.deadlineNanos - startNanos) / tickNanos);
+            timeout.remainingRounds = (dueTick - tick) / buckets.length;
+            buckets[(int) (dueTick & mask)].add(timeout);
+        }
+    }
+
+    //Compacts the bucket in place, dropping cancelled and expired timeouts and keeping the ones due on a later turn
+    private List<T> expireBucket(List<Timeout<T>> bucket) {
+        List<T> expired = new ArrayList<>();
+        int kept = 0;
+        for(int i = 0; i < bucket.size(); i++) {
+            Timeout<T> timeout = bucket.get(i);
+            if(timeout.state.get() != Timeout.PENDING) {
+                continue;
+            }
+            if(timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+                bucket.set(kept++, timeout);
+            } else if(timeout.expire()) {
+                expired.add(timeout.item);
+            }
+        }
+        bucket.subList(kept, bucket.size()).clear();
+        return expired;
+    }
+
+    public static final class Timeout<T> {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final T item;
+        private final long deadlineNanos;
+        private final AtomicInteger pending;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private long remainingRounds;
+
+        private Timeout(T item, long deadlineNanos, AtomicInteger pending) {
+            this.item = item;
+            this.deadlineNanos = deadlineNanos;
+            this.pending = pending;
+        }
+
+        public T getItem() {
+            return item;
+        }
+
+        //The timeout is only dropped from its bucket when the wheel next passes it, cancelling just marks it
+        public boolean cancel() {
+            if(state.compareAndSet(PENDING, CANCELLED)) {
+                pending.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        private boolean expire() {
+            if(state.compareAndSet(PENDING, EXPIRED)) {
+                pending.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.ticketplatform.tickets.util;
+
+import com.ticketplatform.tickets.domain.entities.TicketValidationMethodEnum;
+import com.ticketplatform.tickets.domain.entities.TicketValidationStatusEnum;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+//An append-only journal of validations in a directory of segment files, each validation a fixed 48 bytes:
+//id (16), ticket id (16), created_at in microseconds (8), status, method and flags (1 each, enums by ordinal),
+//a spare byte and a CRC32C of the rest (4).
+//An append returns once it is on disk. Appends that arrive while another is syncing wait for it and are then
+//synced together by one of them, so under load every fsync covers many appends without anyone waiting on a
+//timer. Rolling seals the segment being appended to and starts the next; sealed segments are left for the
+//caller to read and delete, or to quarantine out of the journal when they cannot be. A write that fails part way
+//is cut back off the segment, or the segment is sealed when it cannot be, so no entry is appended behind torn
+//bytes. A segment cut short by a crash reads up to its last whole entry and says how much it left unread. The directory is synced whenever a segment is created or renamed, so
+//the entries an append returned on are not lost with the name of their file.
+public final class ValidationJournal implements AutoCloseable {
+
+    public static final int ENTRY_SIZE = 48;
+
+    private static final String PREFIX = "validations-";
+    private static final String SUFFIX = ".journal";
+    private static final String QUARANTINED = ".quarantined";
+    private static final byte ADMIT = 1;
+    private static final LocalDateTime EPOCH = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private final Path directory;
+    //Appends take it to write, never to sync
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private Segment current;
+    private long nextSequence;
+
+    //Segments already in the directory are left sealed, appends go to a new one after them
+    public ValidationJournal(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        List<Path> existing = segments();
+        this.nextSequence = existing.isEmpty() ? 1 : sequenceOf(existing.get(existing.size() - 1)) + 1;
+        this.current = openNext();
+    }
+
+    public void append(List<Entry> entries) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(entries.size() * ENTRY_SIZE);
+        entries.forEach(entry -> encode(entry, buffer));
+        buffer.flip();
+
+        Segment segment;
+        long end;
+        appendLock.lock();
+        try {
+            segment = current;
+            end = write(segment, buffer);
+        } finally {
+            appendLock.unlock();
+        }
+        segment.syncTo(end);
+    }
+
+    //Seals the current segment unless nothing was appended to it, and returns every sealed segment, oldest first
+    public List<Path> roll() throws IOException {
+        Segment sealed = null;
+        appendLock.lock();
+        try {
+            if(current.written > 0) {
+                sealed = current;
+                current = openNext();
+            }
+        } finally {
+            appendLock.unlock();
+        }
+        if(sealed != null) {
+            sealed.seal();
+        }
+        return segments().stream().filter(path -> !path.equals(current.path)).toList();
+    }
+
+    //Renames a sealed segment so it is no longer part of the journal but kept for someone to look at
+    public Path quarantine(Path segment) throws IOException {
+        Path quarantined = Files.move(segment, segment.resolveSibling(segment.getFileName() + QUARANTINED),
+                StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+        return quarantined;
+    }
+
+    //Every segment in the directory, the one being appended to included
+    public List<Path> segments() throws IOException {
+        try(Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().startsWith(PREFIX)
+                            && path.getFileName().toString().endsWith(SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    public static Contents read(Path segment) throws IOException {
+        byte[] bytes = Files.readAllBytes(segment);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        List<Entry> entries = new ArrayList<>(bytes.length / ENTRY_SIZE);
+        while(buffer.remaining() >= ENTRY_SIZE) {
+            int start = buffer.position();
+            Entry entry = decode(buffer);
+            if(entry == null) {
+                buffer.position(start);
+                break;
+            }
+            entries.add(entry);
+        }
+        return new Contents(entries, buffer.remaining());
+    }
+
+    //Seals the current segment, or removes it if nothing was appended to it
+    @Override
+    public void close() throws IOException {
+        appendLock.lock();
+        try {
+            current.seal();
+            if(current.written == 0) {
+                Files.deleteIfExists(current.path);
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    //Under the append lock. A segment left with torn bytes it could not cut off is sealed and appends move on.
+    private long write(Segment segment, ByteBuffer buffer) throws IOException {
+        try {
+            return segment.write(buffer);
+        } catch(IOException ex) {
+            if(segment.torn) {
+                try {
+                    current = openNext();
+                    segment.seal();
+                } catch(IOException rollEx) {
+                    ex.addSuppressed(rollEx);
+                }
+            }
+            throw ex;
+        }
+    }
+
+    private Segment openNext() throws IOException {
+        Path path = directory.resolve(String.format("%s%016d%s", PREFIX, nextSequence++, SUFFIX));
+        Segment segment = new Segment(path, FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE));
+        syncDirectory();
+        return segment;
+    }
+
+    private void syncDirectory() throws IOException {
+        try(FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private static long sequenceOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private static void encode(Entry entry, ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.putLong(entry.id().getMostSignificantBits());
+        buffer.putLong(entry.id().getLeastSignificantBits());
+        buffer.putLong(entry.ticketId().getMostSignificantBits());
+        buffer.putLong(entry.ticketId().getLeastSignificantBits());
+        buffer.putLong(ChronoUnit.MICROS.between(EPOCH, entry.createdAt()));
+        buffer.put((byte) entry.status().ordinal());
+        buffer.put((byte) entry.method().ordinal());
+        buffer.put(entry.admit() ? ADMIT : 0);
+        buffer.put((byte) 0);
+        buffer.putInt(checksum(buffer, start));
+    }
+
+    //Null where the bytes are not a whole entry, which only the end of a segment cut short by a crash is
+    private static Entry decode(ByteBuffer buffer) {
+        int start = buffer.position();
+        UUID id = new UUID(buffer.getLong(), buffer.getLong());
+        UUID ticketId = new UUID(buffer.getLong(), buffer.getLong());
+        long micros = buffer.getLong();
+        int status = buffer.get();
+        int method = buffer.get();
+        byte flags = buffer.get();
+        buffer.get();
+        if(buffer.getInt() != checksum(buffer, start)
+                || status < 0 || status >= TicketValidationStatusEnum.values().length
+                || method < 0 || method >= TicketValidationMethodEnum.values().length) {
+            return null;
+        }
+        return new Entry(id, ticketId, TicketValidationStatusEnum.values()[status],
+                TicketValidationMethodEnum.values()[method],
+                EPOCH.plus(micros, ChronoUnit.MICROS), (flags & ADMIT) != 0);
+    }
+
+    private static int checksum(ByteBuffer buffer, int start) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), buffer.arrayOffset() + start, ENTRY_SIZE - Integer.BYTES);
+        return (int) crc.getValue();
+    }
+
+    //admit is set when the ticket is still to be let in at createdAt
+    public record Entry(UUID id, UUID ticketId, TicketValidationStatusEnum status, TicketValidationMethodEnum method,
+                        LocalDateTime createdAt, boolean admit) {
+    }
+
+    //unreadBytes follow the last whole entry. Less than an entry is an append cut short, more is a damaged entry
+    //that may have others after it.
+    public record Contents(List<Entry> entries, int unreadBytes) {
+    }
+
+    private static final class Segment {
+
+        private final Path path;
+        private final FileChannel channel;
+        //Whoever syncs holds it, the others queue on it and find their bytes synced when they get it
+        private final ReentrantLock syncLock = new ReentrantLock();
+        private volatile long written;
+        private long synced;
+        //Set when a failed write could not be cut back off
+        private boolean torn;
+
+        private Segment(Path path, FileChannel channel) {
+            this.path = path;
+            this.channel = channel;
+        }
+
+        //Only ever called under the journal's append lock
+        private long write(ByteBuffer buffer) throws IOException {
+            try {
+                while(buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch(IOException ex) {
+                try {
+                    channel.truncate(written);
+                    channel.position(written);
+                } catch(IOException truncateEx) {
+                    ex.addSuppressed(truncateEx);
+                    torn = true;
+                }
+                throw ex;
+            }
+            written += buffer.limit();
+            return written;
+        }
+
+        private void syncTo(long end) throws IOException {
+            syncLock.lock();
+            try {
+                if(synced >= end) {
+                    return;
+                }
+                long target = written;
+                channel.force(false);
+                synced = target;
+            } finally {
+                syncLock.unlock();
+            }
+        }
+
+        //Nothing is appended to a segment once it is no longer current, so this syncs all of it
+        private void seal() throws IOException {
+            syncLock.lock();
+            try {
+                if(channel.isOpen()) {
+                    if(synced < written) {
+                        channel.force(false);
+                        synced = written;
+                    }
+                    channel.close();
+                }
+            } finally {
+                syncLock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.ticketplatform.tickets.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.jwt;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@Transactional
+@Import(TestSecurityConfig.class)
+class SecurityConfigIntegrationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    // ------------------- ticket validations -------------------
+
+    @Test
+    void ticketValidations_ShouldBeForbidden_WhenNotStaff() throws Exception {
+        RequestPostProcessor attendee = user("ROLE_ATTENDEE");
+
+        mockMvc.perform(post("/api/v1/ticket-validations").with(attendee)
+                        .contentType(MediaType.APPLICATION_JSON).content("{}"))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(multipart("/api/v1/ticket-validations/image").file(image()).with(attendee))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(post("/api/v1/ticket-validations/batch").with(attendee)
+                        .contentType(MediaType.APPLICATION_JSON).content("{}"))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/api/v1/ticket-validations/events/{eventId}/manifest", UUID.randomUUID())
+                        .with(attendee))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void ticketValidationByImage_ShouldBeAllowed_WhenStaff() throws Exception {
+        // Not a photo of a QR code, so the request fails, but only after it was let through
+        int status = mockMvc.perform(multipart("/api/v1/ticket-validations/image").file(image())
+                        .with(user("ROLE_STAFF")))
+                .andReturn().getResponse().getStatus();
+
+        assertThat(status).isNotIn(401, 403);
+    }
+
+    private static RequestPostProcessor user(String role) {
+        return jwt().jwt(jwt -> jwt.subject(UUID.randomUUID().toString())
+                        .claim("preferred_username", "door-user")
+                        .claim("email", "door-user@example.com"))
+                .authorities(new SimpleGrantedAuthority(role));
+    }
+
+    private static MockMultipartFile image() {
+        return new MockMultipartFile("image", "scan.png", MediaType.IMAGE_PNG_VALUE, new byte[]{1, 2, 3});
+    }
+}
@@ -0,0 +1,184 @@
+package com.ticketplatform.tickets.services.impl;
+
+import com.ticketplatform.tickets.config.TestSecurityConfig;
+import com.ticketplatform.tickets.domain.EventCheckIns;
+import com.ticketplatform.tickets.domain.TicketTypeCheckIns;
+import com.ticketplatform.tickets.domain.entities.*;
+import com.ticketplatform.tickets.exceptions.EventNotFoundException;
+import com.ticketplatform.tickets.repositories.EventRepository;
+import com.ticketplatform.tickets.repositories.TicketRepository;
+import com.ticketplatform.tickets.repositories.TicketTypeRepository;
+import com.ticketplatform.tickets.repositories.UserRepository;
+import com.ticketplatform.tickets.services.QrCodeService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+@SpringBootTest
+@Transactional
+@Import(TestSecurityConfig.class)
+class CheckInCounterServiceImplIntegrationTest {
+
+    @Autowired
+    private CheckInCounterServiceImpl checkInCounterService;
+
+    @Autowired
+    private TicketValidationServiceImpl ticketValidationService;
+
+    @Autowired
+    private QrCodeService qrCodeService;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private TicketTypeRepository ticketTypeRepository;
+
+    @Autowired
+    private TicketRepository ticketRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private User organizer;
+    private Event event;
+    private TicketType general;
+    private TicketType vip;
+    private List<QrCode> generalQrCodes;
+    private List<QrCode> vipQrCodes;
+
+    @BeforeEach
+    void setUp() {
+        organizer = new User();
+        organizer.setId(UUID.randomUUID());
+        organizer.setName("Organizer");
+        organizer.setEmail("organizer@example.com");
+        organizer = userRepository.saveAndFlush(organizer);
+
+        event = new Event();
+        event.setName("Counted Festival");
+        event.setVenue("Main Stage");
+        event.setStatus(EventStatusEnum.PUBLISHED);
+        event.setOrganizer(organizer);
+        event = eventRepository.saveAndFlush(event);
+
+        general = ticketType("General");
+        vip = ticketType("VIP");
+        generalQrCodes = buyTickets(general, 3);
+        vipQrCodes = buyTickets(vip, 2);
+    }
+
+    // ------------------- recordValidation -------------------
+
+    @Test
+    void recordValidation_ShouldCountEveryValidationByItsTicketType() {
+        ticketValidationService.validateTicketByQrCode(generalQrCodes.get(0).getId());
+        ticketValidationService.validateTicketByQrCode(generalQrCodes.get(0).getId());
+        ticketValidationService.validateTicketManually(vipQrCodes.get(0).getTicket().getId());
+
+        EventCheckIns checkIns = checkInCounterService.getCheckInsForOrganizer(organizer.getId(), event.getId());
+
+        assertThat(checkIns.getCheckedIn()).isEqualTo(2);
+        assertThat(checkIns.getInvalidScans()).isEqualTo(1);
+        assertThat(checkIns.getScansLastMinute()).isEqualTo(3);
+        assertThat(checkIns.getTicketTypes())
+                .extracting(TicketTypeCheckIns::getTicketTypeId, TicketTypeCheckIns::getCheckedIn,
+                        TicketTypeCheckIns::getInvalidScans)
+                .containsExactlyInAnyOrder(
+                        tuple(general.getId(), 1L, 1L),
+                        tuple(vip.getId(), 1L, 0L));
+    }
+
+    @Test
+    void recordValidation_ShouldShowInTheEventsGauges() {
+        ticketValidationService.validateTicketByQrCode(generalQrCodes.get(1).getId());
+
+        assertThat(meterRegistry.get("tickets.check-ins.checked-in").tag("event", event.getId().toString())
+                .gauge().value()).isEqualTo(1.0);
+        assertThat(meterRegistry.get("tickets.check-ins.scans-last-minute").tag("event", event.getId().toString())
+                .gauge().value()).isEqualTo(1.0);
+    }
+
+    // ------------------- getCheckInsForOrganizer -------------------
+
+    @Test
+    void getCheckInsForOrganizer_ShouldSeedFromTheDatabase_WhenTheEventIsNotCountedYet() {
+        ticketRepository.admit(generalQrCodes.get(2).getTicket().getId(), LocalDateTime.now());
+
+        EventCheckIns checkIns = checkInCounterService.getCheckInsForOrganizer(organizer.getId(), event.getId());
+
+        assertThat(checkIns.getCheckedIn()).isEqualTo(1);
+        assertThat(checkIns.getScansLastMinute()).isZero();
+        assertThat(checkIns.getTicketTypes()).hasSize(2);
+    }
+
+    @Test
+    void getCheckInsForOrganizer_ShouldThrow_WhenUserIsNotTheOrganizer() {
+        assertThatThrownBy(() -> checkInCounterService.getCheckInsForOrganizer(UUID.randomUUID(), event.getId()))
+                .isInstanceOf(EventNotFoundException.class);
+    }
+
+    // ------------------- reconcileCounters -------------------
+
+    @Test
+    void reconcileCounters_ShouldTakeInTicketsLetInThroughOtherNodes() {
+        ticketValidationService.validateTicketByQrCode(generalQrCodes.get(0).getId());
+        //Let in elsewhere, this node never saw them
+        ticketRepository.admit(generalQrCodes.get(1).getTicket().getId(), LocalDateTime.now());
+        ticketRepository.admit(vipQrCodes.get(1).getTicket().getId(), LocalDateTime.now());
+
+        checkInCounterService.reconcileCounters();
+
+        assertThat(checkInCounterService.getCheckInsForOrganizer(organizer.getId(), event.getId()).getCheckedIn())
+                .isEqualTo(3);
+    }
+
+    @Test
+    void reconcileCounters_ShouldDropEventsThatAreNoLongerOn() {
+        ticketValidationService.validateTicketByQrCode(generalQrCodes.get(0).getId());
+        event.setEndDateAndTime(LocalDateTime.now().minusDays(3));
+        eventRepository.saveAndFlush(event);
+
+        checkInCounterService.reconcileCounters();
+
+        assertThat(meterRegistry.find("tickets.check-ins.checked-in").tag("event", event.getId().toString())
+                .gauge()).isNull();
+    }
+
+    private TicketType ticketType(String name) {
+        TicketType ticketType = new TicketType();
+        ticketType.setName(name);
+        ticketType.setPrice(25.0);
+        ticketType.setTotalTicketsAvailable(10);
+        ticketType.setEvent(event);
+        return ticketTypeRepository.saveAndFlush(ticketType);
+    }
+
+    private List<QrCode> buyTickets(TicketType ticketType, int count) {
+        List<Ticket> tickets = new ArrayList<>();
+        for(int i = 0; i < count; i++) {
+            Ticket ticket = new Ticket();
+            ticket.setStatus(TicketStatusEnum.PURCHASED);
+            ticket.setPurchaser(organizer);
+            ticket.setTicketType(ticketType);
+            tickets.add(ticket);
+        }
+        return qrCodeService.generateQrCodes(ticketRepository.saveAllAndFlush(tickets));
+    }
+}
@@ -0,0 +1,228 @@
+package com.ticketplatform.tickets.services.impl;
+
+import com.ticketplatform.tickets.config.TestSecurityConfig;
+import com.ticketplatform.tickets.domain.ScannedQrCode;
+import com.ticketplatform.tickets.domain.entities.*;
+import com.ticketplatform.tickets.exceptions.EventNotFoundException;
+import com.ticketplatform.tickets.repositories.EventRepository;
+import com.ticketplatform.tickets.repositories.TicketRepository;
+import com.ticketplatform.tickets.repositories.TicketTypeRepository;
+import com.ticketplatform.tickets.repositories.UserRepository;
+import com.ticketplatform.tickets.services.QrCodePayloadService;
+import com.ticketplatform.tickets.services.QrCodeService;
+import com.ticketplatform.tickets.util.EventManifestWriter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@Transactional
+@Import(TestSecurityConfig.class)
+class EventManifestServiceImplIntegrationTest {
+
+    private static final int TICKETS = 40;
+    private static final QrCodePayloadService SIGNING =
+            new QrCodePayloadServiceImpl(List.of("k1:" + "a".repeat(32)), false, Duration.ofSeconds(30), 1);
+    private static final QrCodePayloadService DYNAMIC_SIGNING =
+            new QrCodePayloadServiceImpl(List.of("k1:" + "a".repeat(32)), true, Duration.ofSeconds(30), 1);
+
+    @Autowired
+    private EventManifestServiceImpl eventManifestService;
+
+    @Autowired
+    private QrCodeService qrCodeService;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private TicketTypeRepository ticketTypeRepository;
+
+    @Autowired
+    private TicketRepository ticketRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User staff;
+    private Event event;
+    private List<QrCode> qrCodes;
+
+    @BeforeEach
+    void setUp() {
+        User organizer = new User();
+        organizer.setId(UUID.randomUUID());
+        organizer.setName("Organizer");
+        organizer.setEmail("organizer@example.com");
+        organizer = userRepository.saveAndFlush(organizer);
+
+        event = new Event();
+        event.setName("Offline Festival");
+        event.setVenue("Field");
+        event.setStatus(EventStatusEnum.PUBLISHED);
+        event.setOrganizer(organizer);
+        event = eventRepository.saveAndFlush(event);
+
+        staff = new User();
+        staff.setId(UUID.randomUUID());
+        staff.setName("Door Staff");
+        staff.setEmail("staff@example.com");
+        staff.setStaffingEvents(new ArrayList<>(List.of(event)));
+        staff = userRepository.saveAndFlush(staff);
+
+        TicketType ticketType = new TicketType();
+        ticketType.setName("General");
+        ticketType.setPrice(25.0);
+        ticketType.setTotalTicketsAvailable(TICKETS);
+        ticketType.setEvent(event);
+        ticketType = ticketTypeRepository.saveAndFlush(ticketType);
+
+        List<Ticket> tickets = new ArrayList<>();
+        for(int i = 0; i < TICKETS; i++) {
+            Ticket ticket = new Ticket();
+            ticket.setStatus(TicketStatusEnum.PURCHASED);
+            ticket.setPurchaser(organizer);
+            ticket.setTicketType(ticketType);
+            tickets.add(ticket);
+        }
+        qrCodes = qrCodeService.generateQrCodes(ticketRepository.saveAllAndFlush(tickets));
+    }
+
+    // ------------------- writeManifest (full) -------------------
+
+    @Test
+    void writeManifest_ShouldListEveryActiveQrCodeInIdOrder() throws Exception {
+        Manifest manifest = write(null);
+
+        assertThat(manifest.kind()).isEqualTo(EventManifestWriter.FULL);
+        assertThat(manifest.eventId()).isEqualTo(event.getId());
+        assertThat(manifest.version()).isPositive();
+        assertThat(manifest.entries().keySet())
+                .containsExactlyElementsOf(qrCodes.stream().map(QrCode::getId).sorted(EventManifestServiceImplIntegrationTest::unsigned).toList());
+        assertThat(manifest.entries().values()).containsOnly(EventManifestWriter.VALID);
+    }
+
+    @Test
+    void writeManifest_ShouldMarkTicketsLetInAndLeaveOutCancelledOnes() throws Exception {
+        ticketRepository.admit(qrCodes.get(0).getTicket().getId(), LocalDateTime.now());
+        Ticket cancelled = qrCodes.get(1).getTicket();
+        cancelled.setStatus(TicketStatusEnum.CANCELLED);
+        ticketRepository.saveAndFlush(cancelled);
+
+        Manifest manifest = write(null);
+
+        assertThat(manifest.entries()).hasSize(TICKETS - 1)
+                .containsEntry(qrCodes.get(0).getId(), EventManifestWriter.ADMITTED)
+                .doesNotContainKey(qrCodes.get(1).getId());
+    }
+
+    @Test
+    void writeManifest_ShouldFindSignedAndDynamicCodesByTheirTicket() throws Exception {
+        QrCode qrCode = qrCodes.get(3);
+        String signed = SIGNING.createPayload(qrCode.getId(), qrCode.getTicket().getId(), event.getId());
+        String dynamic = DYNAMIC_SIGNING.currentPayload(signed, Instant.now());
+
+        Manifest manifest = write(null);
+
+        for(String payload : List.of(signed, dynamic)) {
+            ScannedQrCode scanned = DYNAMIC_SIGNING.verifyPayload(payload);
+            assertThat(scanned.getQrCodeId()).isNull();
+            assertThat(manifest.qrCodeIdsByTicketId()).containsEntry(scanned.getTicketId(), qrCode.getId());
+            assertThat(manifest.entries()).containsEntry(qrCode.getId(), EventManifestWriter.VALID);
+        }
+    }
+
+    @Test
+    void writeManifest_ShouldThrow_WhenUserDoesNotStaffTheEvent() {
+        assertThatThrownBy(() -> eventManifestService.writeManifest(UUID.randomUUID(), event.getId(), null,
+                new ByteArrayOutputStream()))
+                .isInstanceOf(EventNotFoundException.class);
+    }
+
+    // ------------------- writeManifest (delta) -------------------
+
+    @Test
+    void writeManifest_ShouldOnlyListWhatChangedSinceTheVersion() throws Exception {
+        LocalDateTime anHourAgo = LocalDateTime.now().minusHours(1);
+        jdbcTemplate.update("UPDATE qr_codes SET updated_at = ?", anHourAgo);
+        jdbcTemplate.update("UPDATE tickets SET updated_at = ?", anHourAgo);
+        long version = Instant.now().minus(Duration.ofMinutes(30)).toEpochMilli();
+        Ticket cancelled = ticketRepository.findById(qrCodes.get(2).getTicket().getId()).orElseThrow();
+        cancelled.setStatus(TicketStatusEnum.CANCELLED);
+        ticketRepository.saveAndFlush(cancelled);
+
+        Manifest manifest = write(version);
+
+        assertThat(manifest.kind()).isEqualTo(EventManifestWriter.DELTA);
+        assertThat(manifest.since()).isEqualTo(version);
+        assertThat(manifest.entries()).containsExactly(Map.entry(qrCodes.get(2).getId(), EventManifestWriter.REVOKED));
+    }
+
+    private Manifest write(Long since) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        eventManifestService.writeManifest(staff.getId(), event.getId(), since, out);
+        return read(out.toByteArray());
+    }
+
+    //What a door device does with the download
+    private static Manifest read(byte[] download) throws IOException {
+        DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(download)));
+        assertThat(in.readNBytes(4)).isEqualTo(new byte[]{'E', 'T', 'P', 'M'});
+        assertThat(in.readByte()).isEqualTo(EventManifestWriter.FORMAT_VERSION);
+        byte kind = in.readByte();
+        UUID eventId = new UUID(in.readLong(), in.readLong());
+        long version = in.readLong();
+        long since = in.readLong();
+
+        Map<UUID, Byte> entries = new LinkedHashMap<>();
+        Map<UUID, UUID> qrCodeIdsByTicketId = new HashMap<>();
+        long high = 0;
+        long low = 0;
+        int header;
+        while((header = in.readUnsignedByte()) != 0xFF) {
+            long deltaHigh = 0;
+            long deltaLow = 0;
+            for(int i = 0; i < header >>> 2; i++) {
+                deltaHigh = (deltaHigh << 8) | (deltaLow >>> 56);
+                deltaLow = (deltaLow << 8) | in.readUnsignedByte();
+            }
+            long sumLow = low + deltaLow;
+            high = high + deltaHigh + (Long.compareUnsigned(sumLow, low) < 0 ? 1 : 0);
+            low = sumLow;
+            UUID qrCodeId = new UUID(high, low);
+            entries.put(qrCodeId, (byte) (header & 3));
+            qrCodeIdsByTicketId.put(new UUID(in.readLong(), in.readLong()), qrCodeId);
+        }
+        assertThat(in.readInt()).isEqualTo(entries.size());
+        return new Manifest(kind, eventId, version, since, entries, qrCodeIdsByTicketId);
+    }
+
+    private static int unsigned(UUID a, UUID b) {
+        int high = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+        return high != 0 ? high : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+    }
+
+    private record Manifest(byte kind, UUID eventId, long version, long since, Map<UUID, Byte> entries,
+                            Map<UUID, UUID> qrCodeIdsByTicketId) {
+    }
+}
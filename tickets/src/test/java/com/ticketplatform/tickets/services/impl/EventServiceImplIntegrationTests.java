@@ -9,6 +9,7 @@ import com.ticketplatform.tickets.domain.entities.Event;
 import com.ticketplatform.tickets.domain.entities.EventStatusEnum;
 import com.ticketplatform.tickets.domain.entities.User;
 import com.ticketplatform.tickets.exceptions.EventOrganizerAccessException;
+import com.ticketplatform.tickets.exceptions.EventSearchSortException;
 import com.ticketplatform.tickets.exceptions.EventUpdateException;
 import com.ticketplatform.tickets.exceptions.UserNotFoundException;
 import com.ticketplatform.tickets.repositories.EventRepository;
@@ -23,6 +24,7 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.annotation.Import;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
@@ -211,4 +213,67 @@ class EventServiceImplIntegrationTest {
         assertThat(result.getContent()).extracting(Event::getStatus)
                 .containsOnly(EventStatusEnum.PUBLISHED);
     }
+
+    @Test
+    void searchPublishedEvents_ShouldMatchEveryWordInNameOrVenue() {
+        Event match = publishedEvent("Harbour Jazz Night", "Old Town Quay");
+        publishedEvent("Harbour Rock Night", "Old Town Quay");
+        Event draft = publishedEvent("Harbour Jazz Night", "Old Town Quay");
+        draft.setStatus(EventStatusEnum.DRAFT);
+        eventRepository.saveAndFlush(draft);
+
+        Page<Event> result = eventService.searchPublishedEvents("jazz QUAY", PageRequest.of(0, 5));
+
+        assertThat(result.getContent()).extracting(Event::getId).containsExactly(match.getId());
+        assertThat(result.getTotalElements()).isEqualTo(1);
+    }
+
+    @Test
+    void searchPublishedEvents_ShouldCountAllMatches_WhenThePageIsFull() {
+        publishedEvent("Lantern Parade One", "Riverside");
+        publishedEvent("Lantern Parade Two", "Riverside");
+        publishedEvent("Lantern Parade Three", "Riverside");
+
+        Page<Event> result = eventService.searchPublishedEvents("lantern", PageRequest.of(0, 2));
+
+        assertThat(result.getContent()).hasSize(2);
+        assertThat(result.getTotalElements()).isEqualTo(3);
+    }
+
+    @Test
+    void searchPublishedEvents_ShouldApplyTheRequestedSort() {
+        Event later = publishedEvent("Lantern Parade", "Riverside");
+        later.setStartDateAndTime(LocalDateTime.now().plusDays(2));
+        eventRepository.saveAndFlush(later);
+        Event sooner = publishedEvent("Lantern Walk", "Riverside");
+        sooner.setStartDateAndTime(LocalDateTime.now().plusDays(1));
+        eventRepository.saveAndFlush(sooner);
+
+        Page<Event> result = eventService.searchPublishedEvents("lantern",
+                PageRequest.of(0, 5, Sort.by(Sort.Direction.DESC, "name")));
+        Page<Event> byStart = eventService.searchPublishedEvents("lantern",
+                PageRequest.of(0, 5, Sort.by("startDateAndTime")));
+
+        assertThat(result.getContent()).extracting(Event::getId).containsExactly(sooner.getId(), later.getId());
+        assertThat(byStart.getContent()).extracting(Event::getId).containsExactly(sooner.getId(), later.getId());
+        assertThatThrownBy(() -> eventService.searchPublishedEvents("lantern",
+                PageRequest.of(0, 5, Sort.by("organizer"))))
+                .isInstanceOf(EventSearchSortException.class);
+    }
+
+    @Test
+    void searchPublishedEvents_ShouldFindNothing_WhenTheTermHasNoWords() {
+        publishedEvent("Lantern Parade", "Riverside");
+
+        assertThat(eventService.searchPublishedEvents("%_ !", PageRequest.of(0, 5))).isEmpty();
+    }
+
+    private Event publishedEvent(String name, String venue) {
+        Event event = new Event();
+        event.setName(name);
+        event.setVenue(venue);
+        event.setStatus(EventStatusEnum.PUBLISHED);
+        event.setOrganizer(organizer);
+        return eventRepository.saveAndFlush(event);
+    }
 }
@@ -0,0 +1,383 @@
+package com.ticketplatform.tickets.services.impl;
+
+import com.ticketplatform.tickets.config.TestSecurityConfig;
+import com.ticketplatform.tickets.domain.entities.*;
+import com.ticketplatform.tickets.exceptions.EventNotFoundException;
+import com.ticketplatform.tickets.exceptions.GateOpenElsewhereException;
+import com.ticketplatform.tickets.exceptions.InvalidQrCodeException;
+import com.ticketplatform.tickets.repositories.EventRepository;
+import com.ticketplatform.tickets.repositories.QrCodeRepository;
+import com.ticketplatform.tickets.repositories.TicketRepository;
+import com.ticketplatform.tickets.repositories.TicketTypeRepository;
+import com.ticketplatform.tickets.repositories.TicketValidationRepository;
+import com.ticketplatform.tickets.repositories.UserRepository;
+import com.ticketplatform.tickets.services.QrCodeService;
+import com.ticketplatform.tickets.services.ValidationJournalService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+//The scheduled refresh and flush are pushed out of the way, the tests run them when they need them
+@SpringBootTest(properties = {
+        "tickets.gate.refresh-interval=1h",
+        "tickets.gate.write-behind.flush-interval=1h"
+})
+@Transactional
+@Import(TestSecurityConfig.class)
+class GateManifestServiceImplIntegrationTest {
+
+    private static final int TICKETS = 5;
+
+    @Autowired
+    private GateManifestServiceImpl gateManifestService;
+
+    @Autowired
+    private TicketValidationServiceImpl ticketValidationService;
+
+    @Autowired
+    private QrCodeService qrCodeService;
+
+    @Autowired
+    private ValidationJournalService validationJournalService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private QrCodeRepository qrCodeRepository;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private TicketTypeRepository ticketTypeRepository;
+
+    @Autowired
+    private TicketRepository ticketRepository;
+
+    @Autowired
+    private TicketValidationRepository ticketValidationRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User organizer;
+    private Event event;
+    private TicketType ticketType;
+    private List<QrCode> qrCodes;
+
+    @BeforeEach
+    void setUp() {
+        organizer = new User();
+        organizer.setId(UUID.randomUUID());
+        organizer.setName("Organizer");
+        organizer.setEmail("organizer@example.com");
+        organizer = userRepository.saveAndFlush(organizer);
+
+        event = new Event();
+        event.setName("Gate Festival");
+        event.setVenue("Main Stage");
+        event.setStatus(EventStatusEnum.PUBLISHED);
+        event.setOrganizer(organizer);
+        event = eventRepository.saveAndFlush(event);
+
+        ticketType = new TicketType();
+        ticketType.setName("General");
+        ticketType.setPrice(25.0);
+        ticketType.setTotalTicketsAvailable(TICKETS * 2);
+        ticketType.setEvent(event);
+        ticketType = ticketTypeRepository.saveAndFlush(ticketType);
+
+        qrCodes = buyTickets(TICKETS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        gateManifestService.closeGate(organizer.getId(), event.getId());
+    }
+
+    // ------------------- openGate -------------------
+
+    @Test
+    void openGate_ShouldLoadEveryActiveQrCodeOfTheEvent() {
+        assertThat(gateManifestService.openGate(organizer.getId(), event.getId())).isEqualTo(TICKETS);
+    }
+
+    @Test
+    void openGate_ShouldThrow_WhenUserIsNotTheOrganizer() {
+        assertThatThrownBy(() -> gateManifestService.openGate(UUID.randomUUID(), event.getId()))
+                .isInstanceOf(EventNotFoundException.class);
+    }
+
+    @Test
+    void openGate_ShouldTreatTicketsAlreadyLetInAsScanned() {
+        Ticket admitted = qrCodes.get(0).getTicket();
+        ticketRepository.admit(admitted.getId(), LocalDateTime.now());
+        gateManifestService.openGate(organizer.getId(), event.getId());
+
+        Optional<TicketValidation> validation = gateManifestService.validateByQrCode(qrCodes.get(0).getId(), null);
+
+        assertThat(validation).get().extracting(TicketValidation::getValidationStatus)
+                .isEqualTo(TicketValidationStatusEnum.INVALID);
+    }
+
+    // ------------------- validateByQrCode -------------------
+
+    @Test
+    void validateByQrCode_ShouldLetTicketInOnceWithoutWriting() {
+        gateManifestService.openGate(organizer.getId(), event.getId());
+        QrCode qrCode = qrCodes.get(1);
+
+        TicketValidation first = gateManifestService.validateByQrCode(qrCode.getId(), event.getId()).orElseThrow();
+        TicketValidation second = gateManifestService.validateByQrCode(qrCode.getId(), event.getId()).orElseThrow();
+
+        assertThat(first.getTicket().getId()).isEqualTo(qrCode.getTicket().getId());
+        assertThat(first.getTicket().getTicketType().getId()).isEqualTo(ticketType.getId());
+        assertThat(first.getValidationStatus()).isEqualTo(TicketValidationStatusEnum.VALID);
+        assertThat(second.getValidationStatus()).isEqualTo(TicketValidationStatusEnum.INVALID);
+        assertThat(ticketValidationRepository.count()).isZero();
+    }
+
+    @Test
+    void validateByQrCode_ShouldBeEmpty_WhenNoGateIsOpenForTheCode() {
+        assertThat(gateManifestService.validateByQrCode(qrCodes.get(0).getId(), null)).isEmpty();
+    }
+
+    @Test
+    void validateByQrCode_ShouldThrow_WhenScannedAtAnotherEventsGate() {
+        gateManifestService.openGate(organizer.getId(), event.getId());
+
+        assertThatThrownBy(() -> gateManifestService.validateByQrCode(qrCodes.get(0).getId(), UUID.randomUUID()))
+                .isInstanceOf(InvalidQrCodeException.class)
+                .hasMessageContaining("different event");
+    }
+
+    // ------------------- validateByTicket -------------------
+
+    @Test
+    void validateByTicket_ShouldBeEmpty_WhenPayloadIsNotTheActiveOne() {
+        gateManifestService.openGate(organizer.getId(), event.getId());
+        UUID ticketId = qrCodes.get(0).getTicket().getId();
+
+        assertThat(gateManifestService.validateByTicket(ticketId, event.getId(), "stale",
+                TicketValidationMethodEnum.QR_SCAN)).isEmpty();
+        assertThat(gateManifestService.validateByTicket(ticketId, event.getId(), qrCodes.get(0).getPayload(),
+                TicketValidationMethodEnum.QR_SCAN)).isPresent();
+    }
+
+    @Test
+    void validateTicketManually_ShouldBeAnsweredByTheGate_WhenItIsOpen() {
+        gateManifestService.openGate(organizer.getId(), event.getId());
+        UUID ticketId = qrCodes.get(2).getTicket().getId();
+
+        TicketValidation validation = ticketValidationService.validateTicketManually(ticketId);
+
+        assertThat(validation.getId()).isNull();
+        assertThat(validation.getValidationMethod()).isEqualTo(TicketValidationMethodEnum.MANUAL);
+        assertThat(validation.getValidationStatus()).isEqualTo(TicketValidationStatusEnum.VALID);
+    }
+
+    // ------------------- flushValidations -------------------
+
+    @Test
+    void flushValidations_ShouldWriteValidationsAndLetTicketsIn() {
+        gateManifestService.openGate(organizer.getId(), event.getId());
+        QrCode qrCode = qrCodes.get(3);
+        gateManifestService.validateByQrCode(qrCode.getId(), null);
+        gateManifestService.validateByQrCode(qrCode.getId(), null);
+
+        gateManifestService.flushValidations();
+
+        assertThat(ticketValidationRepository.findAll())
+                .extracting(TicketValidation::getValidationStatus)
+                .containsExactlyInAnyOrder(TicketValidationStatusEnum.VALID, TicketValidationStatusEnum.INVALID);
+        assertThat(ticketRepository.admit(qrCode.getTicket().getId(), LocalDateTime.now())).isZero();
+    }
+
+    @Test
+    void flushValidations_ShouldWriteValidationsAtTheTimeOfTheirScan() throws InterruptedException {
+        gateManifestService.openGate(organizer.getId(), event.getId());
+        QrCode qrCode = qrCodes.get(3);
+        TicketValidation validation = gateManifestService.validateByQrCode(qrCode.getId(), null).orElseThrow();
+
+        Thread.sleep(50);
+        gateManifestService.flushValidations();
+
+        assertThat(ticketValidationRepository.findAll()).singleElement()
+                .extracting(TicketValidation::getCreatedAt)
+                .satisfies(createdAt -> assertThat(createdAt).isCloseTo(validation.getCreatedAt(),
+                        within(1, ChronoUnit.MILLIS)));
+        assertThat(jdbcTemplate.queryForObject("SELECT admitted_at FROM tickets WHERE id = ?", LocalDateTime.class,
+                qrCode.getTicket().getId())).isCloseTo(validation.getCreatedAt(), within(1, ChronoUnit.MILLIS));
+    }
+
+    @Test
+    void flushValidations_ShouldDropOnlyTheValidationThatKeepsFailing_AfterMaxAttempts() {
+        UUID poisoned = qrCodes.get(0).getTicket().getId();
+        List<UUID> written = new ArrayList<>();
+        TicketValidationRepository failingRepository = mock(TicketValidationRepository.class);
+        doAnswer(invocation -> {
+            List<TicketValidation> validations = invocation.getArgument(0);
+            if(validations.stream().anyMatch(validation -> validation.getTicket().getId().equals(poisoned))) {
+                throw new DataIntegrityViolationException("Cannot write validation");
+            }
+            validations.forEach(validation -> written.add(validation.getTicket().getId()));
+            return null;
+        }).when(failingRepository).insertAll(anyList());
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        GateManifestServiceImpl twoAttempts = new GateManifestServiceImpl(qrCodeRepository, ticketRepository,
+                failingRepository, eventRepository, validationJournalService, transactionTemplate, meterRegistry,
+                500, 2, "", Duration.ofSeconds(30));
+        twoAttempts.openGate(organizer.getId(), event.getId());
+        for(QrCode qrCode : qrCodes.subList(0, 3)) {
+            twoAttempts.validateByQrCode(qrCode.getId(), null);
+        }
+
+        twoAttempts.flushValidations();
+        assertThat(written).isEmpty();
+
+        twoAttempts.flushValidations();
+        twoAttempts.flushValidations();
+        twoAttempts.closeGate(organizer.getId(), event.getId());
+
+        assertThat(written).containsExactlyInAnyOrder(qrCodes.get(1).getTicket().getId(),
+                qrCodes.get(2).getTicket().getId());
+        assertThat(meterRegistry.get("tickets.gate.write-behind.dead-lettered").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("tickets.gate.write-behind.pending").gauge().value()).isZero();
+    }
+
+    // ------------------- one node per event -------------------
+
+    @Test
+    void openGate_ShouldThrow_WhenTheGateIsOpenOnAnotherNode() {
+        GateManifestServiceImpl otherNode = otherNode();
+        otherNode.openGate(organizer.getId(), event.getId());
+
+        assertThatThrownBy(() -> gateManifestService.openGate(organizer.getId(), event.getId()))
+                .isInstanceOf(GateOpenElsewhereException.class);
+
+        otherNode.closeGate(organizer.getId(), event.getId());
+        assertThat(gateManifestService.openGate(organizer.getId(), event.getId())).isEqualTo(TICKETS);
+    }
+
+    @Test
+    void validateTicketManually_ShouldThrow_WhenTheGateIsOpenOnAnotherNode() {
+        GateManifestServiceImpl otherNode = otherNode();
+        otherNode.openGate(organizer.getId(), event.getId());
+        UUID ticketId = qrCodes.get(0).getTicket().getId();
+        assertThat(otherNode.validateByTicket(ticketId, null, null, TicketValidationMethodEnum.MANUAL)).get()
+                .extracting(TicketValidation::getValidationStatus)
+                .isEqualTo(TicketValidationStatusEnum.VALID);
+
+        assertThatThrownBy(() -> ticketValidationService.validateTicketManually(ticketId))
+                .isInstanceOf(GateOpenElsewhereException.class);
+
+        //Closing writes the other node's admissions before giving the gate up
+        otherNode.closeGate(organizer.getId(), event.getId());
+        assertThat(ticketValidationService.validateTicketManually(ticketId).getValidationStatus())
+                .isEqualTo(TicketValidationStatusEnum.INVALID);
+    }
+
+    @Test
+    void refreshGates_ShouldCloseTheGate_WhenAnotherNodeTookItsClaim() {
+        gateManifestService.openGate(organizer.getId(), event.getId());
+        jdbcTemplate.update("UPDATE events SET gate_open_until = ? WHERE id = ?",
+                LocalDateTime.now().minusSeconds(1), event.getId());
+        GateManifestServiceImpl otherNode = otherNode();
+        otherNode.openGate(organizer.getId(), event.getId());
+
+        gateManifestService.refreshGates();
+
+        assertThat(gateManifestService.validateByQrCode(qrCodes.get(0).getId(), null)).isEmpty();
+        otherNode.closeGate(organizer.getId(), event.getId());
+    }
+
+    private GateManifestServiceImpl otherNode() {
+        return new GateManifestServiceImpl(qrCodeRepository, ticketRepository, ticketValidationRepository,
+                eventRepository, validationJournalService, transactionTemplate, new SimpleMeterRegistry(), 500, 5,
+                "other-node", Duration.ofSeconds(30));
+    }
+
+    // ------------------- refreshGates -------------------
+
+    @Test
+    void refreshGates_ShouldAddCodesBoughtAfterOpening() {
+        gateManifestService.openGate(organizer.getId(), event.getId());
+        QrCode bought = buyTickets(1).get(0);
+        assertThat(gateManifestService.validateByQrCode(bought.getId(), null)).isEmpty();
+
+        gateManifestService.refreshGates();
+
+        assertThat(gateManifestService.validateByQrCode(bought.getId(), null)).get()
+                .extracting(TicketValidation::getValidationStatus)
+                .isEqualTo(TicketValidationStatusEnum.VALID);
+    }
+
+    @Test
+    void refreshGates_ShouldRevokeCodesOfCancelledTickets() {
+        gateManifestService.openGate(organizer.getId(), event.getId());
+        Ticket cancelled = qrCodes.get(4).getTicket();
+        cancelled.setStatus(TicketStatusEnum.CANCELLED);
+        ticketRepository.saveAndFlush(cancelled);
+
+        gateManifestService.refreshGates();
+
+        assertThat(gateManifestService.validateByQrCode(qrCodes.get(4).getId(), null)).isEmpty();
+    }
+
+    @Test
+    void refreshGates_ShouldTurnAwayTicketsLetInAtAnotherNode() {
+        //Bought long before doors-open, so only being let in can bring them up again
+        LocalDateTime anHourAgo = LocalDateTime.now().minusHours(1);
+        jdbcTemplate.update("UPDATE qr_codes SET updated_at = ?", anHourAgo);
+        jdbcTemplate.update("UPDATE tickets SET updated_at = ?", anHourAgo);
+        gateManifestService.openGate(organizer.getId(), event.getId());
+        QrCode qrCode = qrCodes.get(1);
+
+        //Another node's gate or the database path writes only admitted_at
+        ticketRepository.admitAll(List.of(qrCode.getTicket().getId()), LocalDateTime.now());
+        gateManifestService.refreshGates();
+
+        assertThat(gateManifestService.validateByQrCode(qrCode.getId(), null)).get()
+                .extracting(TicketValidation::getValidationStatus)
+                .isEqualTo(TicketValidationStatusEnum.INVALID);
+    }
+
+    private List<QrCode> buyTickets(int count) {
+        List<Ticket> tickets = new ArrayList<>();
+        for(int i = 0; i < count; i++) {
+            Ticket ticket = new Ticket();
+            ticket.setStatus(TicketStatusEnum.PURCHASED);
+            ticket.setPurchaser(organizer);
+            ticket.setTicketType(ticketType);
+            tickets.add(ticket);
+        }
+        return qrCodeService.generateQrCodes(ticketRepository.saveAllAndFlush(tickets));
+    }
+}
@@ -0,0 +1,221 @@
+package com.ticketplatform.tickets.services.impl;
+
+import com.ticketplatform.tickets.config.TestSecurityConfig;
+import com.ticketplatform.tickets.domain.IdempotentResponse;
+import com.ticketplatform.tickets.domain.entities.TicketType;
+import com.ticketplatform.tickets.domain.entities.User;
+import com.ticketplatform.tickets.exceptions.IdempotencyKeyException;
+import com.ticketplatform.tickets.repositories.IdempotencyKeyRepository;
+import com.ticketplatform.tickets.repositories.TicketRepository;
+import com.ticketplatform.tickets.repositories.TicketTypeRepository;
+import com.ticketplatform.tickets.repositories.UserRepository;
+import com.ticketplatform.tickets.services.TicketTypeService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+//Not transactional: keys are written in their own transactions, as they are outside of tests
+@SpringBootTest
+@Import(TestSecurityConfig.class)
+class IdempotencyServiceImplIntegrationTest {
+
+    @Autowired
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private TicketTypeService ticketTypeService;
+
+    @Autowired
+    private TicketTypeRepository ticketTypeRepository;
+
+    @Autowired
+    private TicketRepository ticketRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private IdempotencyServiceImpl newIdempotencyService(SimpleMeterRegistry meterRegistry) {
+        return new IdempotencyServiceImpl(idempotencyKeyRepository, transactionManager, meterRegistry,
+                Duration.ofHours(1), Duration.ofMinutes(1), 100);
+    }
+
+    // ------------------- execute -------------------
+
+    @Test
+    void execute_ShouldRunRequestOnce_WhenRetriedWithSameKey() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        IdempotencyServiceImpl idempotencyService = newIdempotencyService(meterRegistry);
+        UUID userId = UUID.randomUUID();
+        String key = UUID.randomUUID().toString();
+        AtomicInteger runs = new AtomicInteger();
+
+        IdempotentResponse first = idempotencyService.execute(userId, key, "orders:1",
+                () -> new IdempotentResponse(201, "[{\"run\":" + runs.incrementAndGet() + "}]", false));
+        IdempotentResponse retry = idempotencyService.execute(userId, key, "orders:1",
+                () -> new IdempotentResponse(201, "[{\"run\":" + runs.incrementAndGet() + "}]", false));
+
+        assertThat(runs).hasValue(1);
+        assertThat(first.isReplayed()).isFalse();
+        assertThat(retry.isReplayed()).isTrue();
+        assertThat(retry.getStatus()).isEqualTo(201);
+        assertThat(retry.getBody()).isEqualTo(first.getBody());
+        assertThat(meterRegistry.get("tickets.idempotency.replays").tag("source", "memory").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void execute_ShouldReplayFromDatabase_WhenKeyNotInMemory() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        UUID userId = UUID.randomUUID();
+        String key = UUID.randomUUID().toString();
+        AtomicInteger runs = new AtomicInteger();
+
+        newIdempotencyService(new SimpleMeterRegistry()).execute(userId, key, "tickets:1",
+                () -> {
+                    runs.incrementAndGet();
+                    return new IdempotentResponse(204, null, false);
+                });
+        // Another node, or this one after the key was evicted
+        IdempotentResponse retry = newIdempotencyService(meterRegistry).execute(userId, key, "tickets:1",
+                () -> {
+                    runs.incrementAndGet();
+                    return new IdempotentResponse(204, null, false);
+                });
+
+        assertThat(runs).hasValue(1);
+        assertThat(retry.isReplayed()).isTrue();
+        assertThat(retry.getStatus()).isEqualTo(204);
+        assertThat(meterRegistry.get("tickets.idempotency.replays").tag("source", "database").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void execute_ShouldThrow_WhenKeyReusedForDifferentRequest() {
+        IdempotencyServiceImpl idempotencyService = newIdempotencyService(new SimpleMeterRegistry());
+        UUID userId = UUID.randomUUID();
+        String key = UUID.randomUUID().toString();
+        idempotencyService.execute(userId, key, "orders:1", () -> new IdempotentResponse(201, "[]", false));
+
+        assertThatThrownBy(() -> idempotencyService.execute(userId, key, "orders:2",
+                () -> new IdempotentResponse(201, "[]", false)))
+                .isInstanceOf(IdempotencyKeyException.class);
+        // Keys belong to one user, another user may happen to pick the same one
+        assertThat(idempotencyService.execute(UUID.randomUUID(), key, "orders:2",
+                () -> new IdempotentResponse(201, "[]", false)).isReplayed()).isFalse();
+    }
+
+    @Test
+    void execute_ShouldRunAgain_WhenFirstAttemptFailed() {
+        IdempotencyServiceImpl idempotencyService = newIdempotencyService(new SimpleMeterRegistry());
+        UUID userId = UUID.randomUUID();
+        String key = UUID.randomUUID().toString();
+
+        assertThatThrownBy(() -> idempotencyService.execute(userId, key, "tickets:1", () -> {
+            throw new IllegalStateException("Purchase failed");
+        })).isInstanceOf(IllegalStateException.class);
+
+        IdempotentResponse retry = idempotencyService.execute(userId, key, "tickets:1",
+                () -> new IdempotentResponse(204, null, false));
+        assertThat(retry.isReplayed()).isFalse();
+    }
+
+    @Test
+    void execute_ShouldPurchaseOnce_WhenRetriedConcurrently() throws Exception {
+        IdempotencyServiceImpl idempotencyService = newIdempotencyService(new SimpleMeterRegistry());
+        User user = new User();
+        user.setId(UUID.randomUUID());
+        user.setName("Test User");
+        user.setEmail("user@example.com");
+        userRepository.saveAndFlush(user);
+        TicketType ticketType = new TicketType();
+        ticketType.setName("General Admission");
+        ticketType.setPrice(25.0);
+        ticketType.setTotalTicketsAvailable(10);
+        TicketType savedTicketType = ticketTypeRepository.saveAndFlush(ticketType);
+        String key = UUID.randomUUID().toString();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                try {
+                    idempotencyService.execute(user.getId(), key, "tickets:" + savedTicketType.getId(), () -> {
+                        ticketTypeService.purchaseTicket(user.getId(), savedTicketType.getId());
+                        return new IdempotentResponse(204, null, false);
+                    });
+                    return true;
+                } catch (IdempotencyKeyException ex) {
+                    // Still in progress on another thread, the client would retry
+                    return false;
+                }
+            }));
+        }
+        start.countDown();
+        for (Future<Boolean> result : results) {
+            result.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertThat(ticketRepository.countByTicketTypeId(savedTicketType.getId())).isEqualTo(1);
+        assertThat(idempotencyService.execute(user.getId(), key, "tickets:" + savedTicketType.getId(),
+                () -> new IdempotentResponse(204, null, false)).isReplayed()).isTrue();
+    }
+
+    @Test
+    void execute_ShouldNotRunAgain_WhenRetriedAfterInProgressTimeoutWhilePurchaseStillRunning() throws Exception {
+        IdempotencyServiceImpl idempotencyService = new IdempotencyServiceImpl(idempotencyKeyRepository,
+                transactionManager, new SimpleMeterRegistry(), Duration.ofHours(1), Duration.ofMillis(100), 100);
+        UUID userId = UUID.randomUUID();
+        String key = UUID.randomUUID().toString();
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch purchaseStarted = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<IdempotentResponse> slowPurchase = executor.submit(() ->
+                idempotencyService.execute(userId, key, "tickets:1", () -> {
+                    runs.incrementAndGet();
+                    purchaseStarted.countDown();
+                    try {
+                        Thread.sleep(500);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return new IdempotentResponse(204, null, false);
+                }));
+        assertThat(purchaseStarted.await(10, TimeUnit.SECONDS)).isTrue();
+        Thread.sleep(200);
+
+        // The in-progress row has expired by now, but the purchase holding it has not finished
+        IdempotentResponse retry = idempotencyService.execute(userId, key, "tickets:1", () -> {
+            runs.incrementAndGet();
+            return new IdempotentResponse(204, null, false);
+        });
+
+        assertThat(slowPurchase.get(10, TimeUnit.SECONDS).isReplayed()).isFalse();
+        executor.shutdown();
+        assertThat(retry.isReplayed()).isTrue();
+        assertThat(runs).hasValue(1);
+    }
+}
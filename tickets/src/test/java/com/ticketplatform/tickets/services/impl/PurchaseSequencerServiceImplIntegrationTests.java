@@ -0,0 +1,211 @@
+package com.ticketplatform.tickets.services.impl;
+
+import com.ticketplatform.tickets.config.TestSecurityConfig;
+import com.ticketplatform.tickets.domain.IdempotentResponse;
+import com.ticketplatform.tickets.domain.entities.IdempotencyKeyStatusEnum;
+import com.ticketplatform.tickets.domain.entities.Ticket;
+import com.ticketplatform.tickets.domain.entities.TicketType;
+import com.ticketplatform.tickets.domain.entities.User;
+import com.ticketplatform.tickets.exceptions.TicketTypeNotFoundException;
+import com.ticketplatform.tickets.exceptions.TicketsSoldOutException;
+import com.ticketplatform.tickets.exceptions.UserNotFoundException;
+import com.ticketplatform.tickets.repositories.IdempotencyKeyRepository;
+import com.ticketplatform.tickets.repositories.TicketBlockLeaseRepository;
+import com.ticketplatform.tickets.repositories.TicketRepository;
+import com.ticketplatform.tickets.repositories.TicketTypeRepository;
+import com.ticketplatform.tickets.repositories.UserRepository;
+import com.ticketplatform.tickets.services.IdempotencyService;
+import com.ticketplatform.tickets.services.PurchaseSequencerService;
+import com.ticketplatform.tickets.services.QrCodeOutboxService;
+import com.ticketplatform.tickets.services.SoldOutRegistryService;
+import com.ticketplatform.tickets.services.TicketInventoryService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Not transactional: the sequencer commits on its own threads, so test data has to be committed first
+@SpringBootTest
+@Import(TestSecurityConfig.class)
+class PurchaseSequencerServiceImplIntegrationTest {
+
+    @Autowired
+    private PurchaseSequencerService purchaseSequencerService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TicketTypeRepository ticketTypeRepository;
+
+    @Autowired
+    private TicketRepository ticketRepository;
+
+    @Autowired
+    private TicketBlockLeaseRepository ticketBlockLeaseRepository;
+
+    @Autowired
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private TicketInventoryService ticketInventoryService;
+
+    @Autowired
+    private QrCodeOutboxService qrCodeOutboxService;
+
+    @Autowired
+    private SoldOutRegistryService soldOutRegistryService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private User user;
+    private TicketType ticketType;
+
+    @BeforeEach
+    void setUp() {
+        user = new User();
+        user.setId(UUID.randomUUID());
+        user.setName("Test User");
+        user.setEmail("user@example.com");
+        user = userRepository.saveAndFlush(user);
+
+        ticketType = new TicketType();
+        ticketType.setName("General Admission");
+        ticketType.setPrice(20.0);
+        ticketType.setTotalTicketsAvailable(20);
+        ticketType = ticketTypeRepository.saveAndFlush(ticketType);
+    }
+
+    // ------------------- submitPurchase -------------------
+
+    @Test
+    void submitPurchase_ShouldSellExactlyTotal_WhenManyBuyersArriveAtOnce() {
+        List<CompletableFuture<Ticket>> results = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            results.add(purchaseSequencerService.submitPurchase(user.getId(), ticketType.getId()));
+        }
+
+        int purchased = 0;
+        int soldOut = 0;
+        for (CompletableFuture<Ticket> result : results) {
+            try {
+                Ticket ticket = result.orTimeout(30, TimeUnit.SECONDS).join();
+                assertThat(ticket.getId()).isNotNull();
+                purchased++;
+            } catch (CompletionException ex) {
+                assertThat(ex.getCause()).isInstanceOf(TicketsSoldOutException.class);
+                soldOut++;
+            }
+        }
+
+        assertThat(purchased).isEqualTo(20);
+        assertThat(soldOut).isEqualTo(40);
+        assertThat(ticketRepository.countByTicketTypeId(ticketType.getId())).isEqualTo(20);
+        assertThat(ticketTypeRepository.findById(ticketType.getId()).orElseThrow().getTicketsSold()).isEqualTo(20);
+    }
+
+    @Test
+    void submitPurchase_ShouldFailWithoutQueueing_WhenTicketTypeNotFound() {
+        CompletableFuture<Ticket> result = purchaseSequencerService.submitPurchase(user.getId(), UUID.randomUUID());
+
+        assertThat(result).isCompletedExceptionally();
+        assertThatThrownBy(result::join).hasCauseInstanceOf(TicketTypeNotFoundException.class);
+    }
+
+    // ------------------- purchaseTicket -------------------
+
+    @Test
+    void purchaseTicket_ShouldReturnTicket() {
+        Ticket ticket = purchaseSequencerService.purchaseTicket(user.getId(), ticketType.getId());
+
+        assertThat(ticketRepository.findById(ticket.getId())).isPresent();
+    }
+
+    @Test
+    void purchaseTicket_ShouldThrow_WhenUserNotFound() {
+        assertThatThrownBy(() -> purchaseSequencerService.purchaseTicket(UUID.randomUUID(), ticketType.getId()))
+                .isInstanceOf(UserNotFoundException.class)
+                .hasMessageContaining("User with ID");
+    }
+
+    @Test
+    void purchaseTicket_ShouldThrow_WhenTicketTypeNotFound() {
+        assertThatThrownBy(() -> purchaseSequencerService.purchaseTicket(user.getId(), UUID.randomUUID()))
+                .isInstanceOf(TicketTypeNotFoundException.class)
+                .hasMessageContaining("Ticket type with ID");
+    }
+
+    @Test
+    void purchaseTicket_ShouldCompleteIdempotencyKey_InTheBatchThatSellsTheTicket() {
+        IdempotentResponse noContent = new IdempotentResponse(204, null, false);
+        String idempotencyKey = "sequenced-" + UUID.randomUUID();
+
+        IdempotentResponse first = idempotencyService.executeCompletingKey(user.getId(), idempotencyKey, "tickets",
+                idempotencyKeyId -> {
+                    purchaseSequencerService.purchaseTicket(user.getId(), ticketType.getId(), idempotencyKeyId, noContent);
+                    return noContent;
+                });
+        IdempotentResponse retried = idempotencyService.executeCompletingKey(user.getId(), idempotencyKey, "tickets",
+                idempotencyKeyId -> {
+                    throw new AssertionError("a retry must not buy again");
+                });
+
+        assertThat(first.isReplayed()).isFalse();
+        assertThat(retried.isReplayed()).isTrue();
+        assertThat(retried.getStatus()).isEqualTo(204);
+        assertThat(idempotencyKeyRepository.findByUserIdAndIdempotencyKey(user.getId(), idempotencyKey))
+                .hasValueSatisfying(key -> assertThat(key.getStatus()).isEqualTo(IdempotencyKeyStatusEnum.COMPLETED));
+        assertThat(ticketRepository.countByTicketTypeId(ticketType.getId())).isEqualTo(1);
+    }
+
+    // ------------------- block leases -------------------
+
+    @Test
+    void submitPurchase_ShouldSellTicketsLeasedIntoBlocks_WhenLeasesAreEnabled() throws InterruptedException {
+        TicketBlockLeaseServiceImpl leases = new TicketBlockLeaseServiceImpl(ticketTypeRepository, ticketRepository,
+                ticketBlockLeaseRepository, ticketInventoryService, transactionManager, true, "sequencer-node",
+                Duration.ofSeconds(30), Duration.ofMinutes(2), 5, 1, 10, Duration.ofSeconds(2));
+        PurchaseSequencerServiceImpl sequencer = new PurchaseSequencerServiceImpl(userRepository, ticketTypeRepository,
+                ticketRepository, qrCodeOutboxService, soldOutRegistryService, ticketInventoryService, leases,
+                idempotencyService, transactionManager, true, 200, Duration.ofMillis(5));
+        try {
+            // starts leasing a block of 5, which leaves 15 in the database
+            assertThat(leases.claimTicket(ticketType)).isEmpty();
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (ticketTypeRepository.findById(ticketType.getId()).orElseThrow().getTicketsSold() < 5) {
+                assertThat(System.currentTimeMillis()).as("block not leased within 10s").isLessThan(deadline);
+                Thread.sleep(20);
+            }
+
+            List<CompletableFuture<Ticket>> results = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                results.add(sequencer.submitPurchase(user.getId(), ticketType.getId()));
+            }
+
+            // every ticket is sold, including the ones sitting in this node's block
+            assertThat(results).allSatisfy(result ->
+                    assertThat(result.orTimeout(30, TimeUnit.SECONDS).join().getId()).isNotNull());
+        } finally {
+            leases.returnAllLeases();
+        }
+        assertThat(ticketRepository.countByTicketTypeId(ticketType.getId())).isEqualTo(20);
+        assertThat(ticketTypeRepository.findById(ticketType.getId()).orElseThrow().getTicketsSold()).isEqualTo(20);
+    }
+}
@@ -0,0 +1,137 @@
+package com.ticketplatform.tickets.services.impl;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.ticketplatform.tickets.config.TestSecurityConfig;
+import com.ticketplatform.tickets.exceptions.InvalidQrCodeException;
+import com.ticketplatform.tickets.exceptions.QrCodeDecoderBusyException;
+import com.ticketplatform.tickets.util.QrCodePngRenderer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@Import(TestSecurityConfig.class)
+class QrCodeDecodeServiceImplIntegrationTest {
+
+    @Autowired
+    private QrCodeDecodeServiceImpl qrCodeDecodeService;
+
+    @Autowired
+    private QrCodePngRenderer qrCodePngRenderer;
+
+    private final String payload = UUID.randomUUID().toString();
+
+    // ------------------- decode -------------------
+
+    @Test
+    void decode_ShouldReturnPayload_WhenImageIsTheRenderedCode() throws Exception {
+        byte[] png = qrCodePngRenderer.render(new QRCodeWriter()
+                .encode(payload, BarcodeFormat.QR_CODE, 0, 0, Map.of(EncodeHintType.MARGIN, 0)));
+
+        assertThat(qrCodeDecodeService.decode(png)).isEqualTo(payload);
+    }
+
+    @Test
+    void decode_ShouldReturnPayload_WhenCodeIsPartOfALargeDimPhoto() throws Exception {
+        byte[] photo = photo(4000, 3000, 900);
+
+        assertThat(qrCodeDecodeService.decode(photo)).isEqualTo(payload);
+    }
+
+    @Test
+    void decode_ShouldThrow_WhenImageHasNoQrCode() throws Exception {
+        BufferedImage blank = new BufferedImage(640, 480, BufferedImage.TYPE_INT_RGB);
+
+        assertThatThrownBy(() -> qrCodeDecodeService.decode(jpeg(blank)))
+                .isInstanceOf(InvalidQrCodeException.class)
+                .hasMessageContaining("No QR code");
+    }
+
+    @Test
+    void decode_ShouldThrow_WhenUploadIsNotAnImage() {
+        assertThatThrownBy(() -> qrCodeDecodeService.decode("not an image".getBytes(StandardCharsets.UTF_8)))
+                .isInstanceOf(InvalidQrCodeException.class)
+                .hasMessageContaining("not an image");
+    }
+
+    @Test
+    void decode_ShouldThrow_WhenImageHasTooManyPixels() throws Exception {
+        QrCodeDecodeServiceImpl small = new QrCodeDecodeServiceImpl(new SimpleMeterRegistry(), 1, 1,
+                Duration.ofSeconds(5), 1280, 1_000_000);
+        try {
+            byte[] photo = photo(2000, 1000, 600);
+            assertThatThrownBy(() -> small.decode(photo))
+                    .isInstanceOf(InvalidQrCodeException.class)
+                    .hasMessageContaining("too large");
+        } finally {
+            small.stopWorkers();
+        }
+    }
+
+    @Test
+    void decode_ShouldTurnAway_WhenDecodingTakesLongerThanTimeout() throws Exception {
+        QrCodeDecodeServiceImpl impatient = new QrCodeDecodeServiceImpl(new SimpleMeterRegistry(), 1, 1,
+                Duration.ofMillis(1), 4000, 40_000_000);
+        try {
+            byte[] photo = photo(4000, 3000, 900);
+            assertThatThrownBy(() -> impatient.decode(photo))
+                    .isInstanceOf(QrCodeDecoderBusyException.class);
+        } finally {
+            impatient.stopWorkers();
+        }
+    }
+
+    @Test
+    void decode_ShouldRecordLatency() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        QrCodeDecodeServiceImpl measured = new QrCodeDecodeServiceImpl(meterRegistry, 1, 1,
+                Duration.ofSeconds(5), 1280, 40_000_000);
+        try {
+            measured.decode(photo(1600, 1200, 600));
+
+            assertThat(meterRegistry.get("tickets.qr-codes.decode").tag("result", "decoded").timer().count())
+                    .isEqualTo(1);
+            assertThat(meterRegistry.get("tickets.qr-codes.decode.queue-wait").timer().count()).isEqualTo(1);
+        } finally {
+            measured.stopWorkers();
+        }
+    }
+
+    //A code of codeSize pixels on a dim, unevenly lit background, saved as a JPEG as a phone camera would
+    private byte[] photo(int width, int height, int codeSize) throws Exception {
+        BufferedImage code = ImageIO.read(new ByteArrayInputStream(qrCodePngRenderer.render(new QRCodeWriter()
+                .encode(payload, BarcodeFormat.QR_CODE, 0, 0, Map.of(EncodeHintType.MARGIN, 0)))));
+        BufferedImage photo = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = photo.createGraphics();
+        graphics.setPaint(new GradientPaint(0, 0, new Color(40, 40, 50), width, height, new Color(150, 140, 130)));
+        graphics.fillRect(0, 0, width, height);
+        graphics.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.8f));
+        graphics.drawImage(code, width / 3, height / 4, codeSize, codeSize, null);
+        graphics.dispose();
+        return jpeg(photo);
+    }
+
+    private static byte[] jpeg(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+}
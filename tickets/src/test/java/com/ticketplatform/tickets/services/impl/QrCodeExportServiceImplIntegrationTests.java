@@ -0,0 +1,261 @@
+package com.ticketplatform.tickets.services.impl;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeReader;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.ticketplatform.tickets.config.TestSecurityConfig;
+import com.ticketplatform.tickets.domain.QrCodeExportFormat;
+import com.ticketplatform.tickets.domain.entities.*;
+import com.ticketplatform.tickets.exceptions.EventNotFoundException;
+import com.ticketplatform.tickets.exceptions.QrCodeExportBusyException;
+import com.ticketplatform.tickets.repositories.EventRepository;
+import com.ticketplatform.tickets.repositories.QrCodeRepository;
+import com.ticketplatform.tickets.repositories.TicketRepository;
+import com.ticketplatform.tickets.repositories.TicketTypeRepository;
+import com.ticketplatform.tickets.repositories.UserRepository;
+import com.ticketplatform.tickets.services.QrCodeService;
+import com.ticketplatform.tickets.util.QrCodePngRenderer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.imageio.ImageIO;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@Transactional
+@Import(TestSecurityConfig.class)
+class QrCodeExportServiceImplIntegrationTest {
+
+    private static final int TICKETS = 14;
+
+    @Autowired
+    private QrCodeExportServiceImpl qrCodeExportService;
+
+    @Autowired
+    private QrCodeService qrCodeService;
+
+    @Autowired
+    private QrCodeRepository qrCodeRepository;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private TicketTypeRepository ticketTypeRepository;
+
+    @Autowired
+    private TicketRepository ticketRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private QrCodePngRenderer qrCodePngRenderer;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private User organizer;
+    private Event event;
+    private Map<UUID, String> payloadsByTicketId;
+
+    @BeforeEach
+    void setUp() {
+        organizer = new User();
+        organizer.setId(UUID.randomUUID());
+        organizer.setName("Organizer");
+        organizer.setEmail("organizer@example.com");
+        organizer = userRepository.saveAndFlush(organizer);
+
+        event = new Event();
+        event.setName("Export Festival");
+        event.setVenue("Main Stage");
+        event.setStatus(EventStatusEnum.PUBLISHED);
+        event.setOrganizer(organizer);
+        event = eventRepository.saveAndFlush(event);
+
+        TicketType ticketType = new TicketType();
+        ticketType.setName("General");
+        ticketType.setPrice(25.0);
+        ticketType.setTotalTicketsAvailable(TICKETS);
+        ticketType.setEvent(event);
+        ticketType = ticketTypeRepository.saveAndFlush(ticketType);
+
+        List<Ticket> tickets = new ArrayList<>();
+        for(int i = 0; i < TICKETS; i++) {
+            Ticket ticket = new Ticket();
+            ticket.setStatus(TicketStatusEnum.PURCHASED);
+            ticket.setPurchaser(organizer);
+            ticket.setTicketType(ticketType);
+            tickets.add(ticket);
+        }
+        tickets = ticketRepository.saveAllAndFlush(tickets);
+
+        payloadsByTicketId = new HashMap<>();
+        for(QrCode qrCode : qrCodeService.generateQrCodes(tickets)) {
+            payloadsByTicketId.put(qrCode.getTicket().getId(), qrCode.getPayload());
+        }
+    }
+
+    // ------------------- exportQrCodesForEvent (ZIP) -------------------
+
+    @Test
+    void exportQrCodesForEvent_ShouldWriteScannablePngPerTicket_WhenZip() throws Exception {
+        Map<UUID, String> exported = readZip(export(qrCodeExportService, QrCodeExportFormat.ZIP));
+
+        assertThat(exported).isEqualTo(payloadsByTicketId);
+    }
+
+    @Test
+    void exportQrCodesForEvent_ShouldExportEveryCode_WhenMoreCodesThanInFlightAndPages() throws Exception {
+        QrCodeExportServiceImpl smallWindow = new QrCodeExportServiceImpl(new QRCodeWriter(), qrCodePngRenderer,
+                qrCodeRepository, eventRepository, transactionTemplate, 2, 3, 5, 1);
+        try {
+            assertThat(readZip(export(smallWindow, QrCodeExportFormat.ZIP))).isEqualTo(payloadsByTicketId);
+        } finally {
+            smallWindow.stopRenderPool();
+        }
+    }
+
+    @Test
+    void exportQrCodesForEvent_ShouldSkipCodesNoLongerActive() throws Exception {
+        UUID ticketId = payloadsByTicketId.keySet().iterator().next();
+        QrCode replaced = qrCodeRepository.findByTicketIdAndStatus(ticketId, QrCodeStatusEnum.ACTIVE).orElseThrow();
+        replaced.setStatus(QrCodeStatusEnum.EXPIRED);
+        qrCodeRepository.saveAndFlush(replaced);
+
+        Map<UUID, String> exported = readZip(export(qrCodeExportService, QrCodeExportFormat.ZIP));
+
+        assertThat(exported).hasSize(TICKETS - 1).doesNotContainKey(ticketId);
+    }
+
+    // ------------------- exportQrCodesForEvent (PDF) -------------------
+
+    @Test
+    void exportQrCodesForEvent_ShouldWritePdfWithTwelveCodesAPage_WhenPdf() throws Exception {
+        String pdf = new String(export(qrCodeExportService, QrCodeExportFormat.PDF), StandardCharsets.ISO_8859_1);
+
+        assertThat(pdf).startsWith("%PDF-1.4").endsWith("%%EOF\n");
+        assertThat(pdf).contains("/Type /Pages /Count 2 ");
+        assertThat(Pattern.compile("/Subtype /Image").matcher(pdf).results().count()).isEqualTo(TICKETS);
+        payloadsByTicketId.keySet().forEach(ticketId -> assertThat(pdf).contains("(Ticket " + ticketId + ")"));
+
+        //Every cross-reference entry points at the start of its object
+        int xref = Integer.parseInt(pdf.substring(pdf.lastIndexOf("startxref\n") + 10, pdf.lastIndexOf("\n%%EOF")));
+        Matcher entries = Pattern.compile("(\\d{10}) 00000 n ").matcher(pdf.substring(xref));
+        int object = 1;
+        while(entries.find()) {
+            assertThat(pdf.substring(Integer.parseInt(entries.group(1)))).startsWith(object + " 0 obj\n");
+            object++;
+        }
+        assertThat(object - 1).isEqualTo(3 + TICKETS + 2 * 2);
+    }
+
+    // ------------------- exportQrCodesForEvent (access) -------------------
+
+    @Test
+    void exportQrCodesForEvent_ShouldThrow_WhenEventBelongsToAnotherOrganizer() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertThatThrownBy(() -> qrCodeExportService.exportQrCodesForEvent(UUID.randomUUID(), event.getId(),
+                QrCodeExportFormat.ZIP, out))
+                .isInstanceOf(EventNotFoundException.class);
+        assertThat(out.size()).isZero();
+    }
+
+    // Not transactional, the export running on the other thread has to see the event
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void exportQrCodesForEvent_ShouldTurnAwayExport_WhenTooManyRunning() throws Exception {
+        QrCodeExportServiceImpl oneAtATime = new QrCodeExportServiceImpl(new QRCodeWriter(), qrCodePngRenderer,
+                qrCodeRepository, eventRepository, transactionTemplate, 2, 3, 5, 1);
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        //A client that stops reading: the first write blocks until the test lets it go
+        OutputStream slowClient = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                writing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    throw new IOException(ex);
+                }
+            }
+        };
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> slowExport = executor.submit(() -> {
+                oneAtATime.exportQrCodesForEvent(organizer.getId(), event.getId(), QrCodeExportFormat.ZIP, slowClient);
+                return null;
+            });
+            assertThat(writing.await(10, TimeUnit.SECONDS)).isTrue();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertThatThrownBy(() -> oneAtATime.exportQrCodesForEvent(organizer.getId(), event.getId(),
+                    QrCodeExportFormat.ZIP, out))
+                    .isInstanceOf(QrCodeExportBusyException.class);
+            assertThat(out.size()).isZero();
+
+            release.countDown();
+            slowExport.get(10, TimeUnit.SECONDS);
+            assertThat(readZip(export(oneAtATime, QrCodeExportFormat.ZIP))).isEqualTo(payloadsByTicketId);
+        } finally {
+            release.countDown();
+            executor.shutdown();
+            oneAtATime.stopRenderPool();
+        }
+    }
+
+    private byte[] export(QrCodeExportServiceImpl service, QrCodeExportFormat format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.exportQrCodesForEvent(organizer.getId(), event.getId(), format, out);
+        return out.toByteArray();
+    }
+
+    private static Map<UUID, String> readZip(byte[] zip) throws Exception {
+        Map<UUID, String> payloads = new HashMap<>();
+        try(ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            ZipEntry entry;
+            while((entry = in.getNextEntry()) != null) {
+                String name = entry.getName();
+                UUID ticketId = UUID.fromString(name.substring("ticket-".length(), name.length() - ".png".length()));
+                BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(
+                        new BufferedImageLuminanceSource(ImageIO.read(new ByteArrayInputStream(in.readAllBytes())))));
+                payloads.put(ticketId, new QRCodeReader().decode(bitmap, Map.of(DecodeHintType.PURE_BARCODE, true)).getText());
+            }
+        }
+        return payloads;
+    }
+}
@@ -0,0 +1,117 @@
+package com.ticketplatform.tickets.services.impl;
+
+import com.ticketplatform.tickets.config.TestSecurityConfig;
+import com.ticketplatform.tickets.domain.entities.QrCodeOutbox;
+import com.ticketplatform.tickets.domain.entities.QrCodeStatusEnum;
+import com.ticketplatform.tickets.domain.entities.Ticket;
+import com.ticketplatform.tickets.domain.entities.TicketQrCodeStatusEnum;
+import com.ticketplatform.tickets.domain.entities.TicketStatusEnum;
+import com.ticketplatform.tickets.domain.entities.TicketType;
+import com.ticketplatform.tickets.domain.entities.User;
+import com.ticketplatform.tickets.repositories.QrCodeOutboxRepository;
+import com.ticketplatform.tickets.repositories.QrCodeRepository;
+import com.ticketplatform.tickets.repositories.TicketRepository;
+import com.ticketplatform.tickets.repositories.TicketTypeRepository;
+import com.ticketplatform.tickets.repositories.UserRepository;
+import com.ticketplatform.tickets.services.QrCodeOutboxService;
+import com.ticketplatform.tickets.services.TicketTypeService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//Not transactional: the workers only see tickets whose purchase has committed
+@SpringBootTest
+@Import(TestSecurityConfig.class)
+class QrCodeOutboxServiceImplIntegrationTest {
+
+    @Autowired
+    private QrCodeOutboxService qrCodeOutboxService;
+
+    @Autowired
+    private TicketTypeService ticketTypeService;
+
+    @Autowired
+    private QrCodeOutboxRepository qrCodeOutboxRepository;
+
+    @Autowired
+    private QrCodeRepository qrCodeRepository;
+
+    @Autowired
+    private TicketRepository ticketRepository;
+
+    @Autowired
+    private TicketTypeRepository ticketTypeRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        user = new User();
+        user.setId(UUID.randomUUID());
+        user.setName("Test User");
+        user.setEmail("user@example.com");
+        user = userRepository.saveAndFlush(user);
+    }
+
+    // ------------------- enqueue -------------------
+
+    @Test
+    void enqueue_ShouldGenerateQrCodesAfterPurchaseCommits() throws InterruptedException {
+        TicketType ticketType = new TicketType();
+        ticketType.setName("General Admission");
+        ticketType.setPrice(25.0);
+        ticketType.setTotalTicketsAvailable(5);
+        ticketType = ticketTypeRepository.saveAndFlush(ticketType);
+
+        List<Ticket> tickets = ticketTypeService.purchaseTickets(user.getId(), ticketType.getId(), 5);
+
+        for(Ticket ticket : tickets) {
+            awaitQrCode(ticket.getId());
+            assertThat(ticketRepository.findById(ticket.getId()).orElseThrow().getQrCodeStatus())
+                    .isEqualTo(TicketQrCodeStatusEnum.READY);
+            assertThat(qrCodeOutboxRepository.existsByTicketId(ticket.getId())).isFalse();
+        }
+    }
+
+    // ------------------- processPending -------------------
+
+    @Test
+    void processPending_ShouldGenerateQrCodes_LeftInTheOutbox() throws InterruptedException {
+        Ticket ticket = new Ticket();
+        ticket.setStatus(TicketStatusEnum.PURCHASED);
+        ticket.setPurchaser(user);
+        ticket.setQrCodeStatus(TicketQrCodeStatusEnum.PENDING);
+        ticket = ticketRepository.saveAndFlush(ticket);
+        // Written without the after-commit hand off, as if the node had gone down straight after the purchase
+        qrCodeOutboxRepository.saveAndFlush(QrCodeOutbox.builder().ticketId(ticket.getId()).build());
+        jdbcTemplate.update("UPDATE qr_code_outbox SET created_at = DATEADD('MINUTE', -1, created_at) WHERE ticket_id = ?",
+                ticket.getId());
+
+        qrCodeOutboxService.processPending();
+
+        awaitQrCode(ticket.getId());
+        assertThat(qrCodeOutboxRepository.existsByTicketId(ticket.getId())).isFalse();
+    }
+
+    private void awaitQrCode(UUID ticketId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while(qrCodeRepository.findByTicketIdAndStatus(ticketId, QrCodeStatusEnum.ACTIVE).isEmpty()) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+}
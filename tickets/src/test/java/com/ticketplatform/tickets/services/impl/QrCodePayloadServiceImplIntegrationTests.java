@@ -0,0 +1,175 @@
+package com.ticketplatform.tickets.services.impl;
+
+import com.ticketplatform.tickets.config.TestSecurityConfig;
+import com.ticketplatform.tickets.domain.ScannedQrCode;
+import com.ticketplatform.tickets.exceptions.InvalidQrCodeException;
+import com.ticketplatform.tickets.services.QrCodePayloadService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@Import(TestSecurityConfig.class)
+class QrCodePayloadServiceImplIntegrationTest {
+
+    private static final String OLD_KEY = "k1:" + "a".repeat(32);
+    private static final String NEW_KEY = "k2:" + "b".repeat(32);
+    private static final Duration PERIOD = Duration.ofSeconds(30);
+
+    @Autowired
+    private QrCodePayloadService qrCodePayloadService;
+
+    private final UUID qrCodeId = UUID.randomUUID();
+    private final UUID ticketId = UUID.randomUUID();
+    private final UUID eventId = UUID.randomUUID();
+
+    // ------------------- createPayload -------------------
+
+    @Test
+    void createPayload_ShouldReturnQrCodeId_WhenNoKeysConfigured() {
+        String payload = qrCodePayloadService.createPayload(qrCodeId, ticketId, eventId);
+
+        assertThat(payload).isEqualTo(qrCodeId.toString());
+        assertThat(qrCodePayloadService.verifyPayload(payload)).isEqualTo(new ScannedQrCode(qrCodeId, null, null, false));
+    }
+
+    @Test
+    void createPayload_ShouldSignWithFirstKey() {
+        String payload = signing(NEW_KEY, OLD_KEY).createPayload(qrCodeId, ticketId, eventId);
+
+        assertThat(payload).startsWith("k2.");
+        assertThat(payload).doesNotContain(qrCodeId.toString());
+    }
+
+    @Test
+    void createPayload_ShouldRejectShortSecrets() {
+        assertThatThrownBy(() -> signing("k1:too-short"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    // ------------------- verifyPayload -------------------
+
+    @Test
+    void verifyPayload_ShouldReturnTicketAndEvent_WhenSigned() {
+        QrCodePayloadService signing = signing(OLD_KEY);
+
+        ScannedQrCode scanned = signing.verifyPayload(signing.createPayload(qrCodeId, ticketId, eventId));
+
+        assertThat(scanned.isSigned()).isTrue();
+        assertThat(scanned.getTicketId()).isEqualTo(ticketId);
+        assertThat(scanned.getEventId()).isEqualTo(eventId);
+    }
+
+    @Test
+    void verifyPayload_ShouldReject_WhenTamperedWith() {
+        QrCodePayloadService signing = signing(OLD_KEY);
+        String payload = signing.createPayload(qrCodeId, ticketId, eventId);
+        char last = payload.charAt(10);
+        String tampered = payload.substring(0, 10) + (last == 'A' ? 'B' : 'A') + payload.substring(11);
+
+        assertThatThrownBy(() -> signing.verifyPayload(tampered)).isInstanceOf(InvalidQrCodeException.class);
+        assertThatThrownBy(() -> signing.verifyPayload("k1.not-base64!")).isInstanceOf(InvalidQrCodeException.class);
+        assertThatThrownBy(() -> signing.verifyPayload("not-a-qr-code")).isInstanceOf(InvalidQrCodeException.class);
+    }
+
+    @Test
+    void verifyPayload_ShouldAcceptOldKey_UntilItIsDropped() {
+        String signedWithOldKey = signing(OLD_KEY).createPayload(qrCodeId, ticketId, eventId);
+
+        QrCodePayloadService rotated = signing(NEW_KEY, OLD_KEY);
+        assertThat(rotated.verifyPayload(signedWithOldKey).getTicketId()).isEqualTo(ticketId);
+
+        QrCodePayloadService retired = signing(NEW_KEY);
+        assertThatThrownBy(() -> retired.verifyPayload(signedWithOldKey))
+                .isInstanceOf(InvalidQrCodeException.class)
+                .hasMessageContaining("no longer accepted");
+    }
+
+    @Test
+    void verifyPayload_ShouldReject_WhenKeyIdIsSwapped() {
+        String sameSecretOtherId = "k2:" + "a".repeat(32);
+        String payload = signing(OLD_KEY).createPayload(qrCodeId, ticketId, eventId);
+
+        QrCodePayloadService verifying = signing(sameSecretOtherId, OLD_KEY);
+        assertThatThrownBy(() -> verifying.verifyPayload("k2" + payload.substring(2)))
+                .isInstanceOf(InvalidQrCodeException.class);
+    }
+
+    // ------------------- currentPayload (dynamic) -------------------
+
+    @Test
+    void currentPayload_ShouldKeepStoredPayload_WhenNotDynamic() {
+        QrCodePayloadService signing = signing(OLD_KEY);
+        String stored = signing.createPayload(qrCodeId, ticketId, eventId);
+
+        assertThat(signing.currentPayload(stored, Instant.now())).isEqualTo(stored);
+        assertThat(signing.currentPayloadExpiresAt(Instant.now())).isEmpty();
+    }
+
+    @Test
+    void currentPayload_ShouldChangeEachWindow_AndVerifyWithoutStoredPayload() {
+        QrCodePayloadService dynamic = dynamicSigning();
+        String stored = dynamic.createPayload(qrCodeId, ticketId, eventId);
+        Instant now = Instant.now();
+
+        String current = dynamic.currentPayload(stored, now);
+        String next = dynamic.currentPayload(stored, now.plus(PERIOD));
+
+        assertThat(current).isNotEqualTo(stored).isNotEqualTo(next);
+        assertThat(dynamic.currentPayload(stored, now)).isEqualTo(current);
+        ScannedQrCode scanned = dynamic.verifyPayload(current);
+        assertThat(scanned.isDynamic()).isTrue();
+        assertThat(scanned.getTicketId()).isEqualTo(ticketId);
+        assertThat(scanned.getEventId()).isEqualTo(eventId);
+        assertThat(dynamic.currentPayloadExpiresAt(now)).get().matches(expiresAt ->
+                expiresAt.isAfter(now) && !expiresAt.isAfter(now.plus(PERIOD)));
+    }
+
+    @Test
+    void verifyPayload_ShouldAcceptSkewedWindow_AndRejectOlderScreenshots() {
+        QrCodePayloadService dynamic = dynamicSigning();
+        String stored = dynamic.createPayload(qrCodeId, ticketId, eventId);
+        Instant now = Instant.now();
+
+        assertThat(dynamic.verifyPayload(dynamic.currentPayload(stored, now.minus(PERIOD))).getTicketId())
+                .isEqualTo(ticketId);
+        assertThatThrownBy(() -> dynamic.verifyPayload(dynamic.currentPayload(stored, now.minus(PERIOD.multipliedBy(3)))))
+                .isInstanceOf(InvalidQrCodeException.class)
+                .hasMessageContaining("expired");
+    }
+
+    @Test
+    void verifyPayload_ShouldReject_WhenDynamicCodeIsMovedToAnotherTicket() {
+        QrCodePayloadService dynamic = dynamicSigning();
+        String current = dynamic.currentPayload(dynamic.createPayload(qrCodeId, ticketId, eventId), Instant.now());
+        byte[] decoded = Base64.getUrlDecoder().decode(current.substring(3));
+        decoded[1] ^= 1;
+        String otherTicket = "k1." + Base64.getUrlEncoder().withoutPadding().encodeToString(decoded);
+
+        assertThatThrownBy(() -> dynamic.verifyPayload(otherTicket)).isInstanceOf(InvalidQrCodeException.class);
+    }
+
+    @Test
+    void constructor_ShouldRejectDynamicMode_WithoutSigningKeys() {
+        assertThatThrownBy(() -> new QrCodePayloadServiceImpl(List.of(), true, PERIOD, 1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static QrCodePayloadService signing(String... signingKeys) {
+        return new QrCodePayloadServiceImpl(List.of(signingKeys), false, PERIOD, 1);
+    }
+
+    private static QrCodePayloadService dynamicSigning() {
+        return new QrCodePayloadServiceImpl(List.of(OLD_KEY), true, PERIOD, 1);
+    }
+}
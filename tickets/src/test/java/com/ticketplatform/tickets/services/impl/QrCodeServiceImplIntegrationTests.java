@@ -1,7 +1,12 @@
 package com.ticketplatform.tickets.services.impl;
 
 
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.Result;
 import com.google.zxing.WriterException;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeReader;
 import com.google.zxing.qrcode.QRCodeWriter;
 
 
@@ -9,9 +14,13 @@ import com.ticketplatform.tickets.config.TestSecurityConfig;
 import com.ticketplatform.tickets.domain.entities.*;
 import com.ticketplatform.tickets.exceptions.QrCodeGenerationException;
 import com.ticketplatform.tickets.exceptions.QrCodeNotFoundException;
+import com.ticketplatform.tickets.repositories.QrCodeOutboxRepository;
 import com.ticketplatform.tickets.repositories.QrCodeRepository;
 import com.ticketplatform.tickets.repositories.TicketRepository;
 import com.ticketplatform.tickets.repositories.UserRepository;
+import com.ticketplatform.tickets.services.QrCodePayloadService;
+import com.ticketplatform.tickets.util.QrCodePngRenderer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -19,10 +28,14 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.annotation.Import;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
 
 import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.Base64;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.*;
@@ -48,6 +61,18 @@ class QrCodeServiceImplIntegrationTest {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private QrCodeOutboxRepository qrCodeOutboxRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private QrCodePngRenderer qrCodePngRenderer;
+
+    @Autowired
+    private QrCodePayloadService qrCodePayloadService;
+
 
     private User purchaser;
     private Ticket ticket;
@@ -78,7 +103,7 @@ class QrCodeServiceImplIntegrationTest {
         assertThat(qrCode.getId()).isNotNull();
         assertThat(qrCode.getTicket()).isEqualTo(ticket);
         assertThat(qrCode.getStatus()).isEqualTo(QrCodeStatusEnum.ACTIVE);
-        assertThat(qrCode.getValue()).isNotEmpty();
+        assertThat(qrCode.getPayload()).isEqualTo(qrCode.getId().toString());
 
         // Verify persistence
         QrCode persisted = qrCodeRepository.findById(qrCode.getId()).orElse(null);
@@ -86,21 +111,38 @@ class QrCodeServiceImplIntegrationTest {
         assertThat(persisted.getTicket()).isEqualTo(ticket);
     }
 
+
+    // ------------------- generatePendingQrCode -------------------
+
     @Test
-    void generateQrCode_ShouldThrowQrCodeGenerationException_WhenWriterFails() throws WriterException {
-        QRCodeWriter mockWriter = mock(QRCodeWriter.class);
-        when(mockWriter.encode(anyString(), any(), anyInt(), anyInt()))
-                .thenThrow(new com.google.zxing.WriterException("Test failure"));
+    void generatePendingQrCode_ShouldStoreQrCodeOnce_WhenOutboxEntryExists() {
+        Ticket pendingTicket = createPendingTicket();
 
-        QrCodeServiceImpl failingService = new QrCodeServiceImpl(mockWriter, qrCodeRepository);
+        QrCode qrCode = qrCodeService.generatePendingQrCode(pendingTicket.getId()).orElseThrow();
+        QrCode again = qrCodeService.generatePendingQrCode(pendingTicket.getId()).orElseThrow();
 
-        assertThatThrownBy(() -> failingService.generateQrCode(ticket))
-                .isInstanceOf(QrCodeGenerationException.class)
-                .hasMessageContaining("Failed to generate QR Code");
+        assertThat(again.getId()).isEqualTo(qrCode.getId());
+        assertThat(qrCodeOutboxRepository.existsByTicketId(pendingTicket.getId())).isFalse();
+        assertThat(qrCodeRepository.findByTicketIdAndStatus(pendingTicket.getId(), QrCodeStatusEnum.ACTIVE)).isPresent();
+    }
+
+    @Test
+    void generatePendingQrCode_ShouldReturnEmpty_WhenNothingPending() {
+        assertThat(qrCodeService.generatePendingQrCode(ticket.getId())).isEmpty();
     }
 
     // ------------------- getQrCodeImageForUserAndTicket -------------------
 
+    @Test
+    void getQrCodeImageForUserAndTicket_ShouldGenerateOnDemand_WhenQrCodePending() throws IOException {
+        Ticket pendingTicket = createPendingTicket();
+
+        byte[] imageBytes = qrCodeService.getQrCodeImageForUserAndTicket(purchaser.getId(), pendingTicket.getId());
+
+        assertThat(ImageIO.read(new ByteArrayInputStream(imageBytes))).isNotNull();
+        assertThat(qrCodeOutboxRepository.existsByTicketId(pendingTicket.getId())).isFalse();
+    }
+
     @Test
     void getQrCodeImageForUserAndTicket_ShouldReturnDecodedImage() throws IOException {
         QrCode qrCode = qrCodeService.generateQrCode(ticket);
@@ -113,6 +155,25 @@ class QrCodeServiceImplIntegrationTest {
         assertThat(ImageIO.read(new ByteArrayInputStream(imageBytes))).isNotNull();
     }
 
+    @Test
+    void getQrCodeImageForUserAndTicket_ShouldRenderScannable1BitPng() throws Exception {
+        QrCode qrCode = qrCodeService.generateQrCode(ticket);
+
+        byte[] imageBytes = qrCodeService.getQrCodeImageForUserAndTicket(purchaser.getId(), ticket.getId());
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(imageBytes));
+        assertThat(image.getColorModel().getPixelSize()).isEqualTo(1);
+        // Version 3 code, 29 modules plus a 4 module quiet zone each side at 8 pixels a module
+        assertThat(image.getWidth()).isEqualTo(296);
+        assertThat(image.getHeight()).isEqualTo(296);
+        assertThat(image.getRGB(31, 31)).isEqualTo(0xFFFFFFFF);
+        assertThat(image.getRGB(32, 32)).isEqualTo(0xFF000000);
+
+        Result decoded = new QRCodeReader().decode(
+                new BinaryBitmap(new HybridBinarizer(new BufferedImageLuminanceSource(image))));
+        assertThat(decoded.getText()).isEqualTo(qrCode.getPayload());
+    }
+
     @Test
     void getQrCodeImageForUserAndTicket_ShouldThrow_WhenQrCodeNotFound() {
         UUID fakeTicketId = UUID.randomUUID();
@@ -133,4 +194,80 @@ class QrCodeServiceImplIntegrationTest {
         assertThatThrownBy(() -> qrCodeService.getQrCodeImageForUserAndTicket(purchaser.getId(), ticket.getId()))
                 .isInstanceOf(QrCodeNotFoundException.class);
     }
-}
\ No newline at end of file
+
+    @Test
+    void getQrCodeImageForUserAndTicket_ShouldThrowQrCodeGenerationException_WhenWriterFails() throws WriterException {
+        QRCodeWriter mockWriter = mock(QRCodeWriter.class);
+        when(mockWriter.encode(anyString(), any(), anyInt(), anyInt(), anyMap()))
+                .thenThrow(new com.google.zxing.WriterException("Test failure"));
+        QrCodeServiceImpl failingService = newQrCodeService(mockWriter, DataSize.ofMegabytes(1), new SimpleMeterRegistry());
+        failingService.generateQrCode(ticket);
+
+        assertThatThrownBy(() -> failingService.getQrCodeImageForUserAndTicket(purchaser.getId(), ticket.getId()))
+                .isInstanceOf(QrCodeGenerationException.class)
+                .hasMessageContaining("Failed to generate QR Code");
+    }
+
+    @Test
+    void getQrCodeImageForUserAndTicket_ShouldServeFromRenderCache_WhenRenderedBefore() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        QrCodeServiceImpl cachingService = newQrCodeService(new QRCodeWriter(), DataSize.ofMegabytes(1), meterRegistry);
+        cachingService.generateQrCode(ticket);
+
+        byte[] first = cachingService.getQrCodeImageForUserAndTicket(purchaser.getId(), ticket.getId());
+        byte[] second = cachingService.getQrCodeImageForUserAndTicket(purchaser.getId(), ticket.getId());
+
+        assertThat(second).isSameAs(first);
+        assertThat(meterRegistry.get("tickets.qr-codes.render-cache.requests").tag("result", "hit").functionCounter().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("tickets.qr-codes.render-cache.hit-ratio").gauge().value()).isEqualTo(0.5);
+    }
+
+    @Test
+    void getQrCodeImageForUserAndTicket_ShouldEvictLeastRecentlyUsed_WhenCacheIsFull() {
+        qrCodeService.generateQrCode(ticket);
+        byte[] image = qrCodeService.getQrCodeImageForUserAndTicket(purchaser.getId(), ticket.getId());
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        // Room for one image only
+        QrCodeServiceImpl cachingService = newQrCodeService(new QRCodeWriter(), DataSize.ofBytes(image.length + 100), meterRegistry);
+        Ticket otherTicket = new Ticket();
+        otherTicket.setStatus(TicketStatusEnum.PURCHASED);
+        otherTicket.setPurchaser(purchaser);
+        otherTicket = ticketRepository.saveAndFlush(otherTicket);
+        cachingService.generateQrCode(otherTicket);
+
+        cachingService.getQrCodeImageForUserAndTicket(purchaser.getId(), ticket.getId());
+        cachingService.getQrCodeImageForUserAndTicket(purchaser.getId(), otherTicket.getId());
+        cachingService.getQrCodeImageForUserAndTicket(purchaser.getId(), ticket.getId());
+
+        assertThat(meterRegistry.get("tickets.qr-codes.render-cache.requests").tag("result", "miss").functionCounter().count())
+                .isEqualTo(3);
+        assertThat(meterRegistry.get("tickets.qr-codes.render-cache.size").gauge().value()).isLessThanOrEqualTo(image.length + 100);
+    }
+
+    @Test
+    void getQrCodeImageForUserAndTicket_ShouldDecodeLegacyBase64_WhenNotMigratedYet() {
+        qrCodeService.generateQrCode(ticket);
+        byte[] image = qrCodeService.getQrCodeImageForUserAndTicket(purchaser.getId(), ticket.getId());
+        QrCode legacy = qrCodeRepository.findByTicketIdAndTicketPurchaserId(ticket.getId(), purchaser.getId()).orElseThrow();
+        legacy.setValue(Base64.getEncoder().encodeToString(image));
+        qrCodeRepository.saveAndFlush(legacy);
+
+        assertThat(qrCodeService.getQrCodeImageForUserAndTicket(purchaser.getId(), ticket.getId())).isEqualTo(image);
+    }
+
+    private QrCodeServiceImpl newQrCodeService(QRCodeWriter qrCodeWriter, DataSize renderCacheMaxSize, SimpleMeterRegistry meterRegistry) {
+        return new QrCodeServiceImpl(qrCodeWriter, qrCodePngRenderer, qrCodeRepository, ticketRepository, qrCodeOutboxRepository,
+                qrCodePayloadService, transactionTemplate, meterRegistry, renderCacheMaxSize);
+    }
+
+    private Ticket createPendingTicket() {
+        Ticket pendingTicket = new Ticket();
+        pendingTicket.setStatus(TicketStatusEnum.PURCHASED);
+        pendingTicket.setPurchaser(purchaser);
+        pendingTicket.setQrCodeStatus(TicketQrCodeStatusEnum.PENDING);
+        pendingTicket = ticketRepository.saveAndFlush(pendingTicket);
+        qrCodeOutboxRepository.saveAndFlush(QrCodeOutbox.builder().ticketId(pendingTicket.getId()).build());
+        return pendingTicket;
+    }
+}
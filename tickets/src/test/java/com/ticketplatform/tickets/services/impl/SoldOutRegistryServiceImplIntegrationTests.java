@@ -0,0 +1,218 @@
+package com.ticketplatform.tickets.services.impl;
+
+import com.ticketplatform.tickets.config.TestSecurityConfig;
+import com.ticketplatform.tickets.domain.UpdateEventRequest;
+import com.ticketplatform.tickets.domain.UpdateTicketTypeRequest;
+import com.ticketplatform.tickets.domain.entities.Event;
+import com.ticketplatform.tickets.domain.entities.EventStatusEnum;
+import com.ticketplatform.tickets.domain.entities.TicketType;
+import com.ticketplatform.tickets.domain.entities.User;
+import com.ticketplatform.tickets.exceptions.TicketsSoldOutException;
+import com.ticketplatform.tickets.repositories.EventRepository;
+import com.ticketplatform.tickets.repositories.TicketTypeRepository;
+import com.ticketplatform.tickets.repositories.UserRepository;
+import com.ticketplatform.tickets.services.EventService;
+import com.ticketplatform.tickets.services.SoldOutRegistryService;
+import com.ticketplatform.tickets.services.TicketInventoryService;
+import com.ticketplatform.tickets.services.TicketTypeService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+//Not transactional: invalidation is tied to commits
+@SpringBootTest
+@Import(TestSecurityConfig.class)
+class SoldOutRegistryServiceImplIntegrationTest {
+
+    @Autowired
+    private SoldOutRegistryService soldOutRegistryService;
+
+    @Autowired
+    private TicketTypeService ticketTypeService;
+
+    @Autowired
+    private TicketInventoryService ticketInventoryService;
+
+    @Autowired
+    private EventService eventService;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private TicketTypeRepository ticketTypeRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    private User user;
+    private Event event;
+    private TicketType ticketType;
+
+    @BeforeEach
+    void setUp() {
+        user = new User();
+        user.setId(UUID.randomUUID());
+        user.setName("Organizer");
+        user.setEmail("organizer@example.com");
+        user = userRepository.saveAndFlush(user);
+
+        event = new Event();
+        event.setName("Sold out event");
+        event.setVenue("A very big venue");
+        event.setStatus(EventStatusEnum.PUBLISHED);
+        event.setOrganizer(user);
+        event = eventRepository.saveAndFlush(event);
+
+        ticketType = new TicketType();
+        ticketType.setName("General Admission");
+        ticketType.setPrice(25.0);
+        ticketType.setTotalTicketsAvailable(1);
+        ticketType.setEvent(event);
+        ticketType = ticketTypeRepository.saveAndFlush(ticketType);
+    }
+
+    // ------------------- markSoldOut -------------------
+
+    @Test
+    void purchaseTicket_ShouldMarkSoldOut_WhenLastTicketIsGone() {
+        ticketTypeService.purchaseTicket(user.getId(), ticketType.getId());
+        assertThat(soldOutRegistryService.isSoldOut(ticketType.getId())).isFalse();
+
+        assertThatThrownBy(() -> ticketTypeService.purchaseTicket(user.getId(), ticketType.getId()))
+                .isInstanceOf(TicketsSoldOutException.class);
+        assertThat(soldOutRegistryService.isSoldOut(ticketType.getId())).isTrue();
+
+        // Refused from memory: an unknown user would otherwise fail the lookup first
+        assertThatThrownBy(() -> ticketTypeService.purchaseTicket(UUID.randomUUID(), ticketType.getId()))
+                .isInstanceOf(TicketsSoldOutException.class);
+    }
+
+    @Test
+    void markSoldOut_ShouldBeIgnored_WhenInvalidatedSinceObserved() {
+        UUID ticketTypeId = UUID.randomUUID();
+        long observedVersion = soldOutRegistryService.currentVersion(ticketTypeId);
+
+        soldOutRegistryService.invalidate(ticketTypeId);
+        soldOutRegistryService.markSoldOut(ticketTypeId, observedVersion);
+
+        assertThat(soldOutRegistryService.isSoldOut(ticketTypeId)).isFalse();
+    }
+
+    @Test
+    void markSoldOut_ShouldStillMark_WhenAnotherTicketTypeIsInvalidated() {
+        UUID ticketTypeId = UUID.randomUUID();
+        long observedVersion = soldOutRegistryService.currentVersion(ticketTypeId);
+
+        soldOutRegistryService.invalidate(UUID.randomUUID());
+        soldOutRegistryService.markSoldOut(ticketTypeId, observedVersion);
+
+        assertThat(soldOutRegistryService.isSoldOut(ticketTypeId)).isTrue();
+    }
+
+    @Test
+    void currentVersion_ShouldNotAddEntries_ForTicketTypesNeverSoldOut() throws InterruptedException {
+        SoldOutRegistryServiceImpl registry = new SoldOutRegistryServiceImpl(true, Duration.ofMillis(50));
+        for (int i = 0; i < 1000; i++) {
+            UUID ticketTypeId = UUID.randomUUID();
+            registry.currentVersion(ticketTypeId);
+            registry.isSoldOut(ticketTypeId);
+        }
+        assertThat(entryCount(registry)).isZero();
+
+        // tickets put back leave a tombstone behind, which lapses like a sold out entry
+        registry.invalidate(UUID.randomUUID());
+        assertThat(entryCount(registry)).isEqualTo(1);
+        Thread.sleep(100);
+        registry.evictLapsed();
+
+        assertThat(entryCount(registry)).isZero();
+    }
+
+    @Test
+    void evictLapsed_ShouldDropEntries_OnceTheyLapse() throws InterruptedException {
+        SoldOutRegistryServiceImpl shortLived = new SoldOutRegistryServiceImpl(true, Duration.ofMillis(50));
+        UUID ticketTypeId = UUID.randomUUID();
+        shortLived.markSoldOut(ticketTypeId, shortLived.currentVersion(ticketTypeId));
+        shortLived.evictLapsed();
+        assertThat(entryCount(shortLived)).isEqualTo(1);
+
+        Thread.sleep(100);
+        shortLived.evictLapsed();
+
+        assertThat(entryCount(shortLived)).isZero();
+    }
+
+    @Test
+    void deleteEventForOrganizer_ShouldEvictItsTicketTypes() {
+        sellOut();
+
+        eventService.deleteEventForOrganizer(user.getId(), event.getId());
+
+        assertThat(soldOutRegistryService.isSoldOut(ticketType.getId())).isFalse();
+    }
+
+    @Test
+    void isSoldOut_ShouldLapse_AfterTtl() throws InterruptedException {
+        SoldOutRegistryServiceImpl shortLived = new SoldOutRegistryServiceImpl(true, Duration.ofMillis(50));
+        UUID ticketTypeId = UUID.randomUUID();
+        shortLived.markSoldOut(ticketTypeId, shortLived.currentVersion(ticketTypeId));
+        assertThat(shortLived.isSoldOut(ticketTypeId)).isTrue();
+
+        Thread.sleep(100);
+
+        assertThat(shortLived.isSoldOut(ticketTypeId)).isFalse();
+    }
+
+    // ------------------- invalidate -------------------
+
+    @Test
+    void updateEventForOrganizer_ShouldInvalidate_WhenTotalIsRaised() {
+        sellOut();
+
+        UpdateEventRequest request = new UpdateEventRequest();
+        request.setId(event.getId());
+        request.setName(event.getName());
+        request.setVenue(event.getVenue());
+        request.setStatus(EventStatusEnum.PUBLISHED);
+        request.setTicketTypes(List.of(
+                new UpdateTicketTypeRequest(ticketType.getId(), "General Admission", 25.0, null, 2)
+        ));
+        eventService.updateEventForOrganizer(user.getId(), event.getId(), request);
+
+        assertThat(soldOutRegistryService.isSoldOut(ticketType.getId())).isFalse();
+        assertThat(ticketTypeService.purchaseTicket(user.getId(), ticketType.getId())).isNotNull();
+    }
+
+    @Test
+    void releaseTickets_ShouldInvalidate() {
+        sellOut();
+
+        ticketInventoryService.releaseTickets(ticketType, 1);
+
+        assertThat(soldOutRegistryService.isSoldOut(ticketType.getId())).isFalse();
+        assertThat(ticketTypeService.purchaseTicket(user.getId(), ticketType.getId())).isNotNull();
+    }
+
+    private static int entryCount(SoldOutRegistryServiceImpl registry) {
+        return ((Map<?, ?>) ReflectionTestUtils.getField(registry, "entries")).size();
+    }
+
+    private void sellOut() {
+        ticketTypeService.purchaseTicket(user.getId(), ticketType.getId());
+        assertThatThrownBy(() -> ticketTypeService.purchaseTicket(user.getId(), ticketType.getId()))
+                .isInstanceOf(TicketsSoldOutException.class);
+        assertThat(soldOutRegistryService.isSoldOut(ticketType.getId())).isTrue();
+    }
+}
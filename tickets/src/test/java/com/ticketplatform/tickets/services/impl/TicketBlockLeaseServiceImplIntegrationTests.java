@@ -0,0 +1,342 @@
+package com.ticketplatform.tickets.services.impl;
+
+import com.ticketplatform.tickets.TicketsApplication;
+import com.ticketplatform.tickets.config.TestSecurityConfig;
+import com.ticketplatform.tickets.domain.entities.Ticket;
+import com.ticketplatform.tickets.domain.entities.TicketBlockLease;
+import com.ticketplatform.tickets.domain.entities.TicketBlockLeaseStatusEnum;
+import com.ticketplatform.tickets.domain.entities.TicketStatusEnum;
+import com.ticketplatform.tickets.domain.entities.TicketType;
+import com.ticketplatform.tickets.domain.entities.User;
+import com.ticketplatform.tickets.exceptions.TicketsSoldOutException;
+import com.ticketplatform.tickets.repositories.TicketBlockLeaseRepository;
+import com.ticketplatform.tickets.repositories.TicketRepository;
+import com.ticketplatform.tickets.repositories.TicketTypeRepository;
+import com.ticketplatform.tickets.repositories.UserRepository;
+import com.ticketplatform.tickets.services.QrCodeOutboxService;
+import com.ticketplatform.tickets.services.SoldOutRegistryService;
+import com.ticketplatform.tickets.services.TicketBlockLeaseService;
+import com.ticketplatform.tickets.services.TicketInventoryService;
+import com.ticketplatform.tickets.services.TicketTypeService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+// Two application nodes sharing one database: this test's context is node A, a second context started
+// against the same database is node B. Not transactional, each node commits on its own.
+@SpringBootTest(properties = {
+        "spring.datasource.url=" + TicketBlockLeaseServiceImplIntegrationTest.DATABASE_URL,
+        "tickets.inventory.leases.enabled=true",
+        "tickets.inventory.leases.node-id=node-a",
+        "tickets.inventory.leases.initial-block-size=8",
+        "tickets.inventory.leases.min-block-size=5",
+        "tickets.inventory.leases.max-block-size=20"
+})
+@Import(TestSecurityConfig.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class TicketBlockLeaseServiceImplIntegrationTest {
+
+    static final String DATABASE_URL =
+            "jdbc:h2:mem:leasedb;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH";
+
+    @Autowired
+    private TicketTypeService ticketTypeService;
+
+    @Autowired
+    private TicketBlockLeaseService ticketBlockLeaseService;
+
+    @Autowired
+    private TicketInventoryService ticketInventoryService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TicketTypeRepository ticketTypeRepository;
+
+    @Autowired
+    private TicketRepository ticketRepository;
+
+    @Autowired
+    private TicketBlockLeaseRepository ticketBlockLeaseRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private SoldOutRegistryService soldOutRegistryService;
+
+    @Autowired
+    private QrCodeOutboxService qrCodeOutboxService;
+
+    private ConfigurableApplicationContext nodeB;
+
+    private User user;
+    private TicketType ticketType;
+
+    @BeforeAll
+    void startNodeB() {
+        nodeB = new SpringApplicationBuilder(TicketsApplication.class, TestSecurityConfig.class)
+                .web(WebApplicationType.SERVLET)
+                .run(
+                        "--server.port=0",
+                        "--spring.datasource.url=" + DATABASE_URL,
+                        "--spring.jpa.hibernate.ddl-auto=none",
+                        "--tickets.inventory.leases.enabled=true",
+                        "--tickets.inventory.leases.node-id=node-b",
+                        "--tickets.inventory.leases.initial-block-size=8",
+                        "--tickets.inventory.leases.min-block-size=5",
+                        "--tickets.inventory.leases.max-block-size=20");
+    }
+
+    @AfterAll
+    void stopNodeB() {
+        nodeB.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        user = new User();
+        user.setId(UUID.randomUUID());
+        user.setName("Test User");
+        user.setEmail("user@example.com");
+        user = userRepository.saveAndFlush(user);
+
+        ticketType = new TicketType();
+        ticketType.setName("General Admission");
+        ticketType.setPrice(20.0);
+        ticketType.setTotalTicketsAvailable(50);
+        ticketType = ticketTypeRepository.saveAndFlush(ticketType);
+    }
+
+    // ------------------- claimTicket -------------------
+
+    @Test
+    void claimTicket_ShouldNeverOversell_WhenTwoNodesSellFromTheirOwnBlocks() throws Exception {
+        TicketTypeService nodeBTicketTypeService = nodeB.getBean(TicketTypeService.class);
+        AtomicInteger purchased = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 80; i++) {
+                TicketTypeService node = i % 2 == 0 ? ticketTypeService : nodeBTicketTypeService;
+                futures.add(executor.submit(() -> {
+                    try {
+                        node.purchaseTicket(user.getId(), ticketType.getId());
+                        purchased.incrementAndGet();
+                    } catch (TicketsSoldOutException ignored) {
+                        // a node can run dry while the other still holds part of the inventory
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(purchased.get()).isLessThanOrEqualTo(50);
+        assertThat(ticketRepository.countByTicketTypeId(ticketType.getId())).isEqualTo(purchased.get());
+
+        // once both nodes hand their blocks back the database count matches the tickets actually sold
+        ticketBlockLeaseService.returnAllLeases();
+        nodeB.getBean(TicketBlockLeaseService.class).returnAllLeases();
+        assertThat(ticketTypeRepository.findById(ticketType.getId()).orElseThrow().getTicketsSold())
+                .isEqualTo(purchased.get());
+
+        // and whatever was returned can still be sold, up to exactly the total. Node A may still remember the
+        // ticket type as sold out from the race above: what node B hands back only shows on node A once that
+        // entry lapses, so it is dropped here rather than waiting out the ttl.
+        soldOutRegistryService.invalidate(ticketType.getId());
+        while (purchased.get() < 50) {
+            ticketTypeService.purchaseTicket(user.getId(), ticketType.getId());
+            purchased.incrementAndGet();
+        }
+        assertThatThrownBy(() -> nodeBTicketTypeService.purchaseTicket(user.getId(), ticketType.getId()))
+                .isInstanceOf(TicketsSoldOutException.class);
+        assertThat(ticketRepository.countByTicketTypeId(ticketType.getId())).isEqualTo(50);
+    }
+
+    @Test
+    void claimTicket_ShouldTagTicketWithLease() {
+        // the first purchase finds no block yet, claims from the database and has one leased behind it
+        Ticket first = ticketTypeService.purchaseTicket(user.getId(), ticketType.getId());
+        assertThat(first.getInventoryLeaseId()).isNull();
+        TicketBlockLease lease = awaitActiveLease("node-a");
+
+        Ticket ticket = ticketTypeService.purchaseTicket(user.getId(), ticketType.getId());
+
+        assertThat(ticket.getInventoryLeaseId()).isEqualTo(lease.getId());
+        assertThat(ticketTypeRepository.findById(ticketType.getId()).orElseThrow().getTicketsSold())
+                .isEqualTo(lease.getQuantity() + 1);
+
+        ticketBlockLeaseService.returnAllLeases();
+
+        lease = ticketBlockLeaseRepository.findById(lease.getId()).orElseThrow();
+        assertThat(lease.getStatus()).isEqualTo(TicketBlockLeaseStatusEnum.RETURNED);
+        assertThat(lease.getReturnedQuantity()).isEqualTo(lease.getQuantity() - 1);
+        assertThat(ticketTypeRepository.findById(ticketType.getId()).orElseThrow().getTicketsSold()).isEqualTo(2);
+    }
+
+    @Test
+    void claimTicket_ShouldGiveTicketBackOnce_WhenPurchaseRollsBackAfterLeaseWasReturned() {
+        ticketTypeService.purchaseTicket(user.getId(), ticketType.getId());
+        TicketBlockLease lease = awaitActiveLease("node-a");
+
+        transactionTemplate.executeWithoutResult(status -> {
+            assertThat(ticketBlockLeaseService.claimTicket(ticketType)).contains(lease.getId());
+            ticketBlockLeaseService.returnAllLeases();
+            status.setRollbackOnly();
+        });
+
+        // only the first purchase, claimed from the database, stays sold
+        awaitTrue(() -> ticketTypeRepository.findById(ticketType.getId()).orElseThrow().getTicketsSold() == 1);
+        assertThat(ticketBlockLeaseRepository.findById(lease.getId()).orElseThrow().getReturnedQuantity())
+                .isEqualTo(lease.getQuantity());
+    }
+
+    @Test
+    void claimTicketAfterRefill_ShouldTagTicketWithLease_WhenRefillTookTheLastTickets() {
+        // a block of 8 is all there is, so a refill that leases it leaves nothing for the database claim
+        ticketType.setTotalTicketsAvailable(8);
+        ticketType = ticketTypeRepository.saveAndFlush(ticketType);
+        TicketBlockLeaseService refillFirst = spy(ticketBlockLeaseService);
+        doAnswer(invocation -> {
+            Object claimed = invocation.callRealMethod();
+            if (((Optional<?>) claimed).isEmpty()) {
+                awaitActiveLease("node-a");
+            }
+            return claimed;
+        }).when(refillFirst).claimTicket(any());
+        TicketTypeService purchases = new TicketTypeServiceImpl(userRepository, ticketTypeRepository,
+                ticketRepository, qrCodeOutboxService, ticketInventoryService, refillFirst, soldOutRegistryService);
+
+        Ticket ticket = transactionTemplate.execute(status ->
+                purchases.purchaseTicket(user.getId(), ticketType.getId()));
+        TicketBlockLease lease = findActiveLease("node-a");
+
+        assertThat(ticketRepository.findById(ticket.getId()).orElseThrow().getInventoryLeaseId())
+                .isEqualTo(lease.getId());
+
+        // node A dies holding the rest of the block, node B settles it from the tickets table
+        lease.setExpiresAt(LocalDateTime.now().minusHours(1));
+        ticketBlockLeaseRepository.saveAndFlush(lease);
+        nodeB.getBean(TicketBlockLeaseService.class).reclaimAbandonedLeases();
+
+        assertThat(ticketBlockLeaseRepository.findById(lease.getId()).orElseThrow().getReturnedQuantity()).isEqualTo(7);
+        assertThat(ticketTypeRepository.findById(ticketType.getId()).orElseThrow().getTicketsSold()).isEqualTo(1);
+    }
+
+    @Test
+    void claimTickets_ShouldSellAnOrderFromTheBlock_WhenTheDatabaseHasNoneLeft() {
+        // the refill behind the first purchase leases all the database has left, whether or not that purchase
+        // got its ticket from the database first, so the other 7 are in this node's block
+        ticketType.setTotalTicketsAvailable(8);
+        ticketType = ticketTypeRepository.saveAndFlush(ticketType);
+        ticketTypeService.purchaseTicket(user.getId(), ticketType.getId());
+        TicketBlockLease lease = awaitActiveLease("node-a");
+
+        List<Ticket> tickets = ticketTypeService.purchaseTickets(user.getId(), ticketType.getId(), 3);
+
+        assertThat(tickets).extracting(Ticket::getInventoryLeaseId).containsOnly(lease.getId());
+        assertThatThrownBy(() -> ticketTypeService.purchaseTickets(user.getId(), ticketType.getId(), 5))
+                .isInstanceOf(TicketsSoldOutException.class);
+        assertThat(ticketTypeService.purchaseTickets(user.getId(), ticketType.getId(), 4)).hasSize(4);
+
+        ticketBlockLeaseService.returnAllLeases();
+        assertThat(ticketBlockLeaseRepository.findById(lease.getId()).orElseThrow().getReturnedQuantity()).isZero();
+        assertThat(ticketTypeRepository.findById(ticketType.getId()).orElseThrow().getTicketsSold()).isEqualTo(8);
+    }
+
+    // ------------------- reclaimAbandonedLeases -------------------
+
+    @Test
+    void reclaimAbandonedLeases_ShouldReturnUnsoldTickets_WhenNodeDisappeared() {
+        // a node that leased 10 tickets, sold 3 and then died without returning the rest
+        assertThat(ticketInventoryService.claimTicketsUpTo(ticketType, 10)).isEqualTo(10);
+        TicketBlockLease lease = new TicketBlockLease();
+        lease.setTicketType(ticketType);
+        lease.setNodeId("node-gone");
+        lease.setQuantity(10);
+        lease.setStatus(TicketBlockLeaseStatusEnum.ACTIVE);
+        lease.setExpiresAt(LocalDateTime.now().minusHours(1));
+        lease = ticketBlockLeaseRepository.saveAndFlush(lease);
+        for (int i = 0; i < 3; i++) {
+            Ticket ticket = new Ticket();
+            ticket.setStatus(TicketStatusEnum.PURCHASED);
+            ticket.setTicketType(ticketType);
+            ticket.setPurchaser(user);
+            ticket.setInventoryLeaseId(lease.getId());
+            ticketRepository.saveAndFlush(ticket);
+        }
+
+        nodeB.getBean(TicketBlockLeaseService.class).reclaimAbandonedLeases();
+
+        TicketBlockLease reclaimed = ticketBlockLeaseRepository.findById(lease.getId()).orElseThrow();
+        assertThat(reclaimed.getStatus()).isEqualTo(TicketBlockLeaseStatusEnum.RECLAIMED);
+        assertThat(reclaimed.getReturnedQuantity()).isEqualTo(7);
+        assertThat(ticketTypeRepository.findById(ticketType.getId()).orElseThrow().getTicketsSold()).isEqualTo(3);
+
+        // settling it a second time changes nothing
+        ticketBlockLeaseService.reclaimAbandonedLeases();
+        assertThat(ticketTypeRepository.findById(ticketType.getId()).orElseThrow().getTicketsSold()).isEqualTo(3);
+    }
+
+    private TicketBlockLease awaitActiveLease(String nodeId) {
+        awaitTrue(() -> findActiveLease(nodeId) != null);
+        return findActiveLease(nodeId);
+    }
+
+    private TicketBlockLease findActiveLease(String nodeId) {
+        return ticketBlockLeaseRepository.findAll().stream()
+                .filter(lease -> lease.getStatus() == TicketBlockLeaseStatusEnum.ACTIVE)
+                .filter(lease -> nodeId.equals(lease.getNodeId()))
+                .filter(lease -> lease.getTicketType().getId().equals(ticketType.getId()))
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("condition not met within 10s").isLessThan(deadline);
+            sleep(20);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
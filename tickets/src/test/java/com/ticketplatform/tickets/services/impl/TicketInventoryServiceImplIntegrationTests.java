@@ -0,0 +1,227 @@
+package com.ticketplatform.tickets.services.impl;
+
+import com.ticketplatform.tickets.config.TestSecurityConfig;
+import com.ticketplatform.tickets.domain.entities.TicketInventoryShard;
+import com.ticketplatform.tickets.domain.entities.TicketType;
+import com.ticketplatform.tickets.domain.entities.User;
+import com.ticketplatform.tickets.exceptions.TicketsSoldOutException;
+import com.ticketplatform.tickets.repositories.TicketInventoryShardRepository;
+import com.ticketplatform.tickets.repositories.TicketRepository;
+import com.ticketplatform.tickets.repositories.TicketTypeRepository;
+import com.ticketplatform.tickets.repositories.UserRepository;
+import com.ticketplatform.tickets.services.TicketInventoryService;
+import com.ticketplatform.tickets.services.TicketTypeService;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@Transactional
+@Import(TestSecurityConfig.class)
+class TicketInventoryServiceImplIntegrationTest {
+
+    @Autowired
+    private TicketInventoryService ticketInventoryService;
+
+    @Autowired
+    private TicketTypeService ticketTypeService;
+
+    @Autowired
+    private TicketTypeRepository ticketTypeRepository;
+
+    @Autowired
+    private TicketInventoryShardRepository ticketInventoryShardRepository;
+
+    @Autowired
+    private TicketRepository ticketRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private TicketType createTicketType(int totalTicketsAvailable, int inventoryShardCount) {
+        TicketType ticketType = new TicketType();
+        ticketType.setName("General Admission");
+        ticketType.setPrice(25.0);
+        ticketType.setTotalTicketsAvailable(totalTicketsAvailable);
+        ticketType.setInventoryShardCount(inventoryShardCount);
+        ticketInventoryService.distributeInventory(ticketType);
+        return ticketTypeRepository.saveAndFlush(ticketType);
+    }
+
+    private List<TicketInventoryShard> reloadShards(UUID ticketTypeId) {
+        entityManager.flush();
+        entityManager.clear();
+        return ticketTypeRepository.findById(ticketTypeId).orElseThrow().getInventoryShards();
+    }
+
+    // ------------------- claimTickets -------------------
+
+    @Test
+    void claimTickets_ShouldSellExactlyTotal_WhenSharded() {
+        TicketType ticketType = createTicketType(10, 4);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(ticketInventoryService.claimTickets(ticketType, 1)).isTrue();
+        }
+        assertThat(ticketInventoryService.claimTickets(ticketType, 1)).isFalse();
+
+        List<TicketInventoryShard> shards = reloadShards(ticketType.getId());
+        assertThat(shards).extracting(TicketInventoryShard::getCapacity).containsExactly(3, 3, 2, 2);
+        assertThat(shards).allMatch(shard -> shard.getTicketsSold().equals(shard.getCapacity()));
+    }
+
+    @Test
+    void claimTickets_ShouldUseTicketTypeRow_WhenNotSharded() {
+        TicketType ticketType = createTicketType(2, 1);
+
+        assertThat(ticketInventoryService.claimTickets(ticketType, 2)).isTrue();
+        assertThat(ticketInventoryService.claimTickets(ticketType, 1)).isFalse();
+
+        assertThat(reloadShards(ticketType.getId())).isEmpty();
+        assertThat(ticketTypeRepository.findById(ticketType.getId()).orElseThrow().getTicketsSold()).isEqualTo(2);
+    }
+
+    @Test
+    void claimTickets_ShouldSpanShards_WhenNoSingleShardHasEnough() {
+        TicketType ticketType = createTicketType(10, 4);
+
+        assertThat(ticketInventoryService.claimTickets(ticketType, 7)).isTrue();
+        assertThat(ticketInventoryService.claimTickets(ticketType, 4)).isFalse();
+        assertThat(ticketInventoryService.claimTickets(ticketType, 3)).isTrue();
+
+        assertThat(reloadShards(ticketType.getId()))
+                .allMatch(shard -> shard.getTicketsSold().equals(shard.getCapacity()));
+    }
+
+    // ------------------- claimTicketsUpTo / releaseTickets -------------------
+
+    @Test
+    void claimTicketsUpTo_ShouldClaimWhatIsLeft_AcrossShards() {
+        TicketType ticketType = createTicketType(5, 3);
+        assertThat(ticketInventoryService.claimTicketsUpTo(ticketType, 3)).isEqualTo(3);
+        assertThat(ticketInventoryService.claimTicketsUpTo(ticketType, 3)).isEqualTo(2);
+        assertThat(ticketInventoryService.claimTicketsUpTo(ticketType, 3)).isZero();
+
+        ticketInventoryService.releaseTickets(ticketType, 4);
+        assertThat(ticketInventoryService.claimTicketsUpTo(ticketType, 10)).isEqualTo(4);
+    }
+
+    @Test
+    void releaseTickets_ShouldReturnTicketsToTicketTypeRow_WhenNotSharded() {
+        TicketType ticketType = createTicketType(3, 1);
+        assertThat(ticketInventoryService.claimTicketsUpTo(ticketType, 5)).isEqualTo(3);
+
+        ticketInventoryService.releaseTickets(ticketType, 2);
+
+        assertThat(ticketInventoryService.claimTicketsUpTo(ticketType, 5)).isEqualTo(2);
+    }
+
+    // ------------------- distributeInventory -------------------
+
+    @Test
+    void distributeInventory_ShouldCarrySoldTickets_WhenShardCountChanges() {
+        TicketType ticketType = createTicketType(10, 1);
+        ticketInventoryService.claimTickets(ticketType, 4);
+
+        // Single row -> three shards
+        TicketType managed = ticketTypeRepository.findById(ticketType.getId()).orElseThrow();
+        managed.setInventoryShardCount(3);
+        ticketInventoryService.distributeInventory(managed);
+        List<TicketInventoryShard> shards = reloadShards(ticketType.getId());
+        assertThat(shards).extracting(TicketInventoryShard::getCapacity).containsExactly(4, 3, 3);
+        assertThat(shards).extracting(TicketInventoryShard::getTicketsSold).containsExactly(2, 1, 1);
+
+        // Three shards -> single row
+        managed = ticketTypeRepository.findById(ticketType.getId()).orElseThrow();
+        managed.setInventoryShardCount(1);
+        ticketInventoryService.distributeInventory(managed);
+        assertThat(reloadShards(ticketType.getId())).isEmpty();
+        assertThat(ticketTypeRepository.findById(ticketType.getId()).orElseThrow().getTicketsSold()).isEqualTo(4);
+    }
+
+    @Test
+    void distributeInventory_ShouldRefillShards_WhenTotalIsRaised() {
+        TicketType ticketType = createTicketType(4, 2);
+        ticketInventoryService.claimTickets(ticketType, 2);
+        ticketInventoryService.claimTickets(ticketType, 2);
+        assertThat(ticketInventoryService.claimTickets(ticketType, 1)).isFalse();
+
+        TicketType managed = ticketTypeRepository.findById(ticketType.getId()).orElseThrow();
+        managed.setTotalTicketsAvailable(6);
+        ticketInventoryService.distributeInventory(managed);
+        reloadShards(ticketType.getId());
+
+        assertThat(ticketInventoryService.claimTickets(managed, 1)).isTrue();
+        assertThat(ticketInventoryService.claimTickets(managed, 1)).isTrue();
+        assertThat(ticketInventoryService.claimTickets(managed, 1)).isFalse();
+    }
+
+    @Test
+    void distributeInventory_ShouldLeaveShardsAlone_WhenNothingChanged() {
+        TicketType ticketType = createTicketType(10, 2);
+        //All three come from one shard, spreading them evenly would move one
+        ticketInventoryService.claimTickets(ticketType, 3);
+        List<Integer> sold = reloadShards(ticketType.getId()).stream().map(TicketInventoryShard::getTicketsSold).toList();
+
+        TicketType managed = ticketTypeRepository.findById(ticketType.getId()).orElseThrow();
+        ticketInventoryService.distributeInventory(managed);
+
+        assertThat(reloadShards(ticketType.getId())).extracting(TicketInventoryShard::getTicketsSold)
+                .containsExactlyElementsOf(sold)
+                .contains(3);
+    }
+
+    // ------------------- purchaseTicket on a sharded ticket type -------------------
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void purchaseTicket_ShouldNotOversell_WhenShardedAndPurchasedConcurrently() throws Exception {
+        User user = new User();
+        user.setId(UUID.randomUUID());
+        user.setName("Test User");
+        user.setEmail("user@example.com");
+        userRepository.saveAndFlush(user);
+        TicketType ticketType = createTicketType(6, 3);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                try {
+                    ticketTypeService.purchaseTicket(user.getId(), ticketType.getId());
+                    return true;
+                } catch (TicketsSoldOutException ex) {
+                    return false;
+                }
+            }));
+        }
+        start.countDown();
+
+        int purchased = 0;
+        for (Future<Boolean> result : results) {
+            if (result.get(30, TimeUnit.SECONDS)) {
+                purchased++;
+            }
+        }
+        executor.shutdown();
+
+        assertThat(purchased).isEqualTo(6);
+        assertThat(ticketRepository.countByTicketTypeId(ticketType.getId())).isEqualTo(6);
+    }
+}
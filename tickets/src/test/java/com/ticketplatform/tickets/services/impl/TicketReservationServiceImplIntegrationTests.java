@@ -0,0 +1,282 @@
+package com.ticketplatform.tickets.services.impl;
+
+import com.ticketplatform.tickets.config.TestSecurityConfig;
+import com.ticketplatform.tickets.domain.entities.Ticket;
+import com.ticketplatform.tickets.domain.entities.TicketReservation;
+import com.ticketplatform.tickets.domain.entities.TicketReservationStatusEnum;
+import com.ticketplatform.tickets.domain.entities.TicketType;
+import com.ticketplatform.tickets.domain.entities.User;
+import com.ticketplatform.tickets.exceptions.TicketReservationException;
+import com.ticketplatform.tickets.exceptions.TicketReservationNotFoundException;
+import com.ticketplatform.tickets.exceptions.TicketsSoldOutException;
+import com.ticketplatform.tickets.repositories.TicketRepository;
+import com.ticketplatform.tickets.repositories.TicketReservationRepository;
+import com.ticketplatform.tickets.repositories.TicketTypeRepository;
+import com.ticketplatform.tickets.repositories.UserRepository;
+import com.ticketplatform.tickets.services.QrCodeOutboxService;
+import com.ticketplatform.tickets.services.SoldOutRegistryService;
+import com.ticketplatform.tickets.services.TicketInventoryService;
+import com.ticketplatform.tickets.services.TicketReservationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Not transactional: holds expire on the timing wheel's own thread, so test data has to be committed first.
+// A one second hold on a 16 slot wheel ticking every 50ms also makes every hold go round the wheel once.
+@SpringBootTest(properties = {
+        "tickets.reservations.hold-duration=1s",
+        "tickets.reservations.max-quantity=5",
+        "tickets.reservations.expiry-batch-size=50",
+        "tickets.reservations.timing-wheel.tick=50ms",
+        "tickets.reservations.timing-wheel.size=16"
+})
+@Import(TestSecurityConfig.class)
+class TicketReservationServiceImplIntegrationTest {
+
+    @Autowired
+    private TicketReservationService ticketReservationService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TicketTypeRepository ticketTypeRepository;
+
+    @Autowired
+    private TicketRepository ticketRepository;
+
+    @Autowired
+    private TicketReservationRepository ticketReservationRepository;
+
+    @Autowired
+    private TicketInventoryService ticketInventoryService;
+
+    @Autowired
+    private QrCodeOutboxService qrCodeOutboxService;
+
+    @Autowired
+    private SoldOutRegistryService soldOutRegistryService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private User user;
+    private TicketType ticketType;
+
+    @BeforeEach
+    void setUp() {
+        user = new User();
+        user.setId(UUID.randomUUID());
+        user.setName("Test User");
+        user.setEmail("user@example.com");
+        user = userRepository.saveAndFlush(user);
+
+        ticketType = new TicketType();
+        ticketType.setName("General Admission");
+        ticketType.setPrice(20.0);
+        ticketType.setTotalTicketsAvailable(10);
+        ticketType = ticketTypeRepository.saveAndFlush(ticketType);
+    }
+
+    // ------------------- reserveTickets -------------------
+
+    @Test
+    void reserveTickets_ShouldHoldInventory() {
+        TicketReservation reservation = ticketReservationService.reserveTickets(user.getId(), ticketType.getId(), 3);
+
+        assertThat(reservation.getStatus()).isEqualTo(TicketReservationStatusEnum.HELD);
+        assertThat(reservation.getExpiresAt()).isNotNull();
+        assertThat(ticketsSold()).isEqualTo(3);
+        assertThat(ticketRepository.countByTicketTypeId(ticketType.getId())).isZero();
+    }
+
+    @Test
+    void reserveTickets_ShouldThrow_WhenNotEnoughLeft() {
+        ticketReservationService.reserveTickets(user.getId(), ticketType.getId(), 5);
+        ticketReservationService.reserveTickets(user.getId(), ticketType.getId(), 4);
+
+        assertThatThrownBy(() -> ticketReservationService.reserveTickets(user.getId(), ticketType.getId(), 2))
+                .isInstanceOf(TicketsSoldOutException.class);
+        assertThat(ticketsSold()).isEqualTo(9);
+    }
+
+    @Test
+    void reserveTickets_ShouldThrow_WhenQuantityAboveMaximum() {
+        assertThatThrownBy(() -> ticketReservationService.reserveTickets(user.getId(), ticketType.getId(), 6))
+                .isInstanceOf(TicketReservationException.class);
+        assertThat(ticketsSold()).isZero();
+    }
+
+    // ------------------- confirmReservation -------------------
+
+    @Test
+    void confirmReservation_ShouldCreateTickets() {
+        TicketReservation reservation = ticketReservationService.reserveTickets(user.getId(), ticketType.getId(), 3);
+
+        List<Ticket> tickets = ticketReservationService.confirmReservation(user.getId(), reservation.getId());
+
+        assertThat(tickets).hasSize(3);
+        assertThat(ticketRepository.countByTicketTypeId(ticketType.getId())).isEqualTo(3);
+        assertThat(reservationStatus(reservation)).isEqualTo(TicketReservationStatusEnum.CONFIRMED);
+
+        // a confirmed hold is never expired, so the tickets stay sold
+        sleep(1500);
+        assertThat(ticketsSold()).isEqualTo(3);
+        assertThat(reservationStatus(reservation)).isEqualTo(TicketReservationStatusEnum.CONFIRMED);
+    }
+
+    @Test
+    void confirmReservation_ShouldThrow_WhenReservationBelongsToSomeoneElse() {
+        TicketReservation reservation = ticketReservationService.reserveTickets(user.getId(), ticketType.getId(), 1);
+
+        assertThatThrownBy(() -> ticketReservationService.confirmReservation(UUID.randomUUID(), reservation.getId()))
+                .isInstanceOf(TicketReservationNotFoundException.class)
+                .hasMessageContaining("Reservation with ID");
+    }
+
+    @Test
+    void confirmReservation_ShouldThrow_WhenHoldExpired() {
+        TicketReservation reservation = ticketReservationService.reserveTickets(user.getId(), ticketType.getId(), 4);
+
+        awaitTrue(() -> reservationStatus(reservation) == TicketReservationStatusEnum.EXPIRED);
+
+        assertThat(ticketsSold()).isZero();
+        assertThatThrownBy(() -> ticketReservationService.confirmReservation(user.getId(), reservation.getId()))
+                .isInstanceOf(TicketReservationException.class)
+                .hasMessageContaining("no longer held");
+        assertThat(ticketRepository.countByTicketTypeId(ticketType.getId())).isZero();
+    }
+
+    // ------------------- cancelReservation -------------------
+
+    @Test
+    void cancelReservation_ShouldReleaseInventory() {
+        TicketReservation reservation = ticketReservationService.reserveTickets(user.getId(), ticketType.getId(), 4);
+
+        ticketReservationService.cancelReservation(user.getId(), reservation.getId());
+
+        assertThat(ticketsSold()).isZero();
+        assertThat(reservationStatus(reservation)).isEqualTo(TicketReservationStatusEnum.CANCELLED);
+        assertThatThrownBy(() -> ticketReservationService.cancelReservation(user.getId(), reservation.getId()))
+                .isInstanceOf(TicketReservationException.class);
+    }
+
+    // ------------------- expiry -------------------
+
+    @Test
+    void expiry_ShouldReturnEveryHold_WhenManyExpireTogether() {
+        ticketType.setTotalTicketsAvailable(200);
+        ticketType = ticketTypeRepository.saveAndFlush(ticketType);
+
+        List<TicketReservation> reservations = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            reservations.add(ticketReservationService.reserveTickets(user.getId(), ticketType.getId(), 1));
+        }
+        // the first holds may already be expiring while the last ones are made
+        awaitTrue(() -> ticketsSold() == 0);
+
+        assertThat(reservations).allSatisfy(reservation ->
+                assertThat(reservationStatus(reservation)).isEqualTo(TicketReservationStatusEnum.EXPIRED));
+    }
+
+    @Test
+    void expiry_ShouldRetryWithBackoff_WhenReleaseFails() {
+        AtomicInteger releases = new AtomicInteger();
+        TicketInventoryService failingOnce = new TicketInventoryService() {
+            @Override
+            public boolean claimTickets(TicketType ticketType, int quantity) {
+                return ticketInventoryService.claimTickets(ticketType, quantity);
+            }
+
+            @Override
+            public int claimTicketsUpTo(TicketType ticketType, int quantity) {
+                return ticketInventoryService.claimTicketsUpTo(ticketType, quantity);
+            }
+
+            @Override
+            public void releaseTickets(TicketType ticketType, int quantity) {
+                if (releases.incrementAndGet() == 1) {
+                    throw new IllegalStateException("database unavailable");
+                }
+                ticketInventoryService.releaseTickets(ticketType, quantity);
+            }
+
+            @Override
+            public void distributeInventory(TicketType ticketType) {
+                ticketInventoryService.distributeInventory(ticketType);
+            }
+        };
+        TicketReservationServiceImpl service = new TicketReservationServiceImpl(userRepository, ticketTypeRepository,
+                ticketRepository, ticketReservationRepository, failingOnce, qrCodeOutboxService, soldOutRegistryService,
+                transactionManager, Duration.ofMillis(200), 5, 50, Duration.ofMillis(100), Duration.ofSeconds(1),
+                Duration.ofMinutes(1), Duration.ofMillis(50), 16);
+        service.startExpiryWheel();
+        try {
+            TicketReservation reservation = service.reserveTickets(user.getId(), ticketType.getId(), 2);
+
+            awaitTrue(() -> reservationStatus(reservation) == TicketReservationStatusEnum.EXPIRED);
+
+            assertThat(releases).hasValue(2);
+            assertThat(ticketsSold()).isZero();
+        } finally {
+            service.stopExpiryWheel();
+        }
+    }
+
+    @Test
+    void expireOverdueReservations_ShouldExpireHoldsLeftByAnotherNode() {
+        // claimed and held by a node that went away, so on no timing wheel here
+        ticketType.setTicketsSold(3);
+        ticketType = ticketTypeRepository.saveAndFlush(ticketType);
+        TicketReservation orphan = new TicketReservation();
+        orphan.setTicketType(ticketType);
+        orphan.setPurchaser(user);
+        orphan.setQuantity(3);
+        orphan.setStatus(TicketReservationStatusEnum.HELD);
+        orphan.setExpiresAt(LocalDateTime.now().minusHours(1));
+        TicketReservation savedOrphan = ticketReservationRepository.saveAndFlush(orphan);
+
+        ticketReservationService.expireOverdueReservations();
+
+        assertThat(reservationStatus(savedOrphan)).isEqualTo(TicketReservationStatusEnum.EXPIRED);
+        assertThat(ticketsSold()).isZero();
+    }
+
+    private int ticketsSold() {
+        return ticketTypeRepository.findById(ticketType.getId()).orElseThrow().getTicketsSold();
+    }
+
+    private TicketReservationStatusEnum reservationStatus(TicketReservation reservation) {
+        return ticketReservationRepository.findById(reservation.getId()).orElseThrow().getStatus();
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("condition not met within 10s").isLessThan(deadline);
+            sleep(50);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -2,10 +2,14 @@ package com.ticketplatform.tickets.services.impl;
 
 import com.ticketplatform.tickets.config.TestSecurityConfig;
 import com.ticketplatform.tickets.domain.entities.Ticket;
+import com.ticketplatform.tickets.domain.entities.TicketQrCodeStatusEnum;
 import com.ticketplatform.tickets.domain.entities.TicketStatusEnum;
 import com.ticketplatform.tickets.domain.entities.TicketType;
 import com.ticketplatform.tickets.domain.entities.User;
+import com.ticketplatform.tickets.exceptions.TicketQuantityException;
 import com.ticketplatform.tickets.exceptions.TicketsSoldOutException;
+import com.ticketplatform.tickets.repositories.QrCodeOutboxRepository;
+import com.ticketplatform.tickets.repositories.QrCodeRepository;
 import com.ticketplatform.tickets.repositories.TicketRepository;
 import com.ticketplatform.tickets.repositories.TicketTypeRepository;
 import com.ticketplatform.tickets.repositories.UserRepository;
@@ -16,8 +20,12 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.*;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
 import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
@@ -42,6 +50,12 @@ class TicketTypeServiceImplIntegrationTest {
     @Autowired
     private QrCodeService qrCodeService;
 
+    @Autowired
+    private QrCodeRepository qrCodeRepository;
+
+    @Autowired
+    private QrCodeOutboxRepository qrCodeOutboxRepository;
+
     private User user;
     private TicketType ticketType;
 
@@ -107,4 +121,77 @@ class TicketTypeServiceImplIntegrationTest {
                 .hasMessageContaining("Ticket type with ID")
                 .isInstanceOf(RuntimeException.class); // your TicketTypeNotFoundException class
     }
-}
\ No newline at end of file
+
+    @Test
+    @org.springframework.transaction.annotation.Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void purchaseTicket_ShouldNotOversell_WhenPurchasedConcurrently() throws Exception {
+        // Runs outside the test transaction so every purchase commits on its own, like real requests
+        int attempts = 20;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < attempts; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                try {
+                    ticketTypeService.purchaseTicket(user.getId(), ticketType.getId());
+                    return true;
+                } catch (TicketsSoldOutException ex) {
+                    return false;
+                }
+            }));
+        }
+        start.countDown();
+
+        int purchased = 0;
+        for (Future<Boolean> result : results) {
+            if (result.get(30, TimeUnit.SECONDS)) {
+                purchased++;
+            }
+        }
+        executor.shutdown();
+
+        assertThat(purchased).isEqualTo(2);
+        assertThat(ticketRepository.countByTicketTypeId(ticketType.getId())).isEqualTo(2);
+        assertThat(ticketTypeRepository.findById(ticketType.getId()).orElseThrow().getTicketsSold()).isEqualTo(2);
+    }
+
+    // ------------------- purchaseTickets -------------------
+
+    @Test
+    void purchaseTickets_ShouldCreateAllTicketsWithPendingQrCodes() {
+        ticketType.setTotalTicketsAvailable(6);
+        ticketType = ticketTypeRepository.saveAndFlush(ticketType);
+
+        List<Ticket> tickets = ticketTypeService.purchaseTickets(user.getId(), ticketType.getId(), 6);
+
+        assertThat(tickets).hasSize(6);
+        assertThat(tickets).allSatisfy(ticket -> {
+            assertThat(ticket.getId()).isNotNull();
+            assertThat(ticket.getPurchaser()).isEqualTo(user);
+            assertThat(ticket.getQrCodeStatus()).isEqualTo(TicketQrCodeStatusEnum.PENDING);
+            assertThat(qrCodeOutboxRepository.existsByTicketId(ticket.getId())).isTrue();
+        });
+        assertThat(ticketRepository.countByTicketTypeId(ticketType.getId())).isEqualTo(6);
+        assertThat(ticketTypeRepository.findTicketsRemaining(ticketType.getId())).isZero();
+    }
+
+    @Test
+    void purchaseTickets_ShouldThrow_WhenFewerLeftThanOrdered() {
+        ticketTypeService.purchaseTicket(user.getId(), ticketType.getId());
+
+        assertThatThrownBy(() -> ticketTypeService.purchaseTickets(user.getId(), ticketType.getId(), 2))
+                .isInstanceOf(TicketsSoldOutException.class);
+    }
+
+    @Test
+    void purchaseTickets_ShouldThrow_WhenQuantityAboveOrderMaximum() {
+        ticketType.setTotalTicketsAvailable(100);
+        ticketType = ticketTypeRepository.saveAndFlush(ticketType);
+
+        assertThatThrownBy(() -> ticketTypeService.purchaseTickets(user.getId(), ticketType.getId(), 11))
+                .isInstanceOf(TicketQuantityException.class);
+        assertThatThrownBy(() -> ticketTypeService.purchaseTickets(user.getId(), ticketType.getId(), 0))
+                .isInstanceOf(TicketQuantityException.class);
+    }
+}
@@ -1,21 +1,36 @@
 package com.ticketplatform.tickets.services.impl;
 
 import com.ticketplatform.tickets.config.TestSecurityConfig;
+import com.ticketplatform.tickets.domain.TicketScan;
 import com.ticketplatform.tickets.domain.entities.*;
+import com.ticketplatform.tickets.exceptions.InvalidQrCodeException;
 import com.ticketplatform.tickets.exceptions.QrCodeNotFoundException;
 import com.ticketplatform.tickets.exceptions.TicketNotFoundException;
 import com.ticketplatform.tickets.repositories.QrCodeRepository;
 import com.ticketplatform.tickets.repositories.TicketRepository;
 import com.ticketplatform.tickets.repositories.TicketValidationRepository;
 import com.ticketplatform.tickets.repositories.UserRepository;
+import com.ticketplatform.tickets.services.CheckInCounterService;
+import com.ticketplatform.tickets.services.GateManifestService;
+import com.ticketplatform.tickets.services.QrCodePayloadService;
+import com.ticketplatform.tickets.services.ValidationJournalService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.*;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -40,6 +55,23 @@ class TicketValidationServiceImplIntegrationTest {
     @Autowired
     private TicketValidationRepository ticketValidationRepository;
 
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private GateManifestService gateManifestService;
+
+    @Autowired
+    private ValidationJournalService validationJournalService;
+
+    @Autowired
+    private CheckInCounterService checkInCounterService;
+
+    private static final QrCodePayloadService SIGNING =
+            new QrCodePayloadServiceImpl(List.of("k1:" + "a".repeat(32)), false, Duration.ofSeconds(30), 1);
+    private static final QrCodePayloadService DYNAMIC_SIGNING =
+            new QrCodePayloadServiceImpl(List.of("k1:" + "a".repeat(32)), true, Duration.ofSeconds(30), 1);
+
     private Ticket ticket;
     private User user;
     private QrCode qrCode;
@@ -129,4 +161,200 @@ class TicketValidationServiceImplIntegrationTest {
         TicketValidation second = ticketValidationService.validateTicketManually(ticket.getId());
         assertThat(second.getValidationStatus()).isEqualTo(TicketValidationStatusEnum.INVALID);
     }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void validateTicket_ShouldLetTicketInOnce_WhenScannedAtSeveralGatesAtOnce() throws Exception {
+        // Runs outside the test transaction so every scan commits on its own, like real gates
+        int gates = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(gates);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<TicketValidationStatusEnum>> results = new ArrayList<>();
+        for (int i = 0; i < gates; i++) {
+            boolean manual = i % 2 == 0;
+            results.add(executor.submit(() -> {
+                start.await();
+                TicketValidation validation = manual
+                        ? ticketValidationService.validateTicketManually(ticket.getId())
+                        : ticketValidationService.validateTicketByQrCode(qrCode.getId());
+                return validation.getValidationStatus();
+            }));
+        }
+        start.countDown();
+
+        int valid = 0;
+        for (Future<TicketValidationStatusEnum> result : results) {
+            if (result.get(30, TimeUnit.SECONDS) == TicketValidationStatusEnum.VALID) {
+                valid++;
+            }
+        }
+        executor.shutdown();
+
+        assertThat(valid).isEqualTo(1);
+        List<TicketValidation> stored = ticketValidationRepository.findAll().stream()
+                .filter(validation -> validation.getTicket().getId().equals(ticket.getId()))
+                .toList();
+        assertThat(stored).hasSize(gates);
+        assertThat(stored).filteredOn(validation -> validation.getValidationStatus() == TicketValidationStatusEnum.VALID)
+                .hasSize(1);
+    }
+
+    // ------------------- validateTicketByQrPayload -------------------
+
+    @Test
+    void validateTicketByQrPayload_ShouldValidate_WhenSignedForThisEvent() {
+        UUID eventId = UUID.randomUUID();
+        String payload = signActiveQrCode(eventId);
+
+        TicketValidation validation = signingValidationService().validateTicketByQrPayload(payload, eventId);
+        ticketValidationRepository.flush();
+
+        assertThat(validation.getTicket()).isEqualTo(ticket);
+        assertThat(validation.getValidationMethod()).isEqualTo(TicketValidationMethodEnum.QR_SCAN);
+        assertThat(validation.getValidationStatus()).isEqualTo(TicketValidationStatusEnum.VALID);
+        assertThat(ticketValidationRepository.findById(validation.getId())).isPresent();
+    }
+
+    @Test
+    void validateTicketByQrPayload_ShouldReject_WhenSignedForAnotherEvent() {
+        String payload = signActiveQrCode(UUID.randomUUID());
+
+        assertThatThrownBy(() -> signingValidationService().validateTicketByQrPayload(payload, UUID.randomUUID()))
+                .isInstanceOf(InvalidQrCodeException.class)
+                .hasMessageContaining("different event");
+        assertThat(ticketValidationRepository.count()).isZero();
+    }
+
+    @Test
+    void validateTicketByQrPayload_ShouldReject_WhenSignatureIsForged() {
+        UUID eventId = UUID.randomUUID();
+        QrCodePayloadService otherKeys =
+                new QrCodePayloadServiceImpl(List.of("k1:" + "b".repeat(32)), false, Duration.ofSeconds(30), 1);
+        String forged = otherKeys.createPayload(qrCode.getId(), ticket.getId(), eventId);
+
+        assertThatThrownBy(() -> signingValidationService().validateTicketByQrPayload(forged, eventId))
+                .isInstanceOf(InvalidQrCodeException.class);
+    }
+
+    @Test
+    void validateTicketByQrPayload_ShouldThrow_WhenNotTheTicketsActiveCode() {
+        UUID eventId = UUID.randomUUID();
+        signActiveQrCode(eventId);
+        String replaced = SIGNING.createPayload(UUID.randomUUID(), ticket.getId(), UUID.randomUUID());
+
+        assertThatThrownBy(() -> signingValidationService().validateTicketByQrPayload(replaced, null))
+                .isInstanceOf(QrCodeNotFoundException.class);
+    }
+
+    @Test
+    void validateTicketByQrPayload_ShouldLookUpQrCode_WhenPayloadIsLegacyId() {
+        TicketValidation validation = signingValidationService().validateTicketByQrPayload(qrCode.getId().toString(), null);
+
+        assertThat(validation.getTicket()).isEqualTo(ticket);
+        assertThat(validation.getValidationStatus()).isEqualTo(TicketValidationStatusEnum.VALID);
+    }
+
+    @Test
+    void validateTicketByQrPayload_ShouldValidate_WhenDynamicCodeIsForCurrentWindow() {
+        UUID eventId = UUID.randomUUID();
+        String current = DYNAMIC_SIGNING.currentPayload(signActiveQrCode(eventId), Instant.now());
+
+        TicketValidation validation = new TicketValidationServiceImpl(qrCodeRepository, ticketValidationRepository,
+                ticketRepository, DYNAMIC_SIGNING, transactionTemplate, gateManifestService,
+                validationJournalService, checkInCounterService)
+                .validateTicketByQrPayload(current, eventId);
+
+        assertThat(validation.getTicket()).isEqualTo(ticket);
+        assertThat(validation.getValidationStatus()).isEqualTo(TicketValidationStatusEnum.VALID);
+    }
+
+    @Test
+    void validateTicketByQrPayload_ShouldReject_WhenDynamicCodeIsFromAnOldWindow() {
+        UUID eventId = UUID.randomUUID();
+        String screenshot = DYNAMIC_SIGNING.currentPayload(signActiveQrCode(eventId),
+                Instant.now().minus(Duration.ofMinutes(5)));
+
+        assertThatThrownBy(() -> new TicketValidationServiceImpl(qrCodeRepository, ticketValidationRepository,
+                ticketRepository, DYNAMIC_SIGNING, transactionTemplate, gateManifestService,
+                validationJournalService, checkInCounterService)
+                .validateTicketByQrPayload(screenshot, eventId))
+                .isInstanceOf(InvalidQrCodeException.class)
+                .hasMessageContaining("expired");
+        assertThat(ticketValidationRepository.count()).isZero();
+    }
+
+    // ------------------- validateTicketScans -------------------
+
+    @Test
+    void validateTicketScans_ShouldLetInTheEarliestScan_WhenScansArriveOutOfOrder() {
+        Instant doorsOpen = Instant.now().minus(Duration.ofHours(1));
+        TicketScan later = new TicketScan(qrCode.getId(), TicketValidationMethodEnum.QR_SCAN, null,
+                doorsOpen.plusSeconds(30));
+        TicketScan earlier = new TicketScan(qrCode.getId(), TicketValidationMethodEnum.QR_SCAN, null, doorsOpen);
+        long before = ticketValidationRepository.count();
+
+        List<TicketValidation> validations = ticketValidationService.validateTicketScans(List.of(later, earlier), null);
+
+        assertThat(validations).extracting(TicketValidation::getValidationStatus)
+                .containsExactly(TicketValidationStatusEnum.INVALID, TicketValidationStatusEnum.VALID);
+        assertThat(validations.get(1).getCreatedAt())
+                .isEqualTo(LocalDateTime.ofInstant(doorsOpen, ZoneId.systemDefault()));
+        assertThat(ticketValidationRepository.count()).isEqualTo(before + 2);
+        assertThat(ticketRepository.admit(ticket.getId(), LocalDateTime.now())).isZero();
+    }
+
+    @Test
+    void validateTicketScans_ShouldRefuseUnknownCodesWithoutWriting() {
+        TicketScan unknown = new TicketScan(UUID.randomUUID(), TicketValidationMethodEnum.QR_SCAN, null, Instant.now());
+        TicketScan forged = new TicketScan(null, TicketValidationMethodEnum.QR_SCAN, "k9.forged", Instant.now());
+        TicketScan known = new TicketScan(qrCode.getId(), TicketValidationMethodEnum.QR_SCAN, null, Instant.now());
+        long before = ticketValidationRepository.count();
+
+        List<TicketValidation> validations = ticketValidationService.validateTicketScans(
+                List.of(unknown, forged, known), null);
+
+        assertThat(validations).extracting(TicketValidation::getValidationStatus)
+                .containsExactly(TicketValidationStatusEnum.INVALID, TicketValidationStatusEnum.INVALID,
+                        TicketValidationStatusEnum.VALID);
+        assertThat(validations.get(0).getTicket()).isNull();
+        assertThat(ticketValidationRepository.count()).isEqualTo(before + 1);
+    }
+
+    @Test
+    void validateTicketScans_ShouldMarkAsInvalid_WhenTicketWasLetInBefore() {
+        ticketRepository.admit(ticket.getId(), LocalDateTime.now().minusMinutes(5));
+        TicketScan manual = new TicketScan(ticket.getId(), TicketValidationMethodEnum.MANUAL, null, Instant.now());
+
+        List<TicketValidation> validations = ticketValidationService.validateTicketScans(List.of(manual), null);
+
+        assertThat(validations.get(0).getValidationStatus()).isEqualTo(TicketValidationStatusEnum.INVALID);
+        assertThat(validations.get(0).getValidationMethod()).isEqualTo(TicketValidationMethodEnum.MANUAL);
+    }
+
+    @Test
+    void validateTicketScans_ShouldCheckDynamicCodesAgainstTheTimeOfTheScan() {
+        UUID eventId = UUID.randomUUID();
+        Instant scannedAt = Instant.now().minus(Duration.ofMinutes(20));
+        String shown = DYNAMIC_SIGNING.currentPayload(signActiveQrCode(eventId), scannedAt);
+        TicketScan scan = new TicketScan(null, TicketValidationMethodEnum.QR_SCAN, shown, scannedAt);
+
+        List<TicketValidation> validations = new TicketValidationServiceImpl(qrCodeRepository,
+                ticketValidationRepository, ticketRepository, DYNAMIC_SIGNING, transactionTemplate, gateManifestService,
+                validationJournalService, checkInCounterService)
+                .validateTicketScans(List.of(scan), eventId);
+
+        assertThat(validations.get(0).getValidationStatus()).isEqualTo(TicketValidationStatusEnum.VALID);
+    }
+
+    private String signActiveQrCode(UUID eventId) {
+        String payload = SIGNING.createPayload(qrCode.getId(), ticket.getId(), eventId);
+        qrCode.setPayload(payload);
+        qrCodeRepository.saveAndFlush(qrCode);
+        return payload;
+    }
+
+    private TicketValidationServiceImpl signingValidationService() {
+        return new TicketValidationServiceImpl(qrCodeRepository, ticketValidationRepository, ticketRepository,
+                SIGNING, transactionTemplate, gateManifestService, validationJournalService, checkInCounterService);
+    }
 }
\ No newline at end of file
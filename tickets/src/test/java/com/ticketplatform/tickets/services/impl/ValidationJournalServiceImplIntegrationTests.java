@@ -0,0 +1,288 @@
+package com.ticketplatform.tickets.services.impl;
+
+import com.ticketplatform.tickets.config.TestSecurityConfig;
+import com.ticketplatform.tickets.domain.entities.*;
+import com.ticketplatform.tickets.repositories.EventRepository;
+import com.ticketplatform.tickets.repositories.TicketRepository;
+import com.ticketplatform.tickets.repositories.TicketTypeRepository;
+import com.ticketplatform.tickets.repositories.TicketValidationRepository;
+import com.ticketplatform.tickets.repositories.UserRepository;
+import com.ticketplatform.tickets.services.QrCodeService;
+import com.ticketplatform.tickets.util.ValidationJournal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+//Every run journals to a directory of its own, so nothing is replayed from an earlier one
+@SpringBootTest(properties = {
+        "tickets.validations.journal.enabled=true",
+        "tickets.validations.journal.directory=target/validation-journal/${random.uuid}",
+        "tickets.validations.journal.flush-interval=1h",
+        "tickets.gate.refresh-interval=1h",
+        "tickets.gate.write-behind.flush-interval=1h"
+})
+@Transactional
+@Import(TestSecurityConfig.class)
+class ValidationJournalServiceImplIntegrationTest {
+
+    @Autowired
+    private ValidationJournalServiceImpl validationJournalService;
+
+    @Autowired
+    private TicketValidationServiceImpl ticketValidationService;
+
+    @Autowired
+    private GateManifestServiceImpl gateManifestService;
+
+    @Autowired
+    private QrCodeService qrCodeService;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private TicketTypeRepository ticketTypeRepository;
+
+    @Autowired
+    private TicketRepository ticketRepository;
+
+    @Autowired
+    private TicketValidationRepository ticketValidationRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private User organizer;
+    private Event event;
+    private List<QrCode> qrCodes;
+
+    @BeforeEach
+    void setUp() {
+        organizer = new User();
+        organizer.setId(UUID.randomUUID());
+        organizer.setName("Organizer");
+        organizer.setEmail("organizer@example.com");
+        organizer = userRepository.saveAndFlush(organizer);
+
+        event = new Event();
+        event.setName("Journal Festival");
+        event.setVenue("Main Stage");
+        event.setStatus(EventStatusEnum.PUBLISHED);
+        event.setOrganizer(organizer);
+        event = eventRepository.saveAndFlush(event);
+
+        TicketType ticketType = new TicketType();
+        ticketType.setName("General");
+        ticketType.setPrice(25.0);
+        ticketType.setTotalTicketsAvailable(3);
+        ticketType.setEvent(event);
+        ticketType = ticketTypeRepository.saveAndFlush(ticketType);
+
+        List<Ticket> tickets = new ArrayList<>();
+        for(int i = 0; i < 3; i++) {
+            Ticket ticket = new Ticket();
+            ticket.setStatus(TicketStatusEnum.PURCHASED);
+            ticket.setPurchaser(organizer);
+            ticket.setTicketType(ticketType);
+            tickets.add(ticket);
+        }
+        qrCodes = qrCodeService.generateQrCodes(ticketRepository.saveAllAndFlush(tickets));
+    }
+
+    @AfterEach
+    void tearDown() {
+        gateManifestService.closeGate(organizer.getId(), event.getId());
+        validationJournalService.flushJournal();
+    }
+
+    // ------------------- append -------------------
+
+    //Not transactional, scans are only journaled once they have committed
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void append_ShouldKeepTheValidationOutOfTheDatabaseUntilFlushed() {
+        UUID ticketId = qrCodes.get(0).getTicket().getId();
+
+        TicketValidation validation = ticketValidationService.validateTicketManually(ticketId);
+
+        assertThat(validation.getValidationStatus()).isEqualTo(TicketValidationStatusEnum.VALID);
+        assertThat(validation.getId()).isNotNull();
+        assertThat(ticketValidationRepository.findById(validation.getId())).isEmpty();
+        assertThat(ticketRepository.findById(ticketId)).get()
+                .extracting(Ticket::getAdmittedAt)
+                .isNotNull();
+
+        validationJournalService.flushJournal();
+
+        assertThat(ticketValidationRepository.findById(validation.getId())).get()
+                .extracting(TicketValidation::getValidationStatus, TicketValidation::getValidationMethod)
+                .containsExactly(TicketValidationStatusEnum.VALID, TicketValidationMethodEnum.MANUAL);
+        ticketValidationRepository.deleteById(validation.getId());
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void append_ShouldLeaveNothingToInsert_WhenTheScanRollsBack() {
+        UUID ticketId = qrCodes.get(0).getTicket().getId();
+
+        TicketValidation validation = transactionTemplate.execute(status -> {
+            status.setRollbackOnly();
+            return ticketValidationService.validateTicketManually(ticketId);
+        });
+        validationJournalService.flushJournal();
+
+        assertThat(ticketValidationRepository.findById(validation.getId())).isEmpty();
+        assertThat(ticketRepository.findById(ticketId)).get()
+                .extracting(Ticket::getAdmittedAt)
+                .isNull();
+    }
+
+    @Test
+    void append_ShouldJournalGateScansAndLetTheTicketInOnFlush() {
+        gateManifestService.openGate(organizer.getId(), event.getId());
+        QrCode qrCode = qrCodes.get(1);
+
+        TicketValidation validation = gateManifestService.validateByQrCode(qrCode.getId(), event.getId()).orElseThrow();
+        gateManifestService.flushValidations();
+        assertThat(ticketValidationRepository.findById(validation.getId())).isEmpty();
+
+        validationJournalService.flushJournal();
+
+        assertThat(ticketValidationRepository.findById(validation.getId())).isPresent();
+        assertThat(ticketRepository.admit(qrCode.getTicket().getId(), LocalDateTime.now())).isZero();
+    }
+
+    // ------------------- replayJournal -------------------
+
+    @Test
+    void replayJournal_ShouldInsertWhatAStoppedNodeLeftOnce(@TempDir Path directory) throws Exception {
+        UUID ticketId = qrCodes.get(2).getTicket().getId();
+        LocalDateTime scannedAt = LocalDateTime.now().minusMinutes(5).truncatedTo(ChronoUnit.MICROS);
+        ValidationJournal.Entry inserted = new ValidationJournal.Entry(UUID.randomUUID(), ticketId,
+                TicketValidationStatusEnum.VALID, TicketValidationMethodEnum.QR_SCAN, scannedAt, true);
+        ValidationJournal.Entry left = new ValidationJournal.Entry(UUID.randomUUID(), ticketId,
+                TicketValidationStatusEnum.INVALID, TicketValidationMethodEnum.QR_SCAN, scannedAt.plusSeconds(1), false);
+        //Stopped after inserting the first, and halfway through appending another
+        try(ValidationJournal journal = new ValidationJournal(directory)) {
+            journal.append(List.of(inserted, left));
+        }
+        Path segment = Files.list(directory).findFirst().orElseThrow();
+        Files.write(segment, new byte[ValidationJournal.ENTRY_SIZE / 2], StandardOpenOption.APPEND);
+        TicketValidation insertedValidation = new TicketValidation();
+        insertedValidation.setId(inserted.id());
+        insertedValidation.setTicket(ticketRepository.getReferenceById(ticketId));
+        insertedValidation.setValidationStatus(inserted.status());
+        insertedValidation.setValidationMethod(inserted.method());
+        insertedValidation.setCreatedAt(inserted.createdAt());
+        ticketValidationRepository.insertAll(List.of(insertedValidation));
+        long before = ticketValidationRepository.count();
+
+        ValidationJournalServiceImpl restarted = new ValidationJournalServiceImpl(ticketRepository,
+                ticketValidationRepository, transactionTemplate, true, directory, 5);
+        restarted.openJournal();
+        restarted.replayJournal();
+        restarted.closeJournal();
+
+        assertThat(ticketValidationRepository.count()).isEqualTo(before + 1);
+        assertThat(ticketValidationRepository.findById(left.id())).get()
+                .extracting(TicketValidation::getCreatedAt)
+                .isEqualTo(left.createdAt());
+        assertThat(ticketRepository.admit(ticketId, LocalDateTime.now())).isOne();
+        assertThat(Files.list(directory)).isEmpty();
+    }
+
+    @Test
+    void replayJournal_ShouldQuarantineSegment_WhenEntriesFollowADamagedOne(@TempDir Path directory) throws Exception {
+        LocalDateTime scannedAt = LocalDateTime.now().minusMinutes(5).truncatedTo(ChronoUnit.MICROS);
+        ValidationJournal.Entry readable = new ValidationJournal.Entry(UUID.randomUUID(),
+                qrCodes.get(0).getTicket().getId(), TicketValidationStatusEnum.VALID,
+                TicketValidationMethodEnum.QR_SCAN, scannedAt, false);
+        ValidationJournal.Entry damaged = new ValidationJournal.Entry(UUID.randomUUID(),
+                qrCodes.get(1).getTicket().getId(), TicketValidationStatusEnum.VALID,
+                TicketValidationMethodEnum.QR_SCAN, scannedAt, false);
+        ValidationJournal.Entry behindDamaged = new ValidationJournal.Entry(UUID.randomUUID(),
+                qrCodes.get(2).getTicket().getId(), TicketValidationStatusEnum.VALID,
+                TicketValidationMethodEnum.QR_SCAN, scannedAt, false);
+        try(ValidationJournal journal = new ValidationJournal(directory)) {
+            journal.append(List.of(readable, damaged, behindDamaged));
+        }
+        Path segment = Files.list(directory).findFirst().orElseThrow();
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[ValidationJournal.ENTRY_SIZE] ^= 1;
+        Files.write(segment, bytes);
+
+        ValidationJournalServiceImpl restarted = new ValidationJournalServiceImpl(ticketRepository,
+                ticketValidationRepository, transactionTemplate, true, directory, 5);
+        restarted.openJournal();
+        restarted.replayJournal();
+        restarted.closeJournal();
+
+        assertThat(ticketValidationRepository.findById(readable.id())).isPresent();
+        assertThat(ticketValidationRepository.findById(behindDamaged.id())).isEmpty();
+        assertThat(Files.list(directory))
+                .containsExactly(segment.resolveSibling(segment.getFileName() + ".quarantined"));
+    }
+
+    // ------------------- flushJournal -------------------
+
+    //Not transactional, so the failed insert of one segment does not take the others down with it
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void flushJournal_ShouldQuarantineSegmentThatKeepsFailing_WhileLaterOnesGoIn(@TempDir Path directory)
+            throws Exception {
+        LocalDateTime scannedAt = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        //A ticket that does not exist, the insert breaks its foreign key on every try
+        ValidationJournal.Entry poisoned = new ValidationJournal.Entry(UUID.randomUUID(), UUID.randomUUID(),
+                TicketValidationStatusEnum.VALID, TicketValidationMethodEnum.QR_SCAN, scannedAt, false);
+        ValidationJournal.Entry first = new ValidationJournal.Entry(UUID.randomUUID(),
+                qrCodes.get(0).getTicket().getId(), TicketValidationStatusEnum.VALID,
+                TicketValidationMethodEnum.QR_SCAN, scannedAt, false);
+        try(ValidationJournal journal = new ValidationJournal(directory)) {
+            journal.append(List.of(poisoned));
+            journal.roll();
+            journal.append(List.of(first));
+        }
+        Path poisonedSegment = Files.list(directory).sorted().findFirst().orElseThrow();
+        ValidationJournalServiceImpl twoAttempts = new ValidationJournalServiceImpl(ticketRepository,
+                ticketValidationRepository, transactionTemplate, true, directory, 2);
+        twoAttempts.openJournal();
+
+        twoAttempts.flushJournal();
+        assertThat(ticketValidationRepository.findById(first.id())).isPresent();
+
+        TicketValidation second = new TicketValidation();
+        second.setTicket(qrCodes.get(1).getTicket());
+        second.setValidationStatus(TicketValidationStatusEnum.INVALID);
+        second.setValidationMethod(TicketValidationMethodEnum.MANUAL);
+        twoAttempts.append(second, false);
+        twoAttempts.flushJournal();
+        twoAttempts.closeJournal();
+
+        assertThat(ticketValidationRepository.findById(second.getId())).isPresent();
+        assertThat(ticketValidationRepository.findById(poisoned.id())).isEmpty();
+        assertThat(Files.list(directory))
+                .containsExactly(poisonedSegment.resolveSibling(poisonedSegment.getFileName() + ".quarantined"));
+        ticketValidationRepository.deleteAllById(List.of(first.id(), second.getId()));
+    }
+}
@@ -0,0 +1,221 @@
+package com.ticketplatform.tickets.services.impl;
+
+import com.ticketplatform.tickets.config.TestSecurityConfig;
+import com.ticketplatform.tickets.domain.WaitingRoomStatus;
+import com.ticketplatform.tickets.domain.entities.Event;
+import com.ticketplatform.tickets.domain.entities.EventStatusEnum;
+import com.ticketplatform.tickets.domain.entities.TicketType;
+import com.ticketplatform.tickets.exceptions.AdmissionTokenException;
+import com.ticketplatform.tickets.exceptions.EventNotFoundException;
+import com.ticketplatform.tickets.exceptions.WaitingRoomException;
+import com.ticketplatform.tickets.repositories.EventRepository;
+import com.ticketplatform.tickets.repositories.TicketTypeRepository;
+import com.ticketplatform.tickets.services.WaitingRoomService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// The admission interval is an hour so nothing is admitted unless the test calls admitNext itself
+@SpringBootTest(properties = {
+        "tickets.waiting-room.enabled=true",
+        "tickets.waiting-room.admission-batch-size=2",
+        "tickets.waiting-room.admission-interval=1h",
+        "tickets.waiting-room.token-secret=" + WaitingRoomServiceImplIntegrationTest.TOKEN_SECRET
+})
+@Transactional
+@Import(TestSecurityConfig.class)
+class WaitingRoomServiceImplIntegrationTest {
+
+    static final String TOKEN_SECRET = "waiting-room-test-secret";
+
+    @Autowired
+    private WaitingRoomService waitingRoomService;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private TicketTypeRepository ticketTypeRepository;
+
+    private Event event;
+    private TicketType ticketType;
+
+    @BeforeEach
+    void setUp() {
+        event = new Event();
+        event.setName("On Sale Now");
+        event.setVenue("A very big venue");
+        event.setStatus(EventStatusEnum.PUBLISHED);
+        event = eventRepository.save(event);
+
+        ticketType = new TicketType();
+        ticketType.setName("General Admission");
+        ticketType.setPrice(20.0);
+        ticketType.setTotalTicketsAvailable(100);
+        ticketType.setEvent(event);
+        ticketType = ticketTypeRepository.save(ticketType);
+    }
+
+    // ------------------- joinQueue -------------------
+
+    @Test
+    void joinQueue_ShouldQueueBuyersInArrivalOrder() {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        UUID third = UUID.randomUUID();
+
+        assertThat(waitingRoomService.joinQueue(event.getId(), first).getPosition()).isEqualTo(1);
+        assertThat(waitingRoomService.joinQueue(event.getId(), second).getPosition()).isEqualTo(2);
+        WaitingRoomStatus status = waitingRoomService.joinQueue(event.getId(), third);
+
+        assertThat(status.getPosition()).isEqualTo(3);
+        assertThat(status.getEstimatedWaitSeconds()).isEqualTo(2 * 3600);
+        assertThat(status.getAdmissionToken()).isNull();
+    }
+
+    @Test
+    void joinQueue_ShouldKeepPlace_WhenJoiningAgain() {
+        UUID first = UUID.randomUUID();
+        waitingRoomService.joinQueue(event.getId(), first);
+        waitingRoomService.joinQueue(event.getId(), UUID.randomUUID());
+
+        assertThat(waitingRoomService.joinQueue(event.getId(), first).getPosition()).isEqualTo(1);
+    }
+
+    @Test
+    void joinQueue_ShouldThrow_WhenEventNotPublished() {
+        event.setStatus(EventStatusEnum.DRAFT);
+        eventRepository.saveAndFlush(event);
+
+        assertThatThrownBy(() -> waitingRoomService.joinQueue(event.getId(), UUID.randomUUID()))
+                .isInstanceOf(EventNotFoundException.class);
+    }
+
+    // ------------------- getQueueStatus / admitNext -------------------
+
+    @Test
+    void admitNext_ShouldAdmitOneBatchAndMoveEveryoneElseUp() {
+        UUID[] buyers = {UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID()};
+        for (UUID buyer : buyers) {
+            waitingRoomService.joinQueue(event.getId(), buyer);
+        }
+
+        waitingRoomService.admitNext();
+
+        WaitingRoomStatus admitted = waitingRoomService.getQueueStatus(event.getId(), buyers[1]);
+        assertThat(admitted.getPosition()).isZero();
+        assertThat(admitted.getAdmissionToken()).isNotBlank();
+        assertThat(admitted.getAdmissionTokenExpiresAt()).isNotNull();
+
+        WaitingRoomStatus waiting = waitingRoomService.getQueueStatus(event.getId(), buyers[2]);
+        assertThat(waiting.getPosition()).isEqualTo(1);
+        assertThat(waiting.getAdmissionToken()).isNull();
+    }
+
+    @Test
+    void getQueueStatus_ShouldThrow_WhenNotInQueue() {
+        assertThatThrownBy(() -> waitingRoomService.getQueueStatus(event.getId(), UUID.randomUUID()))
+                .isInstanceOf(WaitingRoomException.class);
+    }
+
+    // ------------------- spendAdmission -------------------
+
+    @Test
+    void spendAdmission_ShouldAllowOnePurchasePerAdmission() {
+        UUID buyer = UUID.randomUUID();
+        waitingRoomService.joinQueue(event.getId(), buyer);
+        waitingRoomService.admitNext();
+        String token = waitingRoomService.getQueueStatus(event.getId(), buyer).getAdmissionToken();
+
+        assertThat(waitingRoomService.spendAdmission(token, event.getId(), ticketType.getId(), buyer, () -> "bought"))
+                .isEqualTo("bought");
+
+        AtomicInteger purchases = new AtomicInteger();
+        assertThatThrownBy(() -> waitingRoomService.spendAdmission(token, event.getId(), ticketType.getId(), buyer,
+                purchases::incrementAndGet))
+                .isInstanceOf(AdmissionTokenException.class)
+                .hasMessageContaining("already been used");
+        assertThat(purchases).hasValue(0);
+
+        //Having bought, the buyer can queue again and is admitted with a fresh token
+        waitingRoomService.joinQueue(event.getId(), buyer);
+        waitingRoomService.admitNext();
+        String nextToken = waitingRoomService.getQueueStatus(event.getId(), buyer).getAdmissionToken();
+        assertThat(nextToken).isNotEqualTo(token);
+        assertThat(waitingRoomService.spendAdmission(nextToken, event.getId(), ticketType.getId(), buyer,
+                () -> "bought again"))
+                .isEqualTo("bought again");
+    }
+
+    @Test
+    void spendAdmission_ShouldHandAdmissionBack_WhenPurchaseFails() {
+        UUID buyer = UUID.randomUUID();
+        waitingRoomService.joinQueue(event.getId(), buyer);
+        waitingRoomService.admitNext();
+        String token = waitingRoomService.getQueueStatus(event.getId(), buyer).getAdmissionToken();
+
+        assertThatThrownBy(() -> waitingRoomService.spendAdmission(token, event.getId(), ticketType.getId(), buyer,
+                () -> {
+                    throw new IllegalStateException("payment declined");
+                }))
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(waitingRoomService.spendAdmission(token, event.getId(), ticketType.getId(), buyer, () -> "bought"))
+                .isEqualTo("bought");
+    }
+
+    @Test
+    void spendAdmission_ShouldReject_WhenTokenMissingTamperedOrForSomeoneElse() {
+        UUID buyer = UUID.randomUUID();
+        waitingRoomService.joinQueue(event.getId(), buyer);
+        waitingRoomService.admitNext();
+        String token = waitingRoomService.getQueueStatus(event.getId(), buyer).getAdmissionToken();
+        UUID eventId = event.getId();
+        UUID ticketTypeId = ticketType.getId();
+
+        assertThatThrownBy(() -> waitingRoomService.spendAdmission(null, eventId, ticketTypeId, buyer, () -> "bought"))
+                .isInstanceOf(AdmissionTokenException.class);
+        assertThatThrownBy(() -> waitingRoomService.spendAdmission(token + "x", eventId, ticketTypeId, buyer,
+                () -> "bought"))
+                .isInstanceOf(AdmissionTokenException.class);
+        assertThatThrownBy(() -> waitingRoomService.spendAdmission("not-a-token", eventId, ticketTypeId, buyer,
+                () -> "bought"))
+                .isInstanceOf(AdmissionTokenException.class);
+        assertThatThrownBy(() -> waitingRoomService.spendAdmission(token, eventId, ticketTypeId, UUID.randomUUID(),
+                () -> "bought"))
+                .isInstanceOf(AdmissionTokenException.class);
+        assertThatThrownBy(() -> waitingRoomService.spendAdmission(token, eventId, UUID.randomUUID(), buyer,
+                () -> "bought"))
+                .isInstanceOf(AdmissionTokenException.class);
+    }
+
+    @Test
+    void spendAdmission_ShouldReject_WhenTokenExpired() throws Exception {
+        UUID buyer = UUID.randomUUID();
+        byte[] payload = (event.getId() + ":" + buyer + ":" + Instant.now().minusSeconds(60).getEpochSecond()
+                + ":" + UUID.randomUUID()).getBytes(StandardCharsets.UTF_8);
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(TOKEN_SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String expiredToken = encoder.encodeToString(payload) + "." + encoder.encodeToString(mac.doFinal(payload));
+
+        assertThatThrownBy(() -> waitingRoomService.spendAdmission(expiredToken, event.getId(), ticketType.getId(),
+                buyer, () -> "bought"))
+                .isInstanceOf(AdmissionTokenException.class)
+                .hasMessageContaining("expired");
+    }
+}